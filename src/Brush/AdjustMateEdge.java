@@ -35,8 +35,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -50,7 +50,7 @@ public class AdjustMateEdge extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class AdjustMateEdgeMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
         private static int K = 0;
         static public float EXPCOV = 20f;
@@ -65,12 +65,11 @@ public class AdjustMateEdge extends Configured implements Tool
             READS = Long.parseLong(job.get("READS"));
             CTG_SUM = Long.parseLong(job.get("CTG_SUM"));
 		}
-		public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
                 throws IOException
         {
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
             //\\define unique
             double A_statistic = 0;
             //A_statistic = node.str().length()*EXPCOV/(READLEN-K+1)-(float)((node.str().length()*node.cov()/READLEN)*Math.log(2));
@@ -92,11 +91,11 @@ public class AdjustMateEdge extends Configured implements Tool
                         String edge_id = vals[0];
                         String oval_size = vals[1];
                         String con = Node.flip_link(key);
-                        output.collect(new Text(edge_id), new Text(Node.DARKMSG + "\t" + con + "\t" + oval_size + "\t" + node.toNodeMsg(true)));
+                        output.collect(new Text(edge_id), new NodeWritable(Node.DARKMSG + "\t" + con + "\t" + oval_size + "\t" + node.getNodeId(), node));
                     }
                 }
 			}
-            output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+            output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			reporter.incrCounter("Brush", "nodes", 1);
             
         }
@@ -107,7 +106,7 @@ public class AdjustMateEdge extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class AdjustMateEdgeReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
         private static int K = 0;
         static public long INSLEN = 200;
@@ -126,8 +125,8 @@ public class AdjustMateEdge extends Configured implements Tool
 			Node   node;		
 		}
         
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
 			Node node = new Node(nodeid.toString());
@@ -138,15 +137,15 @@ public class AdjustMateEdge extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(key.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
                 else if (vals[0].equals(Node.DARKMSG))
@@ -156,7 +155,7 @@ public class AdjustMateEdge extends Configured implements Tool
 					ni.type  = vals[1];
 					ni.oval_size = vals[2];
                     ni.node = new Node(vals[3]);
-					ni.node.parseNodeMsg(vals, 4);
+					ni.node.parseNodeMsg(msg.getNode());
                   
                     if (ni.type.charAt(0) == 'f') {
                         flist.add(ni);
@@ -306,7 +305,7 @@ public class AdjustMateEdge extends Configured implements Tool
             }
             //\\\\\\\\\\\\
             }  // node is unique
-            output.collect(nodeid, new Text(node.toNodeMsg()));
+            output.collect(nodeid, new NodeWritable(node));
             //output.collect(new Text(node.getNodeId()), new Text(choices + ""));
 		}
     }
@@ -329,14 +328,14 @@ public class AdjustMateEdge extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
 
 		conf.setMapperClass(AdjustMateEdgeMapper.class);
 		conf.setReducerClass(AdjustMateEdgeReducer.class);
@@ -72,6 +72,7 @@ public class BrushAssembler extends Configured implements Tool
     //static String preprocess = "00-preprocess";
     //static String preprocesscmp = "01-preprocesscmp";
     //static String prematch = "00-prefix";
+    static String dictionary = "00-dictionary";
     static String preprocess = "00-preprocess";
     static String overlap = "01-overlap";
     static String string = "02-string";
@@ -180,7 +181,15 @@ public class BrushAssembler extends Configured implements Tool
 		Graph2Fasta g2f = new Graph2Fasta();
         CountReads cr = new CountReads();
 		start("convertFasta " + graphdir);
-		RunningJob job = g2f.run(basePath + graphdir, fastadir);
+
+		// restore the read names when the graph came from ReadDictionary ids
+		String names = null;
+		if (FileSystem.get(baseconf).exists(new Path(basePath + dictionary)))
+		{
+			names = basePath + dictionary + "/" + ReadDictionary.NAMES + "-*";
+		}
+
+		RunningJob job = g2f.run(basePath + graphdir, names, fastadir);
         //FileSystem.get(baseconf).rename(new Path(basePath+"/jpeg"), new Path(fastadir.substring(0,fastadir.length()-1) +"_jpeg"));
         //FileSystem.get(baseconf).delete(new Path(basePath), true);
         end(job);
@@ -258,9 +267,15 @@ public class BrushAssembler extends Configured implements Tool
 		RunningJob job;
         //long trans_edge = 0;
         msg("\nPreProcess:");
+        start("\n  Assign Read IDs");
+        ReadDictionary rd = new ReadDictionary();
+        job = rd.run(inputPath, basePath + dictionary);
+        end(job);
+        msg("  " + counter(job, "reads") + " reads");
+
         start("\n  Generate nonContained Reads");
         GenNonContainedReads gnc = new GenNonContainedReads();
-        job = gnc.run(inputPath , basePath + preprocess + ".0");
+        job = gnc.run(basePath + dictionary + "/part-*", basePath + preprocess + ".0");
         end(job);
 
         long nodecnt      = counter(job, "nodecount");
@@ -288,12 +303,44 @@ public class BrushAssembler extends Configured implements Tool
         nodecnt      = counter(job, "nodes");
         msg("  " + redundant + " redundants " + nodecnt + " nodes");      
         
+        if (BrushConfig.SPECTRUM)
+        {
+            start("\n  Kmer Spectrum");
+            KmerSpectrum ksp = new KmerSpectrum();
+            job = ksp.run(basePath + preprocess, basePath + preprocess + ".spectrum");
+            end(job);
+            msg("  " + ksp.distinct + " distinct kmers");
+
+            long [] hist = KmerSpectrum.readHistogram(FileSystem.get(baseconf), basePath + preprocess + ".spectrum");
+            int [] vp = KmerSpectrum.analyze(hist);
+            KmerSpectrum.writeHistogram(hist, vp, BrushConfig.localBasePath + "kmer_spectrum.txt");
+            msg("  valley: " + vp[0] + " peak: " + vp[1] + "\n");
+
+            if (vp[1] == 0)
+            {
+                msg("  no coverage peak, keeping kmercov " + BrushConfig.KMERCOV + " kmerup " + BrushConfig.UP_KMER + "\n");
+            }
+            else
+            {
+                long up = Math.max((long) KmerSpectrum.REPEAT * vp[1], BrushConfig.LOW_KMER + 1);
+
+                if (BrushConfig.KMERCOV_SET) { msg("  suggested -kmercov " + vp[1] + "\n"); }
+                else { BrushConfig.KMERCOV = vp[1]; msg("  KMERCOV = " + BrushConfig.KMERCOV + "\n"); }
+
+                if (BrushConfig.KMERUP_SET) { msg("  suggested -kmerup " + up + "\n"); }
+                else { BrushConfig.UP_KMER = up; msg("  KMER UPPER BOUND = " + BrushConfig.UP_KMER + "\n"); }
+            }
+        }
+
         start("\n  Build High Frequency Kmer List");
         BuildHighKmerList bhk = new BuildHighKmerList();
         job = bhk.run(basePath + preprocess, basePath + hkmerlist);
         end(job);
         long hkmer = counter(job, "hkmer");
         msg(" H_kmer: " + hkmer);
+        if (BrushConfig.SKEW_SALTS > 0) {
+            msg(" Heavy_kmer: " + counter(job, "heavy_kmer"));
+        }
         msg("\n");
         /*start("\n  Count Kmer");
         CountKmer ck = new CountKmer();
@@ -321,6 +368,26 @@ public class BrushAssembler extends Configured implements Tool
         end(job);
         long hkmer = counter(job, "hkmer");
         msg(" " +  hkmer + " HKmer_skip\n" );
+        if (BrushConfig.SKEW_SALTS > 0) {
+            msg("  " + counter(job, "heavy_windows") + " heavy prefix windows over " + BrushConfig.SKEW_SALTS + " reducers each, "
+                + counter(job, "heavy_candidates") + " candidates sent to the stitch\n");
+        }
+        if (BrushConfig.MINIMIZER_W > 0) {
+            long windows = counter(job, "suffix_windows");
+            long seeds = counter(job, "suffix_seeds");
+            msg("  " + windows + " suffix windows sent as " + seeds + " minimizer seeds (" + (windows > 0 ? 100*seeds/windows : 0) + "%), "
+                + counter(job, "seed_spills") + " minimizer groups spilled\n");
+        }
+        if (BrushConfig.FUSED_OVERLAP) {
+            long overlaps = counter(job, "overlaps") + ((mp.stitch != null) ? counter(mp.stitch, "overlaps") : 0);
+            msg("  " + overlaps + " overlaps verified on their prefix K-mer\n");
+            start("\n  Merge Overlap");
+            MergeOverlap mo = new MergeOverlap();
+            job = mo.run(basePath + preprocess, basePath + preprocess + ".prefix", basePath + overlap);
+            end(job);
+            msg("\n");
+            return;
+        }
         start("\n  Verify Overlap");
         VerifyOverlap vo = new VerifyOverlap();
         job = vo.run(basePath + preprocess + ".prefix", basePath + preprocess + ".vo");
@@ -380,9 +447,14 @@ public class BrushAssembler extends Configured implements Tool
         
         compressChains(basePath, overlap + ".re", Sgraph);
         //---  
+        // one shuffle for the neighborhoods, Define Consensus maps over them
+        start("\n  Neighbor View");
+        NeighborView nv = new NeighborView();
+        job = nv.run(basePath + Sgraph, basePath + Sgraph + ".nv");
+        end(job);
         start("\n  Define Consensus");
         DefineConsensus dc = new DefineConsensus();
-        job = dc.run(basePath + Sgraph, basePath + Sgraph + ".dc");
+        job = dc.run(basePath + Sgraph + ".nv", basePath + Sgraph + ".dc");
         end(job);
         start("\n  Count Braids");
         CountBraid cb = new CountBraid();
@@ -471,6 +543,10 @@ public class BrushAssembler extends Configured implements Tool
 
 		QuickMark qmark   = new QuickMark();
 		QuickMerge qmerge = new QuickMerge();
+		QuickLabel qlabel = new QuickLabel();
+
+		ChainRank crank   = new ChainRank();
+		ChainMerge cmerge = new ChainMerge();
 
 		PairMark pmark   = new PairMark();
 		PairMerge pmerge = new PairMerge();
@@ -503,6 +579,8 @@ public class BrushAssembler extends Configured implements Tool
 
 		long lastremaining = compressible;
         long threshold = 10;
+        boolean finish = false;
+        boolean ranked = !BrushConfig.CHAIN_RANK;
 		while (lastremaining > 0)
 		{
 			int prev = stage;
@@ -513,20 +591,102 @@ public class BrushAssembler extends Configured implements Tool
 			String output = basePath + startname + "." + Integer.toString(stage);
 
 			long remaining = 0;
-			if (lastremaining < BrushConfig.HADOOP_LOCALNODES || threshold < 10 )
+			// split by chain on every reducer, until a stage makes no progress
+			boolean labeled = (BrushConfig.QUICK_LABEL > 0) && (threshold > 0) && !finish;
+			if (!ranked)
+			{
+				// Rank every chain by pointer jumping, then merge each one whole
+				ranked = true;
+
+				String rankin = input;
+				long lastunranked = -1;
+
+				for (int round = 0; ; round++)
+				{
+					String rankout = input + ".r" + round;
+
+					start("  Rank " + stage + "." + round);
+					job = crank.run(rankin, rankout, round);
+					end(job);
+
+					long unranked = counter(job, "unranked");
+					msg("  " + unranked + " unranked\n");
+
+					if (!rankin.equals(input)) { cleanup(rankin); }
+					rankin = rankout;
+
+					// what stays unranked is closed into cycles, no longer than all of
+					// them together, go on until the pointers went around each one
+					if ((unranked == 0 || unranked == lastunranked) && (1L << round) >= unranked)
+					{
+						String updated = input + ".u";
+
+						start("  Update " + stage);
+						job = crank.run(rankin, updated, round + 1, true);
+						end(job);
+
+						msg("  " + counter(job, "remoteupdate") + " updates\n");
+
+						cleanup(rankin);
+						rankin = updated;
+						break;
+					}
+					lastunranked = unranked;
+				}
+
+				start("  ChainMerge " + stage);
+				job = cmerge.run(rankin, output);
+				end(job);
+
+				cleanup(rankin);
+
+				msg("  " + counter(job, "chains") + " chains\n");
+
+				remaining = counter(job, "needcompress");
+			}
+			else if (labeled || lastremaining < BrushConfig.HADOOP_LOCALNODES || threshold < 10 )
 			{
 				// Send all the compressible nodes to the same machine for serial processing
 				start("  QMark " + stage);
-				job = qmark.run(input, input0);
+				job = qmark.run(input, input0, labeled);
 				end(job);
 
 				msg("  " + counter(job, "compressibleneighborhood") + " marked\n");
 
+				// or, labeled, spread them over all reducers one chain group each
+				String marked = input0;
+				for (int round = 1; labeled && round < BrushConfig.QUICK_LABEL; round++)
+				{
+					String relabel = input0 + "." + round;
+
+					start("  QLabel " + stage + "." + round);
+					job = qlabel.run(marked, relabel);
+					end(job);
+
+					long relabeled = counter(job, "relabeled");
+					msg("  " + relabeled + " relabeled\n");
+
+					if (!marked.equals(input0)) { cleanup(marked); }
+					marked = relabel;
+
+					if (relabeled == 0) { break; }
+				}
+
 				start("  QMerge " + stage);
-				job = qmerge.run(input0, output);
+				job = qmerge.run(marked, output);
 				end(job);
 
+				if (!marked.equals(input0)) { cleanup(marked); }
+
 				remaining = counter(job, "needcompress");
+
+				if (labeled)
+				{
+					// the last links of the chains, their tails' neighbors are in
+					// other groups, are merged on one reducer once all else is done
+					finish = (remaining == 0);
+					remaining += counter(job, "pairsleft");
+				}
 			}
 			else
 			{
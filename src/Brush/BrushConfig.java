@@ -34,6 +34,10 @@ public class BrushConfig {
 	public static int    HADOOP_MAPPERS    = 50;
 	public static int    HADOOP_REDUCERS   = 50;
 	public static int    HADOOP_LOCALNODES = 1000;
+	// QuickMark labels the compressible neighborhood by chain component in up to QUICK_LABEL rounds, 0 sends it to one reducer
+	public static int    QUICK_LABEL       = 0;
+	// compressChains first merges every chain whole, ranked by pointer jumping in O(log n) rounds
+	public static boolean CHAIN_RANK       = false;
 	public static long   HADOOP_TIMEOUT    = 0;
 	public static String HADOOP_JAVAOPTS   = "-Xmx4000m";
 
@@ -77,6 +81,24 @@ public class BrushConfig {
     // kmer status
     public static long LOW_KMER = 1;
     public static long UP_KMER = 2000;
+    // k-mers a counting mapper sums in memory before it spills them, 0 to emit every window
+    public static int KMER_TABLE = 1000000;
+    // MatchPrefix sends (w, K-w+1)-minimizer seeds instead of every window, 0 for dense
+    public static int MINIMIZER_W = 0;
+    // messages a MatchPrefix reducer holds for one minimizer before it spills them to local disk
+    public static int MINIMIZER_GROUP = 200000;
+    // MatchPrefix spreads k-mers seen more than SKEW_KMER times over SKEW_SALTS reducers, 0 for off
+    public static int SKEW_SALTS = 0;
+    public static long SKEW_KMER = 200;
+    // MatchPrefix verifies the overlaps itself and MergeOverlap replaces VerifyOverlap and GenReverseEdge
+    public static boolean FUSED_OVERLAP = false;
+    // VerifyOverlap and TransitiveReduction send the neighbors' overlap fingerprints and extensions, not whole reads
+    public static boolean OVERLAP_PRINTS = false;
+    // preprocess sketches the k-mer spectrum and sets UP_KMER and KMERCOV from it unless they were given
+    public static boolean SPECTRUM = false;
+    public static int SKETCH_WIDTH = 1 << 22;
+    public static boolean KMERUP_SET = false;
+    public static boolean KMERCOV_SET = false;
 
     // stats
 	public static String RUN_STATS = null;
@@ -95,6 +117,12 @@ public class BrushConfig {
             if (STARTSTAGE == null && hadoopReadPath == null) { err++; System.err.println("ERROR: -reads is required"); }
             if (READLEN <= 0)                 { err++; System.err.println("ERROR: -readlen is required"); }
             if (K <= 0)                 { err++; System.err.println("ERROR: -k is required"); }
+            if (MINIMIZER_W < 0 || (K > 0 && MINIMIZER_W >= K)) { err++; System.err.println("ERROR: -minimizer must be between 0 and k-1"); }
+            if (SKEW_SALTS < 0 || SKEW_SALTS > KmerWritable.MAXSALT) { err++; System.err.println("ERROR: -skew must be between 0 and " + KmerWritable.MAXSALT); }
+            if (MINIMIZER_GROUP < 1) { err++; System.err.println("ERROR: -seedgroup must be 1 or more"); }
+            if (SKEW_SALTS > 0 && MINIMIZER_W > 0) { err++; System.err.println("ERROR: -skew and -minimizer can not be combined"); }
+            if (FUSED_OVERLAP && MINIMIZER_W > 0) { err++; System.err.println("ERROR: -fused and -minimizer can not be combined"); }
+            if (QUICK_LABEL < 0) { err++; System.err.println("ERROR: -qlabel must be 0 or more"); }
         }
         if (err > 0) { System.exit(1); }
         if (!hadoopBasePath.endsWith("/")) { hadoopBasePath += "/"; }
@@ -111,10 +139,18 @@ public class BrushConfig {
 		conf.set("mapred.child.java.opts", HADOOP_JAVAOPTS);
 		conf.set("mapred.task.timeout", Long.toString(HADOOP_TIMEOUT));
 		conf.setLong("LOCALNODES", HADOOP_LOCALNODES);
+		conf.setInt("QUICK_LABEL", QUICK_LABEL);
 
 
         conf.setLong("UP_KMER", UP_KMER);
         conf.setLong("LOW_KMER", LOW_KMER);
+        conf.setInt("KMER_TABLE", KMER_TABLE);
+        conf.setInt("MINIMIZER_W", MINIMIZER_W);
+        conf.setInt("MINIMIZER_GROUP", MINIMIZER_GROUP);
+        conf.setInt("SKEW_SALTS", SKEW_SALTS);
+        conf.setBoolean("FUSED_OVERLAP", FUSED_OVERLAP);
+        conf.setBoolean("OVERLAP_PRINTS", OVERLAP_PRINTS);
+        conf.setLong("SKEW_KMER", SKEW_KMER);
         conf.setLong("K", K);
         //conf.setFloat("ERRORRATE", ERRORRATE);
         conf.setFloat("MAJORITY", MAJORITY);
@@ -149,6 +185,8 @@ public class BrushConfig {
 		BrushAssembler.msg("HADOOP_JAVA_OPTS = "  + HADOOP_JAVAOPTS + "\n");
 		BrushAssembler.msg("HADOOP_TIMEOUT = "    + HADOOP_TIMEOUT + "\n");
 		BrushAssembler.msg("HADOOP_LOCALNODES = " + HADOOP_LOCALNODES + "\n");
+		if (QUICK_LABEL > 0) { BrushAssembler.msg("QUICK_LABEL = " + QUICK_LABEL + "\n"); }
+		if (CHAIN_RANK)      { BrushAssembler.msg("CHAIN_RANK = " + CHAIN_RANK + "\n"); }
 
 		if (STARTSTAGE != null)  { BrushAssembler.msg("STARTSTAGE = " + STARTSTAGE + "\n"); }
 
@@ -222,6 +260,8 @@ public class BrushConfig {
         // hadoop options
 		options.addOption(OptionBuilder.withArgName("numSlots").hasArg().withDescription("Number of machine slots to use (default: " + HADOOP_MAPPERS + ")").create("slots"));
 		options.addOption(OptionBuilder.withArgName("numNodes").hasArg().withDescription("Max nodes in memory (default: " + HADOOP_LOCALNODES + ")").create("nodes"));
+		options.addOption(OptionBuilder.withArgName("rounds").hasArg().withDescription("chain label rounds of quick merge, 0 for one reducer (default: " + QUICK_LABEL + ")").create("qlabel"));
+		options.addOption(new Option("listrank", "compress whole chains by list ranking"));
 		options.addOption(OptionBuilder.withArgName("childOpts").hasArg().withDescription("Child Java Options (default: " + HADOOP_JAVAOPTS + ")").create("javaopts"));
 		options.addOption(OptionBuilder.withArgName("millisecs").hasArg().withDescription("Hadoop task timeout (default: " + HADOOP_TIMEOUT + ")").create("timeout"));
 
@@ -253,6 +293,15 @@ public class BrushConfig {
         // kmer status
         options.addOption(OptionBuilder.withArgName("kmer upper bound").hasArg().withDescription("max kmer cov (default: " + UP_KMER ).create("kmerup"));
 		options.addOption(OptionBuilder.withArgName("kmer lower bound").hasArg().withDescription("min kmer cov (default: " + LOW_KMER).create("kmerlow"));
+		options.addOption(OptionBuilder.withArgName("kmers").hasArg().withDescription("in-mapper kmer table size (default: " + KMER_TABLE + ")").create("kmertable"));
+		options.addOption(OptionBuilder.withArgName("windows").hasArg().withDescription("minimizer seeding window, 0 for dense (default: " + MINIMIZER_W + ")").create("minimizer"));
+		options.addOption(OptionBuilder.withArgName("messages").hasArg().withDescription("minimizer group held in memory (default: " + MINIMIZER_GROUP + ")").create("seedgroup"));
+		options.addOption(OptionBuilder.withArgName("reducers").hasArg().withDescription("reducers per heavy prefix, 0 for off (default: " + SKEW_SALTS + ")").create("skew"));
+		options.addOption(OptionBuilder.withArgName("kmer count").hasArg().withDescription("heavy prefix kmer count (default: " + SKEW_KMER + ")").create("skewkmer"));
+		options.addOption(new Option("fused", "verify overlaps in MatchPrefix"));
+		options.addOption(new Option("prints", "send overlap fingerprints instead of reads"));
+		options.addOption(new Option("spectrum", "k-mer spectrum sets kmerup and kmercov"));
+		options.addOption(OptionBuilder.withArgName("cells").hasArg().withDescription("k-mer sketch width (default: " + SKETCH_WIDTH + ")").create("sketch"));
      
         // error correction
 		options.addOption(OptionBuilder.withArgName("tip bp").hasArg().withDescription("max tip trim length (default: " + -TIPLENGTH +"K)").create("tiplen"));
@@ -290,6 +339,7 @@ public class BrushConfig {
 	        	                 "  -k <bp>             : Minimun overlap length [required]\n" +
                                  "  -kmerup <coverage>  : Kmer coverage upper bound [200]\n" +
                                  "  -kmerlow <coveage>  : Kmer coverage lower bound [1]\n" +
+                                 "  -spectrum           : Set -kmerup and -kmercov from the k-mer spectrum\n" +
 	        	                 "\n" +
                                  "buildString : edge adjustment and build string graph\n" +
                                  "  -maj <ratio>    : Majority of Position Weight Matrix [0.6f]\n" +
@@ -317,7 +367,7 @@ public class BrushConfig {
 	    		                 "General Options:\n" +
 	    		                 "===============\n" +
 	    		                 "  -asm <asmdir>       : Hadoop Base directory for assembly [required]\n" +
-	    		                 "  -reads <readsdir>   : Directory with reads [required]\n" + 
+	    		                 "  -reads <readsdir>   : Directory with reads: sfa, sfa2, fastq or fasta [required]\n" + 
 	    		                 "  -work <workdir>     : Local directory for output files [" + localBasePath + "]\n" +
 	    		                 "  -slots <slots>      : Hadoop Slots to use [" + HADOOP_MAPPERS + "]\n" +
 	        	                 "  -expert             : Show expert options\n");
@@ -335,8 +385,18 @@ public class BrushConfig {
 	        			         "Hadoop Options:\n" +
 	        			         "===============\n" +
 	    		                 "  -nodes <max>        : Max nodes in memory [" + HADOOP_LOCALNODES + "]\n" +
+	    		                 "  -qlabel <rounds>    : Quick merge chain components on all reducers, labeled in this many rounds, 0 for one reducer [" + QUICK_LABEL + "]\n" +
+	    		                 "  -listrank           : Compress whole chains at once, ranked by pointer jumping\n" +
 	    		                 "  -javaopts <opts>    : Hadoop Java Opts [" + HADOOP_JAVAOPTS + "]\n" +
 	    		                 "  -timeout <usec>     : Hadoop task timeout [" + HADOOP_TIMEOUT + "]\n" +
+	    		                 "  -kmertable <kmers>  : K-mers summed per mapper before a spill, 0 for none [" + KMER_TABLE + "]\n" +
+	    		                 "  -minimizer <w>      : Match prefixes on minimizers of w windows, 0 for every window [" + MINIMIZER_W + "]\n" +
+	    		                 "  -seedgroup <msgs>   : Minimizer group held in memory before it spills to disk [" + MINIMIZER_GROUP + "]\n" +
+	    		                 "  -skew <reducers>    : Spread each heavy prefix over this many reducers, 0 for off [" + SKEW_SALTS + "]\n" +
+	    		                 "  -skewkmer <count>   : Kmer count that makes a prefix heavy [" + SKEW_KMER + "]\n" +
+	    		                 "  -sketch <cells>     : Width of the k-mer spectrum sketch [" + SKETCH_WIDTH + "]\n" +
+	    		                 "  -fused              : Verify overlaps and add reverse edges while matching prefixes\n" +
+	    		                 "  -prints             : Send overlap fingerprints, not neighbor reads, to verify and reduce edges\n" +
 	    		                 "  -validate           : Just validate options\n" +
 	    		                 "  -go                 : Execute even when validating\n" +
 	        			         "\n" +
@@ -362,6 +422,8 @@ public class BrushConfig {
             if (line.hasOption("work"))  { localBasePath  = line.getOptionValue("work"); }
             if (line.hasOption("slots"))    { HADOOP_MAPPERS  = Integer.parseInt(line.getOptionValue("slots")); HADOOP_REDUCERS = HADOOP_MAPPERS; }
 	        if (line.hasOption("nodes"))    { HADOOP_LOCALNODES      = Integer.parseInt(line.getOptionValue("nodes")); }
+	        if (line.hasOption("qlabel"))   { QUICK_LABEL            = Integer.parseInt(line.getOptionValue("qlabel")); }
+	        if (line.hasOption("listrank")) { CHAIN_RANK             = true; }
 	        if (line.hasOption("javaopts")) { HADOOP_JAVAOPTS = line.getOptionValue("javaopts"); }
 	        if (line.hasOption("timeout"))  { HADOOP_TIMEOUT  = Long.parseLong(line.getOptionValue("timeout")); }
 
@@ -378,12 +440,21 @@ public class BrushConfig {
             
             if (line.hasOption("readlen"))     { READLEN     = Long.parseLong(line.getOptionValue("readlen")); }
             if (line.hasOption("expcov"))     { EXPCOV     = Float.parseFloat(line.getOptionValue("expcov")); }
-            if (line.hasOption("kmercov"))     { KMERCOV     = Float.parseFloat(line.getOptionValue("kmercov")); }
+            if (line.hasOption("kmercov"))     { KMERCOV     = Float.parseFloat(line.getOptionValue("kmercov")); KMERCOV_SET = true; }
             if (line.hasOption("k"))     { K     = Long.parseLong(line.getOptionValue("k")); }
             if (line.hasOption("inslen"))     { INSLEN     = Long.parseLong(line.getOptionValue("inslen")); }
             if (line.hasOption("inslen_sd"))     { INSLEN_SD     = Long.parseLong(line.getOptionValue("inslen_sd")); }
-            if (line.hasOption("kmerup"))       { UP_KMER      = Long.parseLong(line.getOptionValue("kmerup")); }
+            if (line.hasOption("kmerup"))       { UP_KMER      = Long.parseLong(line.getOptionValue("kmerup")); KMERUP_SET = true; }
 	        if (line.hasOption("kmerlow"))    { LOW_KMER   = Long.parseLong(line.getOptionValue("kmerlow")); }
+	        if (line.hasOption("kmertable"))  { KMER_TABLE = Integer.parseInt(line.getOptionValue("kmertable")); }
+	        if (line.hasOption("minimizer"))  { MINIMIZER_W = Integer.parseInt(line.getOptionValue("minimizer")); }
+	        if (line.hasOption("seedgroup"))  { MINIMIZER_GROUP = Integer.parseInt(line.getOptionValue("seedgroup")); }
+	        if (line.hasOption("skew"))       { SKEW_SALTS = Integer.parseInt(line.getOptionValue("skew")); }
+	        if (line.hasOption("skewkmer"))   { SKEW_KMER  = Long.parseLong(line.getOptionValue("skewkmer")); }
+	        if (line.hasOption("spectrum"))   { SPECTRUM = true; }
+	        if (line.hasOption("fused"))      { FUSED_OVERLAP = true; }
+	        if (line.hasOption("prints"))     { OVERLAP_PRINTS = true; }
+	        if (line.hasOption("sketch"))     { SKETCH_WIDTH = Integer.parseInt(line.getOptionValue("sketch")); }
             if (line.hasOption("tiplen"))       { TIPLENGTH      = Long.parseLong(line.getOptionValue("tiplen")); }
 	        if (line.hasOption("bubblelen"))    { MAXBUBBLELEN   = Long.parseLong(line.getOptionValue("bubblelen")); }
 	        if (line.hasOption("bubbleerate"))  { BUBBLEEDITRATE = Float.parseFloat(line.getOptionValue("bubbleerate")); }
@@ -26,8 +26,7 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -38,36 +37,47 @@ public class BuildHighKmerList extends Configured implements Tool
 private static final Logger sLogger = Logger.getLogger(BuildHighKmerList.class);
 
 public static class BuildHighKmerListMapper extends MapReduceBase
-implements Mapper<LongWritable, Text, Text, IntWritable>
+implements Mapper<Text, NodeWritable, KmerWritable, IntWritable>
 {
 	public static int K = 0;
 
+	// sums the windows of the whole split, null when KMER_TABLE is 0
+	private KmerCountTable table = null;
+	private OutputCollector<KmerWritable, IntWritable> out = null;
+	private Reporter rep = null;
+	private KmerScanner scanner = null;
+
 	public void configure(JobConf job)
 	{
 		K = Integer.parseInt(job.get("K"));
+		scanner = new KmerScanner(K);
+		int entries = job.getInt("KMER_TABLE", 0);
+		if (entries > 0) { table = new KmerCountTable(K, entries); }
 	}
 
-	public void map(LongWritable lineid, Text nodetxt,
-			        OutputCollector<Text, IntWritable> output, Reporter reporter)
+	public void map(Text nodeid, NodeWritable nodemsg,
+			        OutputCollector<KmerWritable, IntWritable> output, Reporter reporter)
 	                throws IOException
 	{
-        Node node = new Node();
-		node.fromNodeMsg(nodetxt.toString());
+        out = output;
+        rep = reporter;
+        Node node = nodemsg.getNode();
         if (!node.hasCustom("n")){
             reporter.incrCounter("Brush", "nodes", 1);
             //slide the K-mer windows for each read in both strands
             int end = node.len() - K;
-            for (int i = 0; i < end; i++)
+            PackedSeq seq = node.getSeq();
+            scanner.reset(seq);
+            while (scanner.next() && scanner.offset() < end)
             {
-                String window_tmp = node.str().substring(i,   i+K);
                 //String window_r_tmp = Node.rc(node.str().substring(node.len() - K - i, node.len() - i));
-                String window_tmp_r = Node.rc(window_tmp);
-                if (window_tmp.compareTo(window_tmp_r) < 0) {
-                    String window = Node.str2dna(window_tmp);
-                    output.collect(new Text(window), new IntWritable((int)node.cov()));
-                } else {
-                    String window_r = Node.str2dna(window_tmp_r);
-                    output.collect(new Text(window_r), new IntWritable((int)node.cov()));
+                if (table == null) {
+                    KmerWritable kmer = new KmerWritable();
+                    scanner.get(kmer);
+                    output.collect(kmer, new IntWritable((int)node.cov()));
+                } else if (table.add(scanner.word0(), scanner.word1(), (int)node.cov())) {
+                    table.flush(output);
+                    reporter.incrCounter("Brush", "kmer_table_flush", 1);
                 }
                 //String window_r = Node.str2dna(window_r_tmp);
                 /*String window = Node.str2dna(window_tmp);
@@ -78,28 +88,41 @@ implements Mapper<LongWritable, Text, Text, IntWritable>
             }
         }
 	}
+
+	public void close() throws IOException
+	{
+		if (table != null && out != null && table.size() > 0)
+		{
+			table.flush(out);
+			rep.incrCounter("Brush", "kmer_table_flush", 1);
+		}
+	}
 }
 
 public static class BuildHighKmerListReducer extends MapReduceBase
-implements Reducer<Text, IntWritable, Text, Text>
+implements Reducer<KmerWritable, IntWritable, KmerWritable, Text>
 {
 	private static int K = 0;
     public static long HighKmer = 0;
+    // heavy list for MatchPrefix salting, 0 when it is off
+    public static long SkewKmer = 0;
+    private static final Text HIGH = new Text(HighKmerFilter.HIGH);
+    private static final Text HEAVY = new Text(HighKmerFilter.HEAVY);
     //private static int OVALSIZE = 0;
     private static int All_Kmer = 0;
 
 	public void configure(JobConf job) {
 		K = 24;//Integer.parseInt(job.get("K"));
         HighKmer = Long.parseLong(job.get("UP_KMER"));
+        SkewKmer = (job.getInt("SKEW_SALTS", 0) > 0) ? job.getLong("SKEW_KMER", 0) : 0;
 	}
 
-	public void reduce(Text prefix, Iterator<IntWritable> iter,
-					   OutputCollector<Text, Text> output, Reporter reporter)
+	public void reduce(KmerWritable prefix, Iterator<IntWritable> iter,
+					   OutputCollector<KmerWritable, Text> output, Reporter reporter)
 					   throws IOException
 	{
         int sum =0;
         //int read_count = 0;
-        List<String> ReadID_list = new ArrayList<String>();
         //List<String> ReadID_list;
         //Map<String, List<String>> idx_ReadID_list = new HashMap<String, List<String>>();
         while(iter.hasNext())
@@ -108,12 +131,17 @@ implements Reducer<Text, IntWritable, Text, Text>
             sum = sum + frequency;
             //\\
             if (sum > HighKmer) {
-            	output.collect(prefix, new Text(""));
+            	// the keys come in sorted, which HighKmerFilter relies on
+            	output.collect(prefix, HIGH);
             	//output.collect(new Text(Node.rc(prefix.toString())), new Text(""));
             	reporter.incrCounter("Brush", "hkmer", 1);
             	return;
             }
         }
+        if (SkewKmer > 0 && sum > SkewKmer) {
+            output.collect(prefix, HEAVY);
+            reporter.incrCounter("Brush", "heavy_kmer", 1);
+        }
 	}
 }
 
@@ -133,17 +161,18 @@ public RunningJob run(String inputPath, String outputPath) throws Exception
 	FileInputFormat.addInputPath(conf, new Path(inputPath));
 	FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-	conf.setInputFormat(TextInputFormat.class);
-	conf.setOutputFormat(TextOutputFormat.class);
+	conf.setInputFormat(SequenceFileInputFormat.class);
+	conf.setOutputFormat(HighKmerFilter.ListOutputFormat.class);
 
-	conf.setMapOutputKeyClass(Text.class);
+	conf.setMapOutputKeyClass(KmerWritable.class);
 	conf.setMapOutputValueClass(IntWritable.class);
     //conf.setMapOutputValueClass(Text.class);
 
-	conf.setOutputKeyClass(Text.class);
+	conf.setOutputKeyClass(KmerWritable.class);
 	conf.setOutputValueClass(Text.class);
 
 	conf.setMapperClass(BuildHighKmerList.BuildHighKmerListMapper.class);
+	conf.setCombinerClass(KmerCountTable.Combiner.class);
 	conf.setReducerClass(BuildHighKmerList.BuildHighKmerListReducer.class);
 
 	//delete the output directory if it exists already
@@ -0,0 +1,336 @@
+/*
+    ChainMerge.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+// Gathers every chain ChainRank ranked under the end it keeps and merges
+// the whole chain into that end, as QuickMerge does when all of a chain is
+// in memory: the sequence is concatenated from the other end, the kept end
+// keeps its orientation and takes over the outer links of the other end.
+// Its outer neighbors already link to the kept end (ChainRank). A cycle
+// is broken at its smallest node, which keeps a link to itself.
+public class ChainMerge extends Configured implements Tool
+{
+	private static final Logger sLogger = Logger.getLogger(ChainMerge.class);
+
+	// ChainMergeMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	private static class ChainMergeMapper extends MapReduceBase
+	implements Mapper<Text, NodeWritable, Text, NodeWritable>
+	{
+		public void map(Text nodeid, NodeWritable nodemsg,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
+				throws IOException
+		{
+			Node node = nodemsg.getNode();
+			ChainRank.Pointer [] p = ChainRank.getPointers(node);
+
+			if (p != null)
+			{
+				String key = ChainRank.isRanked(p) ? ChainRank.keptEnd(p) : ChainRank.cycleMin(p);
+				output.collect(new Text(key), new NodeWritable(node));
+				reporter.incrCounter("Brush", "chainnodes", 1);
+			}
+			else
+			{
+				output.collect(nodeid, new NodeWritable(node));
+			}
+
+			reporter.incrCounter("Brush", "nodes", 1);
+		}
+	}
+
+
+	// ChainMergeReducer
+	///////////////////////////////////////////////////////////////////////////
+
+	private static class ChainMergeReducer extends MapReduceBase
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
+	{
+		// a compressible side left, as of a link that was not made back, is
+		// left for the next stage
+		private static void countCompress(Node node, Reporter reporter)
+		{
+			for (String adj : Node.dirs)
+			{
+				if (node.gettail(adj) != null && node.canCompress(adj))
+				{
+					reporter.incrCounter("Brush", "needcompress", 1);
+				}
+			}
+		}
+
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
+				throws IOException
+		{
+			Map<String, Node> nodes = new HashMap<String, Node>();
+
+			while(iter.hasNext())
+			{
+				Node node = iter.next().getNode();
+				nodes.put(node.getNodeId(), node);
+			}
+
+			Node ftnode = nodes.get(nodeid.toString());
+			ChainRank.Pointer [] fp = (ftnode == null) ? null : ChainRank.getPointers(ftnode);
+
+			if (fp == null)
+			{
+				if (nodes.size() != 1)
+				{
+					throw new IOException("ERROR: " + nodes.size() + " nodes for " + nodeid.toString() + " without its chain end");
+				}
+
+				countCompress(ftnode, reporter);
+				output.collect(nodeid, new NodeWritable(ftnode));
+				return;
+			}
+
+			// {r1,r2} >> rtail -> c1 -> c2 -> c3 -> ftail >> {f1,f2}, rtail.dir and
+			// ftail.dir go into the chain
+
+			boolean cycle = !ChainRank.isRanked(fp);
+			String fdir;
+			String rdir;
+			Node rtnode;
+
+			if (cycle)
+			{
+				// break the cycle between its smallest node and the f side of it
+				TailInfo rtail = ftnode.gettail("f");
+
+				fdir = "r";
+				rdir = rtail.dir;
+				rtnode = nodes.get(rtail.id);
+			}
+			else
+			{
+				fdir = ChainRank.chainSide(fp);
+				rtnode = nodes.get(fp[fdir.equals("f") ? 0 : 1].id);
+				rdir = (rtnode == null) ? null : ChainRank.chainSide(ChainRank.getPointers(rtnode));
+
+				if (rtnode == null || nodes.size() != fp[fdir.equals("f") ? 0 : 1].dist + 1)
+				{
+					throw new IOException("ERROR: chain " + nodeid.toString() + " of " + (fp[fdir.equals("f") ? 0 : 1].dist + 1) + " nodes has " + nodes.size());
+				}
+			}
+
+			TailInfo cur = rtnode.gettail(rdir);
+			int chainlen = 2;
+
+			String mstr = rtnode.str();
+			if (rdir.equals("r")) { mstr = Node.rc(mstr); }
+
+			int Oval_Size = cur.oval_size;
+			int covlen = mstr.length();
+			double covsum = rtnode.cov() * mstr.length();
+
+			List<String> pairends = new ArrayList<String>();
+
+			String lastid = rtnode.getNodeId();
+
+			while (!cur.id.equals(ftnode.getNodeId()))
+			{
+				Node curnode = nodes.get(cur.id);
+
+				String bstr = curnode.str();
+				if (cur.dir.equals("r")) { bstr = Node.rc(bstr); }
+
+				mstr = Node.str_concat(mstr, bstr, Oval_Size);
+
+				covsum += curnode.cov() * bstr.length();
+				covlen += bstr.length() - Oval_Size;
+
+				pairends.add(curnode.getNodeId());
+				if (curnode.getPairEnds() != null)
+				{
+					pairends.addAll(curnode.getPairEnds());
+				}
+
+				lastid = cur.id;
+				cur = curnode.gettail(cur.dir);
+				Oval_Size = cur.oval_size;
+				chainlen++;
+			}
+
+			if (chainlen != nodes.size())
+			{
+				throw new IOException("ERROR: walked " + chainlen + " of the " + nodes.size() + " nodes of chain " + nodeid.toString());
+			}
+
+			String bstr = ftnode.str();
+			if (cur.dir.equals("r")) { bstr = Node.rc(bstr); }
+
+			mstr = Node.str_concat(mstr, bstr, Oval_Size);
+
+			covsum += ftnode.cov() * bstr.length();
+			covlen += bstr.length() - Oval_Size;
+
+			// we want the same orientation for ftail as before
+			if (cur.dir.equals("r")) { mstr = Node.rc(mstr); }
+			ftnode.setstr(mstr);
+			ftnode.setCoverage((float) covsum / (float) covlen);
+			ftnode.addAllPairEnd(pairends);
+
+			// drop the chain link of ftail, then take over the outer links of rtail
+			for (String adj : Node.dirs)
+			{
+				EdgeList el = ftnode.getEdgeList(fdir + adj);
+				if (el != null && el.removeAll(lastid, 0, true) > 0 && el.size() == 0)
+				{
+					ftnode.clearEdges(fdir + adj);
+				}
+			}
+
+			for (String adj : Node.dirs)
+			{
+				String origdir = Node.flip_dir(rdir) + adj;
+				String newdir  = fdir + adj;
+
+				List<String> vl = rtnode.getEdges(origdir);
+				if (vl == null) { continue; }
+
+				for (String v : vl)
+				{
+					if (v.substring(0, v.indexOf("!")).equals(rtnode.getNodeId()))
+					{
+						// Cycle on rtail
+						String cycled = fdir;
+
+						if (rdir.equals(adj)) { cycled += Node.flip_dir(fdir); }
+						else                  { cycled += fdir; }
+
+						ftnode.addEdge(cycled, ftnode.getNodeId() + v.substring(v.indexOf("!")));
+					}
+					else
+					{
+						ftnode.addEdge(newdir, v);
+
+						// the other neighbors heard of ftail in ChainRank, but a cycle
+						// closes on ftail itself
+						if (cycle && v.substring(0, v.indexOf("!")).equals(ftnode.getNodeId()))
+						{
+							ftnode.replacelink(rtnode.getNodeId() + v.substring(v.indexOf("!")), Node.flip_link(origdir),
+									ftnode.getNodeId() + v.substring(v.indexOf("!")), Node.flip_link(newdir));
+						}
+					}
+				}
+			}
+
+			ftnode.setCanCompress(fdir, rtnode.canCompress(Node.flip_dir(rdir)));
+
+			// Break cycles
+			for (String dir : Node.dirs)
+			{
+				TailInfo next = ftnode.gettail(dir);
+
+				if ((next != null) && next.id.equals(ftnode.getNodeId()))
+				{
+					ftnode.setCanCompress("f", false);
+					ftnode.setCanCompress("r", false);
+				}
+			}
+
+			ftnode.clearCustom(Node.CHAINRANK);
+			countCompress(ftnode, reporter);
+			output.collect(nodeid, new NodeWritable(ftnode));
+
+			reporter.incrCounter("Brush", "chains", 1);
+			reporter.incrCounter("Brush", "totalchainlen", nodes.size());
+			reporter.incrCounter("Brush", "saved", nodes.size() - 1);
+		}
+	}
+
+
+	// Run Tool
+	///////////////////////////////////////////////////////////////////////////
+
+	public RunningJob run(String inputPath, String outputPath) throws Exception
+	{
+		sLogger.info("Tool name: ChainMerge");
+		sLogger.info(" - input: "  + inputPath);
+		sLogger.info(" - output: " + outputPath);
+
+		JobConf conf = new JobConf(ChainMerge.class);
+		conf.setJobName("ChainMerge " + inputPath + " " + BrushConfig.K);
+
+		BrushConfig.initializeConfiguration(conf);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
+
+		conf.setMapOutputKeyClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
+
+		conf.setOutputKeyClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
+
+		conf.setMapperClass(ChainMergeMapper.class);
+		conf.setReducerClass(ChainMergeReducer.class);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(outputPath), true);
+
+		return JobClient.runJob(conf);
+	}
+
+
+	// Parse Arguments and run
+	///////////////////////////////////////////////////////////////////////////
+
+	public int run(String[] args) throws Exception
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: ChainMerge <graph> <outdir>");
+			return -1;
+		}
+
+		run(args[0], args[1]);
+
+		return 0;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int res = ToolRunner.run(new Configuration(), new ChainMerge(), args);
+		System.exit(res);
+	}
+}
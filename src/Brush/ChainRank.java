@@ -0,0 +1,416 @@
+/*
+    ChainRank.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+// List ranking of the chains by pointer jumping. A chain link joins two
+// nodes that can compress toward each other (Compressible). Every chain node
+// keeps in Node.CHAINRANK a pointer per side, the node some distance away
+// on that side, and each round (RANKMSG) a node hands the pointer of one
+// side to the node its other side points at, which so doubles its reach.
+// A pointer that reaches the end of the chain stops there, so after about
+// log2 of the chain length rounds every node knows both ends. Round 0 only
+// keeps the links both nodes agree on. A chain closed into a cycle has no
+// end, its nodes keep jumping until a pointer goes all around, and the
+// smallest id it passed (cycleMin) is where ChainMerge breaks the cycle.
+// Once all is ranked, an update round has the end that ChainMerge folds
+// into the other one tell its outer neighbors (UPDATEMSG, as PairMark) to
+// link to the kept end. All ends send at once, as the ends of two chains
+// may link to each other and each one updates the link it still holds.
+public class ChainRank extends Configured implements Tool
+{
+	private static final Logger sLogger = Logger.getLogger(ChainRank.class);
+
+	// Pointer
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class Pointer
+	{
+		public String id;      // the node reached
+		public String cont;    // its side that goes on away from us
+		public int dist;       // links away, 0 when this side ends the chain
+		public boolean done;   // id is the end of the chain
+		public String min;     // smallest id passed on the way, id included
+
+		public Pointer(String id, String cont, int dist, boolean done, String min)
+		{
+			this.id = id;
+			this.cont = cont;
+			this.dist = dist;
+			this.done = done;
+			this.min = min;
+		}
+
+		// id|cont|dist|done|min
+		public Pointer(String str)
+		{
+			String [] vals = str.split("\\|");
+
+			id = vals[0];
+			cont = vals[1];
+			dist = Integer.parseInt(vals[2]);
+			done = vals[3].equals("1");
+			min = vals[4];
+		}
+
+		public String toString()
+		{
+			return id + "|" + cont + "|" + dist + "|" + (done ? "1" : "0") + "|" + min;
+		}
+	}
+
+	// the pointers of the f and r side, null for a node out of any chain
+	public static Pointer [] getPointers(Node node)
+	{
+		List<String> l = node.getCustom(Node.CHAINRANK);
+		if (l == null) { return null; }
+
+		return new Pointer [] { new Pointer(l.get(0)), new Pointer(l.get(1)) };
+	}
+
+	public static void setPointers(Node node, Pointer [] p)
+	{
+		node.clearCustom(Node.CHAINRANK);
+		node.addCustom(Node.CHAINRANK, p[0].toString());
+		node.addCustom(Node.CHAINRANK, p[1].toString());
+	}
+
+	public static boolean isRanked(Pointer [] p)
+	{
+		return p[0].done && p[1].done;
+	}
+
+	// the side of an end of a chain that goes into the chain, or null
+	public static String chainSide(Pointer [] p)
+	{
+		if (p[0].dist > 0 && p[1].dist == 0) { return "f"; }
+		if (p[1].dist > 0 && p[0].dist == 0) { return "r"; }
+		return null;
+	}
+
+	// the end of a ranked chain ChainMerge keeps, the other is folded into it
+	public static String keptEnd(Pointer [] p)
+	{
+		return (p[0].id.compareTo(p[1].id) < 0) ? p[0].id : p[1].id;
+	}
+
+	// the node a cycle is broken at, once the pointers went all around it
+	public static String cycleMin(Pointer [] p)
+	{
+		return p[0].min;
+	}
+
+	private static int side(String dir)
+	{
+		return dir.equals("f") ? 0 : 1;
+	}
+
+	// before round 0: a link to the tail of each compressible side
+	private static Pointer [] link(Node node)
+	{
+		Pointer [] p = new Pointer[2];
+		boolean linked = false;
+
+		for (String adj : Node.dirs)
+		{
+			TailInfo next = node.gettail(adj);
+
+			if (next != null && node.canCompress(adj) && !next.id.equals(node.getNodeId()))
+			{
+				p[side(adj)] = new Pointer(next.id, next.dir, 1, false, next.id);
+				linked = true;
+			}
+			else
+			{
+				p[side(adj)] = new Pointer(node.getNodeId(), adj, 0, true, node.getNodeId());
+			}
+		}
+
+		return linked ? p : null;
+	}
+
+
+	// ChainRankMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class ChainRankMapper extends MapReduceBase
+	implements Mapper<Text, NodeWritable, Text, NodeWritable>
+	{
+		private static int round = 0;
+		private static boolean update = false;
+
+		public void configure(JobConf job) {
+			round = job.getInt("round", 0);
+			update = job.getBoolean("update", false);
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
+				throws IOException
+		{
+			Node node = nodemsg.getNode();
+			Pointer [] p = (round == 0) ? link(node) : getPointers(node);
+
+			if (p != null && !update)
+			{
+				// hand the pointer of my other side to the node each side points at
+				for (int i = 0; i < 2; i++)
+				{
+					if (p[i].dist == 0) { continue; }
+
+					output.collect(new Text(p[i].id),
+							new NodeWritable(Node.RANKMSG + "\t" + node.getNodeId() + "\t" + Node.flip_dir(p[i].cont) + "\t" + p[i].dist + "\t" + p[1-i]));
+					reporter.incrCounter("Brush", "rankmsgs", 1);
+				}
+
+				setPointers(node, p);
+			}
+			else if (p != null && isRanked(p))
+			{
+				// the end folded into the kept end moves its outer neighbors over
+				String chain = chainSide(p);
+
+				if (chain != null && !keptEnd(p).equals(node.getNodeId()))
+				{
+					Pointer kept = p[side(chain)];
+					String outer = Node.flip_dir(chain);
+					String kchain = Node.flip_dir(kept.cont);
+
+					for (String adj : Node.dirs)
+					{
+						String origadj = Node.flip_link(outer + adj);
+						String newadj  = Node.flip_link(kchain + adj);
+
+						EdgeList el = node.getEdgeList(outer + adj);
+						if (el == null) { continue; }
+
+						for (int i = 0; i < el.end(); i++)
+						{
+							String v = el.id(i);
+							if (v == null || v.equals(node.getNodeId())) { continue; }
+
+							output.collect(new Text(v),
+									new NodeWritable(Node.UPDATEMSG + "\t" + node.getNodeId() + "\t" + origadj + "\t" + kept.id + "\t" + newadj + "\t" + el.oval(i)));
+							reporter.incrCounter("Brush", "remoteupdate", 1);
+						}
+					}
+				}
+			}
+
+			output.collect(nodeid, new NodeWritable(node));
+			reporter.incrCounter("Brush", "nodes", 1);
+		}
+	}
+
+
+	// ChainRankReducer
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class ChainRankReducer extends MapReduceBase
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
+	{
+		private static int round = 0;
+
+		public void configure(JobConf job) {
+			round = job.getInt("round", 0);
+		}
+
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
+				throws IOException
+		{
+			Node node = new Node(nodeid.toString());
+			List<String []> jumps = new ArrayList<String []>();
+			List<String []> updates = new ArrayList<String []>();
+
+			int sawnode = 0;
+
+			while(iter.hasNext())
+			{
+				NodeWritable msg = iter.next();
+
+				String [] vals = msg.getMessage().split("\t");
+
+				if (vals[0].equals(Node.NODEMSG))
+				{
+					node.parseNodeMsg(msg.getNode());
+					sawnode++;
+				}
+				else if (vals[0].equals(Node.RANKMSG))
+				{
+					jumps.add(vals);
+				}
+				else if (vals[0].equals(Node.UPDATEMSG))
+				{
+					updates.add(vals);
+				}
+				else
+				{
+					throw new IOException("Unknown msgtype: " + msg);
+				}
+			}
+
+			if (sawnode != 1)
+			{
+				throw new IOException("ERROR: Didn't see exactly 1 nodemsg (" + sawnode + ") for " + nodeid.toString());
+			}
+
+			for (String [] up : updates)
+			{
+				node.replacelink(up[1] + "!" + up[5], up[2], up[3] + "!" + up[5], up[4]);
+			}
+
+			Pointer [] p = getPointers(node);
+
+			if (p != null)
+			{
+				boolean [] jumped = new boolean[2];
+
+				// RANKMSG from dist id, for my side x: its pointer past me
+				for (String [] vals : jumps)
+				{
+					int x = side(vals[2]);
+					int dist = Integer.parseInt(vals[3]);
+
+					if (jumped[x] || p[x].done || !p[x].id.equals(vals[1]) || p[x].dist != dist) { continue; }
+
+					jumped[x] = true;
+
+					if (round == 0) { continue; }
+
+					Pointer past = new Pointer(vals[4]);
+
+					if (past.dist == 0) { p[x].done = true; }
+					else
+					{
+						String min = (past.min.compareTo(p[x].min) < 0) ? past.min : p[x].min;
+						p[x] = new Pointer(past.id, past.cont, dist + past.dist, past.done, min);
+					}
+				}
+
+				// a link the other node does not make back is no chain link
+				if (round == 0)
+				{
+					for (int x = 0; x < 2; x++)
+					{
+						if (p[x].dist > 0 && !jumped[x]) { p[x] = new Pointer(node.getNodeId(), Node.dirs[x], 0, true, node.getNodeId()); }
+					}
+				}
+
+				if (p[0].dist == 0 && p[1].dist == 0)
+				{
+					node.clearCustom(Node.CHAINRANK);
+				}
+				else
+				{
+					setPointers(node, p);
+
+					if (!isRanked(p))
+					{
+						reporter.incrCounter("Brush", "unranked", 1);
+					}
+				}
+			}
+
+			output.collect(nodeid, new NodeWritable(node));
+		}
+	}
+
+
+	// Run Tool
+	///////////////////////////////////////////////////////////////////////////
+
+	public RunningJob run(String inputPath, String outputPath, int round) throws Exception
+	{
+		return run(inputPath, outputPath, round, false);
+	}
+
+	public RunningJob run(String inputPath, String outputPath, int round, boolean update) throws Exception
+	{
+		sLogger.info("Tool name: ChainRank");
+		sLogger.info(" - input: "  + inputPath);
+		sLogger.info(" - output: " + outputPath);
+		sLogger.info(" - round: " + round);
+		sLogger.info(" - update: " + update);
+
+		JobConf conf = new JobConf(ChainRank.class);
+		conf.setJobName("ChainRank " + inputPath + " " + round);
+
+		BrushConfig.initializeConfiguration(conf);
+		conf.setInt("round", round);
+		conf.setBoolean("update", update);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
+
+		conf.setMapOutputKeyClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
+
+		conf.setOutputKeyClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
+
+		conf.setMapperClass(ChainRankMapper.class);
+		conf.setReducerClass(ChainRankReducer.class);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(outputPath), true);
+
+		return JobClient.runJob(conf);
+	}
+
+
+	// Parse Arguments and run
+	///////////////////////////////////////////////////////////////////////////
+
+	public int run(String[] args) throws Exception
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: ChainRank <graph> <outdir> <round>");
+			return -1;
+		}
+
+		run(args[0], args[1], Integer.parseInt(args[2]));
+
+		return 0;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int res = ToolRunner.run(new Configuration(), new ChainRank(), args);
+		System.exit(res);
+	}
+}
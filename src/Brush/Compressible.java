@@ -32,8 +32,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -44,14 +44,13 @@ public class Compressible extends Configured implements Tool
 	private static final Logger sLogger = Logger.getLogger(Compressible.class);
 
 	public static class CompressibleMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
-		public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
                 throws IOException
         {
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			for (String adj : Node.dirs)
 			{
@@ -66,21 +65,21 @@ public class Compressible extends Configured implements Tool
 					reporter.incrCounter("Brush", "remotemark", 1);
 
 					output.collect(new Text(next.id),
-					               new Text(Node.HASUNIQUEP + "\t" + node.getNodeId() + "\t" + adj));
+					               new NodeWritable(Node.HASUNIQUEP + "\t" + node.getNodeId() + "\t" + adj));
 				}
 			}
 
-			output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+			output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 
 			reporter.incrCounter("Brush", "nodes", 1);
         }
 	}
 
 	public static class CompressibleReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
-		public void reduce(Text key, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text key, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
 			Node node = new Node(key.toString());
@@ -91,15 +90,15 @@ public class Compressible extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(key.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.HASUNIQUEP))
@@ -136,7 +135,7 @@ public class Compressible extends Configured implements Tool
 				}
 			}
            // System.err.println(node.getNodeId() + " " + node.toNodeMsg() );
-			output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+			output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 		}
 	}
 
@@ -156,14 +155,14 @@ public class Compressible extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
 
 		conf.setMapperClass(CompressibleMapper.class);
 		conf.setReducerClass(CompressibleReducer.class);
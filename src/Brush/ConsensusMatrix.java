@@ -0,0 +1,237 @@
+/*
+    ConsensusMatrix.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.util.Arrays;
+
+// Position weight matrix over the extensions of one side of a node. add()
+// the extensions with their coverage, then consensus() or consensus2()
+// weighs every column of the flat int[5*len] matrix (A, C, G, T, sum, in
+// PackedSeq codes) by the truncated coverage and calls it in one pass.
+// The calls are base codes, N for a column without a call. One matrix is
+// meant to be kept per task and reused for every node.
+public class ConsensusMatrix
+{
+	public static final int N = 4;
+
+	private PackedSeq [] exts = new PackedSeq[16];
+	private float [] covs = new float[16];
+	private int n = 0;
+
+	private int [] counts = new int[5 * 64];
+	private byte [] calls = new byte[64];
+	private int len = 0;
+
+	public void clear()
+	{
+		Arrays.fill(exts, 0, n, null);
+		n = 0;
+		len = 0;
+	}
+
+	public void add(PackedSeq ext, float cov)
+	{
+		if (n == exts.length)
+		{
+			exts = Arrays.copyOf(exts, 2 * n);
+			covs = Arrays.copyOf(covs, 2 * n);
+		}
+
+		exts[n] = ext;
+		covs[n] = cov;
+		n++;
+	}
+
+	public int size() { return n; }
+
+	public PackedSeq ext(int i) { return exts[i]; }
+
+	// the weights of the first columns bases of every extension
+	public void count(int columns)
+	{
+		if (counts.length < 5 * columns) { counts = new int[10 * columns]; }
+		Arrays.fill(counts, 0, 5 * columns, 0);
+
+		for (int i = 0; i < n; i++)
+		{
+			int w = (int) covs[i];
+			int l = Math.min(exts[i].length(), columns);
+
+			for (int j = 0; j < l; j += 32)
+			{
+				int m = Math.min(32, l - j);
+				long word = exts[i].word(j, m);
+
+				for (int k = 0; k < m; k++)
+				{
+					int c = 5 * (j + k);
+					counts[c + (int) (word >>> (62 - 2 * k) & 3)] += w;
+					counts[c + 4] += w;
+				}
+			}
+		}
+	}
+
+	// the base holding more than majority of column j, tried in the order
+	// A, T, C, G of the text version
+	public int majorityCall(int j, double majority)
+	{
+		int c = 5 * j;
+		float sum = (float) counts[c + 4];
+
+		if ((float) counts[c + 0] / sum > majority) { return 0; }
+		if ((float) counts[c + 3] / sum > majority) { return 3; }
+		if ((float) counts[c + 1] / sum > majority) { return 1; }
+		if ((float) counts[c + 2] / sum > majority) { return 2; }
+
+		return N;
+	}
+
+	// the base strictly heavier than the three others in column j
+	public int pluralityCall(int j)
+	{
+		int c = 5 * j;
+		int best = 0;
+
+		for (int b = 1; b < 4; b++)
+		{
+			if (counts[c + b] > counts[c + best]) { best = b; }
+		}
+
+		for (int b = 0; b < 4; b++)
+		{
+			if (b != best && counts[c + b] == counts[c + best]) { return N; }
+		}
+
+		return best;
+	}
+
+	// positions of the longest extensions, longest first and ties in the
+	// order they were added, as the stable sort of the text version
+	private int [] longest()
+	{
+		int [] top = {-1, -1, -1};
+
+		for (int i = 0; i < n; i++)
+		{
+			int l = exts[i].length();
+
+			for (int t = 0; t < 3; t++)
+			{
+				if (top[t] < 0 || l > exts[top[t]].length())
+				{
+					for (int s = 2; s > t; s--) { top[s] = top[s-1]; }
+					top[t] = i;
+					break;
+				}
+			}
+		}
+
+		return top;
+	}
+
+	private void single()
+	{
+		PackedSeq ext = exts[0];
+		len = ext.length();
+
+		if (calls.length < len) { calls = new byte[2 * len]; }
+
+		for (int j = 0; j < len; j++)
+		{
+			calls[j] = (byte) ext.get(j);
+		}
+	}
+
+	// Node.Consensus: as long as the second longest extension, or the third
+	// when the two longest together have a coverage of 2 at most, columns
+	// called by majority; false if more than threshold of them are N
+	public boolean consensus(float majority, float threshold)
+	{
+		len = 0;
+
+		if (n == 0) { return false; }
+		if (n == 1) { single(); return true; }
+
+		int [] top = longest();
+		int columns = (n == 2 || covs[top[0]] + covs[top[1]] > 2) ? exts[top[1]].length() : exts[top[2]].length();
+
+		count(columns);
+
+		if (calls.length < columns) { calls = new byte[2 * columns]; }
+
+		int N_count = 0;
+
+		for (int j = 0; j < columns; j++)
+		{
+			calls[j] = (byte) majorityCall(j, majority);
+			if (calls[j] == N) { N_count++; }
+		}
+
+		len = columns;
+
+		return !((float) N_count / (float) columns > threshold);
+	}
+
+	// Node.Consensus2: as long as the second longest extension, columns
+	// called by plurality
+	public boolean consensus2(float threshold)
+	{
+		len = 0;
+
+		if (n == 0) { return false; }
+		if (n == 1) { single(); return true; }
+
+		int columns = exts[longest()[1]].length();
+
+		count(columns);
+
+		if (calls.length < columns) { calls = new byte[2 * columns]; }
+
+		int N_count = 0;
+
+		for (int j = 0; j < columns; j++)
+		{
+			calls[j] = (byte) pluralityCall(j);
+			if (calls[j] == N) { N_count++; }
+		}
+
+		len = columns;
+
+		return !((float) N_count / (float) columns > threshold);
+	}
+
+	public int length() { return len; }
+
+	public int call(int j) { return calls[j]; }
+
+	// no base of ext differs from a called base of the consensus
+	public boolean agrees(PackedSeq ext)
+	{
+		int l = Math.min(ext.length(), len);
+
+		for (int j = 0; j < l; j++)
+		{
+			if (calls[j] != N && calls[j] != ext.get(j)) { return false; }
+		}
+
+		return true;
+	}
+
+	public String toString()
+	{
+		char [] s = new char[len];
+
+		for (int j = 0; j < len; j++)
+		{
+			s[j] = (calls[j] == N) ? 'N' : PackedSeq.base(calls[j]);
+		}
+
+		return new String(s);
+	}
+}
@@ -0,0 +1,129 @@
+/*
+    ConvertReads.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+// Converts .sfa, FASTQ or FASTA reads to .sfa2 once, map only, keeping
+// the order of the reads within each split. Later runs read the .sfa2
+// directly with -reads.
+//
+//   hadoop jar brush.jar Brush.ConvertReads <reads> <outdir>
+public class ConvertReads extends Configured implements Tool
+{
+	private static final Logger sLogger = Logger.getLogger(ConvertReads.class);
+
+
+	// ConvertReadsMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class ConvertReadsMapper extends MapReduceBase
+    implements Mapper<LongWritable, ReadWritable, Text, ReadWritable>
+	{
+		private Text name = new Text();
+
+		public void map(LongWritable lineid, ReadWritable read,
+				        OutputCollector<Text, ReadWritable> output, Reporter reporter)
+		                throws IOException
+		{
+			name.set(read.getName());
+			output.collect(name, read);
+
+			reporter.incrCounter("Brush", "reads", 1);
+			reporter.incrCounter("Brush", "reads_bp", read.length());
+		}
+	}
+
+
+	// Run Tool
+	///////////////////////////////////////////////////////////////////////////
+
+	public RunningJob run(String inputPath, String outputPath) throws Exception
+	{
+		sLogger.info("Tool name: ConvertReads");
+		sLogger.info(" - input: "  + inputPath);
+		sLogger.info(" - output: " + outputPath);
+
+		JobConf conf = new JobConf(ConvertReads.class);
+		conf.setJobName("ConvertReads " + inputPath);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
+
+		conf.setInputFormat(ReadInputFormat.formatOf(conf, inputPath));
+		conf.setOutputFormat(Sfa2OutputFormat.class);
+
+		conf.setMapOutputKeyClass(Text.class);
+		conf.setMapOutputValueClass(ReadWritable.class);
+
+		conf.setOutputKeyClass(Text.class);
+		conf.setOutputValueClass(ReadWritable.class);
+
+		conf.setMapperClass(ConvertReadsMapper.class);
+		conf.setNumReduceTasks(0);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(outputPath), true);
+
+		return JobClient.runJob(conf);
+	}
+
+
+	// Parse Arguments and run
+	///////////////////////////////////////////////////////////////////////////
+
+	public int run(String[] args) throws Exception
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: ConvertReads <reads> <outdir>");
+			return -1;
+		}
+
+		long starttime = System.currentTimeMillis();
+
+		run(args[0], args[1]);
+
+		long endtime = System.currentTimeMillis();
+
+		float diff = (float) (((float) (endtime - starttime)) / 1000.0);
+
+		System.out.println("Runtime: " + diff + " s");
+
+		return 0;
+	}
+
+
+	// Main
+	///////////////////////////////////////////////////////////////////////////
+
+	public static void main(String[] args) throws Exception
+	{
+		int res = ToolRunner.run(new Configuration(), new ConvertReads(), args);
+		System.exit(res);
+	}
+}
@@ -32,7 +32,7 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.TextOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
@@ -44,46 +44,80 @@ public class CountKmer extends Configured implements Tool
 	private static final Logger sLogger = Logger.getLogger(MatchPrefix.class);
 
 	public static class CountKmerMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, KmerWritable, IntWritable>
 	{
 		public static int K = 0;
 		public static int TRIM5 = 0;
 		public static int TRIM3 = 0;
 
+		// sums the windows of the whole split, null when KMER_TABLE is 0
+		private KmerCountTable table = null;
+		private OutputCollector<KmerWritable, IntWritable> out = null;
+		private Reporter rep = null;
+		private KmerScanner scanner = null;
+
 		public void configure(JobConf job)
 		{
 			K = Integer.parseInt(job.get("K"));
+			scanner = new KmerScanner(K);
+			int entries = job.getInt("KMER_TABLE", 0);
+			if (entries > 0) { table = new KmerCountTable(K, entries); }
 		}
 
-		public void map(LongWritable lineid, Text nodetxt,
-				        OutputCollector<Text, Text> output, Reporter reporter)
+		private void count(long word0, long word1, int cov,
+				           OutputCollector<KmerWritable, IntWritable> output, Reporter reporter)
+		                   throws IOException
+		{
+			if (table == null) {
+				KmerWritable kmer = new KmerWritable();
+				kmer.set(word0, word1, K);
+				output.collect(kmer, new IntWritable(cov));
+			} else if (table.add(word0, word1, cov)) {
+				table.flush(output);
+				reporter.incrCounter("Brush", "kmer_table_flush", 1);
+			}
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<KmerWritable, IntWritable> output, Reporter reporter)
 		                throws IOException
 		{
-            Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+            out = output;
+            rep = reporter;
+            Node node = nodemsg.getNode();
             if (!node.hasCustom("n")){
                 reporter.incrCounter("Brush", "nodes", 1);
                 //slide the K-mer windows for each read in both strands
                 int end = node.len() - K;
-                for (int i = 0; i < end; i++)
+                PackedSeq seq = node.getSeq();
+                // the forward windows at [0, end) and the reverse ones at (0, end]
+                scanner.reset(seq);
+                while (scanner.next())
                 {
-                    String window_tmp = node.str().substring(i,   i+K);
-                    String window_r_tmp = Node.rc(node.str().substring(node.len() - K - i, node.len() - i));
-                    //String window_r_tmp = Node.rc(window_tmp);
-                    String window = Node.str2dna(window_tmp);
-                    String window_r = Node.str2dna(window_r_tmp);
-                    //output.collect(new Text(window), new IntWritable((int)node.cov()));
-                    //output.collect(new Text(window_r), new IntWritable((int)node.cov()));
-                    output.collect(new Text(window), new Text((int)node.cov() + "|" + node.getNodeId()));
-                    output.collect(new Text(window_r), new Text((int)node.cov() + "|" + node.getNodeId()));
-                    reporter.incrCounter("Brush", "Allkmer", (int)node.cov());
+                    int i = scanner.offset();
+                    if (i < end) {
+                        count(scanner.forward0(), scanner.forward1(), (int)node.cov(), output, reporter);
+                        reporter.incrCounter("Brush", "Allkmer", (int)node.cov());
+                    }
+                    if (i > 0) {
+                        count(scanner.reverse0(), scanner.reverse1(), (int)node.cov(), output, reporter);
+                    }
                 }
             }
 		}
+
+		public void close() throws IOException
+		{
+			if (table != null && out != null && table.size() > 0)
+			{
+				table.flush(out);
+				rep.incrCounter("Brush", "kmer_table_flush", 1);
+			}
+		}
 	}
 
 	public static class CountKmerReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<KmerWritable, IntWritable, Text, Text>
 	{
 		private static int K = 0;
         //private static int OVALSIZE = 0;
@@ -93,26 +127,16 @@ public class CountKmer extends Configured implements Tool
 			K = Integer.parseInt(job.get("K"));
 		}
 
-		public void reduce(Text prefix, Iterator<Text> iter,
+		public void reduce(KmerWritable prefix, Iterator<IntWritable> iter,
 						   OutputCollector<Text, Text> output, Reporter reporter)
 						   throws IOException
 		{
             int sum =0;
-            int read_count = 0;
-            List<String> ReadID_list = new ArrayList<String>();
             while(iter.hasNext())
 			{
-                String msg = iter.next().toString();
-				String [] vals = msg.split("\\|");
-                sum += Integer.parseInt(vals[0]);
-                if (ReadID_list.contains(vals[1])){
-                    // do nothing
-                } else {
-                    read_count = read_count + 1;
-                    ReadID_list.add(vals[1]);
-                }
+                sum += iter.next().get();
             }
-            output.collect(new Text(prefix.toString()), new Text(sum+""));
+            output.collect(new Text(prefix.toDna()), new Text(sum+""));
             if (sum >= 2){
                 reporter.incrCounter("Brush", "Diffkmer", 1);
             }
@@ -135,12 +159,11 @@ public class CountKmer extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
 		conf.setOutputFormat(TextOutputFormat.class);
 
-		conf.setMapOutputKeyClass(Text.class);
-		//conf.setMapOutputValueClass(IntWritable.class);
-        conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputKeyClass(KmerWritable.class);
+		conf.setMapOutputValueClass(IntWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
 		conf.setOutputValueClass(Text.class);
@@ -148,6 +171,7 @@ public class CountKmer extends Configured implements Tool
         //conf.setBoolean("mapred.output.compress", true);
 
 		conf.setMapperClass(CountKmerMapper.class);
+		conf.setCombinerClass(KmerCountTable.Combiner.class);
 		conf.setReducerClass(CountKmerReducer.class);
 
 		//delete the output directory if it exists already
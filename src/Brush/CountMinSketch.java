@@ -0,0 +1,199 @@
+/*
+    CountMinSketch.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+// A count-min sketch of k-mer counts: DEPTH rows of width cells, a k-mer
+// adds its count to one cell in every row and reads back the smallest of
+// them, which is never below the true count. Sketches of one width merge
+// by adding their cells, so every mapper sketches its own split and only
+// the sketches are shuffled, cut into Slices keyed by their position.
+public class CountMinSketch
+{
+	public static final int DEPTH = 4;
+	public static final int SLICE = 1 << 16;
+
+	private final int width;
+	private final int mask;
+	private final int [] cells;
+
+	// width is rounded up to a power of two, at least one slice
+	public CountMinSketch(int width)
+	{
+		int w = SLICE;
+		while (w < width) { w <<= 1; }
+
+		this.width = w;
+		mask = w - 1;
+		cells = new int[DEPTH * w];
+	}
+
+	public int width() { return width; }
+
+	public int slices() { return cells.length / SLICE; }
+
+	private static long mix(long h)
+	{
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	// the DEPTH cells come from one 64 bit hash, h1 + row * h2
+	static long hash(long word0, long word1)
+	{
+		return mix(word0 ^ mix(word1 + 0x9E3779B97F4A7C15L));
+	}
+
+	public void add(long word0, long word1, int count)
+	{
+		long h = hash(word0, word1);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32) | 1;
+
+		for (int r = 0; r < DEPTH; r++)
+		{
+			int c = r * width + ((h1 + r * h2) & mask);
+			long v = (long) cells[c] + count;
+			cells[c] = (v > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) v;
+		}
+	}
+
+	public int estimate(long word0, long word1)
+	{
+		long h = hash(word0, word1);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32) | 1;
+
+		int min = Integer.MAX_VALUE;
+
+		for (int r = 0; r < DEPTH; r++)
+		{
+			min = Math.min(min, cells[r * width + ((h1 + r * h2) & mask)]);
+		}
+
+		return min;
+	}
+
+	// slice i of the cells, false if it is all zero
+	public boolean getSlice(int i, Slice s)
+	{
+		s.set(cells, i * SLICE);
+		return !s.isEmpty();
+	}
+
+	public void addSlice(int i, Slice s)
+	{
+		s.addTo(cells, i * SLICE);
+	}
+
+
+	// Slice
+	///////////////////////////////////////////////////////////////////////////
+
+	// SLICE cells of a sketch, serialized as a varint each
+	public static class Slice implements Writable
+	{
+		private final int [] cells = new int[SLICE];
+
+		public void set(int [] from, int offset)
+		{
+			System.arraycopy(from, offset, cells, 0, SLICE);
+		}
+
+		public void clear()
+		{
+			Arrays.fill(cells, 0);
+		}
+
+		public boolean isEmpty()
+		{
+			for (int c : cells)
+			{
+				if (c != 0) { return false; }
+			}
+
+			return true;
+		}
+
+		public void add(Slice o)
+		{
+			addTo(o.cells, cells, 0);
+		}
+
+		void addTo(int [] to, int offset)
+		{
+			addTo(cells, to, offset);
+		}
+
+		private static void addTo(int [] from, int [] to, int offset)
+		{
+			for (int i = 0; i < SLICE; i++)
+			{
+				long v = (long) to[offset + i] + from[i];
+				to[offset + i] = (v > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) v;
+			}
+		}
+
+		public void write(DataOutput out) throws IOException
+		{
+			for (int c : cells)
+			{
+				WritableUtils.writeVInt(out, c);
+			}
+		}
+
+		public void readFields(DataInput in) throws IOException
+		{
+			for (int i = 0; i < SLICE; i++)
+			{
+				cells[i] = WritableUtils.readVInt(in);
+			}
+		}
+	}
+
+
+	// Merge
+	///////////////////////////////////////////////////////////////////////////
+
+	// adds up the slices of one position; combiner and reducer
+	public static class Merge extends MapReduceBase
+	implements Reducer<IntWritable, Slice, IntWritable, Slice>
+	{
+		private Slice sum = new Slice();
+
+		public void reduce(IntWritable slice, Iterator<Slice> iter,
+						   OutputCollector<IntWritable, Slice> output, Reporter reporter)
+						   throws IOException
+		{
+			sum.clear();
+
+			while (iter.hasNext())
+			{
+				sum.add(iter.next());
+			}
+
+			output.collect(slice, sum);
+		}
+	}
+}
@@ -35,7 +35,7 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.TextOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
@@ -50,7 +50,7 @@ public class CountReads extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class CountReadsMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, Text>
 	{
 		private static int K = 0;
 
@@ -60,12 +60,11 @@ public class CountReads extends Configured implements Tool
 			K = Integer.parseInt(job.get("K"));
 		}
 
-		public void map(LongWritable lineid, Text nodetxt,
+		public void map(Text nodeid, NodeWritable nodemsg,
 				OutputCollector<Text, Text> output, Reporter reporter)
 		throws IOException
 		{
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
             
             reporter.incrCounter("Brush", "reads", node.getPairEnds().size());
             reporter.incrCounter("Brush", "ctg_sum", node.len());
@@ -92,7 +91,7 @@ public class CountReads extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
 		conf.setOutputFormat(TextOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
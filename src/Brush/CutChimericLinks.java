@@ -35,8 +35,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -68,344 +68,50 @@ public class CutChimericLinks extends Configured implements Tool
         result = (float)distance1 / (float)word1.length();
         return result;
     }
-	// CutChimericLinksMapper
-	///////////////////////////////////////////////////////////////////////////
-
-	public static class CutChimericLinksMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
-	{
-		private static int K = 0;
-       
-		/*public static int MAXBUBBLELEN = 0;*/
-
-		public void configure(JobConf job)
-		{
-			K = Integer.parseInt(job.get("K"));
-			/*MAXBUBBLELEN = Integer.parseInt(job.get("MAXBUBBLELEN"));*/
-		}
-
-		public void map(LongWritable lineid, Text nodetxt,
-				OutputCollector<Text, Text> output, Reporter reporter)
-		throws IOException
-		{
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
-            int fdegree = node.degree("f");
-			int rdegree = node.degree("r");
-            int tips = 0;
-          
-            for(String key : Node.edgetypes ) {
-                List<String> edges = node.getEdges(key);
-                if (edges != null)
-                {
-                    for(int i = 0; i < edges.size(); i++){
-                        String [] vals = edges.get(i).split("!");
-                        String edge_id = vals[0];
-                        String oval_size = vals[1];
-                        String con = Node.flip_link(key);
-                        output.collect(new Text(edge_id), new Text(Node.DARKMSG + "\t" + con + "\t" + node.getNodeId() + "\t" + node.str_raw() + "\t" + oval_size + "\t" + node.cov() + "\t" + tips));
-                    }
-                }
-            }
-           
-			output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
-			reporter.incrCounter("Brush", "nodes", 1);
-
-		}
-	}
-
-
 	// CutChimericLinksReducer
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class CutChimericLinksReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
-		private static int K = 0;
-        private static int READLEN = 0;
         private static float majority = 0.6f;
         private static float PWM_N = 0.1f;
+        private ConsensusMatrix pwm = new ConsensusMatrix();
 
 		public void configure(JobConf job) {
-			K = Integer.parseInt(job.get("K"));
-            READLEN = (int)Long.parseLong(job.get("READLENGTH"));
             majority = Float.parseFloat(job.get("MAJORITY"));
             PWM_N = Float.parseFloat(job.get("PWM_N"));
 		}
 
-         public class EdgeInfo
-		{
-			public String id;
-            public String str;
-            public String edge_type;
-			public int overlap_size;
-            public float cov;
-           // public int tips;
-
-			// for gray edge
-            public EdgeInfo(String[] vals, int offset) throws IOException
-			{
-				id = vals[offset+1];
-                edge_type = vals[offset+0];
-                str = vals[offset+2];
-                overlap_size = Integer.parseInt(vals[offset+3]);
-                cov = Float.parseFloat(vals[offset+4]);
-              //  tips = Integer.parseInt(vals[offset+5]);
-                // for black edge's end tag
-			}
-
-            // for black edge
-            public EdgeInfo(String con1, String node_id1, String str_raw1, int oval_size1, float cov1/*, int tips1*/){
-                id = node_id1;
-                edge_type = con1;
-                str = str_raw1;
-                overlap_size = oval_size1;
-                cov = cov1;
-                //tips = tips1;
-            }
-
-            public String toString()
-			{
-				return edge_type + " " + id + " " + overlap_size + " " + str + " " + cov;
-			}
-		}
-
-         class EdgeComparator implements Comparator {
-            public int compare(Object element1, Object element2) {
-                EdgeInfo obj1 = (EdgeInfo) element1;
-                EdgeInfo obj2 = (EdgeInfo) element2;
-                //con + "|" + node_id + "|" + str_raw + "|" + oval_size + "|" + cov + "|" + end;
-                if ((int) ( (Node.dna2str(obj1.str).length()-obj1.overlap_size) - (Node.dna2str(obj2.str).length()-obj2.overlap_size) ) >= 0) {
-                    return -1;
-                } else {
-                    return 1;
-                }
+        // cut the neighbors of one side that disagree with its consensus
+        private void cutSide(NeighborView.Neighborhood nh, List<NeighborView.Neighbor> list, Reporter reporter)
+        throws IOException
+        {
+            if (list.size() <= 1) {
+                return;
             }
-        }
-
-        class OvelapSizeComparator implements Comparator {
-            public int compare(Object element1, Object element2) {
-                EdgeInfo obj1 = (EdgeInfo) element1;
-                EdgeInfo obj2 = (EdgeInfo) element2;
-                if ((int)(obj1.overlap_size - obj2.overlap_size) > 0) {
-                    return -1;
-                } else if ((int)(obj1.overlap_size - obj2.overlap_size) < 0){
-                    return 1;
-                } else {
-                    if (obj1.str.length() - obj2.str.length() < 0) {
-                        return -1;
-                    } else if (obj1.str.length() - obj2.str.length() > 0) {
-                        return 1;
-                    } else {
-                        if ( obj1.id.compareTo(obj2.id) < 0) {
-                            return -1;
-                        } else {
-                            return 1;
-                        }
-                    }
-                }
+            if (!NeighborView.Neighborhood.load(pwm, list).consensus(majority, PWM_N)) {
+                return;
             }
-        }
-
-        class OvelapSizeComparator_f implements Comparator {
-            public int compare(Object element1, Object element2) {
-                EdgeInfo obj1 = (EdgeInfo) element1;
-                EdgeInfo obj2 = (EdgeInfo) element2;
-                if ((int)(obj1.overlap_size - obj2.overlap_size) > 0) {
-                    return -1;
-                } else if ((int)(obj1.overlap_size - obj2.overlap_size) < 0){
-                    return 1;
-                } else {
-                    if (obj1.str.length() - obj2.str.length() < 0) {
-                        return -1;
-                    } else if (obj1.str.length() - obj2.str.length() > 0) {
-                        return 1;
-                    } else {
-                        if ( obj1.id.compareTo(obj2.id) < 0) {
-                            return -1;
-                        } else {
-                            return 1;
-                        }
-                    }
+            for (NeighborView.Neighbor edge : list) {
+                if (!pwm.agrees(edge.ext)) {
+                    nh.cut(edge);
+                    reporter.incrCounter("Brush", "edge_removal", 1);
                 }
             }
         }
 
-        class OvelapSizeComparator_r implements Comparator {
-            public int compare(Object element1, Object element2) {
-                EdgeInfo obj1 = (EdgeInfo) element1;
-                EdgeInfo obj2 = (EdgeInfo) element2;
-                if ((int)(obj1.overlap_size - obj2.overlap_size) > 0) {
-                    return -1;
-                } else if ((int)(obj1.overlap_size - obj2.overlap_size) < 0){
-                    return 1;
-                } else {
-                    if (obj1.str.length() - obj2.str.length() < 0) {
-                        return -1;
-                    } else if (obj1.str.length() - obj2.str.length() > 0) {
-                        return 1;
-                    } else {
-                        if ( obj1.id.compareTo(obj2.id) < 0) {
-                            return 1;
-                        } else {
-                            return -1;
-                        }
-                    }
-                }
-            }
-        }
-
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
-			Node node = new Node(nodeid.toString());
-            List<EdgeInfo> flist = new ArrayList<EdgeInfo>();
-            List<EdgeInfo> rlist = new ArrayList<EdgeInfo>();
-
-			int sawnode = 0;
-
-			while(iter.hasNext())
-			{
-				String msg = iter.next().toString();
-
-				//System.err.println(key.toString() + "\t" + msg);
-
-				String [] vals = msg.split("\t");
-
-				if (vals[0].equals(Node.NODEMSG))
-				{
-					node.parseNodeMsg(vals, 0);
-					sawnode++;
-				}
-                else if (vals[0].equals(Node.DARKMSG))
-				{
-                    EdgeInfo ei = new EdgeInfo(vals[1], vals[2], vals[3], Integer.parseInt(vals[4]), Float.parseFloat(vals[5]));
-                    //blist.add(ei);
-                    if (ei.edge_type.charAt(0) == 'f') {
-                        flist.add(ei);
-                    } else if (ei.edge_type.charAt(0) == 'r') {
-                        rlist.add(ei);
-                    }
-				}
-				else
-				{
-					throw new IOException("Unknown msgtype: " + msg);
-				}
-			}
-
-			if (sawnode != 1)
-			{
-                throw new IOException("ERROR: Didn't see exactly 1 nodemsg (" + sawnode + ") for " + nodeid.toString());
-			}
-
-            //\\\
-            EdgeInfo edge = null;
-   
-            int Consensus_threshold = (READLEN - K)/2;
-            if (flist.size() > 1) {
-                Collections.sort(flist, new OvelapSizeComparator_f());
-                //\\PWM
-                List<String> f_edge_list = new ArrayList<String>();
-                EdgeInfo f_edge = null;
-                String f_consensus = "";
-                for(int i = 0; i < flist.size(); i++) {
-                    f_edge = flist.get(i);
-                    String str = Node.dna2str(f_edge.str);
-                    String str_cut = "";
-                    if (f_edge.edge_type.charAt(1) == 'r'){
-                        str = Node.rc(str);
-                    }
-                    str_cut = str.substring(f_edge.overlap_size);
-                    f_edge_list.add(str_cut+"!"+f_edge.cov);
-                }
-                f_consensus = Node.Consensus(f_edge_list, majority, PWM_N);
-                //f_consensus = Node.Consensus2(f_edge_list, PWM_N);
-                //\\\\\\\\\\\\\\\\\\\\\\\\\\\
-                if (f_consensus != null /*&& f_consensus.length() >= Consensus_threshold*/) { 
-                    for(int i = 0; i < flist.size(); i++) {
-                        edge= flist.get(i);
-                        String str = Node.dna2str(edge.str);
-                        if (edge.edge_type.charAt(1) == 'r'){
-                            str = Node.rc(str);
-                        }
-                        String str_cut = "";
-                        str_cut = str.substring(edge.overlap_size);
-                        int count_match = 0;
-                        int miss_match = 0;
-                        int compare_len = 0;
-                        for(int j=0; j < str_cut.length() && j < f_consensus.length(); j++ ) {
-                            if (str_cut.charAt(j) == f_consensus.charAt(j)) {
-                                count_match = count_match + 1;
-                            } else {
-                                if (!(f_consensus.charAt(j) == 'N')) {
-                                    miss_match = miss_match + 1;
-                                }     
-                            }
-                            compare_len = j;
-                        }
-                        if (miss_match <=0 /*(float)count_match/(float)compare_len > 0.8*/) {
-                            // keep edge
-                        } else {
-                            node.addRemovalEdge(node.getNodeId(), edge.edge_type, edge.id, edge.overlap_size);
-                            node.addRemovalEdge(edge.id, Node.flip_link(edge.edge_type), node.getNodeId(), edge.overlap_size);
-                            reporter.incrCounter("Brush", "edge_removal", 1); 
-                        }
-                    }
-                }
-            }
-            if (rlist.size() > 1) {
-                Collections.sort(rlist, new OvelapSizeComparator_r());
-                 //\\PWM
-                List<String> r_edge_list = new ArrayList<String>();
-                EdgeInfo r_edge = null;
-                String r_consensus = "";
-                for(int i = 0; i < rlist.size(); i++) {
-                    r_edge = rlist.get(i);
-                    String str = Node.dna2str(r_edge.str);
-                    String str_cut = "";
-                    if (r_edge.edge_type.charAt(1) == 'r'){
-                        str = Node.rc(str);
-                    }
-                    str_cut = str.substring(r_edge.overlap_size);
-                    r_edge_list.add(str_cut+"!"+r_edge.cov);
-                }
-                r_consensus = Node.Consensus(r_edge_list, majority, PWM_N);
-                //r_consensus = Node.Consensus2(r_edge_list, PWM_N);
-                //\\\\\\\\\\\\\\\\\\\\\\\\\\\
-                if (r_consensus != null /*&& r_consensus.length() >= Consensus_threshold*/) { 
-                    for(int i = 0; i < rlist.size(); i++) {
-                        edge= rlist.get(i);
-                        String str = Node.dna2str(edge.str);
-                        if (edge.edge_type.charAt(1) == 'r'){
-                            str = Node.rc(str);
-                        }
-                        String str_cut = "";
-                        str_cut = str.substring(edge.overlap_size);
-                        int count_match = 0;
-                        int miss_match = 0;
-                        int compare_len = 0;
-                        for(int j=0; j < str_cut.length() && j < r_consensus.length(); j++ ) {
-                            if (str_cut.charAt(j) == r_consensus.charAt(j)) {
-                                count_match = count_match + 1;
-                            } else {
-                                 if (!(r_consensus.charAt(j) == 'N')) {
-                                    miss_match = miss_match + 1;
-                                }     
-                            }
-                            compare_len = j;
-                        }
-                        if (miss_match <=0/*(float)count_match/(float)compare_len > 0.8*/) {
-                            // keep edge
-                        } else {
-                            node.addRemovalEdge(node.getNodeId(), edge.edge_type, edge.id, edge.overlap_size);
-                            node.addRemovalEdge(edge.id, Node.flip_link(edge.edge_type), node.getNodeId(), edge.overlap_size);
-                            reporter.incrCounter("Brush", "edge_removal", 1); 
-                        }
-                    }
-                }
-            }
-            output.collect(nodeid, new Text(node.toNodeMsg()));
+            NeighborView.Neighborhood nh = NeighborView.Neighborhood.fromMessages(nodeid, iter);
+            nh.sort();
+
+            cutSide(nh, nh.flist, reporter);
+            cutSide(nh, nh.rlist, reporter);
+
+            output.collect(nodeid, new NodeWritable(nh.node));
 		}
 	}
 
@@ -431,16 +137,16 @@ public class CutChimericLinks extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
 
-		conf.setMapperClass(CutChimericLinksMapper.class);
+		conf.setMapperClass(NeighborView.NeighborViewMapper.class);
 		conf.setReducerClass(CutChimericLinksReducer.class);
 
 		//delete the output directory if it exists already
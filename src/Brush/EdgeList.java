@@ -0,0 +1,361 @@
+/*
+    EdgeList.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+// Edges of one edge type of a Node, held as parallel id/oval arrays in
+// insertion order instead of "id!oval" strings. An id is kept as the
+// ReadDictionary number it is written as; a node with any other name
+// keeps it in a names array that is only made when the first one shows
+// up. Removed entries are left as holes (null id) and squeezed out once
+// they outnumber the live ones, so removal keeps the order of the
+// remaining edges. Past INDEXMIN entries an open addressed table from id
+// to position makes lookups O(1).
+public class EdgeList
+{
+	private static final int INDEXMIN = 8;
+
+	private static final long HOLE  = -1;
+	private static final long NAMED = -2;
+
+	private long [] ids;
+	private String [] names = null;
+	private int [] ovals;
+	private int end = 0;    // slots used, holes included
+	private int live = 0;
+
+	// position+1 per slot, 0 empty, -1 deleted
+	private int [] index = null;
+	private int used = 0;   // non-empty index slots, deleted included
+
+	public EdgeList()
+	{
+		this(4);
+	}
+
+	public EdgeList(int capacity)
+	{
+		ids = new long[Math.max(capacity, 1)];
+		ovals = new int[ids.length];
+	}
+
+	public EdgeList(EdgeList o)
+	{
+		this(o.live);
+		addAll(o);
+	}
+
+	public int size() { return live; }
+
+	// positions run from 0 to end(), skipping holes where id(pos) is null
+	public int end() { return end; }
+
+	public String id(int pos)
+	{
+		if (ids[pos] >= 0) { return ReadDictionary.idString(ids[pos]); }
+		return (ids[pos] == NAMED) ? names[pos] : null;
+	}
+
+	public boolean live(int pos) { return ids[pos] != HOLE; }
+
+	public int oval(int pos) { return ovals[pos]; }
+
+	public void add(String id, int oval)
+	{
+		long v = ReadDictionary.parseId(id);
+		put((v >= 0) ? v : NAMED, (v >= 0) ? null : id, oval);
+	}
+
+	private void put(long v, String name, int oval)
+	{
+		if (end == ids.length)
+		{
+			if (live * 2 <= end) { squeeze(); }
+			if (end == ids.length) { grow(); }
+		}
+
+		if (name != null && names == null) { names = new String[ids.length]; }
+
+		ids[end] = v;
+		if (names != null) { names[end] = name; }
+		ovals[end] = oval;
+		end++;
+		live++;
+
+		if (index != null)
+		{
+			if (2 * (used + 1) > index.length) { reindex(); }
+			else { insert(end - 1); }
+		}
+		else if (live > INDEXMIN)
+		{
+			reindex();
+		}
+	}
+
+	// "id!oval" as found in the text node format
+	public void add(String edge)
+	{
+		int bang = edge.indexOf('!');
+
+		if (bang < 0)
+		{
+			throw new IllegalArgumentException("Edge without overlap size information!! " + edge);
+		}
+
+		add(edge.substring(0, bang), Integer.parseInt(edge.substring(bang+1)));
+	}
+
+	public void addAll(EdgeList o)
+	{
+		for (int i = 0; i < o.end; i++)
+		{
+			if (o.ids[i] != HOLE) { put(o.ids[i], (o.ids[i] == NAMED) ? o.names[i] : null, o.ovals[i]); }
+		}
+	}
+
+	// the id at pos is v, or the name when v is NAMED
+	private boolean same(int pos, long v, String name)
+	{
+		return ids[pos] == v && (v != NAMED || name.equals(names[pos]));
+	}
+
+	// first position in list order with this id (and oval, unless anyoval), or -1
+	public int find(String id, int oval, boolean anyoval)
+	{
+		int best = -1;
+
+		long v = ReadDictionary.parseId(id);
+		if (v < 0) { v = NAMED; }
+
+		if (index == null)
+		{
+			for (int i = 0; i < end; i++)
+			{
+				if (same(i, v, id) && (anyoval || ovals[i] == oval)) { return i; }
+			}
+
+			return best;
+		}
+
+		int mask = index.length - 1;
+
+		for (int s = hash(v, id) & mask; index[s] != 0; s = (s + 1) & mask)
+		{
+			int pos = index[s] - 1;
+
+			if (pos >= 0 && (best < 0 || pos < best) && same(pos, v, id) && (anyoval || ovals[pos] == oval))
+			{
+				best = pos;
+			}
+		}
+
+		return best;
+	}
+
+	public int find(String id)
+	{
+		return find(id, 0, true);
+	}
+
+	public int find(String id, int oval)
+	{
+		return find(id, oval, false);
+	}
+
+	public void removeAt(int pos)
+	{
+		if (index != null)
+		{
+			int mask = index.length - 1;
+
+			for (int s = hash(pos) & mask; index[s] != 0; s = (s + 1) & mask)
+			{
+				if (index[s] == pos + 1) { index[s] = -1; break; }
+			}
+		}
+
+		ids[pos] = HOLE;
+		if (names != null) { names[pos] = null; }
+		live--;
+
+		if (live == 0)
+		{
+			end = 0;
+			if (index != null) { index = null; used = 0; }
+		}
+	}
+
+	// removes every entry with this id (and oval, unless anyoval); returns how many
+	public int removeAll(String id, int oval, boolean anyoval)
+	{
+		int removed = 0;
+
+		for (int pos = find(id, oval, anyoval); pos >= 0; pos = find(id, oval, anyoval))
+		{
+			removeAt(pos);
+			removed++;
+		}
+
+		return removed;
+	}
+
+	// first live position, or -1
+	public int first()
+	{
+		for (int i = 0; i < end; i++)
+		{
+			if (ids[i] != HOLE) { return i; }
+		}
+
+		return -1;
+	}
+
+	public List<String> toList()
+	{
+		List<String> l = new ArrayList<String>(live);
+
+		for (int i = 0; i < end; i++)
+		{
+			if (ids[i] != HOLE) { l.add(id(i) + "!" + ovals[i]); }
+		}
+
+		return l;
+	}
+
+	// the binary node form of the edge at pos: the id as a varint, as
+	// ReadWritable writes read names, then the oval
+	public void write(DataOutput out, int pos) throws IOException
+	{
+		if (ids[pos] >= 0) { WritableUtils.writeVLong(out, ids[pos] << 1); }
+		else               { ReadWritable.writeName(out, names[pos]); }
+
+		WritableUtils.writeVInt(out, ovals[pos]);
+	}
+
+	// adds an edge written by write
+	public void read(DataInput in) throws IOException
+	{
+		long v = WritableUtils.readVLong(in);
+		String name = null;
+
+		if ((v & 1) == 0)
+		{
+			v >>>= 1;
+		}
+		else
+		{
+			byte [] b = new byte[(int) (v >>> 1)];
+			in.readFully(b);
+			name = Text.decode(b);
+			v = NAMED;
+		}
+
+		put(v, name, WritableUtils.readVInt(in));
+	}
+
+	public static EdgeList fromList(List<String> edges)
+	{
+		EdgeList el = new EdgeList(edges.size());
+
+		for (String e : edges)
+		{
+			el.add(e);
+		}
+
+		return el;
+	}
+
+	private static int hash(long v, String name)
+	{
+		long h = ((v == NAMED) ? name.hashCode() : v) * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private int hash(int pos)
+	{
+		return hash(ids[pos], (ids[pos] == NAMED) ? names[pos] : null);
+	}
+
+	private void grow()
+	{
+		long [] nids = new long[ids.length * 2];
+		int [] novals = new int[nids.length];
+		System.arraycopy(ids, 0, nids, 0, end);
+		System.arraycopy(ovals, 0, novals, 0, end);
+		ids = nids;
+		ovals = novals;
+
+		if (names != null)
+		{
+			String [] nnames = new String[nids.length];
+			System.arraycopy(names, 0, nnames, 0, end);
+			names = nnames;
+		}
+	}
+
+	// drop the holes, keeping the order of the live entries
+	private void squeeze()
+	{
+		int n = 0;
+
+		for (int i = 0; i < end; i++)
+		{
+			if (ids[i] != HOLE)
+			{
+				ids[n] = ids[i];
+				if (names != null) { names[n] = names[i]; }
+				ovals[n] = ovals[i];
+				n++;
+			}
+		}
+
+		for (int i = n; i < end; i++)
+		{
+			ids[i] = HOLE;
+			if (names != null) { names[i] = null; }
+		}
+
+		end = n;
+
+		if (index != null) { reindex(); }
+	}
+
+	private void reindex()
+	{
+		int cap = 16;
+		while (cap < 4 * live) { cap <<= 1; }
+
+		index = new int[cap];
+		used = 0;
+
+		for (int i = 0; i < end; i++)
+		{
+			if (ids[i] != HOLE) { insert(i); }
+		}
+	}
+
+	private void insert(int pos)
+	{
+		int mask = index.length - 1;
+		int s = hash(pos) & mask;
+
+		while (index[s] > 0) { s = (s + 1) & mask; }
+
+		if (index[s] == 0) { used++; }
+		index[s] = pos + 1;
+	}
+}
@@ -29,8 +29,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -46,7 +46,7 @@ public class EdgeRemoval extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class EdgeRemovalMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 0;
 
@@ -55,12 +55,11 @@ public class EdgeRemoval extends Configured implements Tool
 			K = Integer.parseInt(job.get("K"));
 		}
 
-		public void map(LongWritable lineid, Text nodetxt,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 		throws IOException
 		{
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			List<String> r_edges = node.getRemovalEdges();
 			if (r_edges != null)
@@ -74,7 +73,7 @@ public class EdgeRemoval extends Configured implements Tool
                     int oval = Integer.parseInt(vals[3]);
 
 					output.collect(new Text(id),
-							       new Text(Node.KILLLINKMSG + "\t" + dir + "\t" + dead+ "\t" + oval));
+							       new NodeWritable(Node.KILLLINKMSG + "\t" + dir + "\t" + dead+ "\t" + oval));
 
 					reporter.incrCounter("Brush", "edgesremoved", 1);
 				}
@@ -82,7 +81,7 @@ public class EdgeRemoval extends Configured implements Tool
 				node.clearRemovalEdge();
 			}
 
-			output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+			output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			reporter.incrCounter("Brush", "nodes", 1);
 		}
 	}
@@ -91,7 +90,7 @@ public class EdgeRemoval extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class EdgeRemovalReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 0;
 
@@ -118,8 +117,8 @@ public class EdgeRemoval extends Configured implements Tool
 		    }
 		}
 
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 		throws IOException
 		{
 			Node node = new Node(nodeid.toString());
@@ -132,15 +131,15 @@ public class EdgeRemoval extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(nodeid.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.KILLLINKMSG))
@@ -198,7 +197,7 @@ public class EdgeRemoval extends Configured implements Tool
 				//reporter.incrCounter("Contrail", "threadsremoved", 1);
 			}
 
-			output.collect(nodeid, new Text(node.toNodeMsg()));
+			output.collect(nodeid, new NodeWritable(node));
 		}
 	}
 
@@ -222,15 +221,15 @@ public class EdgeRemoval extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
         //conf.setBoolean("mapred.output.compress", true);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
 
 		conf.setMapperClass(EdgeRemovalMapper.class);
 		conf.setReducerClass(EdgeRemovalReducer.class);
@@ -0,0 +1,151 @@
+/*
+    EditDistance.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+// Global edit distance with Myers' bit-vector algorithm in Hyyro's
+// 64-row block form: O(n * m/64) time instead of the O(n * m) int[][] DP.
+//
+// The banded form distance(a, b, k) only runs the blocks that can still
+// hold cells <= k and stops as soon as the result must exceed k; it
+// returns the exact distance when it is <= k and some value > k otherwise.
+//
+// An instance keeps its bit vectors between calls so comparisons do not
+// allocate; the static methods use one workspace per thread.
+// Strings are expected to be ASCII (DNA).
+public class EditDistance
+{
+	private static final int SIGMA = 128;
+
+	private static final ThreadLocal<EditDistance> workspace = new ThreadLocal<EditDistance>() {
+		protected EditDistance initialValue() { return new EditDistance(); }
+	};
+
+	private long [] peq = new long[0];   // SIGMA rows of match masks per block
+	private long [] pv = new long[0];
+	private long [] mv = new long[0];
+	private int [] score = new int[0];   // D at the last row of each block
+	private int [] stamp = new int[SIGMA];
+	private int call = 0;
+
+	public static int distance(String a, String b)
+	{
+		return workspace.get().compute(a, b, Integer.MAX_VALUE);
+	}
+
+	public static int distance(String a, String b, int k)
+	{
+		return workspace.get().compute(a, b, k);
+	}
+
+	public int compute(String a, String b, int k)
+	{
+		// the shorter string goes down the rows
+		if (a.length() > b.length()) { String t = a; a = b; b = t; }
+
+		int m = a.length();
+		int n = b.length();
+
+		if (n - m > k) { return k + 1; }
+		if (m == 0) { return n; }
+
+		int blocks = (m + 63) >> 6;
+		ensure(blocks);
+
+		// match masks of the pattern, only touching the symbols it uses
+		call++;
+		for (int i = 0; i < m; i++)
+		{
+			int c = a.charAt(i) & (SIGMA - 1);
+
+			if (stamp[c] != call)
+			{
+				stamp[c] = call;
+				for (int w = 0; w < blocks; w++) { peq[c * blocks + w] = 0; }
+			}
+
+			peq[c * blocks + (i >> 6)] |= 1L << (i & 63);
+		}
+
+		int lastrow = (m - 1) & 63;
+
+		// rows beyond j + k can not be <= k at column j, so blocks are
+		// only started once they get near the band
+		int last = 0;
+		pv[0] = -1L;
+		mv[0] = 0;
+		score[0] = Math.min(m, 64);
+
+		for (int j = 0; j < n; j++)
+		{
+			int c = b.charAt(j) & (SIGMA - 1);
+			boolean known = stamp[c] == call;
+
+			while (last + 1 < blocks && (long) (last + 1) * 64 <= (long) j + k + 1)
+			{
+				last++;
+				pv[last] = -1L;
+				mv[last] = 0;
+				score[last] = score[last - 1] + ((last == blocks - 1) ? m - last * 64 : 64);
+			}
+
+			// D[0][j] - D[0][j-1] is always +1
+			int hin = 1;
+
+			for (int w = 0; w <= last; w++)
+			{
+				long eq = known ? peq[c * blocks + w] : 0;
+				long p = pv[w];
+				long q = mv[w];
+
+				long xv = eq | q;
+				if (hin < 0) { eq |= 1L; }
+				long xh = (((eq & p) + p) ^ p) | eq;
+				long ph = q | ~(xh | p);
+				long mh = p & xh;
+
+				int bit = (w == blocks - 1) ? lastrow : 63;
+				int hout = 0;
+				if (((ph >>> bit) & 1L) != 0) { hout = 1; }
+				else if (((mh >>> bit) & 1L) != 0) { hout = -1; }
+
+				ph <<= 1;
+				mh <<= 1;
+				if (hin < 0) { mh |= 1L; }
+				else if (hin > 0) { ph |= 1L; }
+
+				pv[w] = mh | ~(xv | ph);
+				mv[w] = ph & xv;
+
+				score[w] += hout;
+				hin = hout;
+			}
+
+			// the last row changes by at most one per remaining column
+			if (last == blocks - 1 && score[last] - (n - 1 - j) > k)
+			{
+				return k + 1;
+			}
+		}
+
+		return (score[blocks - 1] > k) ? k + 1 : score[blocks - 1];
+	}
+
+	private void ensure(int blocks)
+	{
+		if (pv.length < blocks)
+		{
+			peq = new long[SIGMA * blocks];
+			pv = new long[blocks];
+			mv = new long[blocks];
+			score = new int[blocks];
+
+			// the masks are laid out by block count, so rebuild them all
+			for (int c = 0; c < SIGMA; c++) { stamp[c] = 0; }
+		}
+	}
+}
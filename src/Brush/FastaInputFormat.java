@@ -0,0 +1,83 @@
+/*
+    FastaInputFormat.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+
+// FASTA reads: a ">name" line and the sequence on any number of lines
+// after it, up to the next '>'. Only a header can start with '>', so a
+// split starts at the first one it owns. Blank lines and '#' comments are
+// skipped, as preprocessor.pl did.
+public class FastaInputFormat extends ReadInputFormat
+{
+	protected ReadRecordReader getReadReader(ReadStream in) throws IOException
+	{
+		return new FastaRecordReader(in);
+	}
+
+	public static class FastaRecordReader extends ReadRecordReader
+	{
+		private final Text line = new Text();
+
+		// the header that ended the last read, if any
+		private boolean header = false;
+		private long headerKey = 0;
+		private boolean headerOwned = false;
+
+		public FastaRecordReader(ReadStream in)
+		{
+			super(in);
+		}
+
+		private boolean isHeader()
+		{
+			return line.getLength() > 0 && line.getBytes()[0] == '>';
+		}
+
+		protected boolean nextRead() throws IOException
+		{
+			while (!header)
+			{
+				if (!in.readLine(line)) { return false; }
+
+				header = isHeader();
+				headerKey = in.key();
+				headerOwned = in.owned();
+			}
+
+			// the splits after this one read the rest
+			if (!headerOwned) { return false; }
+
+			key = headerKey;
+			name = readName(line);
+			seq.setLength(0);
+			header = false;
+
+			while (in.readLine(line))
+			{
+				if (isHeader())
+				{
+					header = true;
+					headerKey = in.key();
+					headerOwned = in.owned();
+					break;
+				}
+
+				String l = line.toString();
+				if (!l.startsWith("#") && l.trim().length() > 0)
+				{
+					seq.append(l);
+				}
+			}
+
+			return true;
+		}
+	}
+}
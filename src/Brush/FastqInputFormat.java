@@ -0,0 +1,82 @@
+/*
+    FastqInputFormat.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+
+// FASTQ reads in four line records, "@name", sequence, "+" and quality,
+// as preprocessor.pl took them. A quality line may start with '@' too,
+// so a record only counts as one when the third line starts with '+' and
+// the quality is as long as the sequence; that is how a split finds its
+// first record, and how the reader gets past anything else in the file.
+public class FastqInputFormat extends ReadInputFormat
+{
+	protected ReadRecordReader getReadReader(ReadStream in) throws IOException
+	{
+		return new FastqRecordReader(in);
+	}
+
+	public static class FastqRecordReader extends ReadRecordReader
+	{
+		// a window of the next four lines, lines[first] on top
+		private final Text [] lines = { new Text(), new Text(), new Text(), new Text() };
+		private final long [] keys = new long[4];
+		private final boolean [] owned = new boolean[4];
+		private int first = 0;
+		private int n = 0;
+
+		public FastqRecordReader(ReadStream in)
+		{
+			super(in);
+		}
+
+		private Text line(int i) { return lines[(first + i) & 3]; }
+
+		private static boolean startsWith(Text t, char c)
+		{
+			return t.getLength() > 0 && t.getBytes()[0] == c;
+		}
+
+		protected boolean nextRead() throws IOException
+		{
+			while (true)
+			{
+				while (n < 4)
+				{
+					int i = (first + n) & 3;
+					if (!in.readLine(lines[i])) { return false; }
+					keys[i] = in.key();
+					owned[i] = in.owned();
+					n++;
+				}
+
+				// the splits after this one read the rest
+				if (!owned[first]) { return false; }
+
+				if (startsWith(line(0), '@') && startsWith(line(2), '+')
+						&& line(1).getLength() == line(3).getLength())
+				{
+					break;
+				}
+
+				first = (first + 1) & 3;
+				n--;
+			}
+
+			key = keys[first];
+			name = readName(line(0));
+			seq.setLength(0);
+			seq.append(line(1).toString());
+			n = 0;
+
+			return true;
+		}
+	}
+}
@@ -39,8 +39,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -50,62 +50,13 @@ public class FindBubbles extends Configured implements Tool
 {
 	private static final Logger sLogger = Logger.getLogger(FindBubbles.class);
 
-	public static int _min2(int a, int b)
-	{
-		return (a<b) ? a : b;
-	}
-
-	public static int _max2(int a, int b)
-	{
-		return (a>b) ? a : b;
-	}
-
-	public static int _min3(int a, int b, int c)
-	{
-		  return a < b
-		          ? a < c ? a : c
-		          : b < c ? b : c;
-	}
-
-	public static int fastdistance(String word1, String word2)
-	{
-		int len1 = word1.length();
-		int len2 = word2.length();
-
-		int[][] d = new int[len1+1][len2+1];
-
-		for (int i = 0; i <= len1; i++)
-		{
-			d[i][0] = i;
-		}
-
-		for (int j = 0; j <= len2; j++)
-		{
-			d[0][j] = j;
-		}
-
-		for (int i = 1; i <= len1; i++)
-		{
-			char w1 = word1.charAt(i-1);
-			for (int j = 1; j <= len2; j++)
-			{
-				char w2 = word2.charAt(j-1);
-				int e = (w1 == w2) ? 0 : 1;
-
-				d[i][j] = _min3(d[i-1][j]+1, d[i][j-1]+1, d[i-1][j-1]+e);
-			}
-		}
-
-		return d[len1][len2];
-	}
-
 
 
 	// FindBubblesMapper
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class FindBubblesMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 0;
 		public static int MAXBUBBLELEN = 0;
@@ -116,14 +67,13 @@ public class FindBubbles extends Configured implements Tool
 			MAXBUBBLELEN = Integer.parseInt(job.get("MAXBUBBLELEN"));
 		}
 
-		public void map(LongWritable lineid, Text nodetxt,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 		throws IOException
 		{
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
-			output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+			output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			reporter.incrCounter("Brush", "nodes", 1);
             //\\//
             boolean bubble_msg = false;
@@ -185,7 +135,7 @@ public class FindBubbles extends Configured implements Tool
 					float cov = node.cov();
 
 					output.collect(new Text(major),
-							new Text(Node.BUBBLELINKMSG + "\t" +
+							new NodeWritable(Node.BUBBLELINKMSG + "\t" +
 									majord + "\t" + node.getNodeId() + "\t" +
 									minord + "\t" + minor + "\t" +
 									str + "\t" + cov + "\t" + major_oval + "\t" +minor_oval + "\t" + node.len()));
@@ -201,7 +151,7 @@ public class FindBubbles extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class FindBubblesReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 0;
         static public boolean VERBOSE = false;
@@ -261,8 +211,8 @@ public class FindBubbles extends Configured implements Tool
 		}
 
 
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
 			Node node = new Node(nodeid.toString());
@@ -272,15 +222,15 @@ public class FindBubbles extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(key.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.BUBBLELINKMSG))
@@ -400,8 +350,9 @@ public class FindBubbles extends Configured implements Tool
                                     }
 
                                     //output.collect(new Text("[" + ustr + "]"), new Text("[" + vstr + "]"));
-                                    int distance = fastdistance(ustr, vstr);
-                                    int threshold = (int)(_max2(ustr.length(), vstr.length()) * BUBBLEEDITRATE);
+                                    // banded: stops once the distance is known to be over threshold
+                                    int threshold = (int)(Math.max(ustr.length(), vstr.length()) * BUBBLEEDITRATE);
+                                    int distance = EditDistance.distance(ustr, vstr, threshold);
                                     //int threshold = (int)(node.len() * BUBBLEEDITRATE);
 
                                     reporter.incrCounter("Brush", "bubbleschecked", 1);
@@ -458,9 +409,10 @@ public class FindBubbles extends Configured implements Tool
 								}
 
                                 //output.collect(new Text("[" + ustr + "]"), new Text("[" + vstr + "]"));
-								int distance = fastdistance(ustr, vstr);
-								//int threshold = (int)(_max2(ustr.length(), vstr.length()) * BUBBLEEDITRATE);
+								//int threshold = (int)(Math.max(ustr.length(), vstr.length()) * BUBBLEEDITRATE);
                                 int threshold = (int)(node.len() * BUBBLEEDITRATE);
+                                // banded: stops once the distance is known to be over threshold
+								int distance = EditDistance.distance(ustr, vstr, threshold);
 
 								reporter.incrCounter("Brush", "bubbleschecked", 1);
 
@@ -502,7 +454,7 @@ public class FindBubbles extends Configured implements Tool
 			    }
 			}
 
-			output.collect(nodeid, new Text(node.toNodeMsg()));
+			output.collect(nodeid, new NodeWritable(node));
 		}
 	}
 
@@ -526,14 +478,14 @@ public class FindBubbles extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
         //conf.setBoolean("mapred.output.compress", true);
 
 		conf.setMapperClass(FindBubblesMapper.class);
@@ -0,0 +1,83 @@
+/*
+    Fingerprint.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.util.Arrays;
+
+// Polynomial fingerprints of bases modulo the prime 2^61-1. reset() takes
+// the fingerprints of every prefix of a sequence in one pass, after that
+// of(s, e) gives the fingerprint of any stretch [s, e) in constant time,
+// and equal stretches of different sequences get equal fingerprints.
+// Two different stretches of n bases collide with a chance below n/2^61.
+public class Fingerprint
+{
+	public static final long P = (1L << 61) - 1;
+	private static final long BASE = 0x1F3D5B79A3C1L;
+
+	private long [] h = new long[64];      // h[j]: the first j bases
+	private long [] pow = new long[] {1};  // BASE^j
+	private int len = 0;
+
+	// a*b mod P, for a, b < P
+	static long mul(long a, long b)
+	{
+		long a1 = a >>> 31, a0 = a & 0x7FFFFFFFL;
+		long b1 = b >>> 31, b0 = b & 0x7FFFFFFFL;
+		long mid = a1 * b0 + a0 * b1;
+
+		// 2^62 = 2 and 2^61 = 1 mod P
+		return mod((a1 * b1 << 1) + (mid >>> 30) + ((mid & 0x3FFFFFFFL) << 31) + a0 * b0);
+	}
+
+	private static long mod(long x)
+	{
+		x = (x & P) + (x >>> 61);
+		return (x >= P) ? x - P : x;
+	}
+
+	public void reset(PackedSeq seq)
+	{
+		len = seq.length();
+
+		if (h.length <= len) { h = new long[2 * len + 1]; }
+
+		if (pow.length <= len)
+		{
+			int from = pow.length;
+			pow = Arrays.copyOf(pow, 2 * len + 1);
+			for (int j = from; j < pow.length; j++) { pow[j] = mul(pow[j-1], BASE); }
+		}
+
+		h[0] = 0;
+		for (int j = 0; j < len; j++)
+		{
+			// bases count from 1 so runs of A still add up
+			h[j+1] = mod(mul(h[j], BASE) + seq.get(j) + 1);
+		}
+	}
+
+	public int length() { return len; }
+
+	// the stretch [start, end) of the sequence of the last reset
+	public long of(int start, int end)
+	{
+		long v = h[end] - mul(h[start], pow[end - start]);
+		return (v < 0) ? v + P : v;
+	}
+
+	// fingerprints in messages, 12 characters at most
+	public static String encode(long fp)
+	{
+		return Long.toString(fp, Character.MAX_RADIX);
+	}
+
+	public static long decode(String s)
+	{
+		return Long.parseLong(s, Character.MAX_RADIX);
+	}
+}
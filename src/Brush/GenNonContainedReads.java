@@ -10,9 +10,7 @@ package Brush;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Set;
 import java.util.List;
 import java.util.Map;
 
@@ -32,8 +30,7 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -44,94 +41,48 @@ public class GenNonContainedReads extends Configured implements Tool
 	private static final Logger sLogger = Logger.getLogger(MatchPrefix.class);
 
 	public static class GenNonContainedReadsMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<LongWritable, ReadWritable, KmerWritable, NodeWritable>
 	{
 		public static int K = 21;
-		public static int TRIM5 = 0;
-		public static int TRIM3 = 0;
 
 		public void configure(JobConf job)
 		{
 			K = Integer.parseInt(job.get("K"));
 		}
 
-		public void map(LongWritable lineid, Text nodetxt,
-				        OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(LongWritable lineid, ReadWritable read,
+				        OutputCollector<KmerWritable, NodeWritable> output, Reporter reporter)
 		                throws IOException
 		{
-			String[] fields = nodetxt.toString().split("\t");
-
-			if (fields.length != 2 && fields.length != 3 )
-			{
-				//System.err.println("Warning: invalid input: \"" + nodetxt.toString() + "\"");
-				reporter.incrCounter("Brush", "input_lines_invalid", 1);
-				return;
-			}
-
-			String tag = fields[0];
-
-			tag.replaceAll(" ", "_");
-			tag.replaceAll(":", "_");
-			tag.replaceAll("#", "_");
-			tag.replaceAll("-", "_");
-			tag.replaceAll(".", "_");
-
-			String seq = fields[1].toUpperCase();
-
-			// Hard chop a few bases off of each end of the read
-			if (TRIM5 > 0 || TRIM3 > 0)
-			{
-				// System.err.println("orig: " + seq);
-				seq = seq.substring(TRIM5, seq.length() - TRIM5 - TRIM3);
-				// System.err.println("trim: " + seq);
-			}
-
-			// Automatically trim Ns off the very ends of reads
-			/*int endn = 0;
-			while (endn < seq.length() && seq.charAt(seq.length()-1-endn) == 'N') { endn++; }
-			if (endn > 0) { seq = seq.substring(0, seq.length()-endn); }
-
-			int startn = 0;
-			while (startn < seq.length() && seq.charAt(startn) == 'N') { startn++; }
-			if (startn > 0 && (seq.length() - startn) > startn) {
-                seq = seq.substring(startn, seq.length() - startn);
-            }*/
-            //if (startn > 0) { seq = seq.substring(startn, seq.length() - startn); }
-
 			// Check for non-dna characters
-			if (seq.matches(".*[^ACGT].*"))
+			if (read.hasN())
 			{
-				//System.err.println("WARNING: non-DNA characters found in " + tag + ": " + seq);
 				reporter.incrCounter("Brush", "reads_skipped", 1);
 				return;
 			}
 
 			// check for short reads
-			if (seq.length() <= K)
+			if (read.length() <= K)
 			{
-				//System.err.println("WARNING: read " + tag + " is too short: " + seq);
 				reporter.incrCounter("Brush", "reads_short", 1);
 				return;
 			}
 
 			// Now emit the prefix of the reads
-            Node node = new Node(tag);
-            String prefix_tmp = seq.substring(0, K);
-            String prefix = Node.str2dna(prefix_tmp);
-            node.setstr(seq);
+            Node node = new Node(read.getName());
+            node.setSeq(read.getSeq());
             node.setCoverage(1);
-            output.collect(new Text(prefix), new Text("r" + "\t" + node.toNodeMsg(true)));
-            String prefix_rc_tmp = Node.rc(seq).substring(0, K);
-            String prefix_rc = Node.str2dna(prefix_rc_tmp);
-            output.collect(new Text(prefix_rc), new Text("f" + "\t" + node.toNodeMsg(true)));
+            PackedSeq packed = node.getSeq();
+            output.collect(new KmerWritable(packed.subseq(0, K)), new NodeWritable("r" + "\t" + node.getNodeId(), node));
+            output.collect(new KmerWritable(packed.rc().subseq(0, K)), new NodeWritable("f" + "\t" + node.getNodeId(), node));
 
 			reporter.incrCounter("Brush", "reads_good", 1);
-			reporter.incrCounter("Brush", "reads_goodbp", seq.length());
+			reporter.incrCounter("Brush", "reads_goodbp", read.length());
 		}
 	}
 
 	public static class GenNonContainedReadsReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<KmerWritable, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 0;
 
@@ -139,8 +90,8 @@ public class GenNonContainedReads extends Configured implements Tool
 			K = Integer.parseInt(job.get("K"));
 		}
 
-		public void reduce(Text prefix, Iterator<Text> iter,
-						   OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(KmerWritable prefix, Iterator<NodeWritable> iter,
+						   OutputCollector<Text, NodeWritable> output, Reporter reporter)
 						   throws IOException
 		{
             //Map<String, Node> nodes = new HashMap<String, Node>();
@@ -148,15 +99,15 @@ public class GenNonContainedReads extends Configured implements Tool
             Map<String, Node> nodes_fr = new HashMap<String, Node>();
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
-				if (vals[2].equals(Node.NODEMSG))
+				if (msg.hasNode())
 				{
                     Node node = new Node(vals[1]);
                     //node.fromNodeMsg(msg);
-                    node.parseNodeMsg(vals, 2);
+                    node.parseNodeMsg(msg.getNode());
                     nodes_fr.put(node.getNodeId() + "|" + vals[0], node);
                     if (vals[0].equals("f")) {
                         //nodes.put(node.getNodeId(), node);
@@ -169,81 +120,49 @@ public class GenNonContainedReads extends Configured implements Tool
 				}
 			}
 
-            //Map<String, Node> Contained_Nodes = new HashMap<String, Node>();
-            //Map<String, Node> Filter_Nodes = new HashMap<String, Node>();
+            // Group the bucket by whole read, each entry turned to the strand
+            // its tag says: a read and its exact duplicates (same strand or
+            // reverse complement) land in one group, found by the packed
+            // sequence hash instead of comparing every pair. Groups keep
+            // the order of nodes_fr, so coverage and pair ends come out as
+            // the pairwise scan gave them.
+            Map<PackedSeq, List<String>> groups = new HashMap<PackedSeq, List<String>>();
+            for (String nodeid_dir : nodes_fr.keySet())
+            {
+                String dir = nodeid_dir.substring(nodeid_dir.indexOf("|")+1);
+                PackedSeq seq = nodes_fr.get(nodeid_dir).getSeq();
+                if (!dir.equals("f")) {
+                    seq = seq.rc();
+                }
+
+                List<String> group = groups.get(seq);
+                if (group == null) {
+                    group = new ArrayList<String>();
+                    groups.put(seq, group);
+                }
+                group.add(nodeid_dir);
+            }
+
             for (int i = 0; i < nodes.size(); i++) {
                 Node node = nodes.get(i);
-                for(String nodeid_dir : nodes_fr.keySet())
+                for(String nodeid_dir : groups.get(node.getSeq()))
                 {
-                    //System.err.println(nodeid_dir + " XX");
                     String id = nodeid_dir.substring(0, nodeid_dir.indexOf("|"));
-                    String dir = nodeid_dir.substring(nodeid_dir.indexOf("|")+1);
                     if (node.getNodeId().equals(id)) {
                         continue;
                     }
                     Node verify_node = nodes_fr.get(nodeid_dir);
-                    String verify_str;
-                    if (dir.equals("f")){
-                        verify_str = verify_node.str();
-                    } else {
-                        verify_str = Node.rc(verify_node.str());
-                    }
-
 
-                    if (node.str().equals(verify_str)) {
-                        if (node.getNodeId().compareTo(verify_node.getNodeId()) < 0) {
-                            node.setCoverage(node.cov()+1);
-                            node.addPairEnd(verify_node.getNodeId());
-                        } else {
-                            node.setCustom("n", "1"); // n = CONTAINED
-                            reporter.incrCounter("Brush", "contained", 1);
-                            break;
-                        }
-                    } else {
-                       /* int distance = Node.getLevenshteinDistance(node.str(),verify_str);
-                        if (node.str().length() > verify_str.length()) {
-                            if ((float)distance/(float)node.str().length() < 0.03f) {
-                                if (node.getNodeId().compareTo(verify_node.getNodeId()) < 0) {
-                                    node.setCoverage(node.cov()+1);
-                                    node.addPairEnd(verify_node.getNodeId());
-                                } else {
-                                    node.setCustom("n", "1"); // n = CONTAINED
-                                    reporter.incrCounter("Brush", "contained", 1);
-                                    break;
-                                }
-                            }
-                        } else if (node.str().length() < verify_node.str().length()) {
-                            if ((float)distance/(float)verify_node.str().length() < 0.03f) {
-                                if (node.getNodeId().compareTo(verify_node.getNodeId()) < 0) {
-                                    node.setCoverage(node.cov()+1);
-                                } else {
-                                    node.setCustom("n", "1"); // n = CONTAINED
-                                    reporter.incrCounter("Brush", "contained", 1);
-                                    break;
-                                }
-                            }
-
-                        } else {
-                            if ((float)distance/(float)node.str().length() < 0.03f) {
-                                if (node.getNodeId().compareTo(verify_node.getNodeId()) < 0) {
-                                    node.setCoverage(node.cov()+1);
-                                } else {
-                                    node.setCustom("n", "1"); // n = CONTAINED
-                                    reporter.incrCounter("Brush", "contained", 1);
-                                    break;
-                                }
-                            }
-                        }*/
-                    }
-                    // for different length
-                    /*if (node.str().length() > verify_str.length() && node.str().substring(0, verify_str.length()).equals(verify_str)){
+                    if (node.getNodeId().compareTo(verify_node.getNodeId()) < 0) {
                         node.setCoverage(node.cov()+1);
-                    } else if (node.str().length() < verify_node.str().length() && verify_str.substring(0, node.str().length()).equals(node.str().length())) {
+                        node.addPairEnd(verify_node.getNodeId());
+                    } else {
                         node.setCustom("n", "1"); // n = CONTAINED
+                        reporter.incrCounter("Brush", "contained", 1);
                         break;
-                    }*/
+                    }
                 }
-                output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+                output.collect(new Text(node.getNodeId()), new NodeWritable(node));
                 reporter.incrCounter("Brush", "nodecount", 1);
             }
 
@@ -267,14 +186,14 @@ public class GenNonContainedReads extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(ReadInputFormat.formatOf(conf, inputPath));
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
-		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputKeyClass(KmerWritable.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
         
         //conf.setBoolean("mapred.output.compress", true);
         //conf.setClass("mapred.output.compression.codec", GzipCodec.class,CompressionCodec.class);
@@ -34,8 +34,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -49,14 +49,13 @@ public class GenReverseEdge extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class GenReverseEdgeMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
-		public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
                 throws IOException
         {
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			for (String key : Node.edgetypes)
             {
@@ -69,14 +68,14 @@ public class GenReverseEdge extends Configured implements Tool
                         String oval_size = vals[1];
                         //String con = Node.flip_dir(adj) + "f";
                         String con = Node.flip_link(key);
-                        output.collect(new Text(edge_id), new Text(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + node.str_raw() + "\t" + con + "\t" + oval_size));
+                        output.collect(new Text(edge_id), new NodeWritable(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + node.str_raw() + "\t" + con + "\t" + oval_size));
                         //\\// emit reverse edge
                         //output.collect(new Text(edge_id), new Text(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + node.str_raw() + "\t" + key + "\t" + oval_size));
                     }
                 }
 			}
             List<String> emit_node = new ArrayList<String>();
-            output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+            output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			reporter.incrCounter("Brush", "nodes", 1);
         }
 	}
@@ -86,7 +85,7 @@ public class GenReverseEdge extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class GenReverseEdgeReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
         private static int K = 0;
 
@@ -146,8 +145,8 @@ public class GenReverseEdge extends Configured implements Tool
         }
 
 
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
 			Node node = new Node(nodeid.toString());
@@ -157,15 +156,15 @@ public class GenReverseEdge extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(key.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.OVALMSG))
@@ -207,8 +206,7 @@ public class GenReverseEdge extends Configured implements Tool
                     int oval_size = olist.get(i).overlap_size;
                     String edge_content = oval_id + "!" + oval_size;
                     //\\\\\\\\\\\ filter by already existing edge
-                    List<String> exist_edge = node.getEdges(oval_type);
-                    if (exist_edge != null && exist_edge.contains(edge_content)){
+                    if (node.hasEdge(oval_type, oval_id, oval_size)){
                         continue;
                     }
 
@@ -239,7 +237,7 @@ public class GenReverseEdge extends Configured implements Tool
                     }
                 }
             }
-            output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+            output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 
 		}
     }
@@ -260,14 +258,14 @@ public class GenReverseEdge extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
         //conf.setBoolean("mapred.output.compress", true);
 
 		conf.setMapperClass(GenReverseEdgeMapper.class);
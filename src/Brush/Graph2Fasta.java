@@ -33,8 +33,10 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.TextInputFormat;
 import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.MultipleInputs;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -48,33 +50,98 @@ public class Graph2Fasta extends Configured implements Tool
 	// Graph2FastaMapper
 	///////////////////////////////////////////////////////////////////////////
 
+	private static void writeFasta(String name, Node node, OutputCollector<Text, Text> output)
+	        throws IOException
+	{
+		String str = node.str();
+
+		output.collect(new Text(">" + name), new Text("len=" + str.length() + "\tcov=" + node.cov()));
+
+		int LINE_LEN = 60;
+
+		for (int i = 0; i < str.length(); i+=LINE_LEN)
+		{
+			int end = i + LINE_LEN;
+			if (end > str.length()) { end = str.length();}
+
+			String line = str.substring(i, end);
+			output.collect(new Text(line), null);
+		}
+	}
+
 	private static class Graph2FastaMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, Text>
 	{
-		public void map(LongWritable lineid, Text nodetxt,
+		public void map(Text nodeid, NodeWritable nodemsg,
                 OutputCollector<Text, Text> output, Reporter reporter)
                 throws IOException
         {
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			reporter.incrCounter("Brush", "nodes", 1);
 
-			String str = node.str();
+			writeFasta(node.getNodeId(), node, output);
+        }
+	}
+
 
-			output.collect(new Text(">" + node.getNodeId()), new Text("len=" + str.length() + "\tcov=" + node.cov()));
+	// Graph2FastaNameJoin: contigs are named after one of their reads, so
+	// join the graph with the ReadDictionary names to print the original name
+	///////////////////////////////////////////////////////////////////////////
 
-			int LINE_LEN = 60;
+	private static class GraphJoinMapper extends MapReduceBase
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
+	{
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
+                throws IOException
+        {
+			output.collect(nodeid, nodemsg);
+        }
+	}
+
+	private static class NamesJoinMapper extends MapReduceBase
+    implements Mapper<LongWritable, Text, Text, NodeWritable>
+	{
+		public void map(LongWritable lineid, Text txt,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
+                throws IOException
+        {
+			String [] vals = txt.toString().split("\t");
+			output.collect(new Text(vals[0]), new NodeWritable(ReadDictionary.NAMES + "\t" + vals[1]));
+        }
+	}
 
-			for (int i = 0; i < str.length(); i+=LINE_LEN)
+	private static class Graph2FastaReducer extends MapReduceBase
+	implements Reducer<Text, NodeWritable, Text, Text>
+	{
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, Text> output, Reporter reporter)
+				throws IOException
+		{
+			Node node = null;
+			String name = nodeid.toString();
+
+			while (iter.hasNext())
 			{
-				int end = i + LINE_LEN;
-				if (end > str.length()) { end = str.length();}
+				NodeWritable msg = iter.next();
+
+				if (msg.hasNode())
+				{
+					node = msg.getNode();
+				}
+				else
+				{
+					name = msg.getMessage().split("\t")[1];
+				}
+			}
 
-				String line = str.substring(i, end);
-				output.collect(new Text(line), null);
+			if (node != null)
+			{
+				reporter.incrCounter("Brush", "nodes", 1);
+				writeFasta(name, node, output);
 			}
-        }
+		}
 	}
 
 
@@ -82,30 +149,51 @@ public class Graph2Fasta extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public RunningJob run(String inputPath, String outputPath) throws Exception
+	{
+		return run(inputPath, null, outputPath);
+	}
+
+	// namesPath: the names-* files of ReadDictionary, or null to keep the ids
+	public RunningJob run(String inputPath, String namesPath, String outputPath) throws Exception
 	{
 		sLogger.info("Tool name: Graph2Fasta");
 		sLogger.info(" - input: "  + inputPath);
+		sLogger.info(" - names: "  + namesPath);
 		sLogger.info(" - output: " + outputPath);
 
 		JobConf conf = new JobConf(Graph2Fasta.class);
 		conf.setJobName("Graph2Fasta " + inputPath);
 
-		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
 		conf.setOutputFormat(TextOutputFormat.class);
 
-		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
-
 		conf.setOutputKeyClass(Text.class);
 		conf.setOutputValueClass(Text.class);
 
-		conf.setMapperClass(Graph2FastaMapper.class);
-
 		BrushConfig.initializeConfiguration(conf);
-		conf.setNumReduceTasks(0);
+
+		if (namesPath == null)
+		{
+			FileInputFormat.addInputPath(conf, new Path(inputPath));
+			conf.setInputFormat(SequenceFileInputFormat.class);
+
+			conf.setMapOutputKeyClass(Text.class);
+			conf.setMapOutputValueClass(Text.class);
+
+			conf.setMapperClass(Graph2FastaMapper.class);
+			conf.setNumReduceTasks(0);
+		}
+		else
+		{
+			MultipleInputs.addInputPath(conf, new Path(inputPath), SequenceFileInputFormat.class, GraphJoinMapper.class);
+			MultipleInputs.addInputPath(conf, new Path(namesPath), TextInputFormat.class, NamesJoinMapper.class);
+
+			conf.setMapOutputKeyClass(Text.class);
+			conf.setMapOutputValueClass(NodeWritable.class);
+
+			conf.setReducerClass(Graph2FastaReducer.class);
+		}
 
 		//delete the output directory if it exists already
 		FileSystem.get(conf).delete(new Path(outputPath), true);
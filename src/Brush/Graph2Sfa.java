@@ -33,7 +33,7 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.TextOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
@@ -49,27 +49,27 @@ public class Graph2Sfa extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	private static class Graph2SfaMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, ReadWritable>
 	{
-		public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+		private ReadWritable read = new ReadWritable();
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, ReadWritable> output, Reporter reporter)
                 throws IOException
         {
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
-
-			
+			Node node = nodemsg.getNode();
 
-			String str = node.str();
+			// prints as the sequence text in the .sfa output
+			read.set(node.getNodeId(), node.getSeq());
 
 			//output.collect(new Text(">" + node.getNodeId()), new Text("len=" + str.length() + "\tcov=" + node.cov()));
             if (/*!node.hasCustom("n")*/ !node.isUnique()) {
                 if (node.cov() == 1) {
-                    output.collect(new Text( node.getNodeId()), new Text(str));
+                    output.collect(new Text( node.getNodeId()), read);
                     reporter.incrCounter("Brush", "nodes", 1);
                 } else {
                     for(int i=1; i < node.cov(); i++) {
-                        output.collect(new Text( i + "_" + node.getNodeId()), new Text(str));
+                        output.collect(new Text( i + "_" + node.getNodeId()), read);
                         reporter.incrCounter("Brush", "nodes", 1);
                     }
                 }
@@ -92,6 +92,12 @@ public class Graph2Sfa extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public RunningJob run(String inputPath, String outputPath) throws Exception
+	{
+		return run(inputPath, outputPath, false);
+	}
+
+	// sfa2: write the binary .sfa2 container instead of .sfa text
+	public RunningJob run(String inputPath, String outputPath, boolean sfa2) throws Exception
 	{
 		sLogger.info("Tool name: Graph2Sfa");
 		sLogger.info(" - input: "  + inputPath);
@@ -103,14 +109,14 @@ public class Graph2Sfa extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(sfa2 ? Sfa2OutputFormat.class : TextOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(ReadWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(ReadWritable.class);
 
 		conf.setMapperClass(Graph2SfaMapper.class);
 
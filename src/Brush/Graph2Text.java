@@ -0,0 +1,118 @@
+/*
+    The file is derived from Contrail Project which is developed by Michael Schatz, 
+    Jeremy Chambers, Avijit Gupta, Rushil Gupta, David Kelley, Jeremy Lewi, 
+    Deepak Nettem, Dan Sommer, Mihai Pop, Schatz Lab and Cold Spring Harbor Laboratory, 
+    and is released under Apache License 2.0 at: 
+    http://sourceforge.net/apps/mediawiki/contrail-bio/
+*/
+package Brush;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+
+public class Graph2Text extends Configured implements Tool
+{
+	private static final Logger sLogger = Logger.getLogger(Graph2Text.class);
+
+
+	// Graph2TextMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	// dumps a binary graph in the old tab separated node format
+	private static class Graph2TextMapper extends MapReduceBase
+    implements Mapper<Text, NodeWritable, Text, Text>
+	{
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, Text> output, Reporter reporter)
+                throws IOException
+        {
+			reporter.incrCounter("Brush", "nodes", 1);
+
+			output.collect(nodeid, new Text(nodemsg.toString()));
+        }
+	}
+
+
+	// Run Tool
+	///////////////////////////////////////////////////////////////////////////
+
+	public RunningJob run(String inputPath, String outputPath) throws Exception
+	{
+		sLogger.info("Tool name: Graph2Text");
+		sLogger.info(" - input: "  + inputPath);
+		sLogger.info(" - output: " + outputPath);
+
+		JobConf conf = new JobConf(Graph2Text.class);
+		conf.setJobName("Graph2Text " + inputPath);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(TextOutputFormat.class);
+
+		conf.setMapOutputKeyClass(Text.class);
+		conf.setMapOutputValueClass(Text.class);
+
+		conf.setOutputKeyClass(Text.class);
+		conf.setOutputValueClass(Text.class);
+
+		conf.setMapperClass(Graph2TextMapper.class);
+
+		conf.setNumReduceTasks(0);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(outputPath), true);
+
+		return JobClient.runJob(conf);
+	}
+
+
+	// Parse Arguments and run
+	///////////////////////////////////////////////////////////////////////////
+
+	public int run(String[] args) throws Exception
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: Graph2Text <graph dir> <text dir>");
+			return -1;
+		}
+
+		String inputPath  = args[0];
+		String outputPath = args[1];
+
+		run(inputPath, outputPath);
+		return 0;
+	}
+
+
+	// Main
+	///////////////////////////////////////////////////////////////////////////
+
+	public static void main(String[] args) throws Exception
+	{
+		int res = ToolRunner.run(new Configuration(), new Graph2Text(), args);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,186 @@
+/*
+    HighKmerFilter.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+
+// The high frequency k-mer list, probed in place. BuildHighKmerList
+// writes each canonical k-mer as its packed words (one long for k <= 32,
+// two otherwise) through ListOutputFormat. A reducer sees its keys in
+// KmerWritable order and the hash partitioner decides which reducer gets
+// a k-mer, so part-i is sorted and a k-mer can only be in the part its
+// hash picks. The filter memory maps the parts and binary searches that
+// one part: nothing is decoded and nothing lands on the heap.
+// A second list, heavy-*, holds the k-mers below UP_KMER that are still
+// frequent enough for MatchPrefix to spread them over several reducers.
+public class HighKmerFilter
+{
+	public static final String HIGH  = "part";
+	public static final String HEAVY = "heavy";
+
+	private final int k;
+	private final int rec;   // bytes per k-mer
+	private final MappedByteBuffer [] parts;
+	private final int [] counts;
+
+	// dir holds the part-* files of one BuildHighKmerList run
+	public HighKmerFilter(File dir, int k) throws IOException
+	{
+		this(dir, HIGH, k);
+	}
+
+	// the list-* files, one per reducer
+	public HighKmerFilter(File dir, String list, int k) throws IOException
+	{
+		this.k = k;
+		rec = (k > 32) ? 16 : 8;
+
+		List<String> names = new ArrayList<String>();
+		for (String name : dir.list())
+		{
+			if (name.startsWith(list + "-")) { names.add(name); }
+		}
+		Collections.sort(names);
+
+		parts = new MappedByteBuffer[names.size()];
+		counts = new int[names.size()];
+
+		for (int i = 0; i < parts.length; i++)
+		{
+			RandomAccessFile f = new RandomAccessFile(new File(dir, names.get(i)), "r");
+			FileChannel ch = f.getChannel();
+
+			if (ch.size() / rec > Integer.MAX_VALUE / rec)
+			{
+				throw new IOException("High kmer list part too large: " + names.get(i));
+			}
+
+			counts[i] = (int) (ch.size() / rec);
+			parts[i] = ch.map(FileChannel.MapMode.READ_ONLY, 0, (long) counts[i] * rec);
+
+			// the mapping stays valid once the file is closed
+			ch.close();
+			f.close();
+		}
+	}
+
+	public long size()
+	{
+		long n = 0;
+		for (int c : counts) { n += c; }
+		return n;
+	}
+
+	// the words of a canonical k-mer, as KmerWritable holds them
+	public boolean contains(long word0, long word1)
+	{
+		if (parts.length == 0) { return false; }
+
+		int p = (KmerWritable.hash(word0, word1, k) & Integer.MAX_VALUE) % parts.length;
+		MappedByteBuffer mb = parts[p];
+
+		int lo = 0;
+		int hi = counts[p] - 1;
+
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int c = KmerWritable.compareUnsigned(mb.getLong(mid * rec), word0);
+
+			if (c == 0 && rec == 16)
+			{
+				c = KmerWritable.compareUnsigned(mb.getLong(mid * rec + 8), word1);
+			}
+
+			if (c < 0)      { lo = mid + 1; }
+			else if (c > 0) { hi = mid - 1; }
+			else            { return true; }
+		}
+
+		return false;
+	}
+
+
+	// for lists whose records carry data in the bits below a k-mer of
+	// k < 32 bases: the record of the k-mer in word0, 0 if there is none
+	public long find(long word0)
+	{
+		if (parts.length == 0) { return 0; }
+
+		long kmask = -1L << (64 - 2 * k);
+		int p = (KmerWritable.hash(word0, 0, k) & Integer.MAX_VALUE) % parts.length;
+		MappedByteBuffer mb = parts[p];
+
+		int lo = 0;
+		int hi = counts[p] - 1;
+
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			long r = mb.getLong(mid * rec);
+			int c = KmerWritable.compareUnsigned(r & kmask, word0);
+
+			if (c < 0)      { lo = mid + 1; }
+			else if (c > 0) { hi = mid - 1; }
+			else            { return r; }
+		}
+
+		return 0;
+	}
+
+
+	// ListOutputFormat
+	///////////////////////////////////////////////////////////////////////////
+
+	// the value names the list, HIGH or HEAVY; every reducer creates both
+	// files, even empty, so the part numbers keep matching the partitions
+	public static class ListOutputFormat extends FileOutputFormat<KmerWritable, Text>
+	{
+		public RecordWriter<KmerWritable, Text> getRecordWriter(FileSystem ignored, JobConf job,
+				String name, Progressable progress) throws IOException
+		{
+			String part = name.substring(name.indexOf('-'));
+			Path file = FileOutputFormat.getTaskOutputPath(job, HIGH + part);
+			Path heavyfile = FileOutputFormat.getTaskOutputPath(job, HEAVY + part);
+			final FSDataOutputStream out = file.getFileSystem(job).create(file, progress);
+			final FSDataOutputStream heavy = heavyfile.getFileSystem(job).create(heavyfile, progress);
+
+			return new RecordWriter<KmerWritable, Text>() {
+				public void write(KmerWritable kmer, Text list) throws IOException
+				{
+					FSDataOutputStream o = list.toString().equals(HEAVY) ? heavy : out;
+					o.writeLong(kmer.getWord0());
+					if (kmer.getK() > 32) { o.writeLong(kmer.getWord1()); }
+				}
+
+				public void close(Reporter reporter) throws IOException
+				{
+					out.close();
+					heavy.close();
+				}
+			};
+		}
+	}
+}
@@ -16,6 +16,7 @@ import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
@@ -38,10 +39,20 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
 
+// Besides the "id\ttrust" list, every reducer writes its trusted ids as a
+// ReadIdSet to trusted-<partition>, so TagTrustedReads can tag the reads
+// map side: the hash partitioner picked the reducer of an id, so only
+// that one set has to be probed.
 public class IdentifyTrustedReads extends Configured implements Tool
 {
 	private static final Logger sLogger = Logger.getLogger(IdentifyTrustedReads.class);
 
+	public static final String TRUSTED = "trusted";
+
+	// trusted ids kept exactly over all the sets, beyond that Bloom filters
+	public static final int EXACT_IDS = 1 << 22;
+	public static final double BLOOM_FP = 0.001;
+
 	public static class IdentifyTrustedReadsMapper extends MapReduceBase
     implements Mapper<LongWritable, Text, Text, IntWritable>
 	{
@@ -61,7 +72,13 @@ public class IdentifyTrustedReads extends Configured implements Tool
         private static int K = 1;
         private static long Readlen = 36;
         //private static long LowBound = 3;
+        private ReadIdSet trusted = new ReadIdSet();
+        private int exact = EXACT_IDS;
+        private JobConf conf = null;
+
 		public void configure(JobConf job) {
+            conf = job;
+            exact = job.getInt("TRUST_EXACT", EXACT_IDS) / Math.max(job.getNumReduceTasks(), 1);
             K = Integer.parseInt(job.get("K"));
             Readlen = Long.parseLong(job.get("READLENGTH"));
             //KmerCov = Long.parseLong(job.get("KmerCov")); 
@@ -91,6 +108,20 @@ public class IdentifyTrustedReads extends Configured implements Tool
             }*/
             
             output.collect(prefix, new IntWritable(TRUST));
+            if (TRUST == 1) {
+                trusted.add(prefix.toString());
+            }
+		}
+
+		public void close() throws IOException
+		{
+			trusted.build(exact, BLOOM_FP);
+
+			String part = String.format("-%05d", conf.getInt("mapred.task.partition", 0));
+			Path file = FileOutputFormat.getTaskOutputPath(conf, TRUSTED + part);
+			FSDataOutputStream out = file.getFileSystem(conf).create(file);
+			trusted.write(out);
+			out.close();
 		}
 	}
 
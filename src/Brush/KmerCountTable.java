@@ -0,0 +1,128 @@
+/*
+    KmerCountTable.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+// In-mapper combining for the k-mer counting stages: an open addressed
+// table from packed k-mer (the two words of a KmerWritable) to a summed
+// count, using primitive arrays so a window costs no objects. The mapper
+// adds every window and flushes the table to the collector whenever add
+// reports it full, and once more from close(). The Combiner below sums
+// whatever still meets in the map side spills.
+public class KmerCountTable
+{
+	private final int k;
+	private final long [] w0;
+	private final long [] w1;
+	private final int [] counts;
+	private final boolean [] used;
+	private final int mask;
+	private final int limit;
+	private int size = 0;
+
+	private final KmerWritable key = new KmerWritable();
+	private final IntWritable val = new IntWritable();
+
+	// room for at least entries k-mers of length k before a flush
+	public KmerCountTable(int k, int entries)
+	{
+		if (k > KmerWritable.MAXK)
+		{
+			throw new IllegalArgumentException("k-mer longer than " + KmerWritable.MAXK + ": " + k);
+		}
+
+		int cap = 16;
+		while (cap < entries + entries / 3) { cap <<= 1; }
+
+		this.k = k;
+		w0 = new long[cap];
+		w1 = new long[cap];
+		counts = new int[cap];
+		used = new boolean[cap];
+		mask = cap - 1;
+		limit = Math.max(entries, 1);
+	}
+
+	public int size() { return size; }
+
+	// adds count to the k-mer; true once the table is full and should be flushed
+	public boolean add(long word0, long word1, int count)
+	{
+		long h = (word0 * 0x9E3779B97F4A7C15L) ^ (word1 * 0xC2B2AE3D27D4EB4FL);
+		int s = (int) (h ^ (h >>> 32)) & mask;
+
+		while (used[s])
+		{
+			if (w0[s] == word0 && w1[s] == word1)
+			{
+				counts[s] += count;
+				return false;
+			}
+
+			s = (s + 1) & mask;
+		}
+
+		used[s] = true;
+		w0[s] = word0;
+		w1[s] = word1;
+		counts[s] = count;
+		size++;
+
+		return size >= limit;
+	}
+
+	// emits every k-mer with its count and empties the table
+	public void flush(OutputCollector<KmerWritable, IntWritable> output) throws IOException
+	{
+		for (int s = 0; s < used.length; s++)
+		{
+			if (used[s])
+			{
+				key.set(w0[s], w1[s], k);
+				val.set(counts[s]);
+				output.collect(key, val);
+				used[s] = false;
+			}
+		}
+
+		size = 0;
+	}
+
+
+	// Combiner
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class Combiner extends MapReduceBase
+	implements Reducer<KmerWritable, IntWritable, KmerWritable, IntWritable>
+	{
+		private IntWritable sum = new IntWritable();
+
+		public void reduce(KmerWritable kmer, Iterator<IntWritable> iter,
+						   OutputCollector<KmerWritable, IntWritable> output, Reporter reporter)
+						   throws IOException
+		{
+			int s = 0;
+
+			while (iter.hasNext())
+			{
+				s += iter.next().get();
+			}
+
+			sum.set(s);
+			output.collect(kmer, sum);
+		}
+	}
+}
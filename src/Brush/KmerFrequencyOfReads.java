@@ -5,22 +5,19 @@
 
 package Brush;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.net.URI;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Set;
-import java.util.List;
-import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.filecache.DistributedCache;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.JobClient;
@@ -31,90 +28,157 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.TextOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
-
+// The exact k-mer frequencies of every read, "id\tmin\tmedian" for each.
+//
+// The first job counts every canonical 24-mer, weighted by the coverage
+// of its read, and keeps each as one long: the 48 bits of the k-mer,
+// then its count in the low 16 bits, capped at MAXCOUNT. The default
+// partitioner hashes a k-mer as HighKmerFilter looks it up and a reducer
+// sees its keys sorted, so the table goes out through HighKmerFilter's
+// list format. The second job is map only: it memory maps the table and
+// probes every window of each read, so no read id is shuffled and no
+// reducer holds the reads of a k-mer.
 public class KmerFrequencyOfReads extends Configured implements Tool
 {
-	private static final Logger sLogger = Logger.getLogger(MatchPrefix.class);
+	private static final Logger sLogger = Logger.getLogger(KmerFrequencyOfReads.class);
 
-	public static class KmerFrequencyOfReadsMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+	public static final int K = 24;
+	public static final int MAXCOUNT = 0xFFFF;
+
+
+	// CountMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class CountMapper extends MapReduceBase
+    implements Mapper<Text, NodeWritable, KmerWritable, IntWritable>
 	{
-		public static int K = 0;
-		public static int TRIM5 = 0;
-		public static int TRIM3 = 0;
+		private KmerScanner scanner = new KmerScanner(K);
+
+		// sums the windows of the whole split, null when KMER_TABLE is 0
+		private KmerCountTable table = null;
+		private OutputCollector<KmerWritable, IntWritable> out = null;
 
 		public void configure(JobConf job)
 		{
-			K = 24;//Integer.parseInt(job.get("K"));
+			int entries = job.getInt("KMER_TABLE", 0);
+			if (entries > 0) { table = new KmerCountTable(K, entries); }
 		}
 
-		public void map(LongWritable lineid, Text nodetxt,
-				        OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<KmerWritable, IntWritable> output, Reporter reporter)
 		                throws IOException
 		{
-            Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
-            if (!node.hasCustom("n")){
-                reporter.incrCounter("Brush", "nodes", 1);
-                //slide the K-mer windows for each read in both strands
-                int end = node.len() - K;
-                for (int i = 0; i < end; i++)
-                {
-                    String window_tmp = node.str().substring(i,   i+K);
-                    String window_r_tmp = Node.rc(node.str().substring(node.len() - K - i, node.len() - i));
-                    //String window_r_tmp = Node.rc(window_tmp);
-                    String window = Node.str2dna(window_tmp);
-                    String window_r = Node.str2dna(window_r_tmp);
-                    //output.collect(new Text(window), new IntWritable((int)node.cov()));
-                    //output.collect(new Text(window_r), new IntWritable((int)node.cov()));
-                    output.collect(new Text(window), new Text((int)node.cov() + "|" + node.getNodeId()));
-                    output.collect(new Text(window_r), new Text((int)node.cov() + "|" + node.getNodeId()));
-                    reporter.incrCounter("Brush", "Allkmer", (int)node.cov());
+            out = output;
+            Node node = nodemsg.getNode();
+            if (node.hasCustom("n")) { return; }
+
+            reporter.incrCounter("Brush", "nodes", 1);
+
+            int cov = (int) node.cov();
+            scanner.reset(node.getSeq());
+            while (scanner.next())
+            {
+                if (table == null) {
+                    KmerWritable kmer = new KmerWritable();
+                    scanner.get(kmer);
+                    output.collect(kmer, new IntWritable(cov));
+                } else if (table.add(scanner.word0(), 0, cov)) {
+                    table.flush(output);
                 }
             }
 		}
+
+		public void close() throws IOException
+		{
+			if (table != null && out != null && table.size() > 0)
+			{
+				table.flush(out);
+			}
+		}
 	}
 
-	public static class KmerFrequencyOfReadsReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+
+	// CountReducer
+	///////////////////////////////////////////////////////////////////////////
+
+	// one record per k-mer, its count below it
+	public static class CountReducer extends MapReduceBase
+	implements Reducer<KmerWritable, IntWritable, KmerWritable, Text>
 	{
-		private static int K = 0;
-        //private static int OVALSIZE = 0;
-        private static int All_Kmer = 0;
+		private static final Text LIST = new Text(HighKmerFilter.HIGH);
 
-		public void configure(JobConf job) {
-			K = 24;//Integer.parseInt(job.get("K"));
-		}
+		private KmerWritable record = new KmerWritable();
 
-		public void reduce(Text prefix, Iterator<Text> iter,
-						   OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(KmerWritable kmer, Iterator<IntWritable> iter,
+						   OutputCollector<KmerWritable, Text> output, Reporter reporter)
 						   throws IOException
 		{
-            int sum =0;
-            int read_count = 0;
-            List<String> ReadID_list = new ArrayList<String>();
-            while(iter.hasNext())
+			long sum = 0;
+			while (iter.hasNext())
 			{
-                String msg = iter.next().toString();
-				String [] vals = msg.split("\\|");
-                sum += Integer.parseInt(vals[0]);
-                if (ReadID_list.contains(vals[1])){
-                    // do nothing
-                } else {
-                    read_count = read_count + 1;
-                    ReadID_list.add(vals[1]);
-                }
-            }
-            for(int i=0; i < ReadID_list.size(); i++) {
-                output.collect(new Text(ReadID_list.get(i)), new Text(sum+""));
+				sum += iter.next().get();
+			}
+
+			record.set(kmer.getWord0() | Math.min(sum, MAXCOUNT), 0, K);
+			output.collect(record, LIST);
+			reporter.incrCounter("Brush", "distinct_kmer", 1);
+		}
+	}
+
+
+	// KmerFrequencyOfReadsMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class KmerFrequencyOfReadsMapper extends MapReduceBase
+    implements Mapper<Text, NodeWritable, Text, Text>
+	{
+		private KmerScanner scanner = new KmerScanner(K);
+		private HighKmerFilter table = null;
+		private int [] freq = new int[256];
+		private Text val = new Text();
+
+		public void configure(JobConf job)
+		{
+			try
+			{
+				Path [] localFiles = DistributedCache.getLocalCacheFiles(job);
+				table = new HighKmerFilter(new File(localFiles[0].toString()), K);
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException("Can not load the k-mer count table: " + e.getMessage());
+			}
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<Text, Text> output, Reporter reporter)
+		                throws IOException
+		{
+            Node node = nodemsg.getNode();
+            if (node.hasCustom("n")) { return; }
+
+            int n = 0;
+            scanner.reset(node.getSeq());
+            while (scanner.next())
+            {
+                if (n == freq.length) { freq = Arrays.copyOf(freq, 2 * n); }
+                freq[n++] = (int) table.find(scanner.word0()) & MAXCOUNT;
             }
-            
+
+            // shorter than K
+            if (n == 0) { return; }
+
+            reporter.incrCounter("Brush", "Allkmer", n);
+
+            Arrays.sort(freq, 0, n);
+            val.set(freq[0] + "\t" + freq[n / 2]);
+            output.collect(nodeid, val);
 		}
 	}
 
@@ -126,31 +190,64 @@ public class KmerFrequencyOfReads extends Configured implements Tool
 		sLogger.info(" - input: "  + inputPath);
 		sLogger.info(" - output: " + outputPath);
 
+		String tablePath = outputPath + ".table";
+
 		JobConf conf = new JobConf(KmerFrequencyOfReads.class);
-		conf.setJobName("KmerFrequencyOfReads " + inputPath + " " + BrushConfig.K);
+		conf.setJobName("KmerFrequencyOfReads table " + inputPath + " " + K);
 
 		BrushConfig.initializeConfiguration(conf);
 
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(tablePath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(HighKmerFilter.ListOutputFormat.class);
+
+		conf.setMapOutputKeyClass(KmerWritable.class);
+		conf.setMapOutputValueClass(IntWritable.class);
+
+		conf.setOutputKeyClass(KmerWritable.class);
+		conf.setOutputValueClass(Text.class);
+
+		conf.setMapperClass(KmerFrequencyOfReads.CountMapper.class);
+		conf.setCombinerClass(KmerCountTable.Combiner.class);
+		conf.setReducerClass(KmerFrequencyOfReads.CountReducer.class);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(tablePath), true);
+
+		JobClient.runJob(conf);
+
+		// probe the table with the windows of each read
+		conf = new JobConf(KmerFrequencyOfReads.class);
+		conf.setJobName("KmerFrequencyOfReads " + inputPath + " " + K);
+
+		BrushConfig.initializeConfiguration(conf);
+		DistributedCache.addCacheFile(new URI(tablePath), conf);
+
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
 		conf.setOutputFormat(TextOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		//conf.setMapOutputValueClass(IntWritable.class);
-        conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(Text.class);
 
 		conf.setOutputKeyClass(Text.class);
 		conf.setOutputValueClass(Text.class);
 
 		conf.setMapperClass(KmerFrequencyOfReads.KmerFrequencyOfReadsMapper.class);
-		conf.setReducerClass(KmerFrequencyOfReads.KmerFrequencyOfReadsReducer.class);
+		conf.setNumReduceTasks(0);
 
 		//delete the output directory if it exists already
 		FileSystem.get(conf).delete(new Path(outputPath), true);
 
-		return JobClient.runJob(conf);
+		RunningJob job = JobClient.runJob(conf);
+
+		FileSystem.get(conf).delete(new Path(tablePath), true);
+
+		return job;
 	}
 
 	public int run(String[] args) throws Exception
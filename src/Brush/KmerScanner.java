@@ -0,0 +1,151 @@
+/*
+    KmerScanner.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+// Slides a k-mer window (k <= 64) over a PackedSeq one base at a time,
+// keeping the forward and reverse complement words up to date in O(1)
+// per base instead of cutting and reversing every window. The words are
+// laid out as KmerWritable holds them (first base in the high bits of
+// word 0, bases 32..63 in word 1), so they can be probed, counted or
+// emitted as they are. Nothing is allocated after construction; reset
+// the scanner for every read.
+//
+//   scanner.reset(seq);
+//   while (scanner.next()) { ... scanner.offset(), scanner.word0() ... }
+public class KmerScanner
+{
+	private final int k;
+	private final long lomask;   // right aligned state: low 64 bits
+	private final long himask;   // and the 2k-64 bits above, k > 32
+	private final int shift;     // 128 - 2k, to left align the state
+	private final int rcshift;   // where a new base enters the reverse word
+
+	private PackedSeq seq = null;
+	private int pos = 0;         // next base to read
+	private int run = 0;         // length of the run of the last base
+	private int last = -1;
+
+	private long fhi, flo, rhi, rlo;
+
+	// current window
+	private long f0, f1, r0, r1;
+	private int cmp = 0;
+
+	public KmerScanner(int k)
+	{
+		if (k < 1 || k > KmerWritable.MAXK)
+		{
+			throw new IllegalArgumentException("k must be in 1.." + KmerWritable.MAXK + ": " + k);
+		}
+
+		this.k = k;
+		lomask = (k >= 32) ? -1L : ~(-1L << (2 * k));
+		himask = (k > 32) ? ((k == 64) ? -1L : ~(-1L << (2 * k - 64))) : 0;
+		shift = 128 - 2 * k;
+		rcshift = (k > 32) ? 2 * k - 66 : 2 * k - 2;
+	}
+
+	public int k() { return k; }
+
+	public void reset(PackedSeq s)
+	{
+		seq = s;
+		pos = 0;
+		run = 0;
+		last = -1;
+		fhi = flo = rhi = rlo = 0;
+	}
+
+	// moves to the next window, false once the sequence is used up
+	public boolean next()
+	{
+		if (pos >= seq.length()) { return false; }
+
+		// fill the first window, then one base per call
+		do
+		{
+			int b = seq.get(pos++);
+			long c = b ^ 3;
+
+			run = (b == last) ? run + 1 : 1;
+			last = b;
+
+			if (k > 32)
+			{
+				fhi = ((fhi << 2) | (flo >>> 62)) & himask;
+				flo = (flo << 2) | b;
+				rlo = (rlo >>> 2) | (rhi << 62);
+				rhi = (rhi >>> 2) | (c << rcshift);
+			}
+			else
+			{
+				flo = ((flo << 2) | b) & lomask;
+				rlo = (rlo >>> 2) | (c << rcshift);
+			}
+		}
+		while (pos < k && pos < seq.length());
+
+		if (pos < k) { return false; }
+
+		if (k > 32)
+		{
+			f0 = (shift == 0) ? fhi : (fhi << shift) | (flo >>> (64 - shift));
+			f1 = flo << shift;
+			r0 = (shift == 0) ? rhi : (rhi << shift) | (rlo >>> (64 - shift));
+			r1 = rlo << shift;
+		}
+		else
+		{
+			f0 = flo << (64 - 2 * k);
+			f1 = 0;
+			r0 = rlo << (64 - 2 * k);
+			r1 = 0;
+		}
+
+		cmp = KmerWritable.compareUnsigned(f0, r0);
+		if (cmp == 0) { cmp = KmerWritable.compareUnsigned(f1, r1); }
+
+		return true;
+	}
+
+	// start of the current window on the forward strand
+	public int offset() { return pos - k; }
+
+	public long forward0() { return f0; }
+	public long forward1() { return f1; }
+	public long reverse0() { return r0; }
+	public long reverse1() { return r1; }
+
+	// sign of forward compared to reverse complement, 0 for a palindrome
+	public int strand() { return cmp; }
+
+	// the canonical (smaller) strand; the forward one for a palindrome
+	public long word0() { return (cmp <= 0) ? f0 : r0; }
+	public long word1() { return (cmp <= 0) ? f1 : r1; }
+
+	// the base the forward window is made of, or -1 if it is mixed
+	public int homopolymer()
+	{
+		return (run >= k) ? last : -1;
+	}
+
+	public void get(KmerWritable kmer)
+	{
+		kmer.set(word0(), word1(), k);
+	}
+
+	public void getForward(KmerWritable kmer)
+	{
+		kmer.set(f0, f1, k);
+	}
+
+	public void getReverse(KmerWritable kmer)
+	{
+		kmer.set(r0, r1, k);
+	}
+}
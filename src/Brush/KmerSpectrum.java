@@ -0,0 +1,585 @@
+/*
+    KmerSpectrum.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.LongSumReducer;
+import org.apache.hadoop.mapred.lib.NullOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+// The k-mer spectrum of the reads without shuffling k-mers, in three map
+// side jobs. The first counts the distinct k-mers in HyperLogLog
+// registers, DISTINCT_P bits of k-mer hash to a register, so that the
+// sample rate below can be picked. The second sketches the canonical k-mer counts of each split
+// in a CountMinSketch and merges the sketches. The second scans the reads
+// again against the merged sketch and adds every occurrence to the bin
+// of its count: a k-mer seen c times puts c occurrences in bin c, so bin
+// c over c is the number of k-mers seen c times. Only the sketch slices
+// and the bins are shuffled.
+//
+// Big inputs are sampled by k-mer hash, 1 in 2^SPECTRUM_SAMPLE, so that
+// the distinct k-mers sampled fill the sketch about half and it hardly
+// overestimates; sampling whole k-mers keeps the shape of the spectrum
+// and the bins are scaled back up. The last bin, MAXCOUNT, keeps the
+// occurrences of all the k-mers seen that often or more, as they can
+// not be told apart by count. analyze() finds the valley after the error k-mers and the
+// coverage peak past it: the peak is the k-mer coverage, and a k-mer
+// seen REPEAT times as often is taken as a repeat.
+public class KmerSpectrum extends Configured implements Tool
+{
+	private static final Logger sLogger = Logger.getLogger(KmerSpectrum.class);
+
+	public static final int MAXCOUNT = 10000;   // the last bin holds every count above
+	public static final int REPEAT = 10;
+	public static final int DISTINCT_P = 14;
+
+	// the distinct k-mers the last run counted
+	public long distinct = 0;
+
+	public static final String SKETCH = "sketch";
+	public static final String HISTOGRAM = "histogram";
+
+	static boolean sampled(long word0, long word1, int k, int bits)
+	{
+		return bits == 0 || (KmerWritable.hash(word0, word1, k) >>> (32 - bits)) == 0;
+	}
+
+
+	// Distinct
+	///////////////////////////////////////////////////////////////////////////
+
+	// the register of a k-mer hash keeps the longest run of leading zeros
+	// seen in the bits after its index, plus one
+	static void offer(byte [] registers, long h)
+	{
+		int i = (int) (h >>> (64 - DISTINCT_P));
+		byte rho = (byte) (Long.numberOfLeadingZeros((h << DISTINCT_P) | (1L << (DISTINCT_P - 1))) + 1);
+
+		if (registers[i] < rho) { registers[i] = rho; }
+	}
+
+	// the HyperLogLog estimate, by linear counting while registers are empty
+	static long estimate(byte [] registers)
+	{
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+
+		for (byte b : registers)
+		{
+			sum += Math.scalb(1.0, -b);
+			if (b == 0) { zeros++; }
+		}
+
+		double e = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+		if (e <= 2.5 * m && zeros > 0) { e = m * Math.log((double) m / zeros); }
+
+		return Math.round(e);
+	}
+
+	public static class DistinctMapper extends MapReduceBase
+    implements Mapper<Text, NodeWritable, IntWritable, BytesWritable>
+	{
+		private KmerScanner scanner = null;
+		private byte [] registers = new byte[1 << DISTINCT_P];
+
+		private OutputCollector<IntWritable, BytesWritable> out = null;
+
+		public void configure(JobConf job)
+		{
+			scanner = new KmerScanner(Integer.parseInt(job.get("K")));
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<IntWritable, BytesWritable> output, Reporter reporter)
+		                throws IOException
+		{
+			out = output;
+
+			Node node = nodemsg.getNode();
+			if (node.hasCustom("n")) { return; }
+
+			scanner.reset(node.getSeq());
+			while (scanner.next())
+			{
+				offer(registers, CountMinSketch.hash(scanner.word0(), scanner.word1()));
+			}
+		}
+
+		public void close() throws IOException
+		{
+			if (out != null) { out.collect(new IntWritable(0), new BytesWritable(registers)); }
+		}
+	}
+
+	// the registers of all the mappers, by max, into the spectrum_distinct counter
+	public static class DistinctReducer extends MapReduceBase
+	implements Reducer<IntWritable, BytesWritable, IntWritable, BytesWritable>
+	{
+		public void reduce(IntWritable key, Iterator<BytesWritable> iter,
+						   OutputCollector<IntWritable, BytesWritable> output, Reporter reporter)
+						   throws IOException
+		{
+			byte [] registers = new byte[1 << DISTINCT_P];
+
+			while (iter.hasNext())
+			{
+				byte [] r = iter.next().getBytes();
+				for (int i = 0; i < registers.length; i++)
+				{
+					if (registers[i] < r[i]) { registers[i] = r[i]; }
+				}
+			}
+
+			reporter.incrCounter("Brush", "spectrum_distinct", estimate(registers));
+		}
+	}
+
+
+	// SketchMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class SketchMapper extends MapReduceBase
+    implements Mapper<Text, NodeWritable, IntWritable, CountMinSketch.Slice>
+	{
+		private int K = 0;
+		private int sample = 0;
+		private KmerScanner scanner = null;
+		private CountMinSketch sketch = null;
+		private long kmers = 0;
+
+		private OutputCollector<IntWritable, CountMinSketch.Slice> out = null;
+		private Reporter rep = null;
+
+		public void configure(JobConf job)
+		{
+			K = Integer.parseInt(job.get("K"));
+			sample = job.getInt("SPECTRUM_SAMPLE", 0);
+			scanner = new KmerScanner(K);
+			sketch = new CountMinSketch(job.getInt("SKETCH_WIDTH", 0));
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<IntWritable, CountMinSketch.Slice> output, Reporter reporter)
+		                throws IOException
+		{
+			out = output;
+			rep = reporter;
+
+			Node node = nodemsg.getNode();
+			if (node.hasCustom("n")) { return; }
+
+			int cov = (int) node.cov();
+
+			scanner.reset(node.getSeq());
+			while (scanner.next())
+			{
+				if (sampled(scanner.word0(), scanner.word1(), K, sample))
+				{
+					sketch.add(scanner.word0(), scanner.word1(), cov);
+					kmers += cov;
+				}
+			}
+		}
+
+		public void close() throws IOException
+		{
+			if (out == null) { return; }
+
+			CountMinSketch.Slice slice = new CountMinSketch.Slice();
+
+			for (int i = 0; i < sketch.slices(); i++)
+			{
+				if (sketch.getSlice(i, slice))
+				{
+					out.collect(new IntWritable(i), slice);
+				}
+			}
+
+			rep.incrCounter("Brush", "spectrum_kmers", kmers);
+		}
+	}
+
+
+	// HistogramMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class HistogramMapper extends MapReduceBase
+    implements Mapper<Text, NodeWritable, IntWritable, LongWritable>
+	{
+		private int K = 0;
+		private int sample = 0;
+		private KmerScanner scanner = null;
+		private CountMinSketch sketch = null;
+		private long [] bins = new long[MAXCOUNT + 1];
+
+		private OutputCollector<IntWritable, LongWritable> out = null;
+
+		public void configure(JobConf job)
+		{
+			K = Integer.parseInt(job.get("K"));
+			sample = job.getInt("SPECTRUM_SAMPLE", 0);
+			scanner = new KmerScanner(K);
+			sketch = loadSketch(job);
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<IntWritable, LongWritable> output, Reporter reporter)
+		                throws IOException
+		{
+			out = output;
+
+			Node node = nodemsg.getNode();
+			if (node.hasCustom("n")) { return; }
+
+			int cov = (int) node.cov();
+
+			scanner.reset(node.getSeq());
+			while (scanner.next())
+			{
+				if (sampled(scanner.word0(), scanner.word1(), K, sample))
+				{
+					bins[Math.min(sketch.estimate(scanner.word0(), scanner.word1()), MAXCOUNT)] += cov;
+				}
+			}
+		}
+
+		public void close() throws IOException
+		{
+			if (out == null) { return; }
+
+			for (int c = 1; c <= MAXCOUNT; c++)
+			{
+				if (bins[c] > 0)
+				{
+					out.collect(new IntWritable(c), new LongWritable(bins[c]));
+				}
+			}
+		}
+	}
+
+
+	// HistogramReducer
+	///////////////////////////////////////////////////////////////////////////
+
+	// occurrences in bin c to k-mers seen c times, scaled back from the
+	// sample; the occurrences themselves for the last bin
+	public static class HistogramReducer extends MapReduceBase
+	implements Reducer<IntWritable, LongWritable, IntWritable, LongWritable>
+	{
+		private int sample = 0;
+
+		public void configure(JobConf job)
+		{
+			sample = job.getInt("SPECTRUM_SAMPLE", 0);
+		}
+
+		public void reduce(IntWritable count, Iterator<LongWritable> iter,
+						   OutputCollector<IntWritable, LongWritable> output, Reporter reporter)
+						   throws IOException
+		{
+			long sum = 0;
+
+			while (iter.hasNext())
+			{
+				sum += iter.next().get();
+			}
+
+			int c = count.get();
+			long kmers = ((c == MAXCOUNT) ? sum : (sum + c / 2) / c) << sample;
+
+			if (kmers > 0)
+			{
+				output.collect(count, new LongWritable(kmers));
+			}
+		}
+	}
+
+
+	// Sketch
+	///////////////////////////////////////////////////////////////////////////
+
+	// the job that sketches the k-mers of the nodes in inputPath, sampled
+	// 1 in 2^sample, into sketchPath
+	public static JobConf sketchJob(String inputPath, String sketchPath, int width, int sample)
+	{
+		JobConf conf = new JobConf(KmerSpectrum.class);
+		conf.setJobName("KmerSpectrum sketch " + inputPath + " " + BrushConfig.K);
+
+		BrushConfig.initializeConfiguration(conf);
+		conf.setInt("SKETCH_WIDTH", width);
+		conf.setInt("SPECTRUM_SAMPLE", sample);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(sketchPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
+
+		conf.setMapOutputKeyClass(IntWritable.class);
+		conf.setMapOutputValueClass(CountMinSketch.Slice.class);
+
+		conf.setOutputKeyClass(IntWritable.class);
+		conf.setOutputValueClass(CountMinSketch.Slice.class);
+
+		conf.setMapperClass(SketchMapper.class);
+		conf.setCombinerClass(CountMinSketch.Merge.class);
+		conf.setReducerClass(CountMinSketch.Merge.class);
+
+		return conf;
+	}
+
+	// ships the merged sketch of a sketchJob to the mappers of conf
+	public static void cacheSketch(JobConf conf, String sketchPath) throws Exception
+	{
+		FileSystem fs = FileSystem.get(conf);
+		for (FileStatus f : fs.globStatus(new Path(sketchPath + "/part-*")))
+		{
+			DistributedCache.addCacheFile(new URI(f.getPath().toString()), conf);
+		}
+	}
+
+	// the sketch cacheSketch shipped, in a mapper
+	public static CountMinSketch loadSketch(JobConf job)
+	{
+		CountMinSketch sketch = new CountMinSketch(job.getInt("SKETCH_WIDTH", 0));
+
+		try
+		{
+			FileSystem local = FileSystem.getLocal(job);
+			IntWritable slice = new IntWritable();
+			CountMinSketch.Slice cells = new CountMinSketch.Slice();
+
+			for (Path p : DistributedCache.getLocalCacheFiles(job))
+			{
+				SequenceFile.Reader reader = new SequenceFile.Reader(local, p, job);
+				while (reader.next(slice, cells))
+				{
+					sketch.addSlice(slice.get(), cells);
+				}
+				reader.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Can not load the k-mer sketch: " + e.getMessage());
+		}
+
+		return sketch;
+	}
+
+
+	// Spectrum
+	///////////////////////////////////////////////////////////////////////////
+
+	// the histogram a run wrote, indexed by count; h[MAXCOUNT] holds
+	// occurrences, not k-mers
+	public static long [] readHistogram(FileSystem fs, String outputPath) throws IOException
+	{
+		long [] h = new long[MAXCOUNT + 1];
+
+		for (FileStatus f : fs.globStatus(new Path(outputPath + "/" + HISTOGRAM + "/part-*")))
+		{
+			BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(f.getPath())));
+			String line;
+
+			while ((line = in.readLine()) != null)
+			{
+				String [] vals = line.split("\t");
+				h[Integer.parseInt(vals[0])] = Long.parseLong(vals[1]);
+			}
+
+			in.close();
+		}
+
+		return h;
+	}
+
+	// {valley, peak}: where the error k-mers give way to the genomic ones,
+	// and the highest bin after it; both 0 when the spectrum never rises
+	public static int [] analyze(long [] h)
+	{
+		int valley = 0;
+
+		for (int c = 2; c + 2 < MAXCOUNT; c++)
+		{
+			if (h[c] + h[c+1] + h[c+2] > h[c-1] + h[c] + h[c+1])
+			{
+				valley = c;
+				break;
+			}
+		}
+
+		int peak = 0;
+
+		for (int c = valley + 1; valley > 0 && c < MAXCOUNT; c++)
+		{
+			if (peak == 0 || h[c] > h[peak]) { peak = c; }
+		}
+
+		return new int [] {valley, peak};
+	}
+
+	// the histogram for the work directory, with what was found in it
+	public static void writeHistogram(long [] h, int [] vp, String file) throws IOException
+	{
+		PrintStream out = new PrintStream(new FileOutputStream(file));
+
+		out.println("# k-mer spectrum, K=" + BrushConfig.K);
+		out.println("# valley\t" + vp[0]);
+		out.println("# peak\t" + vp[1]);
+		if (vp[1] > 0)
+		{
+			out.println("# kmercov\t" + vp[1]);
+			out.println("# kmerup\t" + (long) REPEAT * vp[1]);
+		}
+		out.println("# occurrences of k-mers seen " + MAXCOUNT + " times or more\t" + h[MAXCOUNT]);
+		out.println("# count\tkmers");
+
+		for (int c = 1; c < MAXCOUNT; c++)
+		{
+			if (h[c] > 0) { out.println(c + "\t" + h[c]); }
+		}
+
+		out.close();
+	}
+
+
+	// Run Tool
+	///////////////////////////////////////////////////////////////////////////
+
+	public RunningJob run(String inputPath, String outputPath) throws Exception
+	{
+		sLogger.info("Tool name: KmerSpectrum");
+		sLogger.info(" - input: "  + inputPath);
+		sLogger.info(" - output: " + outputPath);
+
+		// the distinct k-mers, to pick the sample rate
+		JobConf conf = new JobConf(KmerSpectrum.class);
+		conf.setJobName("KmerSpectrum distinct " + inputPath + " " + BrushConfig.K);
+
+		BrushConfig.initializeConfiguration(conf);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(NullOutputFormat.class);
+
+		conf.setMapOutputKeyClass(IntWritable.class);
+		conf.setMapOutputValueClass(BytesWritable.class);
+
+		conf.setMapperClass(DistinctMapper.class);
+		conf.setReducerClass(DistinctReducer.class);
+		conf.setNumReduceTasks(1);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(outputPath), true);
+
+		distinct = JobClient.runJob(conf).getCounters().findCounter("Brush", "spectrum_distinct").getValue();
+
+		int width = new CountMinSketch(BrushConfig.SKETCH_WIDTH).width();
+		int sample = 0;
+		while (sample < 24 && (distinct >> sample) > width / 2) { sample++; }
+
+		sLogger.info(" - distinct: " + distinct + ", sampled 1 in " + (1L << sample));
+
+		String sketchPath = outputPath + "/" + SKETCH;
+		String histPath = outputPath + "/" + HISTOGRAM;
+
+		conf = sketchJob(inputPath, sketchPath, width, sample);
+
+		JobClient.runJob(conf);
+
+		// the histogram, against the merged sketch
+		conf = new JobConf(KmerSpectrum.class);
+		conf.setJobName("KmerSpectrum histogram " + inputPath + " " + BrushConfig.K);
+
+		BrushConfig.initializeConfiguration(conf);
+		conf.setInt("SKETCH_WIDTH", width);
+		conf.setInt("SPECTRUM_SAMPLE", sample);
+
+		cacheSketch(conf, sketchPath);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(histPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(TextOutputFormat.class);
+
+		conf.setMapOutputKeyClass(IntWritable.class);
+		conf.setMapOutputValueClass(LongWritable.class);
+
+		conf.setOutputKeyClass(IntWritable.class);
+		conf.setOutputValueClass(LongWritable.class);
+
+		conf.setMapperClass(HistogramMapper.class);
+		conf.setCombinerClass(LongSumReducer.class);
+		conf.setReducerClass(HistogramReducer.class);
+		conf.setNumReduceTasks(1);
+
+		return JobClient.runJob(conf);
+	}
+
+	public int run(String[] args) throws Exception
+	{
+		String inputPath  = "";
+		String outputPath = "";
+		BrushConfig.K = 21;
+
+		long starttime = System.currentTimeMillis();
+
+		run(inputPath, outputPath);
+
+		long endtime = System.currentTimeMillis();
+
+		float diff = (float) (((float) (endtime - starttime)) / 1000.0);
+
+		System.out.println("Runtime: " + diff + " s");
+
+		return 0;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int res = ToolRunner.run(new Configuration(), new KmerSpectrum(), args);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,194 @@
+/*
+    KmerWritable.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+// Shuffle key for a k-mer, k <= 64, packed 2 bits per base with the first
+// base in the high bits, as PackedSeq.word gives it. Serialized as one
+// byte of k and one long (k <= 32) or two; the bytes compare in the same
+// order as compareTo, so the sort never deserializes a key.
+// Callers that want canonical k-mers pick the smaller strand themselves.
+// A non-zero salt makes the same k-mer a different key, so a heavy one
+// can be spread over reducers; it is flagged in the top bit of the k
+// byte and follows it as one more byte.
+public class KmerWritable implements WritableComparable<KmerWritable>
+{
+	public static final int MAXK = 64;
+	public static final int MAXSALT = 255;
+
+	private static final int SALTED = 0x80;
+
+	private int k = 0;
+	private long w0 = 0;   // bases [0, 32)
+	private long w1 = 0;   // bases [32, 64), zero for k <= 32
+	private int salt = 0;
+
+	public KmerWritable()
+	{
+
+	}
+
+	public KmerWritable(PackedSeq kmer)
+	{
+		set(kmer);
+	}
+
+	public void set(PackedSeq kmer)
+	{
+		int l = kmer.length();
+
+		if (l > MAXK)
+		{
+			throw new IllegalArgumentException("k-mer longer than " + MAXK + ": " + l);
+		}
+
+		k = l;
+		w0 = kmer.word(0, Math.min(l, 32));
+		w1 = (l > 32) ? kmer.word(32, l - 32) : 0;
+		salt = 0;
+	}
+
+	// already packed words, e.g. a spaced seed put together by the caller
+	public void set(long word0, long word1, int len)
+	{
+		k = len;
+		w0 = word0;
+		w1 = word1;
+		salt = 0;
+	}
+
+	public void setSalt(int s)
+	{
+		if (s < 0 || s > MAXSALT)
+		{
+			throw new IllegalArgumentException("salt out of range: " + s);
+		}
+
+		salt = s;
+	}
+
+	public int getSalt() { return salt; }
+
+	public int getK() { return k; }
+
+	public long getWord0() { return w0; }
+
+	public long getWord1() { return w1; }
+
+	public PackedSeq toSeq()
+	{
+		return PackedSeq.wrap(new long [] {w0, w1}, k);
+	}
+
+	// same text as the str2dna keys these replace
+	public String toDna()
+	{
+		return toSeq().toDna();
+	}
+
+	public String toString()
+	{
+		return toDna();
+	}
+
+	public void write(DataOutput out) throws IOException
+	{
+		if (salt != 0)
+		{
+			out.writeByte(k | SALTED);
+			out.writeByte(salt);
+		}
+		else
+		{
+			out.writeByte(k);
+		}
+		out.writeLong(w0);
+		if (k > 32) { out.writeLong(w1); }
+	}
+
+	public void readFields(DataInput in) throws IOException
+	{
+		k = in.readUnsignedByte();
+		salt = 0;
+		if ((k & SALTED) != 0)
+		{
+			k &= ~SALTED;
+			salt = in.readUnsignedByte();
+		}
+		w0 = in.readLong();
+		w1 = (k > 32) ? in.readLong() : 0;
+	}
+
+	static int compareUnsigned(long a, long b)
+	{
+		a ^= Long.MIN_VALUE;
+		b ^= Long.MIN_VALUE;
+		return (a < b) ? -1 : ((a == b) ? 0 : 1);
+	}
+
+	public int compareTo(KmerWritable o)
+	{
+		// as the first bytes compare: salted keys after plain ones
+		if ((salt != 0) != (o.salt != 0)) { return (salt != 0) ? 1 : -1; }
+		if (k != o.k) { return (k < o.k) ? -1 : 1; }
+		if (salt != o.salt) { return (salt < o.salt) ? -1 : 1; }
+
+		int c = compareUnsigned(w0, o.w0);
+
+		return (c != 0) ? c : compareUnsigned(w1, o.w1);
+	}
+
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof KmerWritable)) { return false; }
+
+		KmerWritable o = (KmerWritable) obj;
+
+		return k == o.k && w0 == o.w0 && w1 == o.w1 && salt == o.salt;
+	}
+
+	// also picks the reducer, so mix every bit in
+	public int hashCode()
+	{
+		return hash(w0, w1, k + (salt << 8));
+	}
+
+	// hashCode of the k-mer with these words, without building one
+	public static int hash(long word0, long word1, int len)
+	{
+		long h = (word0 * 0x9E3779B97F4A7C15L) ^ (word1 * 0xC2B2AE3D27D4EB4FL) ^ len;
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	// Raw comparator: the serialized bytes already sort like compareTo
+	public static class Comparator extends WritableComparator
+	{
+		public Comparator()
+		{
+			super(KmerWritable.class);
+		}
+
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2)
+		{
+			return compareBytes(b1, s1, l1, b2, s2, l2);
+		}
+	}
+
+	static
+	{
+		WritableComparator.define(KmerWritable.class, new Comparator());
+	}
+}
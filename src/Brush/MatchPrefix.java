@@ -7,12 +7,15 @@
 
 package Brush;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.net.URI;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -22,10 +25,12 @@ import java.util.Iterator;
 import java.util.Set;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
@@ -40,8 +45,10 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.mapred.lib.IdentityMapper;
+import org.apache.hadoop.mapred.lib.MultipleOutputs;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -52,64 +59,74 @@ public class MatchPrefix extends Configured implements Tool
 {
 	private static final Logger sLogger = Logger.getLogger(MatchPrefix.class);
 
+	// partial edge lists of the heavy prefixes, stitched per read by a second job
+	public static final String HEAVY = "heavy";
+
+	// the stitch job of the last run, null when it had no heavy prefixes
+	public RunningJob stitch = null;
+
 	public static class MatchPrefixMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, KmerWritable, NodeWritable>
 	{
 		public static int K = 0;
 		private static Path[] localFiles;
-		private static HashSet<String> HKmer_List = new HashSet<String>();
+		// mapped from the cached list, probed in place
+		private HighKmerFilter HKmer_List = null;
+		private KmerScanner scanner = null;
+		private KmerWritable window = new KmerWritable();
+
+		// minimizer seeding: W windows share the canonical M-mer of the
+		// smallest hash, so A/C-rich M-mers do not win every window
+		private static int W = 0;
+		private static int M = 0;
+		private KmerScanner mscanner = null;
+		private long [] mw0 = new long[0];
+		private long [] mw1 = new long[0];
+		private long [] mh = new long[0];
+		private int [] deque = new int[0];
+
+		// skew mode: read ends of a heavy prefix go to each of its salts
+		// 1 .. S, and its windows are dealt round robin over them
+		private static int S = 0;
+		private HighKmerFilter Heavy_List = null;
+		private int next_salt = 0;
+
+		// fused mode: the suffixes of a window go along as fingerprints
+		private static boolean FUSED = false;
+		private Fingerprint ffp = new Fingerprint();
+		private Fingerprint rfp = new Fingerprint();
 		
 		public void configure(JobConf job)
 		{
 			K = Integer.parseInt(job.get("K"));
+			scanner = new KmerScanner(K);
+			FUSED = job.getBoolean("FUSED_OVERLAP", false);
+			W = job.getInt("MINIMIZER_W", 0);
+			if (W > 0) {
+				M = K - W + 1;
+				mscanner = new KmerScanner(M);
+			}
 			try {
                 localFiles = DistributedCache.getLocalCacheFiles(job);
             } catch (IOException ioe) {
                 System.err.println("Caught exception while getting cached files: " + ioe.toString());
             }
+            S = job.getInt("SKEW_SALTS", 0);
             try {
-            	String str;
-            	String str_r;
-            	File folder = new File(localFiles[0].toString());
-            	for (final File fileEntry : folder.listFiles()) {
-            		//\\
-            		//\\read distributed cache file : load data from file to id_seq   
-                    RandomAccessFile f = new RandomAccessFile(fileEntry.getAbsolutePath(), "r");
-                    FileChannel ch = f.getChannel();
-                    //String first_line = "BBBEBBBBBBBB	";
-                    //int readlen = first_line.length(); // to determine the size of one record in the file
-                    int readlen = Math.round((float)K/(float)2)+1;
-                    byte[] buffer = new byte[readlen];
-                    long buff_start = 0; //store buffer start position
-                    int buff_pos = 0; // fetch data from this buffer position
-                    
-                    // determine the buffer size
-                    long read_content = Math.min(Integer.MAX_VALUE, ch.size() - buff_start); //0x8FFFFFF = 128MB
-                    MappedByteBuffer mb = ch.map(FileChannel.MapMode.READ_ONLY, buff_start, read_content);
-                    String kmer;
-                    while ( mb.hasRemaining( ) && mb.position()+readlen <= read_content ) {
-                    	mb.get(buffer);
-                    	kmer = new String(buffer);
-                    	str = Node.dna2str(kmer.trim());
-	            		str_r = Node.rc(str);
-	            		HKmer_List.add(str);
-	            		HKmer_List.add(str_r);
-                    }
-                    ch.close();
-                    f.close();
-            		//\\
-                }
+            	HKmer_List = new HighKmerFilter(new File(localFiles[0].toString()), K);
+            	if (S > 0) {
+            		Heavy_List = new HighKmerFilter(new File(localFiles[0].toString()), HighKmerFilter.HEAVY, K);
+            	}
             } catch (IOException ioe){
             	System.err.println("Caught exception while reading cached files: " + ioe.toString());
             }
 		}
 
-		public void map(LongWritable lineid, Text nodetxt,
-				        OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<KmerWritable, NodeWritable> output, Reporter reporter)
 		                throws IOException
 		{
-            Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+            Node node = nodemsg.getNode();
             // clean edge for Build Second
             for (String key : Node.edgetypes)
 			{
@@ -117,27 +134,28 @@ public class MatchPrefix extends Configured implements Tool
             }
             
             if (!node.hasCustom("n")){
-                String prefix_tmp = node.str().substring(0, K);
-                String prefix_tmp_r = Node.rc(prefix_tmp);
+                PackedSeq seq = node.getSeq();
+                if (W > 0) {
+                    seed(node, seq, output, reporter);
+                    return;
+                }
+                PackedSeq prefix_tmp = seq.subseq(0, K);
+                PackedSeq prefix_tmp_r = prefix_tmp.rc();
                 if (prefix_tmp.compareTo(prefix_tmp_r) < 0) {
-                    String prefix = Node.str2dna(prefix_tmp);
                     //output.collect(new Text(prefix), new Text(node.getNodeId() + "\t"  + "f" + "\t" + Node.NODEMSG + "\t" + node.len() + "\t" + Node.str2dna(node.str().substring(K)) +  "\t" + node.cov() ));
-                    output.collect(new Text(prefix), new Text(node.getNodeId() + "\t"  + "f0" + "\t" + node.toNodeMsg() ));
+                    collectEnd(prefix_tmp, new NodeWritable(node.getNodeId() + "\t"  + "f0", node), output);
                 } else if (prefix_tmp_r.compareTo(prefix_tmp) < 0) {
-                    String prefix_r = Node.str2dna(prefix_tmp_r);
                     //output.collect(new Text(prefix_r), new Text(node.getNodeId() + "\t"  + "r" + "\t" + Node.NODEMSG + "\t" + node.len() + "\t" + Node.str2dna(node.str().substring(K)) +  "\t" + node.cov() ));
-                    output.collect(new Text(prefix_r), new Text(node.getNodeId() + "\t"  + "r1" + "\t" + node.toNodeMsg() ));
+                    collectEnd(prefix_tmp_r, new NodeWritable(node.getNodeId() + "\t"  + "r1", node), output);
                 }
                               
-                String prefix_rc_tmp = Node.rc(node.str().substring(node.len()-K));
-                String prefix_rc_tmp_r = node.str().substring(node.len()-K);
+                PackedSeq prefix_rc_tmp_r = seq.subseq(node.len()-K, K);
+                PackedSeq prefix_rc_tmp = prefix_rc_tmp_r.rc();
                 if (prefix_rc_tmp.compareTo(prefix_rc_tmp_r) < 0) {
-                    String prefix_rc = Node.str2dna(prefix_rc_tmp);
                     //output.collect(new Text(prefix_rc), new Text(node.getNodeId() + "\t" + "r" + "\t"+ Node.NODEMSG + "\t" + node.len() + "\t" + Node.str2dna(node.str().substring(0, node.len()-K)) + "\t" + node.cov() ));
-                    output.collect(new Text(prefix_rc), new Text(node.getNodeId() + "\t" + "r0" + "\t"+ node.toNodeMsg() ));
+                    collectEnd(prefix_rc_tmp, new NodeWritable(node.getNodeId() + "\t" + "r0", node), output);
                 } else if (prefix_rc_tmp_r.compareTo(prefix_rc_tmp) < 0) {
-                    String prefix_rc_r = Node.str2dna(prefix_rc_tmp_r);
-                    output.collect(new Text(prefix_rc_r), new Text(node.getNodeId() + "\t" + "f1" + "\t"+ node.toNodeMsg() ));
+                    collectEnd(prefix_rc_tmp_r, new NodeWritable(node.getNodeId() + "\t" + "f1", node), output);
                 }
                 
                 //output.collect(new Text(prefix), new Text(node.getNodeId() + "\t"  + "f" + "\t" + Node.NODEMSG + "\t" + node.len() + "\t" + Node.str2dna(node.str().substring(K)) +  "\t" + node.cov() ));
@@ -147,29 +165,40 @@ public class MatchPrefix extends Configured implements Tool
                 reporter.incrCounter("Brush", "nodes", 1);
                 //slide the K-mer windows for each read in both strands
                 int end = node.len() - K;
-                for (int i = 1; i < end; i++)
+                if (FUSED) {
+                    ffp.reset(seq);
+                    rfp.reset(seq.rc());
+                }
+                scanner.reset(seq);
+                while (scanner.next())
                 {
-                    String window_tmp = node.str().substring(i,   i+K);
-                    String window_tmp_r = Node.rc(window_tmp);
-                    // H-kmer filter
-                    if (HKmer_List.contains(window_tmp)) {
+                    int i = scanner.offset();
+                    if (i < 1) { continue; }
+                    if (i >= end) { break; }
+                    // H-kmer filter, the list holds the canonical strand
+                    if (HKmer_List != null && HKmer_List.contains(scanner.word0(), scanner.word1())) {
                     	reporter.incrCounter("Brush", "hkmer", 1);
                     	continue;
                     }
                     //\\
-                    if (window_tmp.compareTo(window_tmp_r) < 0) {
-                        String window = Node.str2dna(window_tmp);
+                    // the canonical window of an A or T run is all A
+                    int homo = scanner.homopolymer();
+                    if (homo == 0 || homo == 3) { continue; }
+                    if (scanner.strand() < 0) {
                         int overlap_size_f = node.len() - i;
-                        if (overlap_size_f >= K && overlap_size_f <= node.len() && !window_tmp.matches("A*") && !window_tmp.matches("T*")) {
-                            output.collect(new Text(window),
-                                           new Text(node.getNodeId() + "\t" + "f" + "\t" + Node.SUFFIXMSG + "\t" + overlap_size_f + "\t" + node.cov() + "\t" + (node.len()+K)));
+                        if (overlap_size_f >= K && overlap_size_f <= node.len()) {
+                            scanner.get(window);
+                            salt(window, reporter);
+                            output.collect(window,
+                                           new NodeWritable(node.getNodeId() + "\t" + "f" + "\t" + Node.SUFFIXMSG + "\t" + overlap_size_f + "\t" + node.cov() + "\t" + (node.len()+K) + prints(i, node.len(), true)));
                         }
-                    } else if (window_tmp_r.compareTo(window_tmp) < 0) {
-                        String window_r = Node.str2dna(window_tmp_r);
+                    } else if (scanner.strand() > 0) {
                         int overlap_size_r = node.len() - (node.len() - K - i);
-                        if (overlap_size_r >= K && overlap_size_r <= node.len() && !window_tmp_r.matches("A*") && !window_tmp_r.matches("T*")) {
-                            output.collect(new Text(window_r),
-                                           new Text(node.getNodeId() + "\t" + "r" + "\t" + Node.SUFFIXMSG + "\t" + overlap_size_r + "\t" + node.cov()+ "\t" + (node.len()+K)));
+                        if (overlap_size_r >= K && overlap_size_r <= node.len()) {
+                            scanner.get(window);
+                            salt(window, reporter);
+                            output.collect(window,
+                                           new NodeWritable(node.getNodeId() + "\t" + "r" + "\t" + Node.SUFFIXMSG + "\t" + overlap_size_r + "\t" + node.cov()+ "\t" + (node.len()+K) + prints(i, node.len(), false)));
                         }
                     }
                     /*String window_r_tmp = Node.rc(node.str().substring(node.len() - K - i, node.len() - i));
@@ -191,27 +220,227 @@ public class MatchPrefix extends Configured implements Tool
                 }
             }
 		}
+
+		// fused mode: the read from window i on, and the reverse strand up to
+		// the end of window i, the suffixes the two overlaps of i would need.
+		// The first is the one the read ends on the strand of the key check,
+		// the second the one the read ends on the other strand check, both
+		// in their encoded form.
+		private String prints(int i, int len, boolean fwd)
+		{
+			if (!FUSED) { return ""; }
+			String f = Fingerprint.encode(ffp.of(i, len));
+			String r = Fingerprint.encode(rfp.of(len - K - i, len));
+			return fwd ? "\t" + f + "\t" + r : "\t" + r + "\t" + f;
+		}
+
+		// a read end goes out under its prefix, or to every share of a heavy one
+		private void collectEnd(PackedSeq kmer, NodeWritable msg,
+				                OutputCollector<KmerWritable, NodeWritable> output)
+				                throws IOException
+		{
+			KmerWritable key = new KmerWritable(kmer);
+			if (Heavy_List == null || !Heavy_List.contains(key.getWord0(), key.getWord1())) {
+				output.collect(key, msg);
+				return;
+			}
+			for (int salt = 1; salt <= S; salt++) {
+				key.setSalt(salt);
+				output.collect(key, msg);
+			}
+		}
+
+		private void salt(KmerWritable key, Reporter reporter)
+		{
+			if (Heavy_List != null && Heavy_List.contains(key.getWord0(), key.getWord1())) {
+				key.setSalt(1 + next_salt);
+				next_salt = (next_salt + 1) % S;
+				reporter.incrCounter("Brush", "heavy_windows", 1);
+			}
+		}
+
+		// Sparse form of map(): the read ends go out as before, but keyed by
+		// the minimizer of their window, and the interior windows go out as
+		// one SEEDMSG per run of consecutive windows with the same minimizer,
+		// carrying the bases of the run. Equal K-mers have equal minimizers,
+		// so every window that matches a read end reaches the reducer of
+		// that read end, which cuts the run back into the SUFFIXMSGs map()
+		// sends.
+		private void seed(Node node, PackedSeq seq,
+				          OutputCollector<KmerWritable, NodeWritable> output, Reporter reporter)
+		                  throws IOException
+		{
+            int len = node.len();
+            int end = len - K;
+            if (mw0.length < len) {
+                mw0 = new long[len];
+                mw1 = new long[len];
+                mh = new long[len];
+                deque = new int[len];
+            }
+            mscanner.reset(seq);
+            for (int j = 0; mscanner.next(); j++) {
+                mw0[j] = mscanner.word0();
+                mw1[j] = mscanner.word1();
+                mh[j] = rank(mw0[j], mw1[j]);
+            }
+
+            int head = 0;
+            int tail = 0;
+            int run_start = -1;
+            int run_len = 0;
+            int run_min = 0;
+            long windows = 0;
+            long seeds = 0;
+            KmerWritable minimizer = new KmerWritable();
+
+            scanner.reset(seq);
+            while (scanner.next())
+            {
+                int i = scanner.offset();
+                // the M-mers of window i are [i, i+W); keep the deque increasing
+                for (int j = (i == 0) ? 0 : i + W - 1; j < i + W; j++) {
+                    while (tail > head && compare(deque[tail-1], j) > 0) {
+                        tail--;
+                    }
+                    deque[tail++] = j;
+                }
+                while (deque[head] < i) {
+                    head++;
+                }
+                int min = deque[head];
+
+                if (i == 0 || i == end) {
+                    minimizer.set(mw0[min], mw1[min], M);
+                    if (i == 0 && scanner.strand() < 0) {
+                        output.collect(minimizer, new NodeWritable(node.getNodeId() + "\t" + "f0", node));
+                    } else if (i == 0 && scanner.strand() > 0) {
+                        output.collect(minimizer, new NodeWritable(node.getNodeId() + "\t" + "r1", node));
+                    }
+                    if (i == end && scanner.strand() > 0) {
+                        output.collect(minimizer, new NodeWritable(node.getNodeId() + "\t" + "r0", node));
+                    } else if (i == end && scanner.strand() < 0) {
+                        output.collect(minimizer, new NodeWritable(node.getNodeId() + "\t" + "f1", node));
+                    }
+                    if (i == end) {
+                        break;
+                    }
+                    continue;
+                }
+
+                // the same windows map() would send
+                boolean send = true;
+                if (HKmer_List != null && HKmer_List.contains(scanner.word0(), scanner.word1())) {
+                    reporter.incrCounter("Brush", "hkmer", 1);
+                    send = false;
+                }
+                int homo = scanner.homopolymer();
+                if (homo == 0 || homo == 3 || scanner.strand() == 0) {
+                    send = false;
+                }
+
+                if (send && run_len > 0 && mw0[min] == mw0[run_min] && mw1[min] == mw1[run_min]) {
+                    run_len++;
+                } else {
+                    if (run_len > 0) {
+                        seeds++;
+                        emitSeed(node, seq, run_start, run_len, run_min, output);
+                    }
+                    run_len = 0;
+                    if (send) {
+                        run_start = i;
+                        run_len = 1;
+                        run_min = min;
+                    }
+                }
+                if (send) {
+                    windows++;
+                }
+            }
+            if (run_len > 0) {
+                seeds++;
+                emitSeed(node, seq, run_start, run_len, run_min, output);
+            }
+
+            reporter.incrCounter("Brush", "nodes", 1);
+            reporter.incrCounter("Brush", "suffix_windows", windows);
+            reporter.incrCounter("Brush", "suffix_seeds", seeds);
+		}
+
+		// ReadID, SEEDMSG, first window, windows, cov, len+K, bases of the windows
+		private void emitSeed(Node node, PackedSeq seq, int start, int count, int min,
+				              OutputCollector<KmerWritable, NodeWritable> output)
+		                      throws IOException
+		{
+            KmerWritable minimizer = new KmerWritable();
+            minimizer.set(mw0[min], mw1[min], M);
+            output.collect(minimizer,
+                           new NodeWritable(node.getNodeId() + "\t" + Node.SEEDMSG + "\t" + start + "\t" + count + "\t" + node.cov() + "\t" + (node.len()+K)
+                                            + "\t" + seq.subseq(start, count + K - 1).toDna()));
+		}
+
+		// M-mers a and b by hash, equal hashes by the M-mer itself
+		private int compare(int a, int b)
+		{
+			int c = KmerWritable.compareUnsigned(mh[a], mh[b]);
+			if (c == 0) { c = KmerWritable.compareUnsigned(mw0[a], mw0[b]); }
+			return (c != 0) ? c : KmerWritable.compareUnsigned(mw1[a], mw1[b]);
+		}
+
+		// 64 bit mix of the words, the order the minimizers are taken in
+		private static long rank(long w0, long w1)
+		{
+			long h = (w0 * 0x9E3779B97F4A7C15L) ^ (w1 * 0xC2B2AE3D27D4EB4FL);
+			h ^= h >>> 31;
+			h *= 0xBF58476D1CE4E5B9L;
+			return h ^ (h >>> 29);
+		}
 	}
 
 	public static class MatchPrefixReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<KmerWritable, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 0;
         private static long HighKmer = 0;
         private static long LowKmer = 0;
+        private static int W = 0;
+        private static int SeedGroup = 0;
+        private static int S = 0;
+        private KmerScanner scanner = null;
+        private MultipleOutputs mos = null;
+        private static boolean FUSED = false;
+        private Fingerprint xfp = new Fingerprint();
       
 		public void configure(JobConf job) {
+            FUSED = job.getBoolean("FUSED_OVERLAP", false);
 			K = Integer.parseInt(job.get("K"));
             HighKmer = Long.parseLong(job.get("UP_KMER"));
             LowKmer = Long.parseLong(job.get("LOW_KMER"));  
+            W = job.getInt("MINIMIZER_W", 0);
+            SeedGroup = job.getInt("MINIMIZER_GROUP", 200000);
+            S = job.getInt("SKEW_SALTS", 0);
+            scanner = new KmerScanner(K);
+            if (S > 0) {
+                mos = new MultipleOutputs(job);
+            }
+		}
+
+		public void close() throws IOException
+		{
+			if (mos != null) {
+				mos.close();
+			}
 		}
 
-        public class EdgeInfo
+        public static class EdgeInfo
 		{
 			public String id;
             public String edge_type;
 			public int overlap_size;
             public float cov;
+            // fused mode: fingerprint of the overlap, the last overlap_size
+            // bases of the read on the edge_type strand
+            public long fp;
 
 			public EdgeInfo(String id1, String edge_type1, int overlap_size1, float cov1) throws IOException
 			{
@@ -221,12 +450,18 @@ public class MatchPrefix extends Configured implements Tool
                 cov = cov1;
 			}
 
+			public EdgeInfo(String id1, String edge_type1, int overlap_size1, float cov1, long fp1) throws IOException
+			{
+				this(id1, edge_type1, overlap_size1, cov1);
+				fp = fp1;
+			}
+
             public String toString()
 			{
 				return id + "!" + overlap_size + "|" + cov;
 			}
 		}
-        class OvelapSizeComparator implements Comparator {
+        static class OvelapSizeComparator implements Comparator {
             public int compare(Object element1, Object element2) {
                 EdgeInfo obj1 = (EdgeInfo) element1;
                 EdgeInfo obj2 = (EdgeInfo) element2;
@@ -238,49 +473,284 @@ public class MatchPrefix extends Configured implements Tool
             }
         }
 
-		public void reduce(Text prefix, Iterator<Text> iter,
-						   OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(KmerWritable kmer, Iterator<NodeWritable> iter,
+						   OutputCollector<Text, NodeWritable> output, Reporter reporter)
 						   throws IOException
 		{
-            //Map<String, Node> nodes = new HashMap<String, Node>();
-			Map<String, Map<String, Node>> idx_nodes = new HashMap<String, Map<String, Node>>();
-            Map<String, Node> nodes;
-            Map<String, Node> emit_nodes = new HashMap<String, Node>();
-            //List<EdgeInfo> elist = new ArrayList<EdgeInfo>();
+            if (W > 0) {
+                reduceSeeds(iter, output, reporter);
+            } else if (kmer.getSalt() > 0) {
+                reduceShare(kmer, iter, reporter);
+            } else {
+                reduceKmer(kmer, iter, output, reporter);
+            }
+		}
+
+		// One share of a heavy prefix. Every share has the read ends, the
+		// windows are dealt over the shares and share 1 lists the read ends
+		// as candidates too. Only the HighKmer longest overlaps on a strand
+		// can become edges, so a share sends each read end just the
+		// HighKmer longest candidates it holds, with the size of its list
+		// for the LowKmer cut. StitchReducer keeps the HighKmer longest of
+		// the shares of a read end, so no reducer sees the whole prefix.
+		private void reduceShare(KmerWritable kmer, Iterator<NodeWritable> iter, Reporter reporter)
+						         throws IOException
+		{
+            OutputCollector<Text, NodeWritable> heavy = heavy(reporter);
+            KmerWritable home = new KmerWritable();
+            home.set(kmer.getWord0(), kmer.getWord1(), kmer.getK());
+            int share = kmer.getSalt();
+
+            Map<String, Map<String, Node>> idx_nodes = new HashMap<String, Map<String, Node>>();
             Map<String, List<EdgeInfo>> idx_elist = new HashMap<String, List<EdgeInfo>>();
-            List<EdgeInfo> elist;
+            readGroup(home, iter, idx_nodes, idx_elist, share == 1);
+
+            String prefix = home.toDna();
+            for (String idx : idx_nodes.keySet())
+            {
+                List<EdgeInfo> elist = idx_elist.get(idx);
+                int size = (elist == null) ? 0 : elist.size();
+                if (size == 0 && share != 1) {
+                    continue;
+                }
+                StringBuilder cands = new StringBuilder();
+                if (size > 0) {
+                    Collections.sort(elist, new OvelapSizeComparator());
+                    for (int i = 0; i < size && i < HighKmer; i++) {
+                        cands.append("\t").append(candidate(elist.get(i)));
+                    }
+                }
+                String side = idx.equals(prefix) ? "0" : "1";
+                Map<String, Node> nodes = idx_nodes.get(idx);
+                for (String nodeid_dir : nodes.keySet())
+                {
+                    String dir = nodeid_dir.substring(nodeid_dir.indexOf("|")+1);
+                    Node node = nodes.get(nodeid_dir);
+                    //\\// SHAREMSG + "\t" + prefix + "\t" + side + "\t" + dir + "\t" + share + "\t" + list size + candidates
+                    heavy.collect(new Text(node.getNodeId()),
+                                  new NodeWritable(Node.SHAREMSG + "\t" + prefix + "\t" + side + "\t" + dir + "\t" + share + "\t" + size + cands,
+                                                   (share == 1) ? node : null));
+                    reporter.incrCounter("Brush", "heavy_candidates", Math.min(size, HighKmer));
+                }
+            }
+		}
+
+		// edge_type, ReadID!overlap|cov, and |fingerprint in fused mode
+		private static String candidate(EdgeInfo ei)
+		{
+			return ei.edge_type + ei.toString() + (FUSED ? "|" + Fingerprint.encode(ei.fp) : "");
+		}
+
+		static EdgeInfo parseCandidate(String c) throws IOException
+		{
+			int ov = c.indexOf("!");
+			int cv = c.indexOf("|");
+			int fp = c.indexOf("|", cv + 1);
+			return new EdgeInfo(c.substring(1, ov), c.substring(0, 1), Integer.parseInt(c.substring(ov + 1, cv)),
+					            Float.parseFloat((fp < 0) ? c.substring(cv + 1) : c.substring(cv + 1, fp)),
+					            (fp < 0) ? 0 : Fingerprint.decode(c.substring(fp + 1)));
+		}
 
-            int prefix_sum = 0;
-            int belong_read = 0;
-            int kmer_count = 0;
-            //List<String> ReadID_list = new ArrayList<String>();
+		@SuppressWarnings("unchecked")
+		private OutputCollector<Text, NodeWritable> heavy(Reporter reporter) throws IOException
+		{
+			return mos.getCollector(HEAVY, reporter);
+		}
+
+		// key is a minimizer. A group of up to SeedGroup messages is matched
+		// in memory; a larger one is spilled to a local file and matched in
+		// passes, each holding the read ends of the K-mers that hash to it,
+		// so a repeat never has all its read ends in memory at once.
+		private void reduceSeeds(Iterator<NodeWritable> iter,
+						         OutputCollector<Text, NodeWritable> output, Reporter reporter)
+						         throws IOException
+		{
+            List<NodeWritable> group = new ArrayList<NodeWritable>();
+            File spill = null;
+            DataOutputStream out = null;
+            long count = 0;
+            long ends = 0;
             while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
+				count++;
+				if (msg.hasNode()) {
+					ends++;
+				}
+				if (spill != null) {
+					msg.write(out);
+					continue;
+				}
+				group.add(new NodeWritable(msg.getMessage(), msg.getNode()));
+				if (group.size() > SeedGroup) {
+					spill = File.createTempFile("seeds", ".spill");
+					out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spill)));
+					for (NodeWritable m : group) {
+						m.write(out);
+					}
+					group = null;
+					reporter.incrCounter("Brush", "seed_spills", 1);
+				}
+			}
+
+            if (spill == null) {
+                matchSeeds(group.iterator(), group.iterator(), 0, 1, output, reporter);
+                return;
+            }
+            out.close();
+            try {
+                int passes = (int) ((ends + SeedGroup - 1) / SeedGroup);
+                for (int pass = 0; pass < passes; pass++) {
+                    DataInputStream ein = new DataInputStream(new BufferedInputStream(new FileInputStream(spill)));
+                    DataInputStream sin = new DataInputStream(new BufferedInputStream(new FileInputStream(spill)));
+                    try {
+                        matchSeeds(new SpillIterator(ein, count), new SpillIterator(sin, count), pass, passes, output, reporter);
+                    } finally {
+                        ein.close();
+                        sin.close();
+                    }
+                }
+            } finally {
+                spill.delete();
+            }
+		}
+
+		// reads back the messages of a spilled group
+		private static class SpillIterator implements Iterator<NodeWritable>
+		{
+			private DataInputStream in;
+			private long left;
+
+			public SpillIterator(DataInputStream in1, long count)
+			{
+				in = in1;
+				left = count;
+			}
 
-				String [] vals = msg.split("\t");
-                float tmp_cov=0;
-				if (vals[2].equals(Node.NODEMSG))
+			public boolean hasNext() { return left > 0; }
+
+			public NodeWritable next()
+			{
+				NodeWritable msg = new NodeWritable();
+				try {
+					msg.readFields(in);
+				} catch (IOException ioe) {
+					throw new RuntimeException("Caught exception while reading a seed spill: " + ioe.toString());
+				}
+				left--;
+				return msg;
+			}
+
+			public void remove() { throw new UnsupportedOperationException(); }
+		}
+
+		// sort the read ends of this pass by their K-mer, then give each
+		// K-mer the SUFFIXMSGs of the seed windows that equal it
+		private void matchSeeds(Iterator<NodeWritable> ends, Iterator<NodeWritable> seeds, int pass, int passes,
+						        OutputCollector<Text, NodeWritable> output, Reporter reporter)
+						        throws IOException
+		{
+            Map<KmerWritable, List<NodeWritable>> idx_msgs = new HashMap<KmerWritable, List<NodeWritable>>();
+            while(ends.hasNext())
+			{
+				NodeWritable msg = ends.next();
+				String [] vals = msg.getMessage().split("\t");
+				if (msg.hasNode())
+				{
+                    // f0 and r1 come from the first window, r0 and f1 from the last
+                    PackedSeq seq = msg.getNode().getSeq();
+                    PackedSeq window = (vals[1].equals("f0") || vals[1].equals("r1")) ? seq.subseq(0, K) : seq.subseq(seq.length()-K, K);
+                    PackedSeq window_r = window.rc();
+                    KmerWritable kmer = new KmerWritable((window.compareTo(window_r) < 0) ? window : window_r);
+                    if ((kmer.hashCode() & Integer.MAX_VALUE) % passes != pass) {
+                        continue;
+                    }
+                    List<NodeWritable> msgs = idx_msgs.get(kmer);
+                    if (msgs == null) {
+                        msgs = new ArrayList<NodeWritable>();
+                        idx_msgs.put(kmer, msgs);
+                    }
+                    msgs.add(new NodeWritable(msg.getMessage(), msg.getNode()));
+				}
+				else if (!vals[1].equals(Node.SEEDMSG))
+				{
+					throw new IOException("Unknown msgtype: " + msg);
+				}
+			}
+
+            KmerWritable probe = new KmerWritable();
+            while (seeds.hasNext())
+            {
+                NodeWritable msg = seeds.next();
+                if (msg.hasNode()) {
+                    continue;
+                }
+                //\\// ReadID + "\t" + SEEDMSG + "\t" + start + "\t" + windows + "\t" + cov + "\t" + (len+K) + "\t" + bases
+                String [] vals = msg.getMessage().split("\t");
+                int start = Integer.parseInt(vals[2]);
+                int windows = Integer.parseInt(vals[3]);
+                int len = Integer.parseInt(vals[5]) - K;
+                scanner.reset(PackedSeq.fromDna(vals[6]));
+                while (scanner.next() && scanner.offset() < windows)
+                {
+                    scanner.get(probe);
+                    List<NodeWritable> msgs = idx_msgs.get(probe);
+                    if (msgs == null) {
+                        continue;
+                    }
+                    int i = start + scanner.offset();
+                    if (scanner.strand() < 0) {
+                        msgs.add(new NodeWritable(vals[0] + "\t" + "f" + "\t" + Node.SUFFIXMSG + "\t" + (len - i) + "\t" + vals[4] + "\t" + vals[5]));
+                    } else if (scanner.strand() > 0) {
+                        msgs.add(new NodeWritable(vals[0] + "\t" + "r" + "\t" + Node.SUFFIXMSG + "\t" + (K + i) + "\t" + vals[4] + "\t" + vals[5]));
+                    }
+                }
+            }
+
+            for (KmerWritable kmer : idx_msgs.keySet())
+            {
+                reduceKmer(kmer, idx_msgs.get(kmer).iterator(), output, reporter);
+            }
+		}
+
+		// File the read ends of a K-mer group by the strand their end is on,
+		// and list every message as a candidate on both strands; shares of a
+		// heavy prefix other than the first leave the read ends off the lists.
+		private void readGroup(KmerWritable kmer, Iterator<NodeWritable> iter,
+						       Map<String, Map<String, Node>> idx_nodes, Map<String, List<EdgeInfo>> idx_elist,
+						       boolean list_ends)
+						       throws IOException
+		{
+            // the map keys below are the str2dna text of the k-mer
+            String prefix = kmer.toDna();
+            String revers_prefix = kmer.toSeq().rc().toDna();
+
+            Map<String, Node> nodes;
+            List<EdgeInfo> elist;
+            while(iter.hasNext())
+			{
+				NodeWritable msg = iter.next();
+
+				String [] vals = msg.getMessage().split("\t");
+				if (msg.hasNode())
 				{
                     
                     Node node = new Node(vals[0]);
-                    node.parseNodeMsg(vals, 2);
-                    String window = Node.dna2str(prefix.toString());
-                    String revers_prefix = Node.str2dna(Node.rc(window));
+                    node.parseNodeMsg(msg.getNode());
                     String edge_type = vals[1].substring(0,1);
                     String rev_idx = vals[1].substring(1,2);
                     //EdgeInfo ei = new EdgeInfo(vals[0], vals[1].substring(0, 1), node.len(), node.cov());
                     //nodes.put(node.getNodeId() + "|" + edge_type, node);
                     //\\
                     if (rev_idx.equals("0")){
-                        if (idx_nodes.containsKey(prefix.toString())) {
-                            nodes = idx_nodes.get(prefix.toString());
+                        if (idx_nodes.containsKey(prefix)) {
+                            nodes = idx_nodes.get(prefix);
                             nodes.put(node.getNodeId() + "|" + edge_type, node);
-                            idx_nodes.put(prefix.toString(), nodes); 
+                            idx_nodes.put(prefix, nodes); 
                         } else {
                             nodes = new HashMap<String, Node>();
                             nodes.put(node.getNodeId() + "|" + edge_type, node);
-                            idx_nodes.put(prefix.toString(), nodes);
+                            idx_nodes.put(prefix, nodes);
 
                         }
                     } else {
@@ -294,18 +764,30 @@ public class MatchPrefix extends Configured implements Tool
                             idx_nodes.put(revers_prefix, nodes);
                         }
                     }
-                    EdgeInfo ei = new EdgeInfo(vals[0], vals[1].substring(0, 1), node.len(), node.cov());
+                    if (!list_ends) {
+                        continue;
+                    }
+                    long fp = 0;
+                    long fp_r = 0;
+                    if (FUSED) {
+                        PackedSeq seq = node.getSeq();
+                        xfp.reset(edge_type.equals("f") ? seq : seq.rc());
+                        fp = xfp.of(0, node.len());
+                        xfp.reset(edge_type.equals("f") ? seq.rc() : seq);
+                        fp_r = xfp.of(node.len() - K, node.len());
+                    }
+                    EdgeInfo ei = new EdgeInfo(vals[0], vals[1].substring(0, 1), node.len(), node.cov(), fp);
                     if (idx_elist.containsKey(revers_prefix)) {
-                        elist = idx_elist.get(prefix.toString());
+                        elist = idx_elist.get(prefix);
                         elist.add(ei);
-                        idx_elist.put(prefix.toString(),elist);
+                        idx_elist.put(prefix,elist);
                     } else {
                         elist = new ArrayList<EdgeInfo>();
                         elist.add(ei);
-                        idx_elist.put(prefix.toString(),elist);
+                        idx_elist.put(prefix,elist);
                     }
                     //duplicate reverse edge
-                    ei = new EdgeInfo(vals[0], Node.flip_dir(vals[1].substring(0, 1)), K, node.cov());
+                    ei = new EdgeInfo(vals[0], Node.flip_dir(vals[1].substring(0, 1)), K, node.cov(), fp_r);
                     if (idx_elist.containsKey(revers_prefix)) {
                         elist = idx_elist.get(revers_prefix);
                         elist.add(ei);
@@ -322,21 +804,21 @@ public class MatchPrefix extends Configured implements Tool
 				else if (vals[2].equals(Node.SUFFIXMSG))
 				{
                     //\\// ReadID + "\t" + "r" + "\t" + Node.SUFFIXMSG  + "\t" + overlap_size
-                    tmp_cov = Float.parseFloat(vals[4]);
-                    EdgeInfo ei = new EdgeInfo(vals[0], vals[1], Integer.parseInt(vals[3]), Float.parseFloat(vals[4]));
-                    if (idx_elist.containsKey(prefix.toString())) {
-                        elist = idx_elist.get(prefix.toString());
+                    // fused mode: the suffix prints of the strand of the k-mer and of the reverse one
+                    long fp = (vals.length > 7) ? Fingerprint.decode(vals[6]) : 0;
+                    long fp_r = (vals.length > 7) ? Fingerprint.decode(vals[7]) : 0;
+                    EdgeInfo ei = new EdgeInfo(vals[0], vals[1], Integer.parseInt(vals[3]), Float.parseFloat(vals[4]), fp);
+                    if (idx_elist.containsKey(prefix)) {
+                        elist = idx_elist.get(prefix);
                         elist.add(ei);
-                        idx_elist.put(prefix.toString(),elist);
+                        idx_elist.put(prefix,elist);
                     } else {
                         elist = new ArrayList<EdgeInfo>();
                         elist.add(ei);
-                        idx_elist.put(prefix.toString(),elist);
+                        idx_elist.put(prefix,elist);
                     }
                     //\\// duplicate reverse complement kmer
-                    String window = Node.dna2str(prefix.toString());
-                    String revers_prefix = Node.str2dna(Node.rc(window));
-                    ei = new EdgeInfo(vals[0], Node.flip_dir(vals[1]), Integer.parseInt(vals[5])-Integer.parseInt(vals[3]), Float.parseFloat(vals[4]));
+                    ei = new EdgeInfo(vals[0], Node.flip_dir(vals[1]), Integer.parseInt(vals[5])-Integer.parseInt(vals[3]), Float.parseFloat(vals[4]), fp_r);
                     if (idx_elist.containsKey(revers_prefix)) {
                         elist = idx_elist.get(revers_prefix);
                         elist.add(ei);
@@ -352,15 +834,31 @@ public class MatchPrefix extends Configured implements Tool
 				{
 					throw new IOException("Unknown msgtype: " + msg);
 				}
-                kmer_count = kmer_count + (int)tmp_cov;
-				prefix_sum = prefix_sum + (int)tmp_cov;
 			}
-            
-            
+		}
+
+		private void reduceKmer(KmerWritable kmer, Iterator<NodeWritable> iter,
+						        OutputCollector<Text, NodeWritable> output, Reporter reporter)
+						        throws IOException
+		{
+            //Map<String, Node> nodes = new HashMap<String, Node>();
+			Map<String, Map<String, Node>> idx_nodes = new HashMap<String, Map<String, Node>>();
+            Map<String, Node> nodes;
+            Map<String, Node> emit_nodes = new HashMap<String, Node>();
+            //List<EdgeInfo> elist = new ArrayList<EdgeInfo>();
+            Map<String, List<EdgeInfo>> idx_elist = new HashMap<String, List<EdgeInfo>>();
+            List<EdgeInfo> elist;
+
+            readGroup(kmer, iter, idx_nodes, idx_elist, true);
+
             for(String idx : idx_nodes.keySet())
             {// for [forward and reverse]
             elist=idx_elist.get(idx);
             nodes=idx_nodes.get(idx);
+            if (FUSED) {
+                verifyEnds(elist, nodes, output, reporter);
+                continue;
+            }
             
             Map<String, List<String>> edges_list = new HashMap<String, List<String>>();
             if (elist.size() > LowKmer /*&& prefix_sum < HighKmer*/ ){
@@ -391,29 +889,7 @@ public class MatchPrefix extends Configured implements Tool
                 //output.collect(new Text(node.getNodeId()), new Text(nodeid_dir));
                 // K-mer frequence filter
                 //\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
-                for(String adj : Node.dirs)
-                {
-                    List<String> edges = edges_list.get(adj);
-                    if (edges != null)
-                    {
-                        String key = Node.flip_dir(dir) + Node.flip_dir(adj);
-                        for(int i=0; i < edges.size(); i++){
-                            String edge_id = edges.get(i).substring(0, edges.get(i).indexOf("!"));
-                            int overlap_size = Integer.parseInt(edges.get(i).substring(edges.get(i).indexOf("!")+1, edges.get(i).indexOf("|")));
-                            float cov = Float.parseFloat(edges.get(i).substring(edges.get(i).indexOf("|")+1));
-                            //output.collect(new Text(node.getNodeId()), new Text( key + "\t" + edge_id + "\t" + node.len() + "\t" + overlap_size));
-                            if (node.getNodeId().equals(edge_id) ) {
-                                // do not add self
-                                //output.collect(new Text("XXX"), new Text(edge_id + "\t" + node.len() + "\t" + overlap_size));
-                            } else {
-                                if (!node.hasEdge(key, edge_id, overlap_size)) {
-                                    node.addEdge(key, edges.get(i).substring(0,edges.get(i).indexOf("|")));
-                                }
-                               // output.collect(new Text(Math.log(10+node.cov()+cov)*Math.log((double)All_Reads/(double)belong_read)+""), new Text(Math.log(10*node.cov()*cov)*Math.log((double)All_Reads/(double)belong_read)+""));
-                            }
-                        }
-                    }
-                }
+                addEdges(node, dir, edges_list);
                 //\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
                
                 emit_nodes.put(node.getNodeId(), node);
@@ -424,13 +900,188 @@ public class MatchPrefix extends Configured implements Tool
         //\\\
             for(String id : emit_nodes.keySet()){
                 Node node = emit_nodes.get(id);
-                output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+                output.collect(new Text(node.getNodeId()), new NodeWritable(node));
             }
         //\\\
         } 
+
+		// the edges of edges_list, by the type of the candidate, on the end
+		// of node facing dir
+		static void addEdges(Node node, String dir, Map<String, List<String>> edges_list)
+				             throws IOException
+		{
+            for(String adj : Node.dirs)
+            {
+                List<String> edges = edges_list.get(adj);
+                if (edges != null)
+                {
+                    String key = Node.flip_dir(dir) + Node.flip_dir(adj);
+                    for(int i=0; i < edges.size(); i++){
+                        String edge_id = edges.get(i).substring(0, edges.get(i).indexOf("!"));
+                        int overlap_size = Integer.parseInt(edges.get(i).substring(edges.get(i).indexOf("!")+1, edges.get(i).indexOf("|")));
+                        float cov = Float.parseFloat(edges.get(i).substring(edges.get(i).indexOf("|")+1));
+                        //output.collect(new Text(node.getNodeId()), new Text( key + "\t" + edge_id + "\t" + node.len() + "\t" + overlap_size));
+                        if (node.getNodeId().equals(edge_id) ) {
+                            // do not add self
+                            //output.collect(new Text("XXX"), new Text(edge_id + "\t" + node.len() + "\t" + overlap_size));
+                        } else {
+                            if (!node.hasEdge(key, edge_id, overlap_size)) {
+                                node.addEdge(key, edges.get(i).substring(0,edges.get(i).indexOf("|")));
+                            }
+                           // output.collect(new Text(Math.log(10+node.cov()+cov)*Math.log((double)All_Reads/(double)belong_read)+""), new Text(Math.log(10*node.cov()*cov)*Math.log((double)All_Reads/(double)belong_read)+""));
+                        }
+                    }
+                }
+            }
+		}
+
+		// Fused mode: VerifyOverlap and GenReverseEdge for the read ends that
+		// start with this k-mer. A candidate that is kept by the HighKmer cut
+		// overlaps a read end when its suffix print equals the print of as
+		// many leading bases of the end; as in VerifyOverlap only the longest
+		// overlap of a read on a strand counts. Both sides of the overlap go
+		// to MergeOverlap as edge messages, the nodes themselves do not.
+		private void verifyEnds(List<EdgeInfo> elist, Map<String, Node> nodes,
+						        OutputCollector<Text, NodeWritable> output, Reporter reporter)
+						        throws IOException
+		{
+            int n = 0;
+            if (elist.size() > LowKmer) {
+                Collections.sort(elist, new OvelapSizeComparator());
+                n = (int) Math.min(elist.size(), HighKmer);
+            }
+
+            for (String nodeid_dir : nodes.keySet())
+            {
+                String dir = nodeid_dir.substring(nodeid_dir.indexOf("|")+1);
+                verifyEnd(nodes.get(nodeid_dir), dir, elist, n, xfp, output, reporter);
+                reporter.incrCounter("Brush", "nodecount", 1);
+            }
+		}
+
+		// the first n candidates of elist that overlap the end of node facing dir
+		static void verifyEnd(Node node, String dir, List<EdgeInfo> elist, int n, Fingerprint xfp,
+				              OutputCollector<Text, NodeWritable> output, Reporter reporter)
+				              throws IOException
+		{
+            PackedSeq seq = dir.equals("f") ? node.getSeq() : node.getSeq().rc();
+            xfp.reset(seq);
+
+            Set<String> linked = new HashSet<String>();
+            for (int i = 0; i < n; i++)
+            {
+                EdgeInfo ei = elist.get(i);
+                if (ei.id.equals(node.getNodeId()) || ei.overlap_size > seq.length()) {
+                    continue;
+                }
+                if (linked.contains(ei.id + ei.edge_type) || xfp.of(0, ei.overlap_size) != ei.fp) {
+                    continue;
+                }
+                linked.add(ei.id + ei.edge_type);
+
+                // the candidate holds the edge as VerifyOverlap sets it, the read end the reverse one
+                String con = ei.edge_type + dir;
+                output.collect(new Text(ei.id),
+                               new NodeWritable(Node.OVALMSG + "\t" + con + "\t" + node.getNodeId() + "\t" + ei.overlap_size));
+                output.collect(new Text(node.getNodeId()),
+                               new NodeWritable(Node.REVERSEMSG + "\t" + Node.flip_link(con) + "\t" + ei.id + "\t" + ei.overlap_size));
+                reporter.incrCounter("Brush", "overlaps", 1);
+            }
+		}
 	}
 
+	// Stitches the shares of the heavy prefixes a read ends with. For each
+	// end the read gets the list size and the HighKmer longest candidates
+	// of every share; it keeps the HighKmer longest of those, the ones the
+	// whole list would have kept, and links them as reduceKmer does.
+	public static class StitchReducer extends MapReduceBase
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
+	{
+		private static long HighKmer = 0;
+		private static long LowKmer = 0;
+		private static boolean FUSED = false;
+		private Fingerprint xfp = new Fingerprint();
+
+		public void configure(JobConf job) {
+			FUSED = job.getBoolean("FUSED_OVERLAP", false);
+			HighKmer = Long.parseLong(job.get("UP_KMER"));
+			LowKmer = Long.parseLong(job.get("LOW_KMER"));
+		}
+
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+						   OutputCollector<Text, NodeWritable> output, Reporter reporter)
+						   throws IOException
+		{
+            // the node from share 1 of each prefix, and the shares of each end by number
+            Map<String, Node> prefix_node = new HashMap<String, Node>();
+            Map<String, Map<Integer, String []>> ends = new TreeMap<String, Map<Integer, String []>>();
+            while(iter.hasNext())
+            {
+                NodeWritable msg = iter.next();
+                //\\// SHAREMSG + "\t" + prefix + "\t" + side + "\t" + dir + "\t" + share + "\t" + list size + candidates
+                String [] vals = msg.getMessage().split("\t");
+                if (!vals[0].equals(Node.SHAREMSG)) {
+                    throw new IOException("Unknown msgtype: " + msg);
+                }
+                if (msg.hasNode()) {
+                    Node node = new Node(nodeid.toString());
+                    node.parseNodeMsg(msg.getNode());
+                    prefix_node.put(vals[1], node);
+                }
+                String end = vals[1] + "\t" + vals[2] + "\t" + vals[3];
+                Map<Integer, String []> shares = ends.get(end);
+                if (shares == null) {
+                    shares = new TreeMap<Integer, String []>();
+                    ends.put(end, shares);
+                }
+                shares.put(Integer.parseInt(vals[4]), vals);
+            }
+
+            for (String end : ends.keySet())
+            {
+                String [] key = end.split("\t");
+                Node node = prefix_node.get(key[0]);
+                if (node == null) {
+                    throw new IOException("No first share of " + key[0] + " for " + nodeid);
+                }
+                long size = 0;
+                List<MatchPrefixReducer.EdgeInfo> elist = new ArrayList<MatchPrefixReducer.EdgeInfo>();
+                for (String [] vals : ends.get(end).values()) {
+                    size += Long.parseLong(vals[5]);
+                    for (int i = 6; i < vals.length; i++) {
+                        elist.add(MatchPrefixReducer.parseCandidate(vals[i]));
+                    }
+                }
+                int n = 0;
+                if (size > LowKmer) {
+                    Collections.sort(elist, new MatchPrefixReducer.OvelapSizeComparator());
+                    n = (int) Math.min(elist.size(), HighKmer);
+                }
 
+                if (FUSED) {
+                    MatchPrefixReducer.verifyEnd(node, key[2], elist, n, xfp, output, reporter);
+                } else {
+                    Map<String, List<String>> edges_list = new HashMap<String, List<String>>();
+                    for (int i = 0; i < n; i++) {
+                        List<String> edges = edges_list.get(elist.get(i).edge_type);
+                        if (edges == null) {
+                            edges = new ArrayList<String>();
+                            edges_list.put(elist.get(i).edge_type, edges);
+                        }
+                        edges.add(elist.get(i).toString());
+                    }
+                    MatchPrefixReducer.addEdges(node, key[2], edges_list);
+                }
+                reporter.incrCounter("Brush", "nodecount", 1);
+            }
+
+            if (!FUSED) {
+                for (Node node : prefix_node.values()) {
+                    output.collect(nodeid, new NodeWritable(node));
+                }
+            }
+		}
+	}
 
 	public RunningJob run(String inputPath, String outputPath, String hkmerlist) throws Exception
 	{
@@ -450,22 +1101,80 @@ public class MatchPrefix extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
-		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputKeyClass(KmerWritable.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
 
 		conf.setMapperClass(MatchPrefixMapper.class);
 		conf.setReducerClass(MatchPrefixReducer.class);
 
+		if (BrushConfig.SKEW_SALTS > 0) {
+			MultipleOutputs.addNamedOutput(conf, HEAVY, SequenceFileOutputFormat.class, Text.class, NodeWritable.class);
+		}
+
 		//delete the output directory if it exists already
 		FileSystem.get(conf).delete(new Path(outputPath), true);
 
-		return JobClient.runJob(conf);
+		RunningJob job = JobClient.runJob(conf);
+
+		stitch = null;
+		if (BrushConfig.SKEW_SALTS > 0) {
+			stitch = stitchHeavy(outputPath);
+		}
+
+		return job;
+	}
+
+	// stitch the partial edge lists of the heavy prefixes and put the
+	// nodes with the rest of the output
+	private RunningJob stitchHeavy(String outputPath) throws Exception
+	{
+		String stitchPath = outputPath + "." + HEAVY;
+
+		JobConf conf = new JobConf(MatchPrefix.class);
+		conf.setJobName("MatchPrefix stitch " + outputPath);
+
+		BrushConfig.initializeConfiguration(conf);
+
+		FileSystem fs = FileSystem.get(conf);
+		FileStatus [] shares = fs.globStatus(new Path(outputPath + "/" + HEAVY + "-*"));
+		if (shares == null || shares.length == 0) {
+			return null;
+		}
+
+		FileInputFormat.addInputPath(conf, new Path(outputPath + "/" + HEAVY + "-*"));
+		FileOutputFormat.setOutputPath(conf, new Path(stitchPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
+
+		conf.setMapOutputKeyClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
+
+		conf.setOutputKeyClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
+
+		conf.setMapperClass(IdentityMapper.class);
+		conf.setReducerClass(StitchReducer.class);
+
+		fs.delete(new Path(stitchPath), true);
+
+		RunningJob job = JobClient.runJob(conf);
+
+		for (FileStatus share : shares) {
+			fs.delete(share.getPath(), false);
+		}
+		for (FileStatus part : fs.globStatus(new Path(stitchPath + "/part-*"))) {
+			fs.rename(part.getPath(), new Path(outputPath + "/part-" + HEAVY + part.getPath().getName().substring(4)));
+		}
+		fs.delete(new Path(stitchPath), true);
+
+		return job;
 	}
 
 	public int run(String[] args) throws Exception
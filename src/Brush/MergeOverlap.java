@@ -0,0 +1,221 @@
+/*
+    MergeOverlap.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+// Second half of the fused overlap build (-fused): MatchPrefix already
+// verified the overlaps and sent each side of them to its read, here the
+// reads are joined with their edges. The edges a read verified itself
+// (OVALMSG) come first, as VerifyOverlap stores them, then the reverse
+// edges (REVERSEMSG) it does not hold yet, as GenReverseEdge adds them.
+public class MergeOverlap extends Configured implements Tool
+{
+	private static final Logger sLogger = Logger.getLogger(MergeOverlap.class);
+
+    // MergeOverlapMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class MergeOverlapMapper extends MapReduceBase
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
+	{
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
+                throws IOException
+        {
+			if (!nodemsg.hasNode())
+			{
+				// an edge message of MatchPrefix
+				output.collect(nodeid, nodemsg);
+				return;
+			}
+
+			Node node = nodemsg.getNode();
+
+			// contained reads took no part in the overlaps
+			if (node.hasCustom("n")) { return; }
+
+			for (String key : Node.edgetypes)
+			{
+				node.clearEdges(key);
+			}
+			output.collect(nodeid, new NodeWritable(node));
+			reporter.incrCounter("Brush", "nodes", 1);
+        }
+	}
+
+
+    // MergeOverlapReducer
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class MergeOverlapReducer extends MapReduceBase
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
+	{
+        public class EdgeMsg
+		{
+            public String edge_type;
+			public String id;
+			public int overlap_size;
+
+			public EdgeMsg(String[] vals)
+			{
+                edge_type = vals[1];
+				id = vals[2];
+                overlap_size = Integer.parseInt(vals[3]);
+			}
+		}
+
+        class OvelapSizeComparator implements Comparator<EdgeMsg> {
+            public int compare(EdgeMsg e1, EdgeMsg e2) {
+                return e2.overlap_size - e1.overlap_size;
+            }
+        }
+
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
+				throws IOException
+		{
+			Node node = new Node(nodeid.toString());
+			List<EdgeMsg> verified = new ArrayList<EdgeMsg>();
+			List<EdgeMsg> reverse = new ArrayList<EdgeMsg>();
+
+			int sawnode = 0;
+
+			while(iter.hasNext())
+			{
+				NodeWritable msg = iter.next();
+				String [] vals = msg.getMessage().split("\t");
+
+				if (vals[0].equals(Node.NODEMSG))
+				{
+					node.parseNodeMsg(msg.getNode());
+					sawnode++;
+				}
+				else if (vals[0].equals(Node.OVALMSG))
+				{
+					verified.add(new EdgeMsg(vals));
+				}
+				else if (vals[0].equals(Node.REVERSEMSG))
+				{
+					reverse.add(new EdgeMsg(vals));
+				}
+				else
+				{
+					throw new IOException("Unknown msgtype: " + msg);
+				}
+			}
+
+			if (sawnode != 1)
+			{
+				throw new IOException("ERROR: Didn't see exactly 1 nodemsg (" + sawnode + ") for " + nodeid.toString());
+			}
+
+			Collections.sort(verified, new OvelapSizeComparator());
+			Collections.sort(reverse, new OvelapSizeComparator());
+
+			for (EdgeMsg e : verified)
+			{
+				node.addEdge(e.edge_type, e.id + "!" + e.overlap_size);
+			}
+
+			for (EdgeMsg e : reverse)
+			{
+				if (node.hasEdge(e.edge_type, e.id, e.overlap_size)) { continue; }
+				node.addEdge(e.edge_type, e.id + "!" + e.overlap_size);
+			}
+
+			output.collect(nodeid, new NodeWritable(node));
+		}
+	}
+
+
+	// Run Tool
+	///////////////////////////////////////////////////////////////////////////
+
+	public RunningJob run(String nodePath, String edgePath, String outputPath) throws Exception
+	{
+		sLogger.info("Tool name: MergeOverlap");
+		sLogger.info(" - input: "  + nodePath + " " + edgePath);
+		sLogger.info(" - output: " + outputPath);
+
+		JobConf conf = new JobConf(MergeOverlap.class);
+		conf.setJobName("MergeOverlap " + nodePath);
+
+		BrushConfig.initializeConfiguration(conf);
+
+		FileInputFormat.addInputPath(conf, new Path(nodePath));
+		FileInputFormat.addInputPath(conf, new Path(edgePath));
+		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
+
+		conf.setMapOutputKeyClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
+
+		conf.setOutputKeyClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
+
+		conf.setMapperClass(MergeOverlapMapper.class);
+		conf.setReducerClass(MergeOverlapReducer.class);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(outputPath), true);
+
+		return JobClient.runJob(conf);
+	}
+
+
+	// Parse Arguments and run
+	///////////////////////////////////////////////////////////////////////////
+
+	public int run(String[] args) throws Exception
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: MergeOverlap <nodes> <edges> <outdir>");
+			return -1;
+		}
+
+		run(args[0], args[1], args[2]);
+
+		return 0;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int res = ToolRunner.run(new Configuration(), new MergeOverlap(), args);
+		System.exit(res);
+	}
+}
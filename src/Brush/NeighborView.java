@@ -0,0 +1,344 @@
+/*
+    NeighborView.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+// The neighborhood of every node: each node sends its sequence and coverage
+// to its neighbors (DARKMSG) and a node collects what it got, per side, as
+// the extensions past the overlap read away from the node. CutChimericLinks
+// and CutRepeatBoundary build it in their own reduce, since they change the
+// graph right after; this job materializes it (Node.NEIGHBOR, sides sorted)
+// for analyses that run as map-only passes over the same graph, until the
+// topology changes.
+public class NeighborView extends Configured implements Tool
+{
+	private static final Logger sLogger = Logger.getLogger(NeighborView.class);
+
+	// Neighbor
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class Neighbor
+	{
+		public String edge_type;
+		public String id;
+		public int overlap_size;
+		public float cov;
+		public int raw_len;     // length of the neighbor's str_raw, the old tie break
+		public PackedSeq ext;   // the neighbor past the overlap, read away from this node
+
+		// DARKMSG con id str_raw oval cov [...]
+		public Neighbor(String [] vals)
+		{
+			edge_type = vals[1];
+			id = vals[2];
+			overlap_size = Integer.parseInt(vals[4]);
+			cov = Float.parseFloat(vals[5]);
+			raw_len = vals[3].length();
+
+			PackedSeq seq = PackedSeq.fromDna(vals[3]);
+			if (edge_type.charAt(1) == 'r')
+			{
+				seq = seq.rc();
+			}
+			ext = seq.subseq(overlap_size);
+		}
+
+		// con|id|oval|cov|raw_len|ext as a view keeps it, ext packed by str2dna
+		public Neighbor(String view)
+		{
+			String [] vals = view.split("\\|");
+
+			edge_type = vals[0];
+			id = vals[1];
+			overlap_size = Integer.parseInt(vals[2]);
+			cov = Float.parseFloat(vals[3]);
+			raw_len = Integer.parseInt(vals[4]);
+			ext = PackedSeq.fromDna((vals.length > 5) ? vals[5] : "");
+		}
+
+		public String toView()
+		{
+			return edge_type + "|" + id + "|" + overlap_size + "|" + cov + "|" + raw_len + "|" + ext.toDna();
+		}
+
+		public String toString()
+		{
+			return edge_type + " " + id + " " + overlap_size + " " + ext + " " + cov;
+		}
+	}
+
+	// longest overlap first, then the shorter neighbor, then by id; the two
+	// sides break the last tie in opposite order
+	public static class OverlapSizeComparator_f implements Comparator<Neighbor>
+	{
+		public int compare(Neighbor n1, Neighbor n2)
+		{
+			if (n1.overlap_size != n2.overlap_size) { return (n1.overlap_size > n2.overlap_size) ? -1 : 1; }
+			if (n1.raw_len != n2.raw_len) { return (n1.raw_len < n2.raw_len) ? -1 : 1; }
+			return (n1.id.compareTo(n2.id) < 0) ? -1 : 1;
+		}
+	}
+
+	public static class OverlapSizeComparator_r implements Comparator<Neighbor>
+	{
+		public int compare(Neighbor n1, Neighbor n2)
+		{
+			if (n1.overlap_size != n2.overlap_size) { return (n1.overlap_size > n2.overlap_size) ? -1 : 1; }
+			if (n1.raw_len != n2.raw_len) { return (n1.raw_len < n2.raw_len) ? -1 : 1; }
+			return (n1.id.compareTo(n2.id) < 0) ? 1 : -1;
+		}
+	}
+
+
+	// Neighborhood
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class Neighborhood
+	{
+		public Node node;
+		public List<Neighbor> flist = new ArrayList<Neighbor>();
+		public List<Neighbor> rlist = new ArrayList<Neighbor>();
+
+		private void add(Neighbor nb)
+		{
+			if (nb.edge_type.charAt(0) == 'f') {
+				flist.add(nb);
+			} else if (nb.edge_type.charAt(0) == 'r') {
+				rlist.add(nb);
+			}
+		}
+
+		// from the messages of NeighborViewMapper, in the order they came
+		public static Neighborhood fromMessages(Text nodeid, Iterator<NodeWritable> iter) throws IOException
+		{
+			Neighborhood nh = new Neighborhood();
+			nh.node = new Node(nodeid.toString());
+
+			int sawnode = 0;
+
+			while(iter.hasNext())
+			{
+				NodeWritable msg = iter.next();
+
+				String [] vals = msg.getMessage().split("\t");
+
+				if (vals[0].equals(Node.NODEMSG))
+				{
+					nh.node.parseNodeMsg(msg.getNode());
+					sawnode++;
+				}
+				else if (vals[0].equals(Node.DARKMSG))
+				{
+					nh.add(new Neighbor(vals));
+				}
+				else
+				{
+					throw new IOException("Unknown msgtype: " + msg);
+				}
+			}
+
+			if (sawnode != 1)
+			{
+				throw new IOException("ERROR: Didn't see exactly 1 nodemsg (" + sawnode + ") for " + nodeid.toString());
+			}
+
+			return nh;
+		}
+
+		// from a node written by NeighborViewReducer, the view is taken off
+		// the node; a node without neighbors has no view
+		public static Neighborhood fromView(Node node)
+		{
+			Neighborhood nh = new Neighborhood();
+			nh.node = node;
+
+			List<String> view = node.getCustom(Node.NEIGHBOR);
+
+			if (view != null)
+			{
+				for (String v : view)
+				{
+					nh.add(new Neighbor(v));
+				}
+
+				node.clearCustom(Node.NEIGHBOR);
+			}
+
+			return nh;
+		}
+
+		public void sort()
+		{
+			Collections.sort(flist, new OverlapSizeComparator_f());
+			Collections.sort(rlist, new OverlapSizeComparator_r());
+		}
+
+		// mark the edge to nb, both of its directions, for EdgeRemoval
+		public void cut(Neighbor nb) throws IOException
+		{
+			node.addRemovalEdge(node.getNodeId(), nb.edge_type, nb.id, nb.overlap_size);
+			node.addRemovalEdge(nb.id, Node.flip_link(nb.edge_type), node.getNodeId(), nb.overlap_size);
+		}
+
+		// the extensions of one side, to call their consensus
+		public static ConsensusMatrix load(ConsensusMatrix pwm, List<Neighbor> list)
+		{
+			pwm.clear();
+
+			for (Neighbor nb : list)
+			{
+				pwm.add(nb.ext, nb.cov);
+			}
+
+			return pwm;
+		}
+	}
+
+
+	// NeighborViewMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class NeighborViewMapper extends MapReduceBase
+	implements Mapper<Text, NodeWritable, Text, NodeWritable>
+	{
+		public void map(Text nodeid, NodeWritable nodemsg,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
+				throws IOException
+		{
+			Node node = nodemsg.getNode();
+			String str_raw = node.str_raw();
+
+			for (String key : Node.edgetypes)
+			{
+				List<String> edges = node.getEdges(key);
+				if (edges == null) { continue; }
+
+				String con = Node.flip_link(key);
+
+				for (int i = 0; i < edges.size(); i++)
+				{
+					String [] vals = edges.get(i).split("!");
+					output.collect(new Text(vals[0]), new NodeWritable(Node.DARKMSG + "\t" + con + "\t" + node.getNodeId() + "\t" + str_raw + "\t" + vals[1] + "\t" + node.cov()));
+					reporter.incrCounter("Brush", "edges", 1);
+				}
+			}
+
+			output.collect(nodeid, new NodeWritable(node));
+			reporter.incrCounter("Brush", "nodes", 1);
+		}
+	}
+
+
+	// NeighborViewReducer
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class NeighborViewReducer extends MapReduceBase
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
+	{
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
+				throws IOException
+		{
+			Neighborhood nh = Neighborhood.fromMessages(nodeid, iter);
+			nh.sort();
+
+			Node node = nh.node;
+
+			for (Neighbor nb : nh.flist) { node.addCustom(Node.NEIGHBOR, nb.toView()); }
+			for (Neighbor nb : nh.rlist) { node.addCustom(Node.NEIGHBOR, nb.toView()); }
+
+			output.collect(nodeid, new NodeWritable(node));
+		}
+	}
+
+
+	// Run Tool
+	///////////////////////////////////////////////////////////////////////////
+
+	public RunningJob run(String inputPath, String outputPath) throws Exception
+	{
+		sLogger.info("Tool name: NeighborView");
+		sLogger.info(" - input: "  + inputPath);
+		sLogger.info(" - output: " + outputPath);
+
+		JobConf conf = new JobConf(NeighborView.class);
+		conf.setJobName("NeighborView " + inputPath + " " + BrushConfig.K);
+
+		BrushConfig.initializeConfiguration(conf);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
+
+		conf.setMapOutputKeyClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
+
+		conf.setOutputKeyClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
+
+		conf.setMapperClass(NeighborViewMapper.class);
+		conf.setReducerClass(NeighborViewReducer.class);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(outputPath), true);
+
+		return JobClient.runJob(conf);
+	}
+
+
+	// Parse Arguments and run
+	///////////////////////////////////////////////////////////////////////////
+
+	public int run(String[] args) throws Exception
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: NeighborView <graph> <outdir>");
+			return -1;
+		}
+
+		run(args[0], args[1]);
+
+		return 0;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int res = ToolRunner.run(new Configuration(), new NeighborView(), args);
+		System.exit(res);
+	}
+}
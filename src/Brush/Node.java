@@ -27,6 +27,8 @@ import java.util.Collections;
 import java.util.Comparator;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.util.ToolRunner;
 /**
  *
@@ -44,9 +46,15 @@ public class Node {
     public static final String BUBBLELINKMSG     = "B";
 
     public static final String SUFFIXMSG     = "S";
+    public static final String SEEDMSG     = "M";
+    public static final String SHAREMSG    = "A";
     public static final String OVALMSG     = "O";
+    public static final String REVERSEMSG  = "R";
     public static final String GRAYMSG    = "G";
     public static final String DARKMSG   = "D";
+    public static final String COLORMSG  = "H";
+    public static final String LABELMSG  = "Q";
+    public static final String RANKMSG   = "J";
     public static final String ATTRIBUTE   = "I";
 
     // Node msg field codes
@@ -68,6 +76,8 @@ public class Node {
     public static final String FCOLOR = "0";
     public static final String RCOLOR = "1";
     public static final String UNIQUE = "u";
+    public static final String NEIGHBOR = "h";
+    public static final String CHAINRANK = "k";
 
     //\\// for find path
     public static enum Color {
@@ -79,209 +89,63 @@ public class Node {
     static String [] dirs      = {"f", "r"};
 
 
-    static Map<String, String> str2dna_ = initializeSTR2DNA();
-	static Map<String, String> dna2str_ = initializeDNA2STR();
 
     // node members
     private String nodeid;
+	private PackedSeq seq;
 	private Map<String, List<String>> fields = new HashMap<String, List<String>>();
+	private EdgeList [] adj = new EdgeList[4];   // by edgeIndex, null if absent
 
-    // converts strings like A, GA, TAT, ACGT to compressed DNA codes (A,B,C,...,HA,HB)
-	private static Map<String,String> initializeSTR2DNA()
+	// converts a tight encoding to a normal ascii string.
+	// The tight encoding packs a pair of bases xy as 'A' + 5x + 1 + y and a
+	// trailing single base x as 'A' + 5x; it is only kept for the text
+	// messages, nodes hold their sequence as a PackedSeq
+	public static String dna2str(String dna)
 	{
-	   int num = 0;
-	   int asciibase = 'A';
-
-	   Map<String, String> retval = new HashMap<String, String>();
-
-	   for (int xi = 0; xi < dnachars.length; xi++)
-	   {
-		   retval.put(dnachars[xi],
-				      Character.toString((char) (num + asciibase)));
-
-		   num++;
-
-		   for (int yi = 0; yi < dnachars.length; yi++)
-		   {
-			   retval.put(dnachars[xi] + dnachars[yi],
-					      Character.toString((char) (num + asciibase)));
-			   num++;
-		   }
-	   }
-
-	   for (int xi = 0; xi < dnachars.length; xi++)
-	   {
-		   for (int yi = 0; yi < dnachars.length; yi++)
-		   {
-			   String m = retval.get(dnachars[xi] + dnachars[yi]);
+		char [] s = new char[PackedSeq.dnaLength(dna)];
+		int n = 0;
 
-			   for (int zi = 0; zi < dnachars.length; zi++)
-			   {
-				   retval.put(dnachars[xi]+dnachars[yi]+dnachars[zi],
-						      m + retval.get(dnachars[zi]));
+		for (int i = 0; i < dna.length(); i++)
+		{
+			int c = dna.charAt(i) - 'A';
 
-				   for (int wi = 0; wi < dnachars.length; wi++)
-				   {
-					   retval.put(dnachars[xi]+dnachars[yi]+dnachars[zi]+dnachars[wi],
-							      m+retval.get(dnachars[zi]+dnachars[wi]));
-				   }
-			   }
-		   }
-	   }
+			s[n++] = PackedSeq.base(c / 5);
+			if (c % 5 != 0) { s[n++] = PackedSeq.base(c % 5 - 1); }
+		}
 
-	   return retval;
+		return new String(s);
 	}
 
-	// converts single letter dna codes (A,B,C,D,E...) to strings (A,AA,GT,GA...)
-	private static Map<String, String> initializeDNA2STR()
+	public static String str2dna(String seq)
 	{
-	   int num = 0;
-	   int asciibase = 65;
-
-	   Map<String, String> retval = new HashMap<String, String>();
+		int l = seq.length();
+		char [] s = new char[(l + 1) >> 1];
 
-	   for (int xi = 0; xi < dnachars.length; xi++)
-	   {
-		   retval.put(Character.toString((char) (num + asciibase)),
-				      dnachars[xi]);
-
-		   num++;
-
-		   for (int yi = 0; yi < dnachars.length; yi++)
-		   {
-			   retval.put(Character.toString((char) (num + asciibase)),
-					      dnachars[xi] + dnachars[yi]);
-			   num++;
-		   }
-	   }
-
-	   /*
-	   Set<String> keys = retval.keySet();
-	   Iterator<String> it = keys.iterator();
-	   while(it.hasNext())
-	   {
-		   String k = it.next();
-		   String v = retval.get(k);
-
-		   System.err.println(k + "\t" + v);
-	   }
-	   */
-
-	   return retval;
-	}
-
-	// converts a tight encoding to a normal ascii string
-	public static String dna2str(String dna)
-	{
-		StringBuffer sb = new StringBuffer();
+		for (int i = 0; i + 1 < l; i += 2)
+		{
+			s[i >> 1] = (char) ('A' + 5 * PackedSeq.code(seq.charAt(i)) + 1 + PackedSeq.code(seq.charAt(i+1)));
+		}
 
-		for (int i = 0; i < dna.length(); i++)
+		if ((l & 1) != 0)
 		{
-			sb.append(dna2str_.get(dna.substring(i,i+1)));
+			s[l >> 1] = (char) ('A' + 5 * PackedSeq.code(seq.charAt(l-1)));
 		}
 
-		return sb.toString();
+		return new String(s);
 	}
 
-	public static String str2dna(String seq)
-	{
-		StringBuffer sb = new StringBuffer();
-
-	    int l = seq.length();
-
-	    int offset = 0;
-
-	    while (offset < l)
-	    {
-	    	int r = l - offset;
-
-	    	if (r >= 4)
-	    	{
-	    		sb.append(str2dna_.get(seq.substring(offset, offset+4)));
-	    		offset += 4;
-	    	}
-	    	else
-	    	{
-	    		sb.append(str2dna_.get(seq.substring(offset, offset+r)));
-	    		offset += r;
-	    	}
-	    }
-
-        return sb.toString();
-	}
-
-    //\\\\\\\\\
-    public static int getLevenshteinDistance (String s, String t) {
-      if (s == null || t == null) {
-        throw new IllegalArgumentException("Strings must not be null");
-      }
-      /*
-        The difference between this impl. and the previous is that, rather
-         than creating and retaining a matrix of size s.length()+1 by t.length()+1,
-         we maintain two single-dimensional arrays of length s.length()+1.  The first, d,
-         is the 'current working' distance array that maintains the newest distance cost
-         counts as we iterate through the characters of String s.  Each time we increment
-         the index of String t we are comparing, d is copied to p, the second int[].  Doing so
-         allows us to retain the previous cost counts as required by the algorithm (taking
-         the minimum of the cost count to the left, up one, and diagonally up and to the left
-         of the current cost count being calculated).  (Note that the arrays aren't really
-         copied anymore, just switched...this is clearly much better than cloning an array
-         or doing a System.arraycopy() each time  through the outer loop.)
-
-         Effectively, the difference between the two implementations is this one does not
-         cause an out of memory condition when calculating the LD over two very large strings.
-      */
-
-      int n = s.length(); // length of s
-      int m = t.length(); // length of t
-
-      if (n == 0) {
-        return m;
-      } else if (m == 0) {
-        return n;
-      }
-
-      int p[] = new int[n+1]; //'previous' cost array, horizontally
-      int d[] = new int[n+1]; // cost array, horizontally
-      int _d[]; //placeholder to assist in swapping p and d
-
-      // indexes into strings s and t
-      int i; // iterates through s
-      int j; // iterates through t
-
-      char t_j; // jth character of t
-
-      int cost; // cost
-
-      for (i = 0; i<=n; i++) {
-         p[i] = i;
-      }
-
-      for (j = 1; j<=m; j++) {
-         t_j = t.charAt(j-1);
-         d[0] = j;
-
-         for (i=1; i<=n; i++) {
-            cost = s.charAt(i-1)==t_j ? 0 : 1;
-            // minimum of cell to the left+1, to the top+1, diagonally left and up +cost
-            d[i] = Math.min(Math.min(d[i-1]+1, p[i]+1),  p[i-1]+cost);
-         }
-
-         // copy current distance counts to 'previous row' distance counts
-         _d = p;
-         p = d;
-         d = _d;
-      }
-
-      // our last action in the above loop was to switch d and p, so p now
-      // actually has the most recent cost counts
-      return p[n];
-    }
-    //\\\\\\\\\
     
     //\\\\\\\\\\
     public static String matename(String readname)
 	{
+		// reads renamed by ReadDictionary carry their mate in the low bits
+		long id = ReadDictionary.parseId(readname);
+		if (id >= 0)
+		{
+			long mate = ReadDictionary.mateId(id);
+			return (mate < 0) ? null : ReadDictionary.idString(mate);
+		}
+
 		if (readname.endsWith("_1"))
 		{
 			return readname.substring(0, readname.length()-2)+ "_2";
@@ -298,8 +162,9 @@ public class Node {
     public static int Count_PairEnd(List<String> a_list, List<String> b_list){
         int sum = 0;
         if (a_list != null && b_list != null) {
+            Set<String> b_set = new HashSet<String>(b_list);
             for(int i=0; i < a_list.size(); i++) {
-                if (b_list.contains(matename(a_list.get(i)))) {
+                if (b_set.contains(matename(a_list.get(i)))) {
                     sum = sum + 1;
                 }
             }
@@ -414,74 +279,112 @@ public class Node {
 		fields.remove(key);
 	}
 
-    public void addEdge(String et, String v)
+    // position of an edge type in edgetypes, or -1
+    static int edgeIndex(String et)
 	{
-		List<String> l = getOrAddField(et);
-		l.add(v);
+		if (et.length() == 2)
+		{
+			int a = et.charAt(0);
+			int b = et.charAt(1);
+
+			if ((a == 'f' || a == 'r') && (b == 'f' || b == 'r'))
+			{
+				return ((a == 'r') ? 2 : 0) + ((b == 'r') ? 1 : 0);
+			}
+		}
+
+		return -1;
 	}
 
-	public List<String> getEdges(String et) throws IOException
+	private EdgeList edgeList(String et) throws IOException
 	{
-		if (et.equals("ff") ||
-		    et.equals("fr") ||
-		    et.equals("rr") ||
-		    et.equals("rf"))
+		int t = edgeIndex(et);
+
+		if (t < 0)
 		{
-		  return fields.get(et);
+			throw new IOException("Unknown edge type: " + et);
 		}
 
-		throw new IOException("Unknown edge type: " + et);
+		return adj[t];
 	}
 
-	public void setEdges(String et, List<String> edges)
+	private EdgeList getOrAddEdgeList(String et) throws IOException
 	{
-		if (edges == null || edges.size() == 0)
+		int t = edgeIndex(et);
+
+		if (t < 0)
 		{
-			fields.remove(et);
+			throw new IOException("Unknown edge type: " + et);
 		}
-		else
+
+		if (adj[t] == null) { adj[t] = new EdgeList(); }
+
+		return adj[t];
+	}
+
+    public void addEdge(String et, String v)
+	{
+		int t = edgeIndex(et);
+
+		if (t < 0)
 		{
-			fields.put(et, edges);
+			getOrAddField(et).add(v);
+			return;
 		}
+
+		if (adj[t] == null) { adj[t] = new EdgeList(); }
+		adj[t].add(v);
 	}
 
-	public void clearEdges(String et)
+	// "id!oval" strings; a copy, so changes go through setEdges/addEdge
+	public List<String> getEdges(String et) throws IOException
 	{
-		fields.remove(et);
+		EdgeList el = edgeList(et);
+
+		return (el == null) ? null : el.toList();
 	}
 
-    //\\ modify for overlap graph
-    public boolean hasEdge(String et, String nid) throws IOException
+	// the edges themselves, or null; see EdgeList for walking them
+	public EdgeList getEdgeList(String et) throws IOException
 	{
-		List<String> edges = getEdges(et);
-		if (edges == null) { return false; }
+		return edgeList(et);
+	}
 
-		for (String v : edges)
+	public void setEdges(String et, List<String> edges)
+	{
+		int t = edgeIndex(et);
+
+		if (t < 0)
 		{
-			if (v.substring(0, v.indexOf("!")).equals(nid))
-			{
-				return true;
-			}
+			if (edges == null || edges.size() == 0) { fields.remove(et); }
+			else { fields.put(et, edges); }
+			return;
 		}
 
-		return false;
+		adj[t] = (edges == null || edges.size() == 0) ? null : EdgeList.fromList(edges);
 	}
 
-    public boolean hasEdge(String et, String nid, int oval_size) throws IOException
+	public void clearEdges(String et)
 	{
-		List<String> edges = getEdges(et);
-		if (edges == null) { return false; }
+		int t = edgeIndex(et);
 
-		for (String v : edges)
-		{
-            String [] vals = v.split("!");
-			if (vals[0].equals(nid) && Integer.parseInt(vals[1]) == oval_size )
-			{
-				return true;
-			}
-		}
+		if (t < 0) { fields.remove(et); }
+		else { adj[t] = null; }
+	}
 
-		return false;
+    //\\ modify for overlap graph
+    public boolean hasEdge(String et, String nid) throws IOException
+	{
+		EdgeList el = edgeList(et);
+
+		return el != null && el.find(nid) >= 0;
+	}
+
+    public boolean hasEdge(String et, String nid, int oval_size) throws IOException
+	{
+		EdgeList el = edgeList(et);
+
+		return el != null && el.find(nid, oval_size) >= 0;
 	}
 
     public boolean canCompress(String d)
@@ -532,84 +435,41 @@ public class Node {
 
     public void removelink(String id, String dir) throws IOException
 	{
-		boolean found = false;
-
-		List<String> edges = getEdges(dir);
-
-		if (edges != null)
-		{
-			for(int i = 0; i < edges.size(); i++)
-			{
-                int idx = edges.get(i).indexOf("!");
-                if (idx == -1) {
-                    throw new IOException("Error removing link from " + getNodeId() + ": Edge without overlap size information!! ");
-                }
-				if (edges.get(i).substring(0, idx).equals(id))
-				{
-					edges.remove(i);
-					setEdges(dir, edges);
-					found = true;
-					break;
-				}
-			}
-		}
+		EdgeList el = edgeList(dir);
+		int pos = (el == null) ? -1 : el.find(id);
 
-        if (!found)
+		if (pos < 0)
 		{
 			throw new IOException("Error removing link from " + getNodeId() + ": Can't find " + id + ":" + dir + "\n" + toNodeMsg());
 		}
+
+		el.removeAt(pos);
+		if (el.size() == 0) { clearEdges(dir); }
 	}
 
     public void removelink(String id, String dir, int oval_size) throws IOException
 	{
-		boolean found = false;
-
-		List<String> edges = getEdges(dir);
+		EdgeList el = edgeList(dir);
+		int pos = (el == null) ? -1 : el.find(id, oval_size);
 
-		if (edges != null)
-		{
-			for(int i = 0; i < edges.size(); i++)
-			{
-                String [] vals = edges.get(i).split("!");
-                /*int idx = edges.get(i).indexOf("!");
-                if (idx == -1) {
-                    throw new IOException("Error removing link from " + getNodeId() + ": Edge without overlap size information!! ");
-                }*/
-				if (vals[0].equals(id) && Integer.parseInt(vals[1]) == oval_size)
-				{
-					edges.remove(i);
-					setEdges(dir, edges);
-					found = true;
-					break;
-				}
-			}
-		}
-
-        if (!found)
+		if (pos < 0)
 		{
 			throw new IOException("Error removing link from " + getNodeId() + ": Can't find " + id + ":" + dir + "\n" + toNodeMsg());
 		}
+
+		el.removeAt(pos);
+		if (el.size() == 0) { clearEdges(dir); }
 	}
     
     public void removelink_update(String id, String dir, int oval_size) throws IOException
 	{
-		boolean found = false;
-
-		List<String> edges = getEdges(dir);
+		EdgeList el = edgeList(dir);
+		int pos = (el == null) ? -1 : el.find(id, oval_size);
 
-		if (edges != null)
+		if (pos >= 0)
 		{
-			for(int i = 0; i < edges.size(); i++)
-			{
-                String [] vals = edges.get(i).split("!");
-				if (vals[0].equals(id) && Integer.parseInt(vals[1]) == oval_size)
-				{
-					edges.remove(i);
-					setEdges(dir, edges);
-					found = true;
-					break;
-				}
-			}
+			el.removeAt(pos);
+			if (el.size() == 0) { clearEdges(dir); }
 		}
 	}
 
@@ -617,138 +477,58 @@ public class Node {
 	{
 		//System.err.println(nodeid_m + " replacing " + o + ":" + ot + " => " + n + ":" + nt);
 
-		boolean found = false;
-
-		List<String> l = getOrAddField(ot);
-		String temp = "";
-        int idx =  0;
-        String [] o_vals = o.split("!");
-        String o_id = o_vals[0];
-        int o_oval_size = Integer.parseInt(o_vals[1]);
-        for (int li = l.size() - 1; li >= 0; li--)
-		{
+		String [] o_vals = o.split("!");
+		String o_id = o_vals[0];
+		int o_oval_size = Integer.parseInt(o_vals[1]);
 
-            String [] vals = l.get(li).split("!");
-            String id = vals[0];
-            int oval_size = Integer.parseInt(vals[1]);
-            if ( id.equals(o_id) && oval_size == o_oval_size)
-			{
-				l.remove(li);
-				found = true;
-			}
-            //temp = l.get(li);
-            /*idx = temp.indexOf("!");
-            if (idx == -1) {
-                throw new IOException("Edge without overlap size information!! ");
-            }
-            if (temp.substring(0, idx).equals(o.substring(0,o.indexOf("!")) && ))
-			{
-				l.remove(li);
-				found = true;
-			}*/
-		}
+		EdgeList el = getOrAddEdgeList(ot);
 
-		if (!found)
+		if (el.removeAll(o_id, o_oval_size, false) == 0)
 		{
 			throw new IOException(nodeid + " Couldn't find link " + o + " " + ot + " replace link " + n + " " + nt);
 		}
 
-		if (l.size() == 0)
+		if (el.size() == 0)
 		{
-			fields.remove(ot);
+			clearEdges(ot);
 		}
 
-		l = getOrAddField(nt);
-		l.add(n);
-
-		/*if (fields.containsKey(THREAD))
-		{
-			l = getOrAddField(THREAD);
-
-			for (int i = 0; i < l.size(); i++)
-			{
-				String thread = l.get(i);
-
-				String [] vals = thread.split(":");
-
-				if (vals[0].equals(ot) && vals[1].equals(o))
-				{
-					thread = nt + ":" + n + ":" + vals[2];
-					l.set(i, thread);
-				}
-			}
-		}*/
+		getOrAddEdgeList(nt).add(n);
 	}
 
     public void replacelink(String o, String ot, String n, String nt) throws IOException
 	{
 		//System.err.println(nodeid_m + " replacing " + o + ":" + ot + " => " + n + ":" + nt);
 
-		boolean found = false;
+		EdgeList el = getOrAddEdgeList(ot);
 
-		List<String> l = getOrAddField(ot);
-		String temp = "";
-        int idx =  0;
-        String [] o_vals = o.split("!");
-        String o_id = o_vals[0];
-        int o_oval_size = Integer.parseInt(o_vals[1]);
-        for (int li = l.size() - 1; li >= 0; li--)
-		{
-
-           /* String [] vals = l.get(li).split("!");
-            String id = vals[0];
-            int oval_size = Integer.parseInt(vals[1]);
-            if ( id.equals(o_id) && oval_size == o_oval_size)
-			{
-				l.remove(li);
-				found = true;
-			}*/
-            temp = l.get(li);
-            idx = temp.indexOf("!");
-            if (idx == -1) {
-                throw new IOException("Edge without overlap size information!! ");
-            }
-            if (temp.substring(0, idx).equals(o.substring(0,o.indexOf("!"))))
-			{
-				l.remove(li);
-				found = true;
-			}
-		}
-
-		if (!found)
+		if (el.removeAll(o.substring(0, o.indexOf("!")), 0, true) == 0)
 		{
 			throw new IOException(nodeid + " Couldn't find link " + o + " " + ot + " replace link " + n + " " + nt);
 		}
 
-		if (l.size() == 0)
+		if (el.size() == 0)
 		{
-			fields.remove(ot);
+			clearEdges(ot);
 		}
 
-		l = getOrAddField(nt);
-		l.add(n);
+		getOrAddEdgeList(nt).add(n);
 
 	}
 
     public TailInfo getedge(String et, String id) throws IOException{
-        List<String> edges = getEdges(et);
-		if (edges == null) { return null; }
-		for (String v : edges)
-		{
-			if (v.substring(0, v.indexOf("!")).equals(id))
-			{
-				TailInfo ti = new TailInfo();
-                ti.dist = 1;
-                int idx = v.indexOf("!");
-                if ( idx != -1){
-                    ti.id = v.substring(0, v.indexOf("!"));
-                    ti.oval_size = Integer.parseInt(v.substring(idx+1));
-                    ti.dir = et.substring(1);
-                }
-                return ti;
-			}
-		}
-        return null;
+        EdgeList el = edgeList(et);
+		if (el == null) { return null; }
+
+		int pos = el.find(id);
+		if (pos < 0) { return null; }
+
+		TailInfo ti = new TailInfo();
+		ti.dist = 1;
+		ti.id = el.id(pos);
+		ti.oval_size = el.oval(pos);
+		ti.dir = et.substring(1);
+		return ti;
     }
 
     public TailInfo gettail(String dir)
@@ -761,30 +541,20 @@ public class Node {
 		TailInfo ti = new TailInfo();
 		ti.dist = 1;
 
-		String fd = dir + "f";
-		if (fields.containsKey(fd))
+		for (String adjdir : dirs)
 		{
-            String edge_field = fields.get(fd).get(0);
-            int idx = edge_field.indexOf("!");
-            if ( idx != -1){
-                ti.id = edge_field.substring(0, edge_field.indexOf("!"));
-                ti.oval_size = Integer.parseInt(edge_field.substring(idx+1));
-            }
-			//ti.id = fields.get(fd).get(0);
-			ti.dir = "f";
-		}
+			EdgeList el = adj[edgeIndex(dir + adjdir)];
 
-		fd = dir + "r";
-		if (fields.containsKey(fd))
-		{
-            String edge_field = fields.get(fd).get(0);
-            int idx = edge_field.indexOf("!");
-            if ( idx != -1){
-                ti.id = edge_field.substring(0, edge_field.indexOf("!"));
-                ti.oval_size = Integer.parseInt(edge_field.substring(idx+1));
-            }
-			//ti.id = fields.get(fd).get(0);
-			ti.dir = "r";
+			if (el != null)
+			{
+				int pos = el.first();
+				if (pos >= 0)
+				{
+					ti.id = el.id(pos);
+					ti.oval_size = el.oval(pos);
+				}
+				ti.dir = adjdir;
+			}
 		}
 
 		return ti;
@@ -793,42 +563,48 @@ public class Node {
     //Accessors
 	public String str()
 	{
-		return dna2str(fields.get(STR).get(0));
+		return seq.toString();
 	}
 	
 	public String str_raw()
 	{
-		return fields.get(STR).get(0);
+		return seq.toDna();
+	}
+
+	public PackedSeq getSeq()
+	{
+		return seq;
 	}
 	
 	public void setstr_raw(String rawstr)
 	{
-		List<String> l = getOrAddField(STR);
-		l.clear();		
-		l.add(rawstr);
+		seq = PackedSeq.fromDna(rawstr);
 	}
 	
 	public void setstr(String str)
 	{
-		List<String> l = getOrAddField(STR);
-		l.clear();
-		l.add(Node.str2dna(str));
+		seq = new PackedSeq(str);
+	}
+
+	public void setSeq(PackedSeq s)
+	{
+		seq = s;
 	}
 	
 	public int len()
 	{
-		return str().length();
+		return seq.length();
 	}
 	
 	public int degree(String dir)
 	{
 		int retval = 0;
 		
-		String fd = dir + "f";
-		if (fields.containsKey(fd)) { retval += fields.get(fd).size(); }
+		EdgeList fd = adj[edgeIndex(dir + "f")];
+		if (fd != null) { retval += fd.size(); }
 		
-		String rd = dir + "r";
-		if (fields.containsKey(rd)) { retval += fields.get(rd).size(); }
+		EdgeList rd = adj[edgeIndex(dir + "r")];
+		if (rd != null) { retval += rd.size(); }
 		
 		return retval;
 	}
@@ -1061,7 +837,7 @@ public class Node {
             //con + "|" + node_id + "|" + str_raw + "|" + oval_size + "|" + cov + "|" + end;
             String[] val1 = obj1.split("\\|");
             String[] val2 = obj2.split("\\|");
-            if ((int) ((Node.dna2str(val1[2]).length()-Integer.parseInt(val1[3])) - (Node.dna2str(val2[2]).length() - Integer.parseInt(val2[3])) ) >= 0) {
+            if ((int) ((PackedSeq.dnaLength(val1[2])-Integer.parseInt(val1[3])) - (PackedSeq.dnaLength(val2[2]) - Integer.parseInt(val2[3])) ) >= 0) {
                 return -1;
             } else {
                 return 1;
@@ -1076,7 +852,7 @@ public class Node {
             //con + "|" + node_id + "|" + str_raw + "|" + oval_size + "|" + cov + "|" + end;
             String[] val1 = obj1.split("\\|");
             String[] val2 = obj2.split("\\|");
-            if ((int) ((Node.dna2str(val1[2]).length()*Float.parseFloat(val1[4])) - (Node.dna2str(val2[2]).length()*Float.parseFloat(val2[4])) ) >= 0) {
+            if ((int) ((PackedSeq.dnaLength(val1[2])*Float.parseFloat(val1[4])) - (PackedSeq.dnaLength(val2[2])*Float.parseFloat(val2[4])) ) >= 0) {
                 return -1;
             } else {
                 return 1;
@@ -1087,55 +863,6 @@ public class Node {
 
 
     //\\\\\\\\\\\\\\\\\\\\\\\\\\\ String comparsion
-    public static int _min2(int a, int b)
-	{
-		return (a<b) ? a : b;
-	}
-
-	public static int _max2(int a, int b)
-	{
-		return (a>b) ? a : b;
-	}
-
-	public static int _min3(int a, int b, int c)
-	{
-		  return a < b
-		          ? a < c ? a : c
-		          : b < c ? b : c;
-	}
-
-	public static int fastdistance(String word1, String word2)
-	{
-		int len1 = word1.length();
-		int len2 = word2.length();
-
-		int[][] d = new int[len1+1][len2+1];
-
-		for (int i = 0; i <= len1; i++)
-		{
-			d[i][0] = i;
-		}
-
-		for (int j = 0; j <= len2; j++)
-		{
-			d[0][j] = j;
-		}
-
-		for (int i = 1; i <= len1; i++)
-		{
-			char w1 = word1.charAt(i-1);
-			for (int j = 1; j <= len2; j++)
-			{
-				char w2 = word2.charAt(j-1);
-				int e = (w1 == w2) ? 0 : 1;
-
-				d[i][j] = _min3(d[i-1][j]+1, d[i][j-1]+1, d[i-1][j-1]+e);
-			}
-		}
-
-		return d[len1][len2];
-	}
-
     public static boolean fastcomparsion(String word1, String word2){
         boolean result = false;
         if (word1.length() < word2.length()){
@@ -1159,7 +886,7 @@ public class Node {
                 result = true;
             }
         } else {
-            int distance = fastdistance(word1, word2);
+            int distance = EditDistance.distance(word1, word2, word1.length() / 10 + 1);
             float threshold = (float)distance / (float)word1.length();
             
             if (threshold < 0.1 ) {
@@ -1176,75 +903,38 @@ public class Node {
         if (black_edges != null) {
             Collections.sort(black_edges, new BlackEdgeComparator());
             //best_edge = black_edges.get(0);
-            List<String> edge_list = new ArrayList<String>();
+            ConsensusMatrix pwm = new ConsensusMatrix();
             for(int i=0; i < black_edges.size(); i++) {
                 // con + "|" + node_id + "|" + str_raw + "|" + oval_size + "|" + cov
                 String [] vals = black_edges.get(i).split("\\|");
                 if (vals[0].equals(dir + "f") || vals[0].equals(dir +"r")){
-                    //best_edge = black_edges.get(i);
-                    //break;
-                    String str = Node.dna2str(vals[2]);
+                    PackedSeq seq = PackedSeq.fromDna(vals[2]);
                     if (vals[0].charAt(1) == 'r'){
-                        str = Node.rc(str);
+                        seq = seq.rc();
                     }
-                    String str_cut = "";
-                    str_cut = str.substring(Integer.parseInt(vals[3]));
-                    edge_list.add(str_cut+"!"+vals[4]);
+                    pwm.add(seq.subseq(Integer.parseInt(vals[3])), Float.parseFloat(vals[4]));
                 }
             }
             //\\\\\\\\\\
             // Compute consensus sequence
-            String consensus = "";
-            if (edge_list.size() >= 2) {
-                int consensus_len = edge_list.get(1).substring(0, edge_list.get(1).indexOf("!")).length();
-                //\\ 0:A 1:T 2:C 3:G 4:Sum
-                int[][] array = new int[consensus_len][5];
-                for(int i=0; i < consensus_len; i++) {
-                    for(int j=0; j < 5; j++) {
-                        array[i][j] = 0;
-                    }
-                }
-                for(int i=0; i < edge_list.size(); i++) {
-                    String [] compare_edge = edge_list.get(i).split("!");
-                    for(int j=0; j < compare_edge[0].length() && j < consensus_len; j++ ) {
-                        array[j][4] = array[j][4] + (int)Float.parseFloat(compare_edge[1]);
-                        if (compare_edge[0].charAt(j) == 'A'){
-                            array[j][0] = array[j][0] + (int)Float.parseFloat(compare_edge[1]);
-                        } else if (compare_edge[0].charAt(j) == 'T'){
-                            array[j][1] = array[j][1] + (int)Float.parseFloat(compare_edge[1]);
-                        } else if (compare_edge[0].charAt(j) == 'C'){
-                            array[j][2] = array[j][2] + (int)Float.parseFloat(compare_edge[1]);
-                        } else if (compare_edge[0].charAt(j) == 'G'){
-                            array[j][3] = array[j][3] + (int)Float.parseFloat(compare_edge[1]);
-                        }
-                    }
-                }
+            if (pwm.size() >= 2) {
+                int consensus_len = pwm.ext(1).length();
+                pwm.count(consensus_len);
                 // construct consensus
                 int N_count = 0;
                 int gap_count = 0;
-                for(int i=0; i < array.length; i++){
-                    if ((float)array[i][0]/(float)array[i][4] > 0.6) {
-                        consensus = consensus + "A";
-                        gap_count = 0;
-                    } else if ((float)array[i][1]/(float)array[i][4] > 0.6) {
-                        consensus = consensus + "T";
-                        gap_count = 0;
-                    } else if ((float)array[i][2]/(float)array[i][4] > 0.6) {
-                        consensus = consensus + "C";
-                        gap_count = 0;
-                    } else if ((float)array[i][3]/(float)array[i][4] > 0.6) {
-                        consensus = consensus + "G";
-                        gap_count = 0;
-                    } else {
-                        consensus = consensus + "N";
+                for(int i=0; i < consensus_len; i++){
+                    if (pwm.majorityCall(i, 0.6) == ConsensusMatrix.N) {
                         N_count = N_count + 1;
                         gap_count = gap_count + 1;
+                    } else {
+                        gap_count = 0;
                     }
                     if (gap_count >= 4 && consensus_len >= 20) {
                         return null;
                     }
                 }
-                if ( (float)N_count/(float)consensus.length() > 0.4 && consensus_len >= 20) {
+                if ( (float)N_count/(float)consensus_len > 0.4 && consensus_len >= 20) {
                     return null;
                 }
                 //\\  Select best edge
@@ -1289,161 +979,25 @@ public class Node {
         return best_edge;
     }
 
-    // Sort edge_list with length
+    // consensus of "ext!cov" entries, see ConsensusMatrix.consensus
     public static String Consensus(List<String> edge_list , float majority, float threshold) {
-        String consensus = null;
-        class ConsensusComparator implements Comparator {
-            public int compare(Object element1, Object element2) {
-                String obj1 = (String) element1;
-                String obj2 = (String) element2;
-                //con + "|" + node_id + "|" + str_raw + "|" + oval_size + "|" + cov + "|" + end;
-                String[] val1 = obj1.split("!");
-                String[] val2 = obj2.split("!");
-                if ((int) ( val1[0].length()-val2[0].length())  >= 0) {
-                    return -1;
-                } else {
-                    return 1;
-                }
-            }
-        }
-        //\\\
-        Collections.sort(edge_list, new ConsensusComparator());
-        if (edge_list.size() >= 2) {
-            //int consensus_len = edge_list.get(1).substring(0, edge_list.get(1).indexOf("!")).length();
-            String [] compare_edge0 = edge_list.get(0).split("!");
-            String [] compare_edge1 = edge_list.get(1).split("!");
-            int consensus_len;
-            if (edge_list.size() == 2 || Float.parseFloat(compare_edge0[1]) + Float.parseFloat(compare_edge1[1]) > 2  ) {
-                consensus_len = edge_list.get(1).substring(0, edge_list.get(1).indexOf("!")).length();
-            } else {
-                consensus_len = edge_list.get(2).substring(0, edge_list.get(2).indexOf("!")).length();
-            } 
-            //\\ 0:A 1:T 2:C 3:G 4:Sum
-            int[][] array = new int[consensus_len][5];
-            for(int i=0; i < consensus_len; i++) {
-                for(int j=0; j < 5; j++) {
-                    array[i][j] = 0;
-                }
-            }
-            for(int i=0; i < edge_list.size(); i++) {
-                String [] compare_edge = edge_list.get(i).split("!");
-                for(int j=0; j < compare_edge[0].length() && j < consensus_len; j++ ) {
-                    array[j][4] = array[j][4] + (int)Float.parseFloat(compare_edge[1]);
-                    if (compare_edge[0].charAt(j) == 'A'){
-                        array[j][0] = array[j][0] + (int)Float.parseFloat(compare_edge[1]);
-                    } else if (compare_edge[0].charAt(j) == 'T'){
-                        array[j][1] = array[j][1] + (int)Float.parseFloat(compare_edge[1]);
-                    } else if (compare_edge[0].charAt(j) == 'C'){
-                        array[j][2] = array[j][2] + (int)Float.parseFloat(compare_edge[1]);
-                    } else if (compare_edge[0].charAt(j) == 'G'){
-                        array[j][3] = array[j][3] + (int)Float.parseFloat(compare_edge[1]);
-                    }
-                }
-            }
-            // construct consensus
-            int N_count = 0;
-            int gap_count = 0;
-            consensus = "";
-            for(int i=0; i < array.length; i++){
-                if ((float)array[i][0]/(float)array[i][4] > majority) {
-                    consensus = consensus + "A";
-                    gap_count = 0;
-                } else if ((float)array[i][1]/(float)array[i][4] > majority) {
-                    consensus = consensus + "T";
-                    gap_count = 0;
-                } else if ((float)array[i][2]/(float)array[i][4] > majority) {
-                    consensus = consensus + "C";
-                    gap_count = 0;
-                } else if ((float)array[i][3]/(float)array[i][4] > majority) {
-                    consensus = consensus + "G";
-                    gap_count = 0;
-                } else {
-                    consensus = consensus + "N";
-                    N_count = N_count + 1;
-                    gap_count = gap_count + 1;
-                }
-                /*if (gap_count >= 4) {
-                    return null;
-                }*/
-            }
-            if ( (float)N_count/(float)consensus_len > threshold /*&& consensus_len >= len*/) {
-                return null;
-            }
-        } else if (edge_list.size() == 1) {
-            return edge_list.get(0).substring(0, edge_list.get(0).indexOf("!"));
-        }
-        //\\\
-        return consensus;
+        ConsensusMatrix pwm = loadConsensus(edge_list);
+        return pwm.consensus(majority, threshold) ? pwm.toString() : null;
     }
 
+    // consensus of "ext!cov" entries, see ConsensusMatrix.consensus2
     public static String Consensus2(List<String> edge_list , float threshold){
-        String consensus = null;
-        class ConsensusComparator implements Comparator {
-            public int compare(Object element1, Object element2) {
-                String obj1 = (String) element1;
-                String obj2 = (String) element2;
-                //con + "|" + node_id + "|" + str_raw + "|" + oval_size + "|" + cov + "|" + end;
-                String[] val1 = obj1.split("!");
-                String[] val2 = obj2.split("!");
-                if ((int) ( val1[0].length()-val2[0].length())  >= 0) {
-                    return -1;
-                } else {
-                    return 1;
-                }
-            }
-        }
-        //\\\
-        Collections.sort(edge_list, new ConsensusComparator());
-        if (edge_list.size() >= 2) {
-            int consensus_len = edge_list.get(1).substring(0, edge_list.get(1).indexOf("!")).length();
-            //\\ 0:A 1:T 2:C 3:G 4:Sum
-            int[][] array = new int[consensus_len][5];
-            for(int i=0; i < consensus_len; i++) {
-                for(int j=0; j < 5; j++) {
-                    array[i][j] = 0;
-                }
-            }
-            for(int i=0; i < edge_list.size(); i++) {
-                String [] compare_edge = edge_list.get(i).split("!");
-                for(int j=0; j < compare_edge[0].length() && j < consensus_len; j++ ) {
-                    array[j][4] = array[j][4] + (int)Float.parseFloat(compare_edge[1]);
-                    if (compare_edge[0].charAt(j) == 'A'){
-                        array[j][0] = array[j][0] + (int)Float.parseFloat(compare_edge[1]);
-                    } else if (compare_edge[0].charAt(j) == 'T'){
-                        array[j][1] = array[j][1] + (int)Float.parseFloat(compare_edge[1]);
-                    } else if (compare_edge[0].charAt(j) == 'C'){
-                        array[j][2] = array[j][2] + (int)Float.parseFloat(compare_edge[1]);
-                    } else if (compare_edge[0].charAt(j) == 'G'){
-                        array[j][3] = array[j][3] + (int)Float.parseFloat(compare_edge[1]);
-                    }
-                }
-            }
-            // construct consensus
-            int N_count = 0;
-            consensus = "";
-            for(int i=0; i < array.length; i++){
-                if (array[i][0] > array[i][1] && array[i][0] > array[i][2] && array[i][0] > array[i][3]) {
-                    consensus = consensus + "A";
-                } else if (array[i][1] > array[i][0] && array[i][1] > array[i][2] && array[i][1] > array[i][3]) {
-                    consensus = consensus + "T";
-                } else if (array[i][2] > array[i][0] && array[i][2] > array[i][1] && array[i][2] > array[i][3]) {
-                    consensus = consensus + "C";
-                } else if (array[i][3] > array[i][0] && array[i][3] > array[i][1] && array[i][3] > array[i][2]) {
-                    consensus = consensus + "G";
-                } else {
-                    consensus = consensus + "N";
-                    N_count = N_count + 1;
-                }
-             
-            }
-            if ( (float)N_count/(float)consensus_len > threshold ) {
-                return null;
-            }
-        } else if (edge_list.size() == 1) {
-            return edge_list.get(0).substring(0, edge_list.get(0).indexOf("!"));
+        ConsensusMatrix pwm = loadConsensus(edge_list);
+        return pwm.consensus2(threshold) ? pwm.toString() : null;
+    }
+
+    private static ConsensusMatrix loadConsensus(List<String> edge_list) {
+        ConsensusMatrix pwm = new ConsensusMatrix();
+        for (String edge : edge_list) {
+            int p = edge.lastIndexOf('!');
+            pwm.add(new PackedSeq(edge.substring(0, p)), Float.parseFloat(edge.substring(p + 1)));
         }
-        //\\\
-        return consensus;
+        return pwm;
     }
     
     public void addBlackEdge(String con, String node_id, String str_raw, int oval_size, float cov, String end)
@@ -1774,15 +1328,19 @@ public class Node {
 		sb.append("\t*"); sb.append(COVERAGE);
 		sb.append("\t"); sb.append(df.format(cov()));
 
-		for(String t : edgetypes)
+		for(int t = 0; t < edgetypes.length; t++)
 		{
-			if (fields.containsKey(t))
+			EdgeList el = adj[t];
+
+			if (el != null)
 			{
-				sb.append("\t*"); sb.append(t);
+				sb.append("\t*"); sb.append(edgetypes[t]);
 
-				for(String i : fields.get(t))
+				for(int i = 0; i < el.end(); i++)
 				{
-					sb.append("\t"); sb.append(i);
+					if (el.id(i) == null) { continue; }
+					sb.append("\t"); sb.append(el.id(i));
+					sb.append("!"); sb.append(el.oval(i));
 				}
 			}
 		}
@@ -1950,6 +1508,24 @@ public class Node {
 			}
 		}
 
+        if (fields.containsKey(NEIGHBOR))
+		{
+			sb.append("\t*"); sb.append(NEIGHBOR);
+			for(String t : fields.get(NEIGHBOR))
+			{
+				sb.append("\t"); sb.append(t);
+			}
+		}
+
+        if (fields.containsKey(CHAINRANK))
+		{
+			sb.append("\t*"); sb.append(CHAINRANK);
+			for(String t : fields.get(CHAINRANK))
+			{
+				sb.append("\t"); sb.append(t);
+			}
+		}
+
 
 	/*	if (fields.containsKey(R5))
 		{
@@ -1984,6 +1560,8 @@ public class Node {
     public void fromNodeMsg(String nodestr) throws IOException
 	{
 		fields.clear();
+		clearAdjacency();
+		seq = null;
 
 		String [] items = nodestr.split("\t");
 
@@ -2022,11 +1600,47 @@ public class Node {
 
 			offset++;
 		}
+
+		takeSeqField();
+	}
+
+	// the text codec parses STR and the edges like any other field; keep
+	// the first STR and move the edges into the adjacency
+	private void takeSeqField()
+	{
+		List<String> l = fields.remove(STR);
+
+		if (seq == null && l != null && l.size() > 0)
+		{
+			seq = PackedSeq.fromDna(l.get(0));
+		}
+
+		for (int t = 0; t < edgetypes.length; t++)
+		{
+			l = fields.remove(edgetypes[t]);
+
+			if (l != null)
+			{
+				if (adj[t] == null) { adj[t] = new EdgeList(l.size()); }
+
+				for (String e : l)
+				{
+					adj[t].add(e);
+				}
+			}
+		}
+	}
+
+	private void clearAdjacency()
+	{
+		for (int t = 0; t < adj.length; t++) { adj[t] = null; }
 	}
 
     public void fromNodeMsg(String nodestr, Set<String> desired)
 	{
 		fields.clear();
+		clearAdjacency();
+		seq = null;
 
 		String [] items = nodestr.split("\t");
 		List<String> l = null;
@@ -2058,6 +1672,162 @@ public class Node {
 				l.add(items[i]);
 			}
 		}
+
+		takeSeqField();
+	}
+
+    // fields carried by the binary codec besides str, cov and the edges,
+    // in the same order as toNodeMsg; the first six only keep their first value
+    static String [] binfields = {CANCOMPRESS + "f", CANCOMPRESS + "r", UNIQUE, MERGE, REPLACEMENT, MERTAG,
+                                  POPBUBBLE, CONTAINED, ATTRIBUTE, MATE, REMOVEDGE, ADJUSTEDGE,
+                                  MERGETIPS, FCOLOR, RCOLOR, GRAYEDGE, BLACKEDGE, NEIGHBOR, CHAINRANK};
+    static int BINSINGLE = 6;
+
+    // same two decimals that toNodeMsg keeps, so binary and text graphs agree
+    public static float roundCoverage(float cov)
+	{
+		return (float) (Math.rint((double) cov * 100) / 100);
+	}
+
+    public void toNodeBinary(DataOutput out) throws IOException
+	{
+		Text.writeString(out, nodeid == null ? "" : nodeid);
+
+		// sequence as 2-bit bases, 4 per byte
+		WritableUtils.writeVInt(out, seq.length());
+		seq.writeBases(out);
+
+		out.writeFloat(roundCoverage(cov()));
+
+		for (EdgeList el : adj)
+		{
+			if (el == null)
+			{
+				WritableUtils.writeVInt(out, -1);
+				continue;
+			}
+
+			WritableUtils.writeVInt(out, el.size());
+
+			for (int i = 0; i < el.end(); i++)
+			{
+				if (el.live(i)) { el.write(out, i); }
+			}
+		}
+
+		int mask = 0;
+
+		for (int f = 0; f < binfields.length; f++)
+		{
+			if (fields.containsKey(binfields[f])) { mask |= 1 << f; }
+		}
+
+		WritableUtils.writeVInt(out, mask);
+
+		for (int f = 0; f < binfields.length; f++)
+		{
+			if ((mask & (1 << f)) == 0) { continue; }
+
+			List<String> l = fields.get(binfields[f]);
+
+			if (f < BINSINGLE)
+			{
+				Text.writeString(out, l.get(0));
+			}
+			else
+			{
+				WritableUtils.writeVInt(out, l.size());
+
+				for (String v : l)
+				{
+					Text.writeString(out, v);
+				}
+			}
+		}
+	}
+
+    public void fromNodeBinary(DataInput in) throws IOException
+	{
+		fields.clear();
+
+		nodeid = Text.readString(in);
+
+		seq = PackedSeq.readBases(in, WritableUtils.readVInt(in));
+
+		setCoverage(in.readFloat());
+
+		for (int t = 0; t < adj.length; t++)
+		{
+			int cnt = WritableUtils.readVInt(in);
+
+			adj[t] = null;
+
+			if (cnt < 0) { continue; }
+
+			EdgeList el = new EdgeList(cnt);
+
+			for (int i = 0; i < cnt; i++)
+			{
+				el.read(in);
+			}
+
+			adj[t] = el;
+		}
+
+		int mask = WritableUtils.readVInt(in);
+
+		for (int f = 0; f < binfields.length; f++)
+		{
+			if ((mask & (1 << f)) == 0) { continue; }
+
+			List<String> l;
+
+			if (f < BINSINGLE)
+			{
+				l = new ArrayList<String>(1);
+				l.add(Text.readString(in));
+			}
+			else
+			{
+				int cnt = WritableUtils.readVInt(in);
+				l = new ArrayList<String>(cnt);
+
+				for (int i = 0; i < cnt; i++)
+				{
+					l.add(Text.readString(in));
+				}
+			}
+
+			fields.put(binfields[f], l);
+		}
+	}
+
+    // binary counterpart of parseNodeMsg(items, offset): appends the fields
+    // of a decoded node message to this node
+	public void parseNodeMsg(Node msg)
+	{
+		if (seq == null) { seq = msg.seq; }
+
+		for (int t = 0; t < adj.length; t++)
+		{
+			if (msg.adj[t] == null) { continue; }
+
+			if (adj[t] == null) { adj[t] = new EdgeList(msg.adj[t]); }
+			else { adj[t].addAll(msg.adj[t]); }
+		}
+
+		for (Map.Entry<String, List<String>> e : msg.fields.entrySet())
+		{
+			List<String> l = fields.get(e.getKey());
+
+			if (l == null)
+			{
+				l = new ArrayList<String>();
+				fields.put(e.getKey(), l);
+			}
+
+			l.addAll(e.getValue());
+		}
 	}
 
     public static String flip_dir(String dir) throws IOException
@@ -2103,7 +1873,7 @@ public class Node {
         node.addBlackEdge("rf", "5", "CGT", 2, 1, "");
         node.addGrayEdge("rr", "3");
         node.isBlack("f");
-        System.out.println(fastdistance("XYX", "XYY"));
+        System.out.println(EditDistance.distance("XYX", "XYY"));
         System.out.println(node.getColor("r"));
         System.out.println(node.toNodeMsg());
     }
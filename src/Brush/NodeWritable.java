@@ -0,0 +1,103 @@
+/*
+    NodeWritable.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+
+    The file is derived from Contrail Project which is developed by Michael Schatz,
+    Jeremy Chambers, Avijit Gupta, Rushil Gupta, David Kelley, Jeremy Lewi,
+    Deepak Nettem, Dan Sommer, Mihai Pop, Schatz Lab and Cold Spring Harbor Laboratory,
+    and is released under Apache License 2.0 at:
+    http://sourceforge.net/apps/mediawiki/contrail-bio/
+*/
+
+package Brush;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+// Binary value passed between stages and through the shuffle.
+// A message is the tab separated header the reducers already parse
+// (NODEMSG alone for a plain node record, or OVALMSG, UPDATEMSG, ...)
+// optionally followed by a node in Node.toNodeBinary form.
+public class NodeWritable implements Writable
+{
+	private static final int HASNODE = 1;
+	private static final int HASMSG  = 2;
+
+	private String msg = Node.NODEMSG;
+	private Node node = null;
+
+	public NodeWritable()
+	{
+
+	}
+
+	public NodeWritable(Node n)
+	{
+		set(Node.NODEMSG, n);
+	}
+
+	public NodeWritable(String m)
+	{
+		set(m, null);
+	}
+
+	public NodeWritable(String m, Node n)
+	{
+		set(m, n);
+	}
+
+	public void set(String m, Node n)
+	{
+		msg = m;
+		node = n;
+	}
+
+	public String getMessage() { return msg; }
+
+	public Node getNode() { return node; }
+
+	public boolean hasNode() { return node != null; }
+
+	public void write(DataOutput out) throws IOException
+	{
+		int flags = 0;
+		if (node != null) { flags |= HASNODE; }
+		if (node == null || !msg.equals(Node.NODEMSG)) { flags |= HASMSG; }
+
+		out.writeByte(flags);
+
+		if ((flags & HASMSG) != 0) { Text.writeString(out, msg); }
+		if ((flags & HASNODE) != 0) { node.toNodeBinary(out); }
+	}
+
+	public void readFields(DataInput in) throws IOException
+	{
+		int flags = in.readByte();
+
+		msg = ((flags & HASMSG) != 0) ? Text.readString(in) : Node.NODEMSG;
+
+		// reducers keep references to earlier nodes, so never reuse one
+		node = null;
+		if ((flags & HASNODE) != 0)
+		{
+			node = new Node();
+			node.fromNodeBinary(in);
+		}
+	}
+
+	// same text as the old tab separated messages, used by Graph2Text
+	public String toString()
+	{
+		if (node == null) { return msg; }
+
+		if (msg.equals(Node.NODEMSG)) { return node.toNodeMsg(); }
+
+		return msg + "\t" + node.toNodeMsg();
+	}
+}
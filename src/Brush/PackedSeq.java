@@ -0,0 +1,315 @@
+/*
+    PackedSeq.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// DNA sequence packed 2 bits per base (A=0, C=1, G=2, T=3), 32 bases per
+// long, first base in the high bits. subseq and rc return views over the
+// same words, so both are O(1); the complement of a base is base ^ 3.
+public class PackedSeq implements Comparable<PackedSeq>
+{
+	private final long [] words;
+	private final int start;
+	private final int len;
+	private final boolean rc;
+	private int hash = 0;
+
+	private PackedSeq(long [] w, int s, int l, boolean r)
+	{
+		words = w;
+		start = s;
+		len = l;
+		rc = r;
+	}
+
+	public PackedSeq(String seq)
+	{
+		len = seq.length();
+		start = 0;
+		rc = false;
+		words = new long[(len + 31) >> 5];
+
+		for (int i = 0; i < len; i++)
+		{
+			words[i >> 5] |= ((long) code(seq.charAt(i))) << (62 - 2 * (i & 31));
+		}
+	}
+
+	public static int code(char c)
+	{
+		switch (c)
+		{
+			case 'A': return 0;
+			case 'C': return 1;
+			case 'G': return 2;
+			case 'T': return 3;
+		}
+
+		throw new IllegalArgumentException("Unknown base: " + c);
+	}
+
+	public static char base(int code)
+	{
+		return "ACGT".charAt(code);
+	}
+
+	// parse the compressed text codec of Node.str2dna
+	public static PackedSeq fromDna(String dna)
+	{
+		int l = dnaLength(dna);
+		long [] w = new long[(l + 31) >> 5];
+		int n = 0;
+
+		for (int i = 0; i < dna.length(); i++)
+		{
+			int c = dna.charAt(i) - 'A';
+
+			w[n >> 5] |= ((long) (c / 5)) << (62 - 2 * (n & 31));
+			n++;
+
+			if (c % 5 != 0)
+			{
+				w[n >> 5] |= ((long) (c % 5 - 1)) << (62 - 2 * (n & 31));
+				n++;
+			}
+		}
+
+		return new PackedSeq(w, 0, l, false);
+	}
+
+	// number of bases in a Node.str2dna string without decoding it
+	public static int dnaLength(String dna)
+	{
+		int l = dna.length();
+
+		if (l == 0) { return 0; }
+
+		return ((dna.charAt(l-1) - 'A') % 5 == 0) ? 2 * l - 1 : 2 * l;
+	}
+
+	// a sequence over already packed words, first base in the high bits
+	public static PackedSeq wrap(long [] w, int l)
+	{
+		return new PackedSeq(w, 0, l, false);
+	}
+
+	public int length() { return len; }
+
+	public int get(int i)
+	{
+		if (rc)
+		{
+			int p = start + len - 1 - i;
+			return (int) (words[p >> 5] >>> (62 - 2 * (p & 31))) & 3 ^ 3;
+		}
+
+		int p = start + i;
+		return (int) (words[p >> 5] >>> (62 - 2 * (p & 31))) & 3;
+	}
+
+	public char charAt(int i)
+	{
+		return base(get(i));
+	}
+
+	public PackedSeq subseq(int s, int l)
+	{
+		if (s < 0 || l < 0 || s + l > len)
+		{
+			throw new IndexOutOfBoundsException("subseq " + s + "+" + l + " of " + len);
+		}
+
+		if (rc)
+		{
+			return new PackedSeq(words, start + len - s - l, l, true);
+		}
+
+		return new PackedSeq(words, start + s, l, false);
+	}
+
+	public PackedSeq subseq(int s)
+	{
+		return subseq(s, len - s);
+	}
+
+	public PackedSeq rc()
+	{
+		return new PackedSeq(words, start, len, !rc);
+	}
+
+	// bases [p, p+32) of the underlying forward words, zero padded
+	private long rawWord(int p)
+	{
+		int w = p >> 5;
+		int off = 2 * (p & 31);
+
+		long v = (w < words.length) ? words[w] << off : 0;
+
+		if (off != 0 && w + 1 < words.length)
+		{
+			v |= words[w + 1] >>> (64 - off);
+		}
+
+		return v;
+	}
+
+	// reverse the order of the 32 2-bit groups in a word
+	private static long reverseBases(long v)
+	{
+		v = ((v >>> 2) & 0x3333333333333333L) | ((v & 0x3333333333333333L) << 2);
+		v = ((v >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((v & 0x0F0F0F0F0F0F0F0FL) << 4);
+		return Long.reverseBytes(v);
+	}
+
+	// bases [i, i+n) of this sequence packed into the high bits, n <= 32
+	public long word(int i, int n)
+	{
+		if (n == 0) { return 0; }
+
+		long v;
+
+		if (rc)
+		{
+			// forward bases [start+len-i-n, start+len-i), reversed and complemented
+			int p = start + len - i - n;
+			long f = (p >= 0) ? rawWord(p) : 0;
+			v = reverseBases(~f) << (64 - 2 * n);
+		}
+		else
+		{
+			v = rawWord(start + i);
+		}
+
+		return (n == 32) ? v : v & ~(-1L >>> (2 * n));
+	}
+
+	public int compareTo(PackedSeq o)
+	{
+		int l = Math.min(len, o.len);
+
+		for (int i = 0; i < l; i += 32)
+		{
+			int n = Math.min(32, l - i);
+			long a = word(i, n);
+			long b = o.word(i, n);
+
+			if (a != b)
+			{
+				return ((a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE)) ? -1 : 1;
+			}
+		}
+
+		return len - o.len;
+	}
+
+	public boolean startsWith(PackedSeq p)
+	{
+		if (p.len > len) { return false; }
+
+		for (int i = 0; i < p.len; i += 32)
+		{
+			int n = Math.min(32, p.len - i);
+			if (word(i, n) != p.word(i, n)) { return false; }
+		}
+
+		return true;
+	}
+
+	public boolean equals(Object obj)
+	{
+		if (this == obj) { return true; }
+		if (!(obj instanceof PackedSeq)) { return false; }
+
+		PackedSeq o = (PackedSeq) obj;
+
+		return len == o.len && compareTo(o) == 0;
+	}
+
+	public int hashCode()
+	{
+		if (hash == 0)
+		{
+			long h = len;
+
+			for (int i = 0; i < len; i += 32)
+			{
+				h = h * 0x9E3779B97F4A7C15L + word(i, Math.min(32, len - i));
+			}
+
+			hash = (int) (h ^ (h >>> 32));
+		}
+
+		return hash;
+	}
+
+	// true if every base is b, like matching "A*" on the text
+	public boolean isHomopolymer(int b)
+	{
+		for (int i = 0; i < len; i++)
+		{
+			if (get(i) != b) { return false; }
+		}
+
+		return true;
+	}
+
+	public String toString()
+	{
+		char [] s = new char[len];
+
+		for (int i = 0; i < len; i++)
+		{
+			s[i] = base(get(i));
+		}
+
+		return new String(s);
+	}
+
+	// the compressed text codec of Node.str2dna
+	public String toDna()
+	{
+		char [] s = new char[(len + 1) >> 1];
+
+		for (int i = 0; i + 1 < len; i += 2)
+		{
+			s[i >> 1] = (char) ('A' + 5 * get(i) + 1 + get(i+1));
+		}
+
+		if ((len & 1) != 0)
+		{
+			s[len >> 1] = (char) ('A' + 5 * get(len-1));
+		}
+
+		return new String(s);
+	}
+
+	// packed form for Node.toNodeBinary: 4 bases per byte, first base high
+	public void writeBases(DataOutput out) throws IOException
+	{
+		for (int i = 0; i < len; i += 4)
+		{
+			int n = Math.min(4, len - i);
+			out.writeByte((int) (word(i, n) >>> 56));
+		}
+	}
+
+	public static PackedSeq readBases(DataInput in, int l) throws IOException
+	{
+		long [] w = new long[(l + 31) >> 5];
+
+		for (int i = 0; i < l; i += 4)
+		{
+			w[i >> 5] |= ((long) in.readUnsignedByte()) << (56 - 2 * (i & 31));
+		}
+
+		return new PackedSeq(w, 0, l, false);
+	}
+}
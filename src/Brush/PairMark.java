@@ -36,8 +36,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -48,7 +48,7 @@ public class PairMark extends Configured implements Tool
 	private static final Logger sLogger = Logger.getLogger(PairMark.class);
 	
 	private static class PairMarkMapper extends MapReduceBase 
-    implements Mapper<LongWritable, Text, Text, Text> 
+    implements Mapper<Text, NodeWritable, Text, NodeWritable> 
 	{
 		private static long randseed = 0;
 		private Random rfactory = new Random();
@@ -81,12 +81,11 @@ public class PairMark extends Configured implements Tool
 			return null;
 		}
 		
-		public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text mapkey, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
                 throws IOException 
         {
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			TailInfo fbuddy = getBuddy(node, "f");
 			TailInfo rbuddy = getBuddy(node, "r");
@@ -199,20 +198,20 @@ public class PairMark extends Configured implements Tool
                                 String edge_id = p.substring(0, p.indexOf("!"));
                                 String oval_size = p.substring(p.indexOf("!")+1);
 								output.collect(new Text(edge_id),
-										       new Text(Node.UPDATEMSG + "\t" + nodeid + "\t" + origadj + "\t" + compress + "\t" + newadj + "\t" + oval_size));
+										       new NodeWritable(Node.UPDATEMSG + "\t" + nodeid + "\t" + origadj + "\t" + compress + "\t" + newadj + "\t" + oval_size));
 							}
 						}
 					}
 				}
 			}
 
-			output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+			output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			reporter.incrCounter("Brush", "nodes", 1);
         }
 	}
 	
 	private static class PairMarkReducer extends MapReduceBase 
-	implements Reducer<Text, Text, Text, Text> 
+	implements Reducer<Text, NodeWritable, Text, NodeWritable> 
 	{
 		private static long randseed = 0;
 		
@@ -229,8 +228,8 @@ public class PairMark extends Configured implements Tool
             public String oval_size;
 		}
 		
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException 
 		{
 			Node node = new Node(nodeid.toString());
@@ -240,15 +239,15 @@ public class PairMark extends Configured implements Tool
 			
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 				
 				//System.err.println(key.toString() + "\t" + msg);
 				
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 				
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.UPDATEMSG))
@@ -282,7 +281,7 @@ public class PairMark extends Configured implements Tool
 				}
 			}
 			
-			output.collect(nodeid, new Text(node.toNodeMsg()));
+			output.collect(nodeid, new NodeWritable(node));
 		}
 	}
 
@@ -303,14 +302,14 @@ public class PairMark extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
 
 		conf.setMapperClass(PairMarkMapper.class);
 		conf.setReducerClass(PairMarkReducer.class);
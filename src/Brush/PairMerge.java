@@ -35,8 +35,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -47,14 +47,13 @@ public class PairMerge extends Configured implements Tool
 	private static final Logger sLogger = Logger.getLogger(PairMerge.class);
 	
 	private static class PairMergeMapper extends MapReduceBase 
-	implements Mapper<LongWritable, Text, Text, Text> 
+	implements Mapper<Text, NodeWritable, Text, NodeWritable> 
 	{
-		public void map(LongWritable lineid, Text nodetxt,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 		throws IOException 
 		{
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			String mergedir = node.getMerge();
 
@@ -63,13 +62,13 @@ public class PairMerge extends Configured implements Tool
 				TailInfo compressed = node.gettail(mergedir);
 
 				output.collect(new Text(compressed.id),
-						new Text(Node.COMPRESSPAIR + "\t" + mergedir + "\t" + compressed.dir + "\t" + compressed.oval_size + "\t" + node.toNodeMsg(true)));
+						new NodeWritable(Node.COMPRESSPAIR + "\t" + mergedir + "\t" + compressed.dir + "\t" + compressed.oval_size + "\t" + node.getNodeId(), node));
 				
 				reporter.incrCounter("Brush", "mergenodes", 1);
 			}
 			else
 			{
-				output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+				output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			}
 
 			reporter.incrCounter("Brush", "nodes", 1);
@@ -77,7 +76,7 @@ public class PairMerge extends Configured implements Tool
 	}
 	
 	private static class PairMergeReducer extends MapReduceBase 
-	implements Reducer<Text, Text, Text, Text> 
+	implements Reducer<Text, NodeWritable, Text, NodeWritable> 
 	{
 		private static int K = 0;
 		private static boolean VERBOSE = false;
@@ -204,8 +203,8 @@ public class PairMerge extends Configured implements Tool
 		      if (VERBOSE) { System.err.println(node.toNodeMsg());}
 		}
 		
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException 
 		{
 			Node node = new Node(nodeid.toString());
@@ -217,15 +216,15 @@ public class PairMerge extends Configured implements Tool
 			
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 				
 				//System.err.println(key.toString() + "\t" + msg);
 				
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 				
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.COMPRESSPAIR))
@@ -236,7 +235,7 @@ public class PairMerge extends Configured implements Tool
 					ci.bdir = vals[2];
                     ci.oval_size = vals[3];
 					ci.node = new Node(vals[4]);
-					ci.node.parseNodeMsg(vals, 5);
+					ci.node.parseNodeMsg(msg.getNode());
 					
 					if (ci.bdir.equals("f"))
 					{
@@ -290,7 +289,7 @@ public class PairMerge extends Configured implements Tool
 				reporter.incrCounter("Brush", "needscompress", 1);
 			}
 
-			output.collect(nodeid, new Text(node.toNodeMsg()));
+			output.collect(nodeid, new NodeWritable(node));
 		}
 	}
 	
@@ -310,14 +309,14 @@ public class PairMerge extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
 
 		conf.setMapperClass(PairMergeMapper.class);
 		conf.setReducerClass(PairMergeReducer.class);
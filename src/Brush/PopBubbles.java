@@ -36,8 +36,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -53,7 +53,7 @@ public class PopBubbles extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class PopBubblesMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 0;
 
@@ -62,12 +62,11 @@ public class PopBubbles extends Configured implements Tool
 			K = Integer.parseInt(job.get("K"));
 		}
 
-		public void map(LongWritable lineid, Text nodetxt,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 		throws IOException
 		{
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			List<String> bubbles = node.getBubbles();
 			if (bubbles != null)
@@ -86,10 +85,10 @@ public class PopBubbles extends Configured implements Tool
 
 
 					output.collect(new Text(minor),
-							       new Text(Node.KILLLINKMSG + "\t" + minord + "\t" + dead + "\t" + newd + "\t" + newid + "\t" + oval));
+							       new NodeWritable(Node.KILLLINKMSG + "\t" + minord + "\t" + dead + "\t" + newd + "\t" + newid + "\t" + oval));
 
-					output.collect(new Text(dead), new Text(Node.KILLMSG));
-					output.collect(new Text(newid), new Text(Node.EXTRACOV + "\t" + extracov));
+					output.collect(new Text(dead), new NodeWritable(Node.KILLMSG));
+					output.collect(new Text(newid), new NodeWritable(Node.EXTRACOV + "\t" + extracov));
 
 					reporter.incrCounter("Brush", "bubblespopped", 1);
 				}
@@ -97,7 +96,7 @@ public class PopBubbles extends Configured implements Tool
 				node.clearBubbles();
 			}
 
-			output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+			output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			reporter.incrCounter("Brush", "nodes", 1);
 		}
 	}
@@ -106,7 +105,7 @@ public class PopBubbles extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class PopBubblesReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 0;
 
@@ -137,8 +136,8 @@ public class PopBubbles extends Configured implements Tool
 		    }
 		}
 
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 		throws IOException
 		{
 			Node node = new Node(nodeid.toString());
@@ -151,15 +150,15 @@ public class PopBubbles extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(nodeid.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.KILLLINKMSG))
@@ -220,7 +219,7 @@ public class PopBubbles extends Configured implements Tool
 				//reporter.incrCounter("Contrail", "threadsremoved", 1);
 			}
 
-			output.collect(nodeid, new Text(node.toNodeMsg()));
+			output.collect(nodeid, new NodeWritable(node));
 		}
 	}
 
@@ -244,14 +243,14 @@ public class PopBubbles extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
         //conf.setBoolean("mapred.output.compress", true);
         
 		conf.setMapperClass(PopBubblesMapper.class);
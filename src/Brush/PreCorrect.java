@@ -7,22 +7,18 @@
 
 package Brush;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Collections;
-import java.util.Comparator;
+import java.net.URI;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Set;
-import java.util.List;
-import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.filecache.DistributedCache;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
@@ -31,190 +27,300 @@ import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.MapReduceBase;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Partitioner;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
-
+// Corrects the middle base of every split 25-mer window: the 24 bases
+// around it, on either strand, vote with the coverage of their reads.
+// A strict winner replaces the bases that got no more than a quarter of
+// its votes.
+//
+// The first job counts every (24 bases, middle base) pair as a 25-mer,
+// the middle base last, so the four votes of a window are one k-mer
+// count each and sort next to each other; VotePartitioner keeps them on
+// one reducer. The reducer keeps only the windows that correct anything,
+// each as one long: the 24 bases, then the bases to fix as a mask in
+// bits 2-5 and the winner in bits 0-1, through HighKmerFilter's list
+// format. The second job is map only: it memory maps the table and
+// fixes each read in place, so no read is shuffled.
 public class PreCorrect extends Configured implements Tool
 {
 	private static final Logger sLogger = Logger.getLogger(PreCorrect.class);
 
+	public static final int WINDOW = 25;
+	public static final int SPLIT  = 24;
+
+	private static final long ALLT = -1L << 16;
+
+	// bases 0-11 and 13-24 of a 25-mer word, 24 bases packed
+	static long split(long w)
+	{
+		return (w & 0xFFFFFF0000000000L) | ((w << 2) & 0x000000FFFFFF0000L);
+	}
+
+	// the split window with its middle base as the 25th
+	static long vote(long split, int base)
+	{
+		return split | ((long) base << 14);
+	}
+
+
+	// PreCorrectMapper
+	///////////////////////////////////////////////////////////////////////////
+
 	public static class PreCorrectMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, KmerWritable, IntWritable>
 	{
-		public static int K = 0;
-		public static int TRIM5 = 0;
-		public static int TRIM3 = 0;
+		private KmerScanner scanner = new KmerScanner(WINDOW);
+		private KmerScanner scanner_r = new KmerScanner(WINDOW);
+
+		// sums the votes of the whole split, null when KMER_TABLE is 0
+		private KmerCountTable table = null;
+		private OutputCollector<KmerWritable, IntWritable> out = null;
 
 		public void configure(JobConf job)
 		{
-			K = Integer.parseInt(job.get("K"));
+			int entries = job.getInt("KMER_TABLE", 0);
+			if (entries > 0) { table = new KmerCountTable(WINDOW, entries); }
+		}
+
+		private void add(long word, int cov) throws IOException
+		{
+			if (table == null) {
+				KmerWritable kmer = new KmerWritable();
+				kmer.set(word, 0, WINDOW);
+				out.collect(kmer, new IntWritable(cov));
+			} else if (table.add(word, 0, cov)) {
+				table.flush(out);
+			}
 		}
 
-		public void map(LongWritable lineid, Text nodetxt,
-				        OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<KmerWritable, IntWritable> output, Reporter reporter)
 		                throws IOException
 		{
-            Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
-           
+            out = output;
+            Node node = nodemsg.getNode();
+
             //slide the split K-mer windows for each read in both strands
-            int end = node.len() - 25;
-            for (int i = 0; i < end; i++)
+            int end = node.len() - WINDOW;
+            int cov = (int) node.cov();
+            PackedSeq seq = node.getSeq();
+            // the reverse window is the same split window on the reverse
+            // strand, so the two scanners walk the strands side by side
+            scanner.reset(seq);
+            scanner_r.reset(seq.rc());
+            while (scanner.next() && scanner_r.next() && scanner.offset() < end)
             {
-                String window_tmp = node.str().substring(i, i+12) + node.str().substring(i+13, i+25);
-                String window_r_tmp = Node.rc(node.str().substring(node.len()-25-i, node.len()-13-i) + node.str().substring(node.len()-12-i, node.len()-i));
-                //String window_r_tmp = Node.rc(window_tmp);
-                String window = Node.str2dna(window_tmp);
-                String window_r = Node.str2dna(window_r_tmp);
-                //int remained_base = node.len() - K - i;
-                int f_pos = i + 12;
-                int r_pos = node.len()-13-i;
-                //int overlap_size_r = node.len() - i;
-                if ( !window_tmp.matches("A*") && !window_tmp.matches("T*") ) {
-                    output.collect(new Text(window),
-                                   new Text(node.getNodeId() + "\t" + "f" + "\t" + f_pos + "\t" + node.str().charAt(f_pos) + "\t" + node.cov()));
-                }
-                if (!window_tmp.matches("A*") && !window_tmp.matches("T*") ) {
-                    output.collect(new Text(window_r),
-                                   new Text(node.getNodeId() + "\t" + "r" + "\t" + r_pos + "\t" + Node.rc(node.str().charAt(r_pos) + "") + "\t" +node.cov()));
-                }
+                int i = scanner.offset();
+                long window = split(scanner.forward0());
+                if (window == 0 || window == ALLT) { continue; }
+
+                add(vote(window, seq.get(i + 12)), cov);
+                add(vote(split(scanner_r.forward0()), seq.get(node.len() - 13 - i) ^ 3), cov);
             }
-            
+		}
+
+		public void close() throws IOException
+		{
+			if (table != null && out != null && table.size() > 0)
+			{
+				table.flush(out);
+			}
 		}
 	}
 
-	public static class PreCorrectReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+
+	// VotePartitioner
+	///////////////////////////////////////////////////////////////////////////
+
+	// by the split window alone, as HighKmerFilter looks it up
+	public static class VotePartitioner implements Partitioner<KmerWritable, IntWritable>
 	{
-		private static int K = 0;
+		public void configure(JobConf job) { }
 
-		public void configure(JobConf job) {
-			K = Integer.parseInt(job.get("K"));
+		public int getPartition(KmerWritable key, IntWritable value, int numPartitions)
+		{
+			long window = key.getWord0() & ~(3L << 14);
+			return (KmerWritable.hash(window, 0, SPLIT) & Integer.MAX_VALUE) % numPartitions;
 		}
+	}
+
+
+	// PreCorrectReducer
+	///////////////////////////////////////////////////////////////////////////
 
-        public class ReadInfo
+	public static class PreCorrectReducer extends MapReduceBase
+	implements Reducer<KmerWritable, IntWritable, KmerWritable, Text>
+	{
+		private static final Text LIST = new Text(HighKmerFilter.HIGH);
+
+		// the window being voted on, and its votes for A, C, G, T
+		private long window = 0;
+		private int [] votes = new int[4];
+		private KmerWritable record = new KmerWritable();
+		private OutputCollector<KmerWritable, Text> out = null;
+		private Reporter rep = null;
+
+		private void finish() throws IOException
 		{
-			public String id;
-            public String dir;
-			public int pos;
-            public String base;
-            public float cov;
+			int winner = -1;
+			for (int b = 0; b < 4; b++)
+			{
+				boolean wins = true;
+				for (int o = 0; o < 4; o++)
+				{
+					if (o != b && votes[o] >= votes[b]) { wins = false; }
+				}
+				if (wins) { winner = b; }
+			}
 
-			public ReadInfo(String id1, String dir1, int pos1, String base1, float cov1) throws IOException
+			int fix = 0;
+			if (winner >= 0)
 			{
-				id = id1;
-                dir = dir1;
-                pos = pos1;
-                base = base1;
-                cov = cov1;
+				for (int b = 0; b < 4; b++)
+				{
+					if (b != winner && votes[b] > 0 && (float) votes[b] / (float) votes[winner] <= 0.25f)
+					{
+						fix |= 1 << b;
+					}
+				}
 			}
 
-            public String toString()
+			if (fix != 0)
 			{
-				return id + "!" + dir + "|" + pos + "|" + base;
+				record.set(window | (fix << 2) | winner, 0, SPLIT);
+				out.collect(record, LIST);
+				rep.incrCounter("Brush", "fix_window", 1);
 			}
+
+			Arrays.fill(votes, 0);
 		}
-        
-		public void reduce(Text prefix, Iterator<Text> iter,
-						   OutputCollector<Text, Text> output, Reporter reporter)
+
+		public void reduce(KmerWritable kmer, Iterator<IntWritable> iter,
+						   OutputCollector<KmerWritable, Text> output, Reporter reporter)
 						   throws IOException
 		{
-            Map<String, Node> nodes = new HashMap<String, Node>();
-			List<ReadInfo> readlist = new ArrayList<ReadInfo>();
-            Map<String, List<String>> edges_list = new HashMap<String, List<String>>();
-
-            int prefix_sum = 0;
-            int belong_read = 0;
-            int kmer_count = 0;
-            List<String> ReadID_list = new ArrayList<String>();
-            
-            //\\ 0:A 1:T 2:C 3:G 4:Sum
-            int[] base_array = new int[5];
-            for(int i=0; i<5; i++) {
-                base_array[i] = 0;
-            }
-            while(iter.hasNext())
+			out = output;
+			rep = reporter;
+
+			long w = kmer.getWord0();
+			int base = (int) (w >>> 14) & 3;
+			w &= ~(3L << 14);
+
+			// the keys come sorted, so a window's votes are in a row
+			if (w != window)
 			{
-				String msg = iter.next().toString();
-				String [] vals = msg.split("\t");
-                ReadInfo read_item = new ReadInfo(vals[0],vals[1],Integer.parseInt(vals[2]), vals[3], Float.parseFloat(vals[4]));
-                if (read_item.base.equals("A")){
-                    base_array[0] = base_array[0] + (int)read_item.cov;
-                    base_array[4] = base_array[4] + (int)read_item.cov;
-                } else if (read_item.base.equals("T")) {
-                    base_array[1] = base_array[1] + (int)read_item.cov;
-                    base_array[4] = base_array[4] + (int)read_item.cov;
-                } else if (read_item.base.equals("C")) {
-                    base_array[2] = base_array[2] + (int)read_item.cov;
-                    base_array[4] = base_array[4] + (int)read_item.cov;
-                } else if (read_item.base.equals("G")) {
-                    base_array[3] = base_array[3] + (int)read_item.cov;
-                    base_array[4] = base_array[4] + (int)read_item.cov;
-                }
-                readlist.add(read_item);
-                //output.collect(prefix, new Text(read_item.toString()));
+				finish();
+				window = w;
 			}
-            String correct_base = "N";
-            /*float majority = 0.8f;
-            if ((float)base_array[0]/(float)base_array[4] > majority) {
-                correct_base = "A";
-            } else if ((float)base_array[1]/(float)base_array[4] > majority) {
-                correct_base = "T";
-            } else if ((float)base_array[2]/(float)base_array[4] > majority) {
-                correct_base = "C";
-            } else if ((float)base_array[3]/(float)base_array[4] > majority) {
-                correct_base = "G";
-            }*/
-            float winner_sum = 0;
-            if (base_array[0] > base_array[1] && base_array[0] > base_array[2] && base_array[0] > base_array[3]) {
-                correct_base = "A";
-                winner_sum = base_array[0];
-            } else if (base_array[1] > base_array[0] && base_array[1] > base_array[2] && base_array[1] > base_array[3] ) {
-                correct_base = "T";
-                winner_sum = base_array[1];
-            } else if (base_array[2] > base_array[0] && base_array[2] > base_array[1] && base_array[2] > base_array[3] ) {
-                correct_base = "C";
-                winner_sum = base_array[2];
-            } else if (base_array[3] > base_array[0] && base_array[3] > base_array[1] && base_array[3] > base_array[2] ) {
-                correct_base = "G";
-                winner_sum = base_array[3];
+
+			while (iter.hasNext())
+			{
+				votes[base] += iter.next().get();
+			}
+		}
+
+		public void close() throws IOException
+		{
+			if (out != null) { finish(); }
+		}
+	}
+
+
+	// CorrectMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class CorrectMapper extends MapReduceBase
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
+	{
+		private KmerScanner scanner = new KmerScanner(WINDOW);
+		private KmerScanner scanner_r = new KmerScanner(WINDOW);
+		private HighKmerFilter table = null;
+
+		// per base of the read: the fix, -1 for none, -2 when the strands disagree
+		private int [] fix = new int[256];
+
+		public void configure(JobConf job)
+		{
+			try
+			{
+				Path [] localFiles = DistributedCache.getLocalCacheFiles(job);
+				table = new HighKmerFilter(new File(localFiles[0].toString()), SPLIT);
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException("Can not load the correction table: " + e.getMessage());
+			}
+		}
+
+		private void vote(int pos, int base)
+		{
+			if (fix[pos] == -1)        { fix[pos] = base; }
+			else if (fix[pos] != base) { fix[pos] = -2; }
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<Text, NodeWritable> output, Reporter reporter)
+		                throws IOException
+		{
+            Node node = nodemsg.getNode();
+
+            int len = node.len();
+            int end = len - WINDOW;
+            PackedSeq seq = node.getSeq();
+            boolean fixed = false;
+
+            if (fix.length < len) { fix = new int[len]; }
+            Arrays.fill(fix, 0, len, -1);
+
+            scanner.reset(seq);
+            scanner_r.reset(seq.rc());
+            while (scanner.next() && scanner_r.next() && scanner.offset() < end)
+            {
+                int i = scanner.offset();
+                long window = split(scanner.forward0());
+                if (window == 0 || window == ALLT) { continue; }
+
+                int f_pos = i + 12;
+                long r = table.find(window);
+                if (r != 0 && ((r >>> 2) & (1 << seq.get(f_pos))) != 0) {
+                    vote(f_pos, (int) r & 3);
+                    fixed = true;
+                }
+
+                int r_pos = len - 13 - i;
+                r = table.find(split(scanner_r.forward0()));
+                if (r != 0 && ((r >>> 2) & (1 << (seq.get(r_pos) ^ 3))) != 0) {
+                    vote(r_pos, ((int) r & 3) ^ 3);
+                    fixed = true;
+                }
             }
-            if (!correct_base.equals("N")) {
-                for(int i=0; i < readlist.size(); i++) {
-                    if (!readlist.get(i).base.equals(correct_base)) {
-                        //\\
-                        if (readlist.get(i).base.equals("A") && (float)base_array[0]/(float)winner_sum > 0.25f){
-                            continue;
-                        }
-                        if (readlist.get(i).base.equals("T") && (float)base_array[1]/(float)winner_sum > 0.25f){
-                            continue;
-                        }
-                        if (readlist.get(i).base.equals("C") && (float)base_array[2]/(float)winner_sum > 0.25f){
-                            continue;
-                        }
-                        if (readlist.get(i).base.equals("G") && (float)base_array[3]/(float)winner_sum > 0.25f){
-                            continue;
-                        }
-                        //\\
-                        if (readlist.get(i).dir.equals("f")) {
-                            String correct_msg =  readlist.get(i).pos + "," + correct_base;
-                            output.collect(new Text(readlist.get(i).id), new Text(correct_msg));
-                            reporter.incrCounter("Brush", "fix_char", 1);
-                        } if (readlist.get(i).dir.equals("r")) {
-                            String correct_msg = /*readlist.get(i).id + "|" +*/ readlist.get(i).pos + "," + Node.rc(correct_base);
-                            output.collect(new Text(readlist.get(i).id), new Text(correct_msg));
-                            reporter.incrCounter("Brush", "fix_char", 1);
-                        }
+
+            if (fixed)
+            {
+                char [] bases = seq.toString().toCharArray();
+                for (int p = 0; p < len; p++)
+                {
+                    if (fix[p] >= 0) {
+                        bases[p] = PackedSeq.base(fix[p]);
+                        reporter.incrCounter("Brush", "fix_char", 1);
+                    } else if (fix[p] == -2) {
+                        reporter.incrCounter("Brush", "fix_conflict", 1);
                     }
                 }
+                node.setSeq(new PackedSeq(new String(bases)));
+                reporter.incrCounter("Brush", "fix_read", 1);
             }
+
+            output.collect(nodeid, new NodeWritable(node));
 		}
 	}
 
@@ -226,25 +332,56 @@ public class PreCorrect extends Configured implements Tool
 		sLogger.info(" - input: "  + inputPath);
 		sLogger.info(" - output: " + outputPath);
 
+		String tablePath = outputPath + ".table";
+
 		JobConf conf = new JobConf(PreCorrect.class);
+		conf.setJobName("PreCorrect table " + inputPath + " " + BrushConfig.K);
+
+		BrushConfig.initializeConfiguration(conf);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(tablePath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(HighKmerFilter.ListOutputFormat.class);
+
+		conf.setMapOutputKeyClass(KmerWritable.class);
+		conf.setMapOutputValueClass(IntWritable.class);
+
+		conf.setOutputKeyClass(KmerWritable.class);
+		conf.setOutputValueClass(Text.class);
+
+		conf.setMapperClass(PreCorrectMapper.class);
+		conf.setCombinerClass(KmerCountTable.Combiner.class);
+		conf.setPartitionerClass(VotePartitioner.class);
+		conf.setReducerClass(PreCorrectReducer.class);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(tablePath), true);
+
+		JobClient.runJob(conf);
+
+		// fix the reads against the table
+		conf = new JobConf(PreCorrect.class);
 		conf.setJobName("PreCorrect " + inputPath + " " + BrushConfig.K);
 
 		BrushConfig.initializeConfiguration(conf);
+		DistributedCache.addCacheFile(new URI(tablePath), conf);
 
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
 
-		conf.setMapperClass(PreCorrectMapper.class);
-		conf.setReducerClass(PreCorrectReducer.class);
+		conf.setMapperClass(CorrectMapper.class);
+		conf.setNumReduceTasks(0);
 
 		//delete the output directory if it exists already
 		FileSystem.get(conf).delete(new Path(outputPath), true);
@@ -0,0 +1,196 @@
+/*
+    QuickLabel.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+// One round of min label propagation over the compressible neighborhood
+// QuickMark tagged with QuickMark.LABELTAG: every labeled node sends its
+// label across its compressible links (LABELMSG) and keeps the smallest
+// label it got. Labels only travel along chains, so QuickMerge gets one
+// group per chain and its tails; a chain that is still split after the
+// last round is merged piecewise and finished in the next compress stage.
+public class QuickLabel extends Configured implements Tool
+{
+	private static final Logger sLogger = Logger.getLogger(QuickLabel.class);
+
+	// send label to the tails of the compressible sides of node
+	public static void sendLabel(Node node, String label,
+			OutputCollector<Text, NodeWritable> output) throws IOException
+	{
+		for (String adj : Node.dirs)
+		{
+			TailInfo next = node.gettail(adj);
+
+			if (next != null && node.canCompress(adj))
+			{
+				output.collect(new Text(next.id), new NodeWritable(Node.LABELMSG + "\t" + label));
+			}
+		}
+	}
+
+
+	// QuickLabelMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class QuickLabelMapper extends MapReduceBase
+	implements Mapper<Text, NodeWritable, Text, NodeWritable>
+	{
+		public void map(Text nodeid, NodeWritable nodemsg,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
+				throws IOException
+		{
+			Node node = nodemsg.getNode();
+			String mertag = node.getMertag();
+
+			if (QuickMark.isLabeled(mertag))
+			{
+				sendLabel(node, mertag.substring(QuickMark.LABELTAG.length()), output);
+			}
+
+			output.collect(nodeid, new NodeWritable(node));
+			reporter.incrCounter("Brush", "nodes", 1);
+		}
+	}
+
+
+	// QuickLabelReducer
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class QuickLabelReducer extends MapReduceBase
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
+	{
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
+				throws IOException
+		{
+			Node node = new Node(nodeid.toString());
+			String label = null;
+
+			int sawnode = 0;
+
+			while(iter.hasNext())
+			{
+				NodeWritable msg = iter.next();
+
+				String [] vals = msg.getMessage().split("\t");
+
+				if (vals[0].equals(Node.NODEMSG))
+				{
+					node.parseNodeMsg(msg.getNode());
+					sawnode++;
+				}
+				else if (vals[0].equals(Node.LABELMSG))
+				{
+					if (label == null || vals[1].compareTo(label) < 0) { label = vals[1]; }
+				}
+				else
+				{
+					throw new IOException("Unknown msgtype: " + msg);
+				}
+			}
+
+			if (sawnode != 1)
+			{
+				throw new IOException("ERROR: Didn't see exactly 1 nodemsg (" + sawnode + ") for " + nodeid.toString());
+			}
+
+			String mertag = node.getMertag();
+
+			if (label != null && QuickMark.isLabeled(mertag) &&
+				label.compareTo(mertag.substring(QuickMark.LABELTAG.length())) < 0)
+			{
+				node.setMertag(QuickMark.LABELTAG + label);
+				reporter.incrCounter("Brush", "relabeled", 1);
+			}
+
+			output.collect(nodeid, new NodeWritable(node));
+		}
+	}
+
+
+	// Run Tool
+	///////////////////////////////////////////////////////////////////////////
+
+	public RunningJob run(String inputPath, String outputPath) throws Exception
+	{
+		sLogger.info("Tool name: QuickLabel");
+		sLogger.info(" - input: "  + inputPath);
+		sLogger.info(" - output: " + outputPath);
+
+		JobConf conf = new JobConf(QuickLabel.class);
+		conf.setJobName("QuickLabel " + inputPath);
+
+		BrushConfig.initializeConfiguration(conf);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
+
+		conf.setMapOutputKeyClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
+
+		conf.setOutputKeyClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
+
+		conf.setMapperClass(QuickLabelMapper.class);
+		conf.setReducerClass(QuickLabelReducer.class);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(outputPath), true);
+
+		return JobClient.runJob(conf);
+	}
+
+
+	// Parse Arguments and run
+	///////////////////////////////////////////////////////////////////////////
+
+	public int run(String[] args) throws Exception
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: QuickLabel <graph> <outdir>");
+			return -1;
+		}
+
+		run(args[0], args[1]);
+
+		return 0;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int res = ToolRunner.run(new Configuration(), new QuickLabel(), args);
+		System.exit(res);
+	}
+}
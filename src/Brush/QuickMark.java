@@ -35,8 +35,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -45,15 +45,29 @@ public class QuickMark extends Configured implements Tool
 {
 	private static final Logger sLogger = Logger.getLogger(QuickMark.class);
 
+	// mertag prefix of the compressible neighborhood when QuickLabel splits
+	// it by chain, the hex tags of the other nodes never hold a ':'
+	public static final String LABELTAG = "0:";
+
+	public static boolean isLabeled(String mertag)
+	{
+		return mertag.startsWith(LABELTAG);
+	}
+
 	public static class QuickMarkMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
-		public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+		private static int QUICK_LABEL = 0;
+
+		public void configure(JobConf job) {
+			QUICK_LABEL = job.getInt("QUICK_LABEL", 0);
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
                 throws IOException
         {
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			if (node.canCompress("f") || node.canCompress("r"))
 			{
@@ -72,27 +86,37 @@ public class QuickMark extends Configured implements Tool
                             if (idx == -1) {
                                 throw new IOException( node.getNodeId() + "'s edge:" + v + " without overlap size information!! ");
                             } else {
-                                output.collect(new Text(v.substring(0, idx)), new Text(Node.COMPRESSPAIR));
+                                output.collect(new Text(v.substring(0, idx)), new NodeWritable(Node.COMPRESSPAIR));
                             }
 						}
 					}
 				}
+
+				// first label round: my id to the rest of my chain
+				if (QUICK_LABEL > 0) { QuickLabel.sendLabel(node, node.getNodeId(), output); }
 			}
 
-			output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+			output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 
 			reporter.incrCounter("Brush", "nodes", 1);
         }
 	}
 
 	public static class QuickMarkReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		private static int QUICK_LABEL = 0;
+
+		public void configure(JobConf job) {
+			QUICK_LABEL = job.getInt("QUICK_LABEL", 0);
+		}
+
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
 			boolean compresspair = false;
+			String label = nodeid.toString();
 
 			Node node = new Node(nodeid.toString());
 
@@ -100,21 +124,25 @@ public class QuickMark extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(key.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.COMPRESSPAIR))
 				{
 					compresspair = true;
 				}
+				else if (vals[0].equals(Node.LABELMSG))
+				{
+					if (vals[1].compareTo(label) < 0) { label = vals[1]; }
+				}
 				else
 				{
 					throw new IOException("Unknown msgtype: " + msg);
@@ -128,7 +156,8 @@ public class QuickMark extends Configured implements Tool
 
 			if (node.canCompress("f") || node.canCompress("r") || compresspair)
 			{
-				node.setMertag("0");
+				if (QUICK_LABEL > 0) { node.setMertag(LABELTAG + label); }
+				else                 { node.setMertag("0"); }
 				reporter.incrCounter("Brush", "compressibleneighborhood", 1);
 			}
 			else
@@ -136,12 +165,19 @@ public class QuickMark extends Configured implements Tool
 				node.setMertag(Integer.toHexString(node.getNodeId().hashCode()));
 			}
 
-			output.collect(nodeid, new Text(node.toNodeMsg()));
+			output.collect(nodeid, new NodeWritable(node));
 		}
 	}
 
 
 	public RunningJob run(String inputPath, String outputPath) throws Exception
+	{
+		return run(inputPath, outputPath, BrushConfig.QUICK_LABEL > 0);
+	}
+
+	// labeled: tag the neighborhood by chain for QuickLabel, else all of it
+	// goes to one reducer
+	public RunningJob run(String inputPath, String outputPath, boolean labeled) throws Exception
 	{
 		sLogger.info("Tool name: QuickMark");
 		sLogger.info(" - input: "  + inputPath);
@@ -152,18 +188,19 @@ public class QuickMark extends Configured implements Tool
 		conf.setJobName("QuickMark " + inputPath);
 
 		BrushConfig.initializeConfiguration(conf);
+		if (!labeled) { conf.setInt("QUICK_LABEL", 0); }
 
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
         
         //conf.setBoolean("mapred.output.compress", true);
 
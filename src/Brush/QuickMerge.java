@@ -39,8 +39,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -51,24 +51,23 @@ public class QuickMerge extends Configured implements Tool
 	private static final Logger sLogger = Logger.getLogger(QuickMerge.class);
 
 	private static class QuickMergeMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
-		private static Node node = new Node();
-
-		public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
                 throws IOException
         {
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			String mertag = node.getMertag();
-			output.collect(new Text(mertag), new Text(node.toNodeMsg(true)));
+			node.clearCustom(Node.MERTAG);
+			output.collect(new Text(mertag), new NodeWritable(node));
 			reporter.incrCounter("Brush", "nodes", 1);
         }
 	}
 
 	private static class QuickMergeReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 21;
 		public static boolean VERBOSE = false;
@@ -77,8 +76,8 @@ public class QuickMerge extends Configured implements Tool
 			K = Integer.parseInt(job.get("K"));
 		}
 
-		public void reduce(Text mertag, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text mertag, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
 		    int saved    = 0;
@@ -95,8 +94,7 @@ public class QuickMerge extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				Node node = new Node();
-				String nodestr = iter.next().toString();
+				Node node = iter.next().getNode();
 
 				if (VERBOSE)
 				{
@@ -108,7 +106,6 @@ public class QuickMerge extends Configured implements Tool
 					//System.err.println("Common mer: " + mertag.toString() + " cnt:" + nodes.size());
 				}
 
-				node.fromNodeMsg(nodestr);
 				nodes.put(node.getNodeId(), node);
 			}
 
@@ -180,6 +177,9 @@ public class QuickMerge extends Configured implements Tool
 
 				if (VERBOSE) { System.err.println(" domerge=" + domerge); }
 
+				// a pair whose rtail has neighbors in other groups
+				if (domerge == 0 && chainlen > 1) { reporter.incrCounter("Brush", "pairsleft", 1); }
+
 			    if (domerge > 0)
 			    {
 			      chainlen--; // Replace the chain with 1 ftail
@@ -483,7 +483,18 @@ public class QuickMerge extends Configured implements Tool
 				Node node = nodes.get(nodeid);
 				if (node.hasCustom(DONE) && node.getCustom(DONE).get(0).equals("1"))
 				{
-					output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+					output.collect(new Text(node.getNodeId()), new NodeWritable(node));
+
+					// a chain QuickLabel split over groups is left for the next stage
+					for (String adj : Node.dirs)
+					{
+						TailInfo next = node.gettail(adj);
+
+						if (next != null && node.canCompress(adj) && !nodes.containsKey(next.id))
+						{
+							reporter.incrCounter("Brush", "needcompress", 1);
+						}
+					}
 				}
 			}
 
@@ -512,14 +523,14 @@ public class QuickMerge extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
         //conf.setBoolean("mapred.output.compress", true);
         
 		conf.setMapperClass(QuickMergeMapper.class);
@@ -0,0 +1,345 @@
+/*
+    ReadDictionary.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.MultipleOutputs;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+// Renames the reads to dense numeric ids before anything else runs.
+// The id of a read is serial*4 + flags: bit 1 is set for a read named
+// X_1 or X_2 and bit 0 tells the second mate, so both mates share a
+// serial and matename is id ^ 1. Ids are written in base 36, as
+// Fingerprint writes its values, which keeps them at 12 characters at most.
+//
+// The first job groups the mates under their base name. Each reducer
+// numbers its serials from zero and writes the reads keyed by that local
+// id, with the number of serials it used in serials-*. The second job
+// is map only. It adds the serials of the partitions before each read's
+// partition, so the serials run 0..n-1 over all reducers. It writes part-*
+// with the renamed reads as .sfa2, and names-* with the "id\tname" pairs
+// Graph2Fasta uses to restore the names.
+// The reads may be .sfa, .sfa2 or FASTQ/FASTA files, see ReadInputFormat.
+public class ReadDictionary extends Configured implements Tool
+{
+	private static final Logger sLogger = Logger.getLogger(ReadDictionary.class);
+
+	public static final String NAMES = "names";
+	public static final String SERIALS = "serials";
+
+	// base name of a read and which mate it is: 0 unpaired, 1 or 2
+	public static int mate(String readname)
+	{
+		if (readname.endsWith("_1")) { return 1; }
+		if (readname.endsWith("_2")) { return 2; }
+		return 0;
+	}
+
+	public static long readId(long serial, int mate)
+	{
+		return (mate == 0) ? (serial << 2) : (serial << 2) | 2 | (mate - 1);
+	}
+
+	// id of the other mate, or -1 for an unpaired read
+	public static long mateId(long id)
+	{
+		return ((id & 2) != 0) ? id ^ 1 : -1;
+	}
+
+	public static String idString(long id)
+	{
+		return Long.toString(id, Character.MAX_RADIX);
+	}
+
+	// the id written by idString, -1 for any other name
+	public static long parseId(String id)
+	{
+		int l = id.length();
+
+		if (l == 0 || l > 12 || (l > 1 && id.charAt(0) == '0')) { return -1; }
+
+		for (int i = 0; i < l; i++)
+		{
+			char c = id.charAt(i);
+			if ((c < '0' || c > '9') && (c < 'a' || c > 'z')) { return -1; }
+		}
+
+		return Long.parseLong(id, Character.MAX_RADIX);
+	}
+
+
+	// ReadDictionaryMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class ReadDictionaryMapper extends MapReduceBase
+    implements Mapper<LongWritable, ReadWritable, Text, ReadWritable>
+	{
+		public void map(LongWritable lineid, ReadWritable read,
+				        OutputCollector<Text, ReadWritable> output, Reporter reporter)
+		                throws IOException
+		{
+			// group the mates under their base name
+			String name = read.getName();
+			String base = (mate(name) == 0) ? name : name.substring(0, name.length()-2);
+
+			output.collect(new Text(base), read);
+		}
+	}
+
+
+	// ReadDictionaryReducer
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class ReadDictionaryReducer extends MapReduceBase
+	implements Reducer<Text, ReadWritable, LongWritable, ReadWritable>
+	{
+		private MultipleOutputs mos = null;
+		private int partition = 0;
+		private long serial = 0;
+
+		public void configure(JobConf job)
+		{
+			mos = new MultipleOutputs(job);
+			partition = job.getInt("mapred.task.partition", 0);
+		}
+
+		public void reduce(Text base, Iterator<ReadWritable> iter,
+						   OutputCollector<LongWritable, ReadWritable> output, Reporter reporter)
+						   throws IOException
+		{
+			// the serial of the mates, taken by the first one
+			long pair = -1;
+			boolean [] used = new boolean[3];
+
+			while (iter.hasNext())
+			{
+				ReadWritable read = iter.next();
+				int m = mate(read.getName());
+
+				// unpaired reads and repeated names get a serial of their own
+				long s;
+				if (m == 0 || used[m]) { s = serial++; }
+				else
+				{
+					if (pair < 0) { pair = serial++; }
+					s = pair;
+					used[m] = true;
+				}
+
+				output.collect(new LongWritable(readId(s, m)), read);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		public void close() throws IOException
+		{
+			OutputCollector<LongWritable, LongWritable> serials = mos.getCollector(SERIALS, Reporter.NULL);
+			serials.collect(new LongWritable(partition), new LongWritable(serial));
+			mos.close();
+		}
+	}
+
+
+	// RenameMapper
+	///////////////////////////////////////////////////////////////////////////
+
+	// moves the local ids of one reducer past the serials of the ones before it
+	public static class RenameMapper extends MapReduceBase
+    implements Mapper<LongWritable, ReadWritable, Text, ReadWritable>
+	{
+		private MultipleOutputs mos = null;
+		private long offset = 0;
+
+		public void configure(JobConf job)
+		{
+			mos = new MultipleOutputs(job);
+
+			// the reducer that wrote this part
+			String file = new Path(job.get("map.input.file")).getName();
+			int partition = Integer.parseInt(file.substring(file.lastIndexOf('-') + 1));
+
+			offset = Long.parseLong(job.get("SERIAL_OFFSETS").split(",")[partition]) << 2;
+		}
+
+		@SuppressWarnings("unchecked")
+		private OutputCollector<Text, Text> names(Reporter reporter) throws IOException
+		{
+			return mos.getCollector(NAMES, reporter);
+		}
+
+		public void map(LongWritable localid, ReadWritable read,
+				        OutputCollector<Text, ReadWritable> output, Reporter reporter)
+		                throws IOException
+		{
+			Text id = new Text(idString(localid.get() + offset));
+
+			output.collect(id, read);
+			names(reporter).collect(id, new Text(read.getName()));
+
+			reporter.incrCounter("Brush", "reads", 1);
+		}
+
+		public void close() throws IOException
+		{
+			mos.close();
+		}
+	}
+
+
+	// Run Tool
+	///////////////////////////////////////////////////////////////////////////
+
+	// the first serial of each partition, from the serials-* files of dir
+	static String serialOffsets(FileSystem fs, Path dir, int partitions) throws IOException
+	{
+		long [] serials = new long[partitions];
+
+		for (FileStatus f : fs.globStatus(new Path(dir, SERIALS + "-*")))
+		{
+			BufferedReader b = new BufferedReader(new InputStreamReader(fs.open(f.getPath())));
+			String line;
+			while ((line = b.readLine()) != null)
+			{
+				String [] vals = line.split("\t");
+				serials[Integer.parseInt(vals[0])] = Long.parseLong(vals[1]);
+			}
+			b.close();
+		}
+
+		StringBuilder sb = new StringBuilder();
+		long first = 0;
+		for (int p = 0; p < partitions; p++)
+		{
+			if (p > 0) { sb.append(','); }
+			sb.append(first);
+			first += serials[p];
+		}
+
+		return sb.toString();
+	}
+
+	public RunningJob run(String inputPath, String outputPath) throws Exception
+	{
+		sLogger.info("Tool name: ReadDictionary");
+		sLogger.info(" - input: "  + inputPath);
+		sLogger.info(" - output: " + outputPath);
+
+		String localPath = outputPath + ".local";
+
+		JobConf conf = new JobConf(ReadDictionary.class);
+		conf.setJobName("ReadDictionary serials " + inputPath);
+
+		BrushConfig.initializeConfiguration(conf);
+
+		FileInputFormat.addInputPath(conf, new Path(inputPath));
+		FileOutputFormat.setOutputPath(conf, new Path(localPath));
+
+		conf.setInputFormat(ReadInputFormat.formatOf(conf, inputPath));
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
+
+		conf.setMapOutputKeyClass(Text.class);
+		conf.setMapOutputValueClass(ReadWritable.class);
+
+		conf.setOutputKeyClass(LongWritable.class);
+		conf.setOutputValueClass(ReadWritable.class);
+
+		MultipleOutputs.addNamedOutput(conf, SERIALS, TextOutputFormat.class, LongWritable.class, LongWritable.class);
+
+		conf.setMapperClass(ReadDictionaryMapper.class);
+		conf.setReducerClass(ReadDictionaryReducer.class);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(localPath), true);
+
+		JobClient.runJob(conf);
+
+		// the ids, numbered across the partitions
+		int partitions = conf.getNumReduceTasks();
+
+		conf = new JobConf(ReadDictionary.class);
+		conf.setJobName("ReadDictionary " + inputPath);
+
+		BrushConfig.initializeConfiguration(conf);
+		conf.set("SERIAL_OFFSETS", serialOffsets(FileSystem.get(conf), new Path(localPath), partitions));
+
+		FileInputFormat.addInputPath(conf, new Path(localPath + "/part-*"));
+		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
+
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(Sfa2OutputFormat.class);
+
+		conf.setMapOutputKeyClass(Text.class);
+		conf.setMapOutputValueClass(ReadWritable.class);
+
+		conf.setOutputKeyClass(Text.class);
+		conf.setOutputValueClass(ReadWritable.class);
+
+		MultipleOutputs.addNamedOutput(conf, NAMES, TextOutputFormat.class, Text.class, Text.class);
+
+		conf.setMapperClass(RenameMapper.class);
+		conf.setNumReduceTasks(0);
+
+		//delete the output directory if it exists already
+		FileSystem.get(conf).delete(new Path(outputPath), true);
+
+		RunningJob job = JobClient.runJob(conf);
+
+		FileSystem.get(conf).delete(new Path(localPath), true);
+
+		return job;
+	}
+
+
+	// Parse Arguments and run
+	///////////////////////////////////////////////////////////////////////////
+
+	public int run(String[] args) throws Exception
+	{
+		String inputPath  = "";
+		String outputPath = "";
+
+		run(inputPath, outputPath);
+		return 0;
+	}
+
+
+	// Main
+	///////////////////////////////////////////////////////////////////////////
+
+	public static void main(String[] args) throws Exception
+	{
+		int res = ToolRunner.run(new Configuration(), new ReadDictionary(), args);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,160 @@
+/*
+    ReadIdSet.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+
+// A set of read ids small enough to ship to every mapper. Numeric ids,
+// as ReadDictionary hands out, are kept exactly as a sorted long[] and
+// written as deltas; a set with more than exact ids, or with any other
+// name, becomes a Bloom filter with the false positive rate fp instead.
+// Add the ids, then build() before writing or probing the set.
+public class ReadIdSet implements Writable
+{
+	private static final int EXACT = 0;
+	private static final int BLOOM = 1;
+
+	private int mode = EXACT;
+	private long [] ids = new long[16];
+	private int n = 0;
+	private List<String> names = new ArrayList<String>();
+	private BloomFilter bloom = null;
+
+	// the numeric value of a read id, -1 for any other name
+	public static long numericId(String id)
+	{
+		return ReadDictionary.parseId(id);
+	}
+
+	public void add(String id)
+	{
+		long v = numericId(id);
+
+		if (v < 0)
+		{
+			names.add(id);
+			return;
+		}
+
+		if (n == ids.length) { ids = Arrays.copyOf(ids, 2 * n); }
+		ids[n++] = v;
+	}
+
+	public long size()
+	{
+		return n + names.size();
+	}
+
+	public boolean isExact()
+	{
+		return mode == EXACT;
+	}
+
+	public void build(int exact, double fp)
+	{
+		if (names.isEmpty() && n <= exact)
+		{
+			mode = EXACT;
+			Arrays.sort(ids, 0, n);
+			return;
+		}
+
+		long count = Math.max(size(), 1);
+		double ln2 = Math.log(2);
+		int bits = (int) Math.min(Integer.MAX_VALUE - 64, Math.ceil(-count * Math.log(fp) / (ln2 * ln2)));
+		int hashes = Math.max(1, (int) Math.round((double) bits / count * ln2));
+
+		mode = BLOOM;
+		bloom = new BloomFilter(bits, hashes, Hash.MURMUR_HASH);
+
+		for (int i = 0; i < n; i++) { bloom.add(key(ReadDictionary.idString(ids[i]))); }
+		for (String name : names)   { bloom.add(key(name)); }
+
+		ids = new long[0];
+		n = 0;
+		names.clear();
+	}
+
+	private static Key key(String id)
+	{
+		return new Key(id.getBytes());
+	}
+
+	public boolean contains(String id)
+	{
+		if (mode == BLOOM)
+		{
+			return bloom.membershipTest(key(id));
+		}
+
+		long v = numericId(id);
+		return v >= 0 && Arrays.binarySearch(ids, 0, n, v) >= 0;
+	}
+
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeByte(mode);
+
+		if (mode == BLOOM)
+		{
+			bloom.write(out);
+			return;
+		}
+
+		WritableUtils.writeVInt(out, n);
+
+		long last = 0;
+		for (int i = 0; i < n; i++)
+		{
+			WritableUtils.writeVLong(out, ids[i] - last);
+			last = ids[i];
+		}
+	}
+
+	public void readFields(DataInput in) throws IOException
+	{
+		mode = in.readByte();
+		names.clear();
+
+		if (mode == BLOOM)
+		{
+			bloom = new BloomFilter();
+			bloom.readFields(in);
+			n = 0;
+			return;
+		}
+
+		n = WritableUtils.readVInt(in);
+		ids = new long[Math.max(n, 16)];
+
+		long last = 0;
+		for (int i = 0; i < n; i++)
+		{
+			last += WritableUtils.readVLong(in);
+			ids[i] = last;
+		}
+	}
+
+	// the partition of a read id, as the hash partitioner places Text keys
+	public static int partition(Text id, int parts)
+	{
+		return (id.hashCode() & Integer.MAX_VALUE) % parts;
+	}
+}
@@ -0,0 +1,492 @@
+/*
+    ReadInputFormat.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.JobConfigurable;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+// Reads FASTQ and FASTA files as they are, so the reads no longer go
+// through data/preprocessor.pl on one machine first. Every record comes
+// out as a ReadWritable with the name and sequence preprocessor.pl wrote
+// to the .sfa file, keyed by its position, so ReadDictionary and
+// everything after it see the same reads either way; ReadDictionary
+// still assigns the read ids.
+// Plain files split anywhere, BGZF (bgzip) files split between blocks,
+// other gzip files are read whole.
+//
+// A split owns the records whose header line follows a newline inside
+// it: the newline byte itself for plain files, the compressed block that
+// holds it for BGZF. A reader syncs to the first header it owns and
+// reads its last record to the end, past the end of the split.
+public abstract class ReadInputFormat extends FileInputFormat<LongWritable, ReadWritable>
+implements JobConfigurable
+{
+	private CompressionCodecFactory codecs = null;
+
+	public void configure(JobConf job)
+	{
+		codecs = new CompressionCodecFactory(job);
+	}
+
+	protected boolean isSplitable(FileSystem fs, Path file)
+	{
+		try
+		{
+			int kind = ReadStream.kind(fs, file, codecs);
+			return kind == ReadStream.PLAIN || kind == ReadStream.BGZF;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	public RecordReader<LongWritable, ReadWritable> getRecordReader(InputSplit split, JobConf job,
+			Reporter reporter) throws IOException
+	{
+		reporter.setStatus(split.toString());
+		return getReadReader(new ReadStream(job, (FileSplit) split, codecs));
+	}
+
+	protected abstract ReadRecordReader getReadReader(ReadStream in) throws IOException;
+
+
+	// which input format reads the files at path (a file, a directory or a
+	// glob), by their names: .sfa2, FASTQ, FASTA, or else .sfa text lines
+	public static Class<? extends InputFormat<LongWritable, ReadWritable>> formatOf(JobConf job, String path) throws IOException
+	{
+		Path p = new Path(path);
+		FileSystem fs = p.getFileSystem(job);
+		FileStatus [] matches = fs.globStatus(p);
+
+		Class<? extends InputFormat<LongWritable, ReadWritable>> format = null;
+
+		for (int i = 0; matches != null && i < matches.length; i++)
+		{
+			FileStatus [] files = matches[i].isDir() ? fs.listStatus(matches[i].getPath())
+			                                         : new FileStatus [] { matches[i] };
+
+			for (FileStatus f : files)
+			{
+				String name = f.getPath().getName();
+				if (f.isDir() || name.startsWith("_") || name.startsWith(".")) { continue; }
+
+				Class<? extends InputFormat<LongWritable, ReadWritable>> c = formatOfName(name);
+				if (format != null && format != c)
+				{
+					throw new IOException("Reads in more than one format: " + path);
+				}
+				format = c;
+			}
+		}
+
+		return (format == null) ? SfaInputFormat.class : format;
+	}
+
+	private static Class<? extends InputFormat<LongWritable, ReadWritable>> formatOfName(String name)
+	{
+		name = name.toLowerCase();
+
+		for (String z : new String [] {".gz", ".bgz", ".bgzf", ".bz2"})
+		{
+			if (name.endsWith(z)) { name = name.substring(0, name.length() - z.length()); }
+		}
+
+		String ext = name.substring(name.lastIndexOf('.') + 1);
+
+		if (ext.equals("sfa2"))
+		{
+			return Sfa2InputFormat.class;
+		}
+
+		if (ext.equals("fastq") || ext.equals("fq"))
+		{
+			return FastqInputFormat.class;
+		}
+
+		if (ext.equals("fasta") || ext.equals("fa") || ext.equals("fna") || ext.equals("fas"))
+		{
+			return FastaInputFormat.class;
+		}
+
+		return SfaInputFormat.class;
+	}
+
+	// the first word of a header line, cleaned up as preprocessor.pl did:
+	// ':', '/' and '#' through '.' become '_', so "x/1" is the mate "x_1"
+	public static String readName(Text header)
+	{
+		String h = header.toString();
+		int e = 1;
+
+		while (e < h.length() && !Character.isWhitespace(h.charAt(e))) { e++; }
+
+		char [] name = h.substring(1, e).toCharArray();
+
+		for (int i = 0; i < name.length; i++)
+		{
+			char c = name[i];
+			if (c == ':' || c == '/' || (c >= '#' && c <= '.')) { name[i] = '_'; }
+		}
+
+		return new String(name);
+	}
+
+
+	// ReadRecordReader
+	///////////////////////////////////////////////////////////////////////////
+
+	// one read per call, from a header line the split owns
+	protected static abstract class ReadRecordReader implements RecordReader<LongWritable, ReadWritable>
+	{
+		protected final ReadStream in;
+
+		// the read nextRead found
+		protected long key = 0;
+		protected String name = null;
+		protected final StringBuilder seq = new StringBuilder();
+
+		protected ReadRecordReader(ReadStream in)
+		{
+			this.in = in;
+		}
+
+		// fills key, name and seq; false once the split has no more reads
+		protected abstract boolean nextRead() throws IOException;
+
+		public boolean next(LongWritable k, ReadWritable value) throws IOException
+		{
+			if (!nextRead()) { return false; }
+
+			k.set(key);
+			value.set(name, seq);
+
+			return true;
+		}
+
+		public LongWritable createKey() { return new LongWritable(); }
+
+		public ReadWritable createValue() { return new ReadWritable(); }
+
+		public long getPos() throws IOException { return in.position(); }
+
+		public float getProgress() throws IOException { return in.progress(); }
+
+		public void close() throws IOException { in.close(); }
+	}
+
+
+	// ReadStream
+	///////////////////////////////////////////////////////////////////////////
+
+	// The lines of a split, each with the key of where it starts and the
+	// owner that decides which split reads a record starting there.
+	protected static class ReadStream
+	{
+		static final int PLAIN = 0;
+		static final int BGZF  = 1;
+		static final int WHOLE = 2;   // gzip or another codec, not splittable
+
+		private static final int BLOCK = 65536;
+
+		private final FSDataInputStream file;
+		private final InputStream whole;
+		private final int kind;
+		private final long length;
+		private final long start;
+		private final long end;
+
+		private byte [] buf = new byte[BLOCK];
+		private int len = 0;
+		private int pos = 0;
+
+		// PLAIN: file offset of buf[0]; BGZF: offset of the block in buf;
+		// WHOLE: bytes decompressed before buf
+		private long base = 0;
+		private long next = 0;        // BGZF: offset of the block after buf
+
+		private long owner = 0;       // of the line starting at pos
+		private long lineKey = 0;
+		private long lineOwner = 0;
+
+		private final Inflater inflater = new Inflater(true);
+		private byte [] cdata = null;
+		private final byte [] head = new byte[BLOCK];
+
+		public ReadStream(JobConf job, FileSplit split, CompressionCodecFactory codecs) throws IOException
+		{
+			Path path = split.getPath();
+			FileSystem fs = path.getFileSystem(job);
+
+			kind = kind(fs, path, codecs);
+			length = fs.getFileStatus(path).getLen();
+			file = fs.open(path);
+
+			if (kind == WHOLE)
+			{
+				CompressionCodec codec = codecs.getCodec(path);
+				whole = (codec == null) ? new GZIPInputStream(file, BLOCK) : codec.createInputStream(file);
+				start = 0;
+				end = Long.MAX_VALUE;
+				return;
+			}
+
+			whole = null;
+			start = split.getStart();
+			end = start + split.getLength();
+
+			if (kind == BGZF)
+			{
+				cdata = new byte[BLOCK];
+				next = (start == 0) ? 0 : findBlock(start);
+				owner = next;
+			}
+			else
+			{
+				base = start;
+				owner = start;
+			}
+
+			// the line the split starts in belongs to the split before,
+			// unless a newline ends right before the split
+			if (start != 0)
+			{
+				if (kind == PLAIN)
+				{
+					file.seek(start - 1);
+					base = start - 1;
+				}
+
+				readLine(new Text());
+			}
+		}
+
+		// how path can be read, from its first bytes and its name
+		static int kind(FileSystem fs, Path path, CompressionCodecFactory codecs) throws IOException
+		{
+			byte [] h = new byte[18];
+			int n = 0;
+
+			FSDataInputStream in = fs.open(path);
+			try
+			{
+				int r;
+				while (n < h.length && (r = in.read(h, n, h.length - n)) > 0) { n += r; }
+			}
+			finally
+			{
+				in.close();
+			}
+
+			if (n == h.length && blockSize(h, 0) > 0) { return BGZF; }
+			if (n >= 2 && (h[0] & 0xff) == 0x1f && (h[1] & 0xff) == 0x8b) { return WHOLE; }
+
+			return (codecs != null && codecs.getCodec(path) != null) ? WHOLE : PLAIN;
+		}
+
+		// BSIZE+1 of the BGZF block header at h[o], with the usual single
+		// "BC" extra field, or 0 if there is none
+		private static int blockSize(byte [] h, int o)
+		{
+			if ((h[o] & 0xff) != 0x1f || (h[o+1] & 0xff) != 0x8b || h[o+2] != 8 || (h[o+3] & 4) == 0)
+			{
+				return 0;
+			}
+
+			if (u16(h, o+10) != 6 || h[o+12] != 'B' || h[o+13] != 'C' || u16(h, o+14) != 2)
+			{
+				return 0;
+			}
+
+			return u16(h, o+16) + 1;
+		}
+
+		private static int u16(byte [] b, int o)
+		{
+			return (b[o] & 0xff) | ((b[o+1] & 0xff) << 8);
+		}
+
+		// offset of the first block at or after from, checked against the
+		// header of the block after it; the file length if there is none
+		private long findBlock(long from) throws IOException
+		{
+			for (long p = from; p < length; p += head.length - 18)
+			{
+				int n = (int) Math.min(head.length, length - p);
+				file.readFully(p, head, 0, n);
+
+				for (int i = 0; i + 18 <= n; i++)
+				{
+					int size = blockSize(head, i);
+					if (size == 0) { continue; }
+
+					long after = p + i + size;
+					if (after == length) { return p + i; }
+
+					if (after + 18 <= length)
+					{
+						byte [] h = new byte[18];
+						file.readFully(after, h, 0, 18);
+						if (blockSize(h, 0) > 0) { return p + i; }
+					}
+				}
+
+				if (n < head.length) { break; }
+			}
+
+			return length;
+		}
+
+		// the next non-empty BGZF block into buf
+		private boolean readBlock() throws IOException
+		{
+			while (next + 18 <= length)
+			{
+				file.readFully(next, head, 0, 18);
+
+				int size = blockSize(head, 0);
+				if (size == 0)
+				{
+					throw new IOException("Bad BGZF block at " + next);
+				}
+
+				int clen = size - 26;
+				file.readFully(next + 18, cdata, 0, clen);
+				file.readFully(next + size - 4, head, 0, 4);
+				int isize = u16(head, 0) | (u16(head, 2) << 16);
+
+				base = next;
+				next += size;
+
+				inflater.reset();
+				inflater.setInput(cdata, 0, clen);
+
+				try
+				{
+					len = 0;
+					while (len < isize && !inflater.finished())
+					{
+						len += inflater.inflate(buf, len, isize - len);
+					}
+				}
+				catch (DataFormatException e)
+				{
+					throw new IOException("Bad BGZF block at " + base + ": " + e.getMessage());
+				}
+
+				pos = 0;
+				if (len > 0) { return true; }
+			}
+
+			return false;
+		}
+
+		private boolean fill() throws IOException
+		{
+			if (kind == BGZF) { return readBlock(); }
+
+			base += len;
+			len = 0;
+			pos = 0;
+
+			int r = 0;
+			while (r == 0)
+			{
+				r = (kind == WHOLE) ? whole.read(buf) : file.read(buf);
+			}
+
+			if (r < 0) { return false; }
+
+			len = r;
+			return true;
+		}
+
+		// the next line without its newline (or CR LF); false at the end
+		public boolean readLine(Text line) throws IOException
+		{
+			line.clear();
+			lineKey = (kind == BGZF) ? (base << 16) | pos : base + pos;
+			lineOwner = owner;
+
+			boolean any = false;
+
+			while (true)
+			{
+				if (pos >= len && !fill()) { break; }
+
+				if (!any && kind == BGZF) { lineKey = (base << 16) | pos; }
+				any = true;
+
+				int s = pos;
+				while (pos < len && buf[pos] != '\n') { pos++; }
+
+				line.append(buf, s, pos - s);
+
+				if (pos < len)
+				{
+					pos++;
+					owner = (kind == BGZF) ? base : base + pos;
+					break;
+				}
+			}
+
+			int l = line.getLength();
+			if (l > 0 && line.getBytes()[l-1] == '\r') { line.set(line.getBytes(), 0, l-1); }
+
+			return any;
+		}
+
+		// where the last line starts: the byte offset, or the BGZF virtual offset
+		public long key() { return lineKey; }
+
+		// true if a record starting on the last line belongs to the split
+		public boolean owned() { return lineOwner < end; }
+
+		public long position() throws IOException
+		{
+			if (kind == WHOLE) { return file.getPos(); }
+			return (kind == BGZF) ? base : base + pos;
+		}
+
+		public float progress() throws IOException
+		{
+			long e = (kind == WHOLE) ? length : end;
+			long s = (kind == WHOLE) ? 0 : start;
+
+			if (e <= s) { return 0.0f; }
+			return Math.min(1.0f, (position() - s) / (float) (e - s));
+		}
+
+		public void close() throws IOException
+		{
+			inflater.end();
+			if (whole != null) { whole.close(); }
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+    ReadWritable.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// One read as the ingest stages pass it around: the name and the bases,
+// 2 bits each, with the runs of anything that is not A, C, G or T kept
+// as an N mask (the bases under it are stored as A). The text is parsed
+// once, where it is read, so the mappers just check hasN and length.
+//
+// Serialized as the name, the length, the mask as (gap, run) varint
+// pairs and the bases 4 to a byte. A ReadDictionary id is written as a
+// varint, any other name as its UTF-8 bytes; the low bit of the leading
+// varint tells which. This is also the record layout of .sfa2 files.
+public class ReadWritable implements Writable
+{
+	private String name = "";
+	private PackedSeq seq = PackedSeq.wrap(new long[0], 0);
+	private int [] mask = new int[8];   // start, length of each run of N
+	private int runs = 0;
+
+	public ReadWritable()
+	{
+
+	}
+
+	// sequence text in any case; bases other than ACGT go into the mask
+	public void set(String readname, CharSequence dna)
+	{
+		int l = dna.length();
+		long [] w = new long[(l + 31) >> 5];
+
+		name = readname;
+		runs = 0;
+
+		for (int i = 0; i < l; i++)
+		{
+			int c;
+
+			switch (dna.charAt(i))
+			{
+				case 'A': case 'a': c = 0; break;
+				case 'C': case 'c': c = 1; break;
+				case 'G': case 'g': c = 2; break;
+				case 'T': case 't': c = 3; break;
+				default:            c = -1;
+			}
+
+			if (c < 0)
+			{
+				addN(i);
+				continue;
+			}
+
+			w[i >> 5] |= ((long) c) << (62 - 2 * (i & 31));
+		}
+
+		seq = PackedSeq.wrap(w, l);
+	}
+
+	public void set(String readname, PackedSeq bases)
+	{
+		name = readname;
+		seq = bases;
+		runs = 0;
+	}
+
+	private void addN(int i)
+	{
+		if (runs > 0 && mask[2*runs-2] + mask[2*runs-1] == i)
+		{
+			mask[2*runs-1]++;
+			return;
+		}
+
+		if (2 * runs == mask.length)
+		{
+			int [] m = new int[2 * mask.length];
+			System.arraycopy(mask, 0, m, 0, mask.length);
+			mask = m;
+		}
+
+		mask[2*runs] = i;
+		mask[2*runs+1] = 1;
+		runs++;
+	}
+
+	public void setName(String readname) { name = readname; }
+
+	public String getName() { return name; }
+
+	// the bases, with A where the mask has N
+	public PackedSeq getSeq() { return seq; }
+
+	public int length() { return seq.length(); }
+
+	public boolean hasN() { return runs > 0; }
+
+	// the sequence text, N included
+	public String toString()
+	{
+		char [] s = seq.toString().toCharArray();
+
+		for (int r = 0; r < runs; r++)
+		{
+			for (int i = 0; i < mask[2*r+1]; i++)
+			{
+				s[mask[2*r] + i] = 'N';
+			}
+		}
+
+		return new String(s);
+	}
+
+	public static void writeName(DataOutput out, String readname) throws IOException
+	{
+		long id = ReadDictionary.parseId(readname);
+		if (id >= 0)
+		{
+			WritableUtils.writeVLong(out, id << 1);
+		}
+		else
+		{
+			ByteBuffer b = Text.encode(readname);
+
+			WritableUtils.writeVLong(out, ((long) b.limit() << 1) | 1);
+			out.write(b.array(), 0, b.limit());
+		}
+	}
+
+	public static String readName(DataInput in) throws IOException
+	{
+		long v = WritableUtils.readVLong(in);
+
+		if ((v & 1) == 0)
+		{
+			return ReadDictionary.idString(v >>> 1);
+		}
+
+		byte [] b = new byte[(int) (v >>> 1)];
+		in.readFully(b);
+
+		return Text.decode(b);
+	}
+
+	// the record without the name, for writers that take it from a key
+	public void writeSeq(DataOutput out) throws IOException
+	{
+		WritableUtils.writeVInt(out, seq.length());
+		WritableUtils.writeVInt(out, runs);
+
+		int last = 0;
+		for (int r = 0; r < runs; r++)
+		{
+			WritableUtils.writeVInt(out, mask[2*r] - last);
+			WritableUtils.writeVInt(out, mask[2*r+1]);
+			last = mask[2*r] + mask[2*r+1];
+		}
+
+		seq.writeBases(out);
+	}
+
+	public void write(DataOutput out) throws IOException
+	{
+		writeName(out, name);
+		writeSeq(out);
+	}
+
+	public void readFields(DataInput in) throws IOException
+	{
+		name = readName(in);
+
+		int l = WritableUtils.readVInt(in);
+		int n = WritableUtils.readVInt(in);
+
+		if (2 * n > mask.length) { mask = new int[2 * n]; }
+		runs = n;
+
+		int last = 0;
+		for (int r = 0; r < runs; r++)
+		{
+			mask[2*r] = last + WritableUtils.readVInt(in);
+			mask[2*r+1] = WritableUtils.readVInt(in);
+			last = mask[2*r] + mask[2*r+1];
+		}
+
+		seq = PackedSeq.readBases(in, l);
+	}
+}
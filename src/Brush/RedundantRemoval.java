@@ -33,8 +33,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -44,24 +44,22 @@ public class RedundantRemoval extends Configured implements Tool
 	private static final Logger sLogger = Logger.getLogger(RedundantRemoval.class);
 
 	public static class RedundantRemovalMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
-		private static Node node = new Node();
-
-        public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+        public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
                 throws IOException
         {
-			node.fromNodeMsg(nodetxt.toString());
-            output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+			Node node = nodemsg.getNode();
+            output.collect(new Text(node.getNodeId()), new NodeWritable(node));
         }
 	}
 
 	public static class RedundantRemovalReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
-		public void reduce(Text key, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text key, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
             Node node = new Node(key.toString());
@@ -71,15 +69,15 @@ public class RedundantRemoval extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(key.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
                     if (node.hasCustom("n")) {
                         contained = true;
                     }
@@ -95,7 +93,7 @@ public class RedundantRemoval extends Configured implements Tool
                 throw new IOException("ERROR: Didn't see exactly 1 nodemsg (" + sawnode + ") for " + key.toString());
 			}
             if (!contained) {
-                output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+                output.collect(new Text(node.getNodeId()), new NodeWritable(node));
                 reporter.incrCounter("Brush", "nodes", 1);
             } else {
                 reporter.incrCounter("Brush", "redundant", 1);
@@ -118,14 +116,14 @@ public class RedundantRemoval extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
         
         //conf.setBoolean("mapred.output.compress", true);
 
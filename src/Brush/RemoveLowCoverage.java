@@ -36,8 +36,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -52,7 +52,7 @@ public class RemoveLowCoverage extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	private static class RemoveLowCoverageMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 0;
 		public static float MAX_LOW_COV_LEN = 0;
@@ -67,12 +67,11 @@ public class RemoveLowCoverage extends Configured implements Tool
             MAX_LOW_COV_LEN = (LOW_COV_THRESH+1)*Long.parseLong(job.get("READLENGTH")) - LOW_COV_THRESH*K;
 		}
 
-		public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
 		throws IOException
 		{
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			reporter.incrCounter("Brush", "nodes", 1);
 
@@ -101,7 +100,7 @@ public class RemoveLowCoverage extends Configured implements Tool
 						{
 							String p = v.substring(0, v.indexOf("!"));
 							degree++;
-							output.collect(new Text(p), new Text(Node.TRIMMSG + "\t" + ret + "\t" + node.getNodeId()));
+							output.collect(new Text(p), new NodeWritable(Node.TRIMMSG + "\t" + ret + "\t" + node.getNodeId()));
 						}
 					}
 				}
@@ -113,7 +112,7 @@ public class RemoveLowCoverage extends Configured implements Tool
 			}
 			else
 			{
-				output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+				output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			}
             //output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
 		}
@@ -124,7 +123,7 @@ public class RemoveLowCoverage extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	private static class RemoveLowCoverageReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
 		private static int K = 0;
 
@@ -144,8 +143,8 @@ public class RemoveLowCoverage extends Configured implements Tool
 			K = Integer.parseInt(job.get("K"));
 		}
 
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
 			Node node = new Node(nodeid.toString());
@@ -155,15 +154,15 @@ public class RemoveLowCoverage extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(nodeid.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.TRIMMSG))
@@ -192,7 +191,7 @@ public class RemoveLowCoverage extends Configured implements Tool
 						reporter.incrCounter("Brush", "linksremoved", 1);
 					}
 				}
-				output.collect(nodeid, new Text(node.toNodeMsg()));
+				output.collect(nodeid, new NodeWritable(node));
 			}
 		}
 	}
@@ -217,14 +216,14 @@ public class RemoveLowCoverage extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
 
 		conf.setMapperClass(RemoveLowCoverageMapper.class);
 		conf.setReducerClass(RemoveLowCoverageReducer.class);
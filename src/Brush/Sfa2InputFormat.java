@@ -0,0 +1,192 @@
+/*
+    Sfa2InputFormat.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.net.NetworkTopology;
+
+// Reads the .sfa2 files of Sfa2OutputFormat. The splits are cut from
+// the block index, so each one is a run of whole blocks and the reader
+// never has to look for a record boundary. The key of a read is the
+// offset of its block shifted left by 20, plus its number in the block.
+public class Sfa2InputFormat extends FileInputFormat<LongWritable, ReadWritable>
+{
+	// offsets of the blocks of file, then the offset of the index
+	static long [] readIndex(FileSystem fs, Path file, long length) throws IOException
+	{
+		FSDataInputStream in = fs.open(file);
+
+		try
+		{
+			byte [] magic = new byte[Sfa2OutputFormat.MAGIC.length];
+
+			if (length < Sfa2OutputFormat.MAGIC.length + 1 + Sfa2OutputFormat.TRAILER)
+			{
+				throw new IOException("Not an .sfa2 file: " + file);
+			}
+
+			in.seek(length - Sfa2OutputFormat.TRAILER);
+			long index = in.readLong();
+			in.readFully(magic);
+
+			if (!Arrays.equals(magic, Sfa2OutputFormat.MAGIC) || index < 0 || index > length)
+			{
+				throw new IOException("Not an .sfa2 file: " + file);
+			}
+
+			in.seek(index);
+			int blocks = WritableUtils.readVInt(in);
+			long [] offsets = new long[blocks + 1];
+
+			for (int b = 0; b < blocks; b++)
+			{
+				offsets[b] = WritableUtils.readVLong(in);
+				WritableUtils.readVInt(in);
+			}
+
+			offsets[blocks] = index;
+			return offsets;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	// as FileInputFormat sizes them, but cut at the block before the size is reached
+	public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException
+	{
+		FileStatus [] files = listStatus(job);
+
+		long total = 0;
+		for (FileStatus f : files) { total += f.getLen(); }
+
+		long goalSize = total / Math.max(numSplits, 1);
+		long minSize = Math.max(job.getLong("mapred.min.split.size", 1), 1);
+
+		List<FileSplit> splits = new ArrayList<FileSplit>();
+		NetworkTopology clusterMap = new NetworkTopology();
+
+		for (FileStatus f : files)
+		{
+			Path path = f.getPath();
+			FileSystem fs = path.getFileSystem(job);
+			long [] offsets = readIndex(fs, path, f.getLen());
+			int blocks = offsets.length - 1;
+
+			long splitSize = computeSplitSize(goalSize, minSize, f.getBlockSize());
+			BlockLocation [] locations = fs.getFileBlockLocations(f, 0, f.getLen());
+
+			for (int b = 0; b < blocks; )
+			{
+				int e = b + 1;
+				while (e < blocks && offsets[e] - offsets[b] < splitSize) { e++; }
+
+				long start = offsets[b];
+				long length = offsets[e] - start;
+
+				splits.add(new FileSplit(path, start, length,
+						getSplitHosts(locations, start, length, clusterMap)));
+				b = e;
+			}
+		}
+
+		return splits.toArray(new FileSplit[splits.size()]);
+	}
+
+	public RecordReader<LongWritable, ReadWritable> getRecordReader(InputSplit split, JobConf job,
+			Reporter reporter) throws IOException
+	{
+		reporter.setStatus(split.toString());
+		return new Sfa2RecordReader(job, (FileSplit) split);
+	}
+
+
+	// Sfa2RecordReader
+	///////////////////////////////////////////////////////////////////////////
+
+	public static class Sfa2RecordReader implements RecordReader<LongWritable, ReadWritable>
+	{
+		private final FSDataInputStream in;
+		private final long start;
+		private final long end;
+
+		private final DataInputBuffer block = new DataInputBuffer();
+		private byte [] data = new byte[Sfa2OutputFormat.BLOCK];
+		private long offset = 0;
+		private int read = 0;
+		private int reads = 0;
+
+		public Sfa2RecordReader(JobConf job, FileSplit split) throws IOException
+		{
+			Path path = split.getPath();
+
+			in = path.getFileSystem(job).open(path);
+			start = split.getStart();
+			end = start + split.getLength();
+
+			in.seek(start);
+		}
+
+		public boolean next(LongWritable key, ReadWritable value) throws IOException
+		{
+			while (read == reads)
+			{
+				offset = in.getPos();
+				if (offset >= end) { return false; }
+
+				reads = WritableUtils.readVInt(in);
+				int len = WritableUtils.readVInt(in);
+
+				if (len > data.length) { data = new byte[len]; }
+				in.readFully(data, 0, len);
+
+				block.reset(data, len);
+				read = 0;
+			}
+
+			key.set((offset << 20) + read);
+			value.readFields(block);
+			read++;
+
+			return true;
+		}
+
+		public LongWritable createKey() { return new LongWritable(); }
+
+		public ReadWritable createValue() { return new ReadWritable(); }
+
+		public long getPos() throws IOException { return in.getPos(); }
+
+		public float getProgress() throws IOException
+		{
+			if (end == start) { return 0.0f; }
+			return Math.min(1.0f, (in.getPos() - start) / (float) (end - start));
+		}
+
+		public void close() throws IOException { in.close(); }
+	}
+}
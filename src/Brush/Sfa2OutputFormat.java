@@ -0,0 +1,115 @@
+/*
+    Sfa2OutputFormat.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+
+// Writes reads as .sfa2, the binary form of an .sfa file: the key is the
+// read name, the value its ReadWritable. Records are ReadWritable bytes,
+// grouped in blocks of about BLOCK bytes, and an index of the blocks at
+// the end lets Sfa2InputFormat start a split at any of them.
+//
+//   "SFA2", version byte
+//   each block: vint reads, vint bytes, the records
+//   index:      vint blocks, then vlong offset and vint reads of each
+//   trailer:    long offset of the index, "SFA2"
+public class Sfa2OutputFormat extends FileOutputFormat<Text, ReadWritable>
+{
+	public static final String EXT = ".sfa2";
+
+	static final byte [] MAGIC = {'S', 'F', 'A', '2'};
+	static final int VERSION = 1;
+	static final int BLOCK = 1 << 20;
+
+	// bytes after the index
+	static final int TRAILER = 8 + MAGIC.length;
+
+	public RecordWriter<Text, ReadWritable> getRecordWriter(FileSystem ignored, JobConf job,
+			String name, Progressable progress) throws IOException
+	{
+		Path file = FileOutputFormat.getTaskOutputPath(job, name + EXT);
+		final FSDataOutputStream out = file.getFileSystem(job).create(file, progress);
+
+		out.write(MAGIC);
+		out.writeByte(VERSION);
+
+		return new RecordWriter<Text, ReadWritable>() {
+			private final DataOutputBuffer block = new DataOutputBuffer();
+			private int reads = 0;
+
+			private long [] offsets = new long[16];
+			private int [] counts = new int[16];
+			private int blocks = 0;
+
+			public void write(Text readname, ReadWritable read) throws IOException
+			{
+				ReadWritable.writeName(block, readname.toString());
+				read.writeSeq(block);
+				reads++;
+
+				if (block.getLength() >= BLOCK) { flush(); }
+			}
+
+			private void flush() throws IOException
+			{
+				if (reads == 0) { return; }
+
+				if (blocks == offsets.length)
+				{
+					long [] o = new long[2 * blocks];
+					int [] c = new int[2 * blocks];
+					System.arraycopy(offsets, 0, o, 0, blocks);
+					System.arraycopy(counts, 0, c, 0, blocks);
+					offsets = o;
+					counts = c;
+				}
+
+				offsets[blocks] = out.getPos();
+				counts[blocks] = reads;
+				blocks++;
+
+				WritableUtils.writeVInt(out, reads);
+				WritableUtils.writeVInt(out, block.getLength());
+				out.write(block.getData(), 0, block.getLength());
+
+				block.reset();
+				reads = 0;
+			}
+
+			public void close(Reporter reporter) throws IOException
+			{
+				flush();
+
+				long index = out.getPos();
+
+				WritableUtils.writeVInt(out, blocks);
+				for (int b = 0; b < blocks; b++)
+				{
+					WritableUtils.writeVLong(out, offsets[b]);
+					WritableUtils.writeVInt(out, counts[b]);
+				}
+
+				out.writeLong(index);
+				out.write(MAGIC);
+				out.close();
+			}
+		};
+	}
+}
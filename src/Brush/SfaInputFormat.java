@@ -0,0 +1,96 @@
+/*
+    SfaInputFormat.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.JobConfigurable;
+import org.apache.hadoop.mapred.LineRecordReader;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+// The "name\tsequence" lines of an .sfa file, split and decompressed as
+// TextInputFormat does, parsed into ReadWritable. A line without a name
+// is counted as input_lines_invalid and skipped; anything after a second
+// tab is ignored.
+public class SfaInputFormat extends FileInputFormat<LongWritable, ReadWritable>
+implements JobConfigurable
+{
+	private CompressionCodecFactory codecs = null;
+
+	public void configure(JobConf job)
+	{
+		codecs = new CompressionCodecFactory(job);
+	}
+
+	protected boolean isSplitable(FileSystem fs, Path file)
+	{
+		return codecs.getCodec(file) == null;
+	}
+
+	public RecordReader<LongWritable, ReadWritable> getRecordReader(InputSplit split, JobConf job,
+			Reporter reporter) throws IOException
+	{
+		reporter.setStatus(split.toString());
+		return new SfaRecordReader(new LineRecordReader(job, (FileSplit) split), reporter);
+	}
+
+	public static class SfaRecordReader implements RecordReader<LongWritable, ReadWritable>
+	{
+		private final LineRecordReader lines;
+		private final Reporter reporter;
+		private final Text line = new Text();
+
+		public SfaRecordReader(LineRecordReader lines, Reporter reporter)
+		{
+			this.lines = lines;
+			this.reporter = reporter;
+		}
+
+		public boolean next(LongWritable key, ReadWritable value) throws IOException
+		{
+			while (lines.next(key, line))
+			{
+				String l = line.toString();
+				int tab = l.indexOf('\t');
+
+				if (tab <= 0)
+				{
+					reporter.incrCounter("Brush", "input_lines_invalid", 1);
+					continue;
+				}
+
+				int e = l.indexOf('\t', tab+1);
+				value.set(l.substring(0, tab), l.substring(tab+1, (e < 0) ? l.length() : e));
+
+				return true;
+			}
+
+			return false;
+		}
+
+		public LongWritable createKey() { return new LongWritable(); }
+
+		public ReadWritable createValue() { return new ReadWritable(); }
+
+		public long getPos() throws IOException { return lines.getPos(); }
+
+		public float getProgress() throws IOException { return lines.getProgress(); }
+
+		public void close() throws IOException { lines.close(); }
+	}
+}
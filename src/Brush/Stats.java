@@ -54,7 +54,7 @@ public class Stats extends Configured implements Tool
 	private static final int n50contigthreshold = 100;
 
 	private static class StatsMapper extends MapReduceBase
-                         implements Mapper<LongWritable, Text, Text, Text>
+                         implements Mapper<Text, NodeWritable, Text, Text>
 	{
 		private long   smallcnt = 0;
 		private long   smallsum = 0;
@@ -68,27 +68,13 @@ public class Stats extends Configured implements Tool
 
 		OutputCollector<Text,Text> mOutput = null;
 
-		private static Set<String> fields = new HashSet<String>();
-
-		private static Node node = new Node();
-
-		public void configure(JobConf job)
-		{
-			fields.add(Node.STR);
-			fields.add(Node.COVERAGE);
-			fields.add("ff");
-			fields.add("fr");
-			fields.add("rr");
-			fields.add("rf");
-		}
-
-		public void map(LongWritable lineid, Text nodetxt,
+		public void map(Text nodeid, NodeWritable nodemsg,
 		                OutputCollector<Text, Text> output, Reporter reporter)
 		                throws IOException
 	    {
 			mOutput = output;
 
-			node.fromNodeMsg(nodetxt.toString(), fields);
+			Node node = nodemsg.getNode();
 
 			//String str  = node.str();
 			//String raw  = node.str_raw();
@@ -428,7 +414,7 @@ public class Stats extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
 		conf.setOutputFormat(TextOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
@@ -5,8 +5,12 @@
 
 package Brush;
 
+import java.io.DataInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -16,6 +20,8 @@ import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
@@ -31,38 +37,108 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.MultipleInputs;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
 
+// Joins the reads with the trust list of IdentifyTrustedReads. The join
+// either shuffles every node to meet its list entry, or, broadcast, ships
+// the trusted-* id sets to every mapper and tags the nodes map only.
 public class TagTrustedReads extends Configured implements Tool
 {
 	private static final Logger sLogger = Logger.getLogger(TagTrustedReads.class);
 
 	public static class TagTrustedReadsMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
+	{
+        public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<Text, NodeWritable> output, Reporter reporter)
+		                throws IOException
+		{
+           Node node = nodemsg.getNode();
+           output.collect(new Text(node.getNodeId()), new NodeWritable(node));
+		}
+	}
+
+	// the trust list written by IdentifyTrustedReads is plain text
+	public static class TrustListMapper extends MapReduceBase
+    implements Mapper<LongWritable, Text, Text, NodeWritable>
 	{
-		private static Node node = new Node();
         public void map(LongWritable lineid, Text txt,
-				        OutputCollector<Text, Text> output, Reporter reporter)
+				        OutputCollector<Text, NodeWritable> output, Reporter reporter)
 		                throws IOException
 		{
            String vals[] = txt.toString().split("\t");
-           if (vals[1].equals(Node.NODEMSG)){
-               node.fromNodeMsg(txt.toString());
-               output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
-           } else {
-               output.collect(new Text(vals[0]), new Text(Node.UPDATEMSG + "\t" + vals[1]));
-           }
+           output.collect(new Text(vals[0]), new NodeWritable(Node.UPDATEMSG + "\t" + vals[1]));
            //output.collect(new Text(vals[0]), new IntWritable(Integer.parseInt(vals[1])));
 		}
 	}
 
+	// the map only join against the trusted-* sets from the DistributedCache
+	public static class TrustedSetMapper extends MapReduceBase
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
+	{
+		private ReadIdSet [] sets = null;
+		private Text id = new Text();
+
+		public void configure(JobConf job)
+		{
+			try
+			{
+				Path [] files = DistributedCache.getLocalCacheFiles(job);
+				if (files == null)
+				{
+					URI [] cached = DistributedCache.getCacheFiles(job);
+					throw new IOException("Missing trusted read set "
+					                      + ((cached == null) ? IdentifyTrustedReads.TRUSTED + "-*" : Arrays.toString(cached)));
+				}
+				sets = new ReadIdSet[files.length];
+
+				for (Path p : files)
+				{
+					String name = p.getName();
+					int part = Integer.parseInt(name.substring(name.lastIndexOf('-') + 1));
+
+					DataInputStream in = new DataInputStream(new FileInputStream(p.toString()));
+					sets[part] = new ReadIdSet();
+					sets[part].readFields(in);
+					in.close();
+				}
+			}
+			catch (Exception e)
+			{
+				throw new RuntimeException("Can not load the trusted read sets: " + e.getMessage());
+			}
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+				        OutputCollector<Text, NodeWritable> output, Reporter reporter)
+		                throws IOException
+		{
+			Node node = nodemsg.getNode();
+			id.set(node.getNodeId());
+
+			if (sets.length > 0 && sets[ReadIdSet.partition(id, sets.length)].contains(node.getNodeId()))
+			{
+				node.setisUnique(false);
+			}
+			else
+			{
+				node.setisUnique(true);
+				reporter.incrCounter("Brush", "failed_reads", 1);
+			}
+
+			output.collect(id, new NodeWritable(node));
+		}
+	}
+
 	public static class TagTrustedReadsReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
         private static long KmerCov = 0;
         private static long LowBound = 3;
@@ -71,8 +147,8 @@ public class TagTrustedReads extends Configured implements Tool
             KmerCov = (long)Float.parseFloat(job.get("EXPCOV"));
 		}
         
-		public void reduce(Text prefix, Iterator<Text> iter,
-						   OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text prefix, Iterator<NodeWritable> iter,
+						   OutputCollector<Text, NodeWritable> output, Reporter reporter)
 						   throws IOException
 		{
             Node node = new Node(prefix.toString());
@@ -80,12 +156,12 @@ public class TagTrustedReads extends Configured implements Tool
             boolean trust = false;
             while(iter.hasNext())
 			{
-                String msg = iter.next().toString();
-                String [] vals = msg.split("\t");
+                NodeWritable msg = iter.next();
+                String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.UPDATEMSG))
@@ -107,16 +183,23 @@ public class TagTrustedReads extends Configured implements Tool
                 node.setisUnique(true);
                 reporter.incrCounter("Brush", "failed_reads", 1);  
             }
-            output.collect(prefix, new Text(node.toNodeMsg()));
+            output.collect(prefix, new NodeWritable(node));
 		}
 	}
 
 
 
-	public RunningJob run(String inputPath, String outputPath) throws Exception
+	public RunningJob run(String inputPath, String trustPath, String outputPath) throws Exception
+	{
+		return run(inputPath, trustPath, outputPath, false);
+	}
+
+	// trustPath is the output directory of IdentifyTrustedReads
+	public RunningJob run(String inputPath, String trustPath, String outputPath, boolean broadcast) throws Exception
 	{
 		sLogger.info("Tool name: TagTrustedReads");
 		sLogger.info(" - input: "  + inputPath);
+		sLogger.info(" - trust: "  + trustPath);
 		sLogger.info(" - output: " + outputPath);
 
 		JobConf conf = new JobConf(TagTrustedReads.class);
@@ -127,20 +210,34 @@ public class TagTrustedReads extends Configured implements Tool
 		BrushConfig.initializeConfiguration(conf);
 
         
-        FileInputFormat.addInputPaths(conf, inputPath);
+        if (broadcast)
+        {
+            FileSystem fs = FileSystem.get(conf);
+            for (FileStatus f : fs.globStatus(new Path(trustPath + "/" + IdentifyTrustedReads.TRUSTED + "-*")))
+            {
+                DistributedCache.addCacheFile(new URI(f.getPath().toString()), conf);
+            }
+
+            FileInputFormat.addInputPath(conf, new Path(inputPath));
+            conf.setInputFormat(SequenceFileInputFormat.class);
+            conf.setMapperClass(TrustedSetMapper.class);
+            conf.setNumReduceTasks(0);
+        }
+        else
+        {
+            MultipleInputs.addInputPath(conf, new Path(inputPath), SequenceFileInputFormat.class, TagTrustedReadsMapper.class);
+            MultipleInputs.addInputPath(conf, new Path(trustPath + "/part-*"), TextInputFormat.class, TrustListMapper.class);
+            conf.setReducerClass(TagTrustedReads.TagTrustedReadsReducer.class);
+        }
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
-
-		conf.setMapperClass(TagTrustedReads.TagTrustedReadsMapper.class);
-		conf.setReducerClass(TagTrustedReads.TagTrustedReadsReducer.class);
+		conf.setOutputValueClass(NodeWritable.class);
 
 		//delete the output directory if it exists already
 		FileSystem.get(conf).delete(new Path(outputPath), true);
@@ -151,12 +248,13 @@ public class TagTrustedReads extends Configured implements Tool
 	public int run(String[] args) throws Exception
 	{
 		String inputPath  = "/cygdrive/contrail-bio/data/Ec10k.sim.sfa";
+		String trustPath  = "/cygdrive/contrail-bio/data/Ec10k.sim.trust";
 		String outputPath = "/cygdrive/contrail-bio/";
 		BrushConfig.K = 21;
 
 		long starttime = System.currentTimeMillis();
 
-		run(inputPath, outputPath);
+		run(inputPath, trustPath, outputPath);
 
 		long endtime = System.currentTimeMillis();
 
@@ -38,8 +38,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -54,7 +54,7 @@ public class TipsRemoval extends Configured implements Tool
     // TipsRemovalMapper
 	///////////////////////////////////////////////////////////////////////////
     public static class TipsRemovalMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
     {
         private static int K = 0;
 		public static int TIPLENGTH = 0;
@@ -65,12 +65,11 @@ public class TipsRemoval extends Configured implements Tool
 			TIPLENGTH = Integer.parseInt(job.get("TIPLENGTH"));
 		}
 
-        public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+        public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
         throws IOException
 		{
-            Node node = new Node();
-            node.fromNodeMsg(nodetxt.toString());
+            Node node = nodemsg.getNode();
 
             int fdegree = node.degree("f");
 			int rdegree = node.degree("r");
@@ -116,7 +115,7 @@ public class TipsRemoval extends Configured implements Tool
 							else
 							{
 								String con = Node.flip_dir(adj) + Node.flip_dir(linkdir);
-								output.collect(new Text(p), new Text(Node.TRIMMSG + "\t" + con + "\t" + nodetxt));
+								output.collect(new Text(p), new NodeWritable(Node.TRIMMSG + "\t" + con + "\t" + node.getNodeId(), node));
 							}
 						}
 					}
@@ -124,7 +123,7 @@ public class TipsRemoval extends Configured implements Tool
 			}
 			else
 			{
-				output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+				output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			}
 
             reporter.incrCounter("Brush", "nodes", 1);
@@ -135,10 +134,10 @@ public class TipsRemoval extends Configured implements Tool
     // TipsRemovalReducer
 	///////////////////////////////////////////////////////////////////////////
     public static class TipsRemovalReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
-        public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+        public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 		throws IOException
         {
             Node node = new Node(nodeid.toString());
@@ -148,15 +147,15 @@ public class TipsRemoval extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(key.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.TRIMMSG))
@@ -164,7 +163,7 @@ public class TipsRemoval extends Configured implements Tool
 					String adj = vals[1];
 
 					Node tip = new Node(vals[2]);
-					tip.parseNodeMsg(vals, 3);
+					tip.parseNodeMsg(msg.getNode());
 
 					if (tips.containsKey(adj))
 					{
@@ -243,7 +242,7 @@ public class TipsRemoval extends Configured implements Tool
                         if (besttip == null) {
                             throw new IOException("Best Tip Error - node_id:" + node.getNodeId() + " num_trim:" + numtrim + " degree:" + deg);
                         }
-						output.collect(new Text(besttip.getNodeId()), new Text(besttip.toNodeMsg()));
+						output.collect(new Text(besttip.getNodeId()), new NodeWritable(besttip));
 						reporter.incrCounter("Brush", "tips_kept", 1);
 					}
 
@@ -278,7 +277,7 @@ public class TipsRemoval extends Configured implements Tool
 				}
 			}
 
-			output.collect(nodeid, new Text(node.toNodeMsg()));
+			output.collect(nodeid, new NodeWritable(node));
         }
 
     }
@@ -299,14 +298,14 @@ public class TipsRemoval extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
         //conf.setBoolean("mapred.output.compress", true);
 
 		conf.setMapperClass(TipsRemovalMapper.class);
@@ -13,6 +13,7 @@ import java.util.Comparator;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -34,8 +35,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -45,66 +46,23 @@ public class TransitiveReduction extends Configured implements Tool
 {
 	private static final Logger sLogger = Logger.getLogger(TransitiveReduction.class);
 
-    public static int _min2(int a, int b)
-	{
-		return (a<b) ? a : b;
-	}
-
-	public static int _max2(int a, int b)
-	{
-		return (a>b) ? a : b;
-	}
-
-	public static int _min3(int a, int b, int c)
-	{
-		  return a < b
-		          ? a < c ? a : c
-		          : b < c ? b : c;
-	}
-
-	public static int fastdistance(String word1, String word2)
-	{
-		int len1 = word1.length();
-		int len2 = word2.length();
-
-		int[][] d = new int[len1+1][len2+1];
-
-		for (int i = 0; i <= len1; i++)
-		{
-			d[i][0] = i;
-		}
-
-		for (int j = 0; j <= len2; j++)
-		{
-			d[0][j] = j;
-		}
-
-		for (int i = 1; i <= len1; i++)
-		{
-			char w1 = word1.charAt(i-1);
-			for (int j = 1; j <= len2; j++)
-			{
-				char w2 = word2.charAt(j-1);
-				int e = (w1 == w2) ? 0 : 1;
-
-				d[i][j] = _min3(d[i-1][j]+1, d[i][j-1]+1, d[i-1][j-1]+e);
-			}
-		}
-
-		return d[len1][len2];
-	}
     // TransitiveReductionMapper
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class TransitiveReductionMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
-		public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+		private static boolean PRINTS = false;
+
+		public void configure(JobConf job) {
+			PRINTS = job.getBoolean("OVERLAP_PRINTS", false);
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
                 throws IOException
         {
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
 
 			for (String key : Node.edgetypes)
             {
@@ -117,14 +75,21 @@ public class TransitiveReduction extends Configured implements Tool
                         String oval_size = vals[1];
                         //String con = Node.flip_dir(adj) + "f";
                         String con = Node.flip_link(key);
-                        output.collect(new Text(edge_id), new Text(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + node.str_raw() + "\t" + con + "\t" + oval_size));
+                        if (PRINTS) {
+                            // the edge is verified, the neighbor only needs the bases past the overlap
+                            PackedSeq seq = (con.charAt(1) == 'f') ? node.getSeq() : node.getSeq().rc();
+                            String ext = seq.subseq(Integer.parseInt(oval_size)).toDna();
+                            output.collect(new Text(edge_id), new NodeWritable(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + ext + "\t" + con + "\t" + oval_size + "\t" + node.len()));
+                            continue;
+                        }
+                        output.collect(new Text(edge_id), new NodeWritable(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + node.str_raw() + "\t" + con + "\t" + oval_size));
                         //\\// emit reverse edge
                         //output.collect(new Text(edge_id), new Text(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + node.str_raw() + "\t" + key + "\t" + oval_size));
                     }
                 }
 			}
             List<String> emit_node = new ArrayList<String>();
-            output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+            output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			reporter.incrCounter("Brush", "nodes", 1);
         }
 	}
@@ -134,7 +99,7 @@ public class TransitiveReduction extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class TransitiveReductionReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
         private static int K = 0;
         static public float ERRORRATE = 0.00f;
@@ -150,6 +115,11 @@ public class TransitiveReduction extends Configured implements Tool
             public String str;
             public String edge_type;  //隞�node 撠迨overlap�����e.g. node [r,f]f overlap
 			public int overlap_size;
+            // the neighbor past the overlap, read on edge_type, and its length
+            public PackedSeq ext;
+            public int len;
+            // the length of its packed read, which the comparators order by
+            public int raw_len;
 
 			public OverlapInfo(String[] vals, int offset) throws IOException
 			{
@@ -164,6 +134,19 @@ public class TransitiveReduction extends Configured implements Tool
                 edge_type = vals[offset+3];
                 overlap_size = Integer.parseInt(vals[offset+4]);
 
+                if (vals.length > offset+5) {
+                    // -prints: str is only the extension
+                    ext = PackedSeq.fromDna(str);
+                    len = Integer.parseInt(vals[offset+5]);
+                } else {
+                    PackedSeq seq = PackedSeq.fromDna(str);
+                    if (edge_type.charAt(1) == 'r') {
+                        seq = seq.rc();
+                    }
+                    ext = seq.subseq(overlap_size);
+                    len = seq.length();
+                }
+                raw_len = (len + 1) >> 1;
 			}
 
             public String toString()
@@ -181,9 +164,9 @@ public class TransitiveReduction extends Configured implements Tool
                 } else if ((int)(obj1.overlap_size - obj2.overlap_size) < 0){
                     return 1;
                 } else {
-                    if (obj1.str.length() - obj2.str.length() < 0) {
+                    if (obj1.raw_len - obj2.raw_len < 0) {
                         return -1;
-                    } else if (obj1.str.length() - obj2.str.length() > 0) {
+                    } else if (obj1.raw_len - obj2.raw_len > 0) {
                         return 1;
                     } else {
                         if ( obj1.id.compareTo(obj2.id) < 0) {
@@ -205,9 +188,9 @@ public class TransitiveReduction extends Configured implements Tool
                 } else if ((int)(obj1.overlap_size - obj2.overlap_size) < 0){
                     return 1;
                 } else {
-                    if (obj1.str.length() - obj2.str.length() < 0) {
+                    if (obj1.raw_len - obj2.raw_len < 0) {
                         return -1;
-                    } else if (obj1.str.length() - obj2.str.length() > 0) {
+                    } else if (obj1.raw_len - obj2.raw_len > 0) {
                         return 1;
                     } else {
                         if ( obj1.id.compareTo(obj2.id) < 0) {
@@ -220,24 +203,83 @@ public class TransitiveReduction extends Configured implements Tool
             }
         }
 
-        public class Prefix {
-            public String id;
-            public String suffix;
-            public String str;
-            public String edge_type;
-            public int oval_size;
-            public Prefix(String id1, String edge_type1, String str1, int oval_size1){
-                id = id1;
-                edge_type = edge_type1;
-                str = str1;
-                oval_size = oval_size1;
-                suffix = str1.substring(oval_size);
+        class ExtensionComparator implements Comparator<OverlapInfo> {
+            public int compare(OverlapInfo o1, OverlapInfo o2) {
+                return o1.ext.compareTo(o2.ext);
             }
         }
 
 
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		// Transitive reduction of the neighbors on one side, in the order of
+		// olist: longest overlap first. A neighbor is transitive when the part
+		// of it past the overlap starts with that of a neighbor kept before it,
+		// unless both have the same overlap and length. Sorted by that part,
+		// the neighbors it is a prefix of follow each other, so a kept neighbor
+		// marks its run of them once instead of every later one scanning the
+		// kept ones (Myers' string graph reduction).
+		private void reduceSide(Node node, List<OverlapInfo> olist, Map<String, List<String>> edges_list, Reporter reporter)
+				throws IOException
+		{
+            int n = olist.size();
+            if (n == 0) {
+                return;
+            }
+
+            List<OverlapInfo> sorted = new ArrayList<OverlapInfo>(olist);
+            Collections.sort(sorted, new ExtensionComparator());
+            Map<OverlapInfo, Integer> pos = new IdentityHashMap<OverlapInfo, Integer>();
+            for (int i = 0; i < n; i++) {
+                pos.put(sorted.get(i), i);
+            }
+            boolean [] marked = new boolean[n];
+            Set<String> stored_IDs = new HashSet<String>();
+
+            for (OverlapInfo oi : olist)
+            {
+                String oval_type = oi.edge_type;
+                int oval_size = oi.overlap_size;
+
+                //\\ Self contained filter
+                if (oval_size == oi.len && oval_size == node.len()) {
+                    reporter.incrCounter("Brush", "contained_edge", 1);
+                }
+
+                //\\\\\\\\\\\ Maximal Overlap filter
+                if (stored_IDs.contains(oval_type + oi.id)) {
+                    node.addRemovalEdge(oi.id, Node.flip_link(oval_type), node.getNodeId(), oval_size);
+                    continue;
+                }
+
+                //\\\\\\\\\\\ Transitive Reduction filter
+                if (marked[pos.get(oi)]) {
+                    reporter.incrCounter("Brush", "trans_edge", 1);
+                    node.addRemovalEdge(oi.id, Node.flip_link(oval_type), node.getNodeId(), oval_size);
+                    continue;
+                }
+
+                //\\\\\\\\\\\\\ Store confirmed edge, mark the neighbors it makes transitive
+                int first = pos.get(oi);
+                while (first > 0 && sorted.get(first-1).ext.equals(oi.ext)) {
+                    first--;
+                }
+                for (int j = first; j < n && sorted.get(j).ext.startsWith(oi.ext); j++) {
+                    OverlapInfo other = sorted.get(j);
+                    if (other.overlap_size != oval_size || other.len != oi.len) {
+                        marked[j] = true;
+                    }
+                }
+
+                stored_IDs.add(oval_type + oi.id);
+                if (!edges_list.containsKey(oval_type)) {
+                    edges_list.put(oval_type, new ArrayList<String>());
+                }
+                edges_list.get(oval_type).add(oi.id + "!" + oval_size);
+            }
+		}
+
+
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
 			Node node = new Node(nodeid.toString());
@@ -249,15 +291,15 @@ public class TransitiveReduction extends Configured implements Tool
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(key.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.OVALMSG))
@@ -284,251 +326,13 @@ public class TransitiveReduction extends Configured implements Tool
 
             //\\ store confirmed edges
             Map<String, List<String>> edges_list = new HashMap<String, List<String>>();
-            Map<String, List<String>> IDs_flist = new HashMap<String, List<String>>();
-            Map<String, List<String>> IDs_rlist = new HashMap<String, List<String>>();
-            Map<String, List<Prefix>> PREFIXs_list = new HashMap<String, List<Prefix>>();
-
-           
-            //\\\\\\\\\\\\\\\\\\\\\\\\\\ f_overlap
-            int f_choices = o_flist.size();
-            if (f_choices > 0)
-			{
-                // Sort overlap strings in order of decreasing overlap size
-                Collections.sort(o_flist, new OvelapSizeComparator_f());
-                //output.collect(new Text(node.getNodeId()), new Text(olist.size() + "!"));
-                // See if there are any pairwise compatible strings
-                for (int i = 0; i < f_choices; i++)
-                {
-                    String oval_id = o_flist.get(i).id;
-                    String oval_type = o_flist.get(i).edge_type;
-                    //String node_dir = oval_type.substring(0, 1);
-                    String oval_dir = oval_type.substring(1);
-                    int oval_size = o_flist.get(i).overlap_size;
-                    String edge_content = oval_id + "!" + oval_size;
-
-                    String oval_seq_tmp = Node.dna2str(o_flist.get(i).str);
-                    String oval_seq;
-                    if (oval_dir.equals("r")){
-                        oval_seq = Node.rc(oval_seq_tmp);
-                    } else {
-                        oval_seq = oval_seq_tmp;
-                    }
-
-                    //output.collect(new Text(node.getNodeId()), new Text("A" + "\t" + olist.get(i).id + "\t" + node.toNodeMsg()));
-                    //\\ Self contained filter
-                    if (oval_size == oval_seq.length() && oval_size == node.str().length() ) {
-                        //node.addRemovalEdge(oval_id, Node.flip_link(oval_type), node.getNodeId(), oval_size);
-                        reporter.incrCounter("Brush", "contained_edge", 1);
-                        //continue;
-                    }
-                    //\\\\\\\\\\\ Maximal Overlap filter
-                    List<String> stored_IDs = IDs_flist.get(oval_type);
-                    boolean has_large_overlap = false;
-                    if (stored_IDs != null && stored_IDs.contains(oval_id))
-                    {
-                        has_large_overlap = true;
-                    }
-                    if (has_large_overlap){
-                        node.addRemovalEdge(oval_id, Node.flip_link(oval_type), node.getNodeId(), oval_size);
-                        continue;
-                    }
-
-                   //\\\\\\\\\\\ Transitive Reduction filter
-                    List<Prefix> stored_PREFIXs = PREFIXs_list.get("f");
-                    String prefix = oval_seq.substring(oval_size);
-                    boolean has_trans_edge = false;
-                    for(int j = 0; stored_PREFIXs != null && j < stored_PREFIXs.size(); j++){
-                        if (stored_PREFIXs.get(j).oval_size == oval_size && stored_PREFIXs.get(j).str.length() == oval_seq.length()) {
-                            continue;
-                        }
-                        if (ERRORRATE <= 0) {
-                            if (prefix.startsWith(stored_PREFIXs.get(j).suffix)){
-                                //System.err.println( "remove:" +  node.getNodeId() + " " + oval_type + " " + oval_id);
-                                //output.collect(new Text("prefix_f"),  new Text(stored_PREFIXs.get(j).id + " " + stored_PREFIXs.get(j).edge_type ));
-                                //output.collect(new Text("remove_f"),  new Text(node.getNodeId() + " " + oval_type + " " + oval_id));
-                                reporter.incrCounter("Brush", "trans_edge", 1);
-                                has_trans_edge = true;
-                                node.addRemovalEdge(oval_id, Node.flip_link(oval_type), node.getNodeId(), oval_size);
-                                break;
-                            }
-                        } else {
-                           /* String previous = stored_PREFIXs.get(j).str.substring(stored_PREFIXs.get(j).oval_size-oval_size);
-                            String current;
-                            if (oval_seq.length() >= oval_size + (stored_PREFIXs.get(j).str.length()-stored_PREFIXs.get(j).oval_size )) {
-                                current = oval_seq.substring(0, oval_size + (stored_PREFIXs.get(j).str.length()-stored_PREFIXs.get(j).oval_size));
-                            } else {
-                                current = oval_seq;
-                            }
-                            boolean prefix_match = false;
-                            for(int k=0; k <= current.length() - K; k++) {
-                                if (previous.substring(k, K+k).equals(current.substring(k, K+k))) {
-                                    prefix_match = true;
-                                    break;
-                                }
-                            }
-                            if (prefix_match) {
-                                int distance = fastdistance(previous, current);
-                                float error_rate = (float)distance / (float)current.length();
-                                if ( error_rate <= ERRORRATE ) {
-                                    reporter.incrCounter("Brush", "trans_edge", 1);
-                                    has_trans_edge = true;
-                                    node.addRemovalEdge(oval_id, Node.flip_link(oval_type), node.getNodeId(), oval_size);
-                                    break;
-                                }
-                            }*/
-                            //output.collect(new Text(previous), new Text(current + " " + error_rate + " " + ERRORRATE + " :" + distance + " |" + current.length()));
-                        }
-                    }
-                    if (has_trans_edge) {
-                        continue;
-                    }
-
-                    //output.collect(new Text(node.getNodeId()), new Text("O" + "\t" + olist.get(i).id));
-                    //\\\\\\\\\\\\\ Store confirmed edge
-                    if (PREFIXs_list.containsKey("f")) {
-                        PREFIXs_list.get("f").add(new Prefix(oval_id,oval_type,oval_seq, oval_size));
-                    } else {
-                        List<Prefix> tmp_PREFIXs = new ArrayList<Prefix>();
-                        tmp_PREFIXs.add(new Prefix(oval_id,oval_type,oval_seq, oval_size));
-                        PREFIXs_list.put("f", tmp_PREFIXs);
-                    }
-                    if (edges_list.containsKey(oval_type))
-                    {
-                        edges_list.get(oval_type).add(edge_content);
-                        IDs_flist.get(oval_type).add(oval_id);
-                    }
-                    else
-                    {
-                        List<String> tmp_edges = null;
-                        tmp_edges = new ArrayList<String>();
-                        tmp_edges.add(edge_content);
-                        edges_list.put(oval_type, tmp_edges);
-                        List<String> tmp_IDs = new ArrayList<String>();
-                        tmp_IDs.add(oval_id);
-                        IDs_flist.put(oval_type, tmp_IDs);
-                    }
-                }
-            }
-            //\\\\\\\\\\\\\\\\\\\\\\\\\\ r_overlap
-            int r_choices = o_rlist.size();
-            if (r_choices > 0)
-			{
-                // Sort overlap strings in order of decreasing overlap size
-                Collections.sort(o_rlist, new OvelapSizeComparator_r());
-                //output.collect(new Text(node.getNodeId()), new Text(olist.size() + "!"));
-                // See if there are any pairwise compatible strings
-                for (int i = 0; i < r_choices; i++)
-                {
-                    String oval_id = o_rlist.get(i).id;
-                    String oval_type = o_rlist.get(i).edge_type;
-                    //String node_dir = oval_type.substring(0, 1);
-                    String oval_dir = oval_type.substring(1);
-                    int oval_size = o_rlist.get(i).overlap_size;
-                    String edge_content = oval_id + "!" + oval_size;
-
-                    String oval_seq_tmp = Node.dna2str(o_rlist.get(i).str);
-                    String oval_seq;
-                    if (oval_dir.equals("r")){
-                        oval_seq = Node.rc(oval_seq_tmp);
-                    } else {
-                        oval_seq = oval_seq_tmp;
-                    }
-
-                    //output.collect(new Text(node.getNodeId()), new Text("A" + "\t" + olist.get(i).id + "\t" + node.toNodeMsg()));
-                    //\\ Self contained filter
-                    if (oval_size == oval_seq.length() && oval_size == node.str().length()) {
-                        //node.addRemovalEdge(oval_id, Node.flip_link(oval_type), node.getNodeId(), oval_size);
-                        reporter.incrCounter("Brush", "contained_edge", 1);
-                        //continue;
-                    }
-                    //\\\\\\\\\\\ Maximal Overlap filter
-                    List<String> stored_IDs = IDs_rlist.get(oval_type);
-                    boolean has_large_overlap = false;
-                    if (stored_IDs != null && stored_IDs.contains(oval_id))
-                    {
-                        has_large_overlap = true;
-                    }
-                    if (has_large_overlap){
-                        node.addRemovalEdge(oval_id, Node.flip_link(oval_type), node.getNodeId(), oval_size);
-                        continue;
-                    }
 
-                   //\\\\\\\\\\\ Transitive Reduction filter
-                    List<Prefix> stored_PREFIXs = PREFIXs_list.get("r");
-                    String prefix = oval_seq.substring(oval_size);
-                    boolean has_trans_edge = false;
-                    for(int j = 0; stored_PREFIXs != null && j < stored_PREFIXs.size(); j++){
-                        if (stored_PREFIXs.get(j).oval_size == oval_size && stored_PREFIXs.get(j).str.length() == oval_seq.length()) {
-                            continue;
-                        }
-                        if (ERRORRATE <= 0) {
-                            if (prefix.startsWith(stored_PREFIXs.get(j).suffix)){
-                                //System.err.println( "remove:" +  node.getNodeId() + " " + oval_type + " " + oval_id);
-                                //output.collect(new Text("prefix_r"),  new Text(stored_PREFIXs.get(j).id + " " + stored_PREFIXs.get(j).edge_type ));
-                                //output.collect(new Text("remove_r"),  new Text(node.getNodeId() + " " + oval_type + " " + oval_id));
-                                reporter.incrCounter("Brush", "trans_edge", 1);
-                                has_trans_edge = true;
-                                node.addRemovalEdge(oval_id, Node.flip_link(oval_type), node.getNodeId(), oval_size);
-                                break;
-                            }
-                        } else {
-                          /*  String previous = stored_PREFIXs.get(j).str.substring(stored_PREFIXs.get(j).oval_size-oval_size);
-                            String current;
-                            if (oval_seq.length() >= oval_size + (stored_PREFIXs.get(j).str.length()-stored_PREFIXs.get(j).oval_size )) {
-                                current = oval_seq.substring(0, oval_size + (stored_PREFIXs.get(j).str.length()-stored_PREFIXs.get(j).oval_size));
-                            } else {
-                                current = oval_seq;
-                            }
-                            boolean prefix_match = false;
-                            for(int k=0; k <= current.length() - K; k++) {
-                                if (previous.substring(k, K+k).equals(current.substring(k, K+k))) {
-                                    prefix_match = true;
-                                    break;
-                                }
-                            }
-                            if (prefix_match) {
-                                int distance = fastdistance(previous, current);
-                                float error_rate = (float)distance / (float)current.length();
-                                if ( error_rate <= ERRORRATE ) {
-                                    reporter.incrCounter("Brush", "trans_edge", 1);
-                                    has_trans_edge = true;
-                                    node.addRemovalEdge(oval_id, Node.flip_link(oval_type), node.getNodeId(), oval_size);
-                                    break;
-                                }
-                            }*/
-                            //output.collect(new Text(previous), new Text(current + " " + error_rate + " " + ERRORRATE + " :" + distance + " |" + current.length()));
-                        }
-                    }
-                    if (has_trans_edge) {
-                        continue;
-                    }
-
-                    //output.collect(new Text(node.getNodeId()), new Text("O" + "\t" + olist.get(i).id));
-                    //\\\\\\\\\\\\\ Store confirmed edge
-                    if (PREFIXs_list.containsKey("r")) {
-                        PREFIXs_list.get("r").add(new Prefix(oval_id,oval_type,oval_seq, oval_size));
-                    } else {
-                        List<Prefix> tmp_PREFIXs = new ArrayList<Prefix>();
-                        tmp_PREFIXs.add(new Prefix(oval_id,oval_type,oval_seq, oval_size));
-                        PREFIXs_list.put("r", tmp_PREFIXs);
-                    }
-                    if (edges_list.containsKey(oval_type))
-                    {
-                        edges_list.get(oval_type).add(edge_content);
-                        IDs_rlist.get(oval_type).add(oval_id);
-                    }
-                    else
-                    {
-                        List<String> tmp_edges = null;
-                        tmp_edges = new ArrayList<String>();
-                        tmp_edges.add(edge_content);
-                        edges_list.put(oval_type, tmp_edges);
-                        List<String> tmp_IDs = new ArrayList<String>();
-                        tmp_IDs.add(oval_id);
-                        IDs_rlist.put(oval_type, tmp_IDs);
-                    }
-                }
-            }
+            //\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\ f_overlap
+            Collections.sort(o_flist, new OvelapSizeComparator_f());
+            reduceSide(node, o_flist, edges_list, reporter);
+            //\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\ r_overlap
+            Collections.sort(o_rlist, new OvelapSizeComparator_r());
+            reduceSide(node, o_rlist, edges_list, reporter);
 
             //\\\\\\\\\\\\\\\\\ set Edges
             for(String con : Node.edgetypes)
@@ -541,7 +345,7 @@ public class TransitiveReduction extends Configured implements Tool
                 }
             }
             //if (!node.hasCustom("contained")){
-                output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+                output.collect(new Text(node.getNodeId()), new NodeWritable(node));
             //}
 
 		}
@@ -563,14 +367,14 @@ public class TransitiveReduction extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
         //conf.setBoolean("mapred.output.compress", true);
 
 		conf.setMapperClass(TransitiveReductionMapper.class);
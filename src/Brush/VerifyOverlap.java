@@ -34,8 +34,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
-import org.apache.hadoop.mapred.TextInputFormat;
-import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
@@ -45,67 +45,28 @@ public class VerifyOverlap extends Configured implements Tool
 {
 	private static final Logger sLogger = Logger.getLogger(VerifyOverlap.class);
 
-	public static int _min2(int a, int b)
-	{
-		return (a<b) ? a : b;
-	}
-
-	public static int _max2(int a, int b)
-	{
-		return (a>b) ? a : b;
-	}
-
-	public static int _min3(int a, int b, int c)
-	{
-		  return a < b
-		          ? a < c ? a : c
-		          : b < c ? b : c;
-	}
-
-	public static int fastdistance(String word1, String word2)
-	{
-		int len1 = word1.length();
-		int len2 = word2.length();
-
-		int[][] d = new int[len1+1][len2+1];
-
-		for (int i = 0; i <= len1; i++)
-		{
-			d[i][0] = i;
-		}
-
-		for (int j = 0; j <= len2; j++)
-		{
-			d[0][j] = j;
-		}
-
-		for (int i = 1; i <= len1; i++)
-		{
-			char w1 = word1.charAt(i-1);
-			for (int j = 1; j <= len2; j++)
-			{
-				char w2 = word2.charAt(j-1);
-				int e = (w1 == w2) ? 0 : 1;
-
-				d[i][j] = _min3(d[i-1][j]+1, d[i][j-1]+1, d[i-1][j-1]+e);
-			}
-		}
-
-		return d[len1][len2];
-	}
-
     // VerifyOverlapMapper
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class VerifyOverlapMapper extends MapReduceBase
-    implements Mapper<LongWritable, Text, Text, Text>
+    implements Mapper<Text, NodeWritable, Text, NodeWritable>
 	{
-		public void map(LongWritable lineid, Text nodetxt,
-                OutputCollector<Text, Text> output, Reporter reporter)
+		private static boolean PRINTS = false;
+		private Fingerprint[] fps = new Fingerprint[] { new Fingerprint(), new Fingerprint() };
+
+		public void configure(JobConf job) {
+			PRINTS = job.getBoolean("OVERLAP_PRINTS", false);
+		}
+
+		public void map(Text nodeid, NodeWritable nodemsg,
+                OutputCollector<Text, NodeWritable> output, Reporter reporter)
                 throws IOException
         {
-			Node node = new Node();
-			node.fromNodeMsg(nodetxt.toString());
+			Node node = nodemsg.getNode();
+			if (PRINTS) {
+				fps[0].reset(node.getSeq());
+				fps[1].reset(node.getSeq().rc());
+			}
 
 			for (String key : Node.edgetypes)
 			{
@@ -120,7 +81,13 @@ public class VerifyOverlap extends Configured implements Tool
                         String oval_size = vals[1];
                         //String con = Node.flip_dir(adj) + "f";
                         String con = Node.flip_link(key);
-                        output.collect(new Text(edge_id), new Text(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + node.str_raw() + "\t" + con + "\t" + oval_size));
+                        if (PRINTS) {
+                            // the overlap as the neighbor reads it, and our length for its contained filter
+                            long fp = fps[con.charAt(1) == 'f' ? 0 : 1].of(0, Integer.parseInt(oval_size));
+                            output.collect(new Text(edge_id), new NodeWritable(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + Fingerprint.encode(fp) + "\t" + con + "\t" + oval_size + "\t" + node.len()));
+                            continue;
+                        }
+                        output.collect(new Text(edge_id), new NodeWritable(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + node.str_raw() + "\t" + con + "\t" + oval_size));
                         //\\// emit reverse edge
                         //output.collect(new Text(edge_id), new Text(Node.OVALMSG + "\t" + node.getNodeId() + "\t" + node.str_raw() + "\t" + key + "\t" + oval_size));
                     }
@@ -128,7 +95,7 @@ public class VerifyOverlap extends Configured implements Tool
                 }
 			}
             List<String> emit_node = new ArrayList<String>();
-            output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+            output.collect(new Text(node.getNodeId()), new NodeWritable(node));
 			reporter.incrCounter("Brush", "nodes", 1);
         }
 	}
@@ -138,10 +105,11 @@ public class VerifyOverlap extends Configured implements Tool
 	///////////////////////////////////////////////////////////////////////////
 
 	public static class VerifyOverlapReducer extends MapReduceBase
-	implements Reducer<Text, Text, Text, Text>
+	implements Reducer<Text, NodeWritable, Text, NodeWritable>
 	{
         private static int K = 0;
         static public float ERRORRATE = 0.00f;
+        private Fingerprint[] fps = new Fingerprint[] { new Fingerprint(), new Fingerprint() };
 
 		public void configure(JobConf job) {
 			K = Integer.parseInt(job.get("K"));
@@ -154,6 +122,9 @@ public class VerifyOverlap extends Configured implements Tool
             public String str;
             public String edge_type;  //隞�node 撠迨overlap�����e.g. node [r,f]f overlap
 			public int overlap_size;
+            // -prints: no str, the fingerprint of the overlap and the neighbor length
+            public long fp;
+            public int len;
 
 			public OverlapInfo(String[] vals, int offset) throws IOException
 			{
@@ -168,6 +139,11 @@ public class VerifyOverlap extends Configured implements Tool
                 edge_type = vals[offset+3];
                 overlap_size = Integer.parseInt(vals[offset+4]);
 
+                if (vals.length > offset+5) {
+                    fp = Fingerprint.decode(str);
+                    len = Integer.parseInt(vals[offset+5]);
+                    str = null;
+                }
 			}
 
             public String toString()
@@ -200,26 +176,27 @@ public class VerifyOverlap extends Configured implements Tool
         }
 
 
-		public void reduce(Text nodeid, Iterator<Text> iter,
-				OutputCollector<Text, Text> output, Reporter reporter)
+		public void reduce(Text nodeid, Iterator<NodeWritable> iter,
+				OutputCollector<Text, NodeWritable> output, Reporter reporter)
 				throws IOException
 		{
 			Node node = new Node(nodeid.toString());
 		    List<OverlapInfo> olist = new ArrayList<OverlapInfo>();
             
 			int sawnode = 0;
+            boolean printed = false;
 
 			while(iter.hasNext())
 			{
-				String msg = iter.next().toString();
+				NodeWritable msg = iter.next();
 
 				//System.err.println(key.toString() + "\t" + msg);
 
-				String [] vals = msg.split("\t");
+				String [] vals = msg.getMessage().split("\t");
 
 				if (vals[0].equals(Node.NODEMSG))
 				{
-					node.parseNodeMsg(vals, 0);
+					node.parseNodeMsg(msg.getNode());
 					sawnode++;
 				}
 				else if (vals[0].equals(Node.OVALMSG))
@@ -259,12 +236,16 @@ public class VerifyOverlap extends Configured implements Tool
                     String node_dir = oval_type.substring(0, 1);
                     String oval_dir = oval_type.substring(1);
                     int oval_size = olist.get(i).overlap_size;
-                    String oval_seq_tmp = Node.dna2str(olist.get(i).str);
-                    String oval_seq;
-                    if (oval_dir.equals("r")){
-                        oval_seq = Node.rc(oval_seq_tmp);
-                    } else {
-                        oval_seq = oval_seq_tmp;
+                    String oval_seq = null;
+                    int oval_len = olist.get(i).len;
+                    if (olist.get(i).str != null) {
+                        String oval_seq_tmp = Node.dna2str(olist.get(i).str);
+                        if (oval_dir.equals("r")){
+                            oval_seq = Node.rc(oval_seq_tmp);
+                        } else {
+                            oval_seq = oval_seq_tmp;
+                        }
+                        oval_len = oval_seq.length();
                     }
                     
                     //output.collect(new Text(node.getNodeId()), new Text("A" + "\t" + olist.get(i).id + "\t" + node.toNodeMsg()));
@@ -284,28 +265,43 @@ public class VerifyOverlap extends Configured implements Tool
 
                     //output.collect(new Text(node.getNodeId()), new Text("B" + "\t" + olist.get(i).id));
                     //\\\\\\\\\\\ Alignment filter
-                    String node_seq;
-                    if (node_dir.equals("r")){
-                        node_seq = Node.rc(node.str());
+                    if (oval_seq == null) {
+                        // -prints: the fingerprint of our suffix against the neighbor's
+                        if (oval_size > oval_len) {
+                            continue;
+                        }
+                        if (!printed) {
+                            fps[0].reset(node.getSeq());
+                            fps[1].reset(node.getSeq().rc());
+                            printed = true;
+                        }
+                        if (fps[node_dir.equals("f") ? 0 : 1].of(node.len() - oval_size, node.len()) != olist.get(i).fp) {
+                            continue;
+                        }
                     } else {
-                        node_seq = node.str();
-                    }
-                    String str1;
-                    String str2;
-                    str1 = node_seq.substring(node_seq.length()-oval_size, node_seq.length());
-                    if (oval_size > oval_seq.length()) {
-                        //contained reads
-                        continue;
-                        //throw new IOException("ERROR: oval_seq : " + oval_seq + " node_seq: " + node_seq + " oval_size: " + oval_size + " node_id:" + nodeid.toString() + " oval_id:" + oval_id);
-                    } else {
-                        str2 = oval_seq.substring(0, oval_size);
-                    }
+                        String node_seq;
+                        if (node_dir.equals("r")){
+                            node_seq = Node.rc(node.str());
+                        } else {
+                            node_seq = node.str();
+                        }
+                        String str1;
+                        String str2;
+                        str1 = node_seq.substring(node_seq.length()-oval_size, node_seq.length());
+                        if (oval_size > oval_seq.length()) {
+                            //contained reads
+                            continue;
+                            //throw new IOException("ERROR: oval_seq : " + oval_seq + " node_seq: " + node_seq + " oval_size: " + oval_size + " node_id:" + nodeid.toString() + " oval_id:" + oval_id);
+                        } else {
+                            str2 = oval_seq.substring(0, oval_size);
+                        }
                 
-                 //   str1 = node_seq.substring(node_seq.length() - oval_size + K);
-                 //   str2 = oval_seq.substring(K, oval_size);
+                     //   str1 = node_seq.substring(node_seq.length() - oval_size + K);
+                     //   str2 = oval_seq.substring(K, oval_size);
 
-                    if (!str1.equals(str2)){
-                        continue;
+                        if (!str1.equals(str2)){
+                            continue;
+                        }
                     }
 
                     //output.collect(new Text(node.getNodeId()), new Text("O" + "\t" + olist.get(i).id + "\t" + str1 +"\t" + str2 + "\t" + distance + "\t" + error_rate));
@@ -339,7 +335,7 @@ public class VerifyOverlap extends Configured implements Tool
                     node.setEdges(con, edges);
                 }
             }
-            output.collect(new Text(node.getNodeId()), new Text(node.toNodeMsg()));
+            output.collect(new Text(node.getNodeId()), new NodeWritable(node));
             
 		}
     }
@@ -360,14 +356,14 @@ public class VerifyOverlap extends Configured implements Tool
 		FileInputFormat.addInputPath(conf, new Path(inputPath));
 		FileOutputFormat.setOutputPath(conf, new Path(outputPath));
 
-		conf.setInputFormat(TextInputFormat.class);
-		conf.setOutputFormat(TextOutputFormat.class);
+		conf.setInputFormat(SequenceFileInputFormat.class);
+		conf.setOutputFormat(SequenceFileOutputFormat.class);
 
 		conf.setMapOutputKeyClass(Text.class);
-		conf.setMapOutputValueClass(Text.class);
+		conf.setMapOutputValueClass(NodeWritable.class);
 
 		conf.setOutputKeyClass(Text.class);
-		conf.setOutputValueClass(Text.class);
+		conf.setOutputValueClass(NodeWritable.class);
         
         //conf.setBoolean("mapred.output.compress", true);
         //conf.setClass("mapred.output.compression.codec", GzipCodec.class,CompressionCodec.class);
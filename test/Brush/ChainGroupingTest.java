@@ -0,0 +1,281 @@
+/*
+    ChainGroupingTest.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+import junit.framework.TestCase;
+
+// QuickLabel and ChainRank rounds run through an in memory shuffle over a
+// small graph: chains in mixed orientations, a cycle, a branch node and a
+// compressible link only one side makes. Every node of a chain has to end
+// up in the same group, and no two chains in one.
+public class ChainGroupingTest extends TestCase
+{
+	private Map<String, Node> graph;
+	private List<String []> chains;
+
+	private static NodeWritable copy(NodeWritable w) throws IOException
+	{
+		DataOutputBuffer out = new DataOutputBuffer();
+		w.write(out);
+
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+
+		NodeWritable c = new NodeWritable();
+		c.readFields(in);
+
+		return c;
+	}
+
+	// one map and reduce over graph, every message serialized on the way
+	private static Map<String, Node> run(Mapper<Text, NodeWritable, Text, NodeWritable> mapper,
+			Reducer<Text, NodeWritable, Text, NodeWritable> reducer, Map<String, Node> graph) throws IOException
+	{
+		final Map<String, List<NodeWritable>> shuffle = new TreeMap<String, List<NodeWritable>>();
+		final Map<String, Node> out = new TreeMap<String, Node>();
+
+		OutputCollector<Text, NodeWritable> mapout = new OutputCollector<Text, NodeWritable>() {
+			public void collect(Text key, NodeWritable value) throws IOException
+			{
+				List<NodeWritable> l = shuffle.get(key.toString());
+				if (l == null) { l = new ArrayList<NodeWritable>(); shuffle.put(key.toString(), l); }
+				l.add(copy(value));
+			}
+		};
+
+		OutputCollector<Text, NodeWritable> redout = new OutputCollector<Text, NodeWritable>() {
+			public void collect(Text key, NodeWritable value) throws IOException
+			{
+				assertNull(out.put(key.toString(), copy(value).getNode()));
+			}
+		};
+
+		for (Map.Entry<String, Node> e : graph.entrySet())
+		{
+			mapper.map(new Text(e.getKey()), copy(new NodeWritable(e.getValue())), mapout, Reporter.NULL);
+		}
+
+		for (Map.Entry<String, List<NodeWritable>> e : shuffle.entrySet())
+		{
+			reducer.reduce(new Text(e.getKey()), e.getValue().iterator(), redout, Reporter.NULL);
+		}
+
+		assertEquals(graph.keySet(), out.keySet());
+
+		return out;
+	}
+
+	private Node node(String id) throws IOException
+	{
+		Node n = new Node(id);
+		n.setstr("ACGTTGCAAGGCTTACCGAT");
+		n.setCoverage(1);
+		n.setMertag(Integer.toHexString(id.hashCode()));
+		graph.put(id, n);
+
+		return n;
+	}
+
+	// an edge from the side out of u to the side into v, both read as flip says
+	private void link(String u, boolean fu, String v, boolean fv, boolean compress) throws IOException
+	{
+		String du = fu ? "r" : "f";
+		String dv = fv ? "r" : "f";
+
+		graph.get(u).addEdge(du + dv, v + "!10");
+		graph.get(v).addEdge(Node.flip_link(du + dv), u + "!10");
+
+		if (compress)
+		{
+			graph.get(u).setCanCompress(du, true);
+			graph.get(v).setCanCompress(Node.flip_dir(dv), true);
+		}
+	}
+
+	// a chain through ids in order, node i read reverse complemented if
+	// flip[i], closed into a cycle if cycle
+	private void chain(String [] ids, boolean [] flip, boolean cycle) throws IOException
+	{
+		for (String id : ids) { node(id); }
+
+		int links = cycle ? ids.length : ids.length - 1;
+		for (int i = 0; i < links; i++)
+		{
+			int j = (i + 1) % ids.length;
+			link(ids[i], flip[i], ids[j], flip[j], true);
+		}
+
+		chains.add(ids);
+	}
+
+	protected void setUp() throws IOException
+	{
+		graph = new TreeMap<String, Node>();
+		chains = new ArrayList<String []>();
+
+		chain(new String [] {"30", "12", "47", "05", "61", "28", "19"},
+		      new boolean [] {false, false, true, true, false, true, false}, false);
+		chain(new String [] {"40", "33", "71", "14", "56", "22", "68", "09", "50", "37", "63", "25", "44"},
+		      new boolean [] {true, false, false, true, false, false, true, false, true, true, false, false, true}, false);
+		chain(new String [] {"16", "52"}, new boolean [] {false, true}, false);
+		chain(new String [] {"81", "77", "90", "74", "86", "79"},
+		      new boolean [] {false, true, false, false, true, false}, true);
+
+		// a branch joining the ends of the first two chains, compressible to neither
+		node("99");
+		link("99", false, "30", false, false);
+		link("99", false, "40", true, false);
+
+		// 95 claims it can compress into 96, but 96 goes on to two nodes
+		node("95");
+		node("96");
+		node("97");
+		node("98");
+		link("95", false, "96", false, false);
+		graph.get("95").setCanCompress("f", true);
+		link("96", false, "97", false, false);
+		link("96", false, "98", false, false);
+	}
+
+	private void assertGroups(Map<String, String> group)
+	{
+		Set<String> seen = new HashSet<String>();
+
+		for (String [] ids : chains)
+		{
+			String g = group.get(ids[0]);
+			assertNotNull(ids[0], g);
+			assertTrue(g, seen.add(g));
+
+			for (String id : ids) { assertEquals(id, g, group.get(id)); }
+		}
+	}
+
+	public void testQuickLabel() throws IOException
+	{
+		for (String [] ids : chains)
+		{
+			for (String id : ids) { graph.get(id).setMertag(QuickMark.LABELTAG + id); }
+		}
+
+		for (int round = 0; round < 20; round++)
+		{
+			Map<String, Node> next = run(new QuickLabel.QuickLabelMapper(), new QuickLabel.QuickLabelReducer(), graph);
+
+			boolean changed = false;
+			for (String id : graph.keySet())
+			{
+				changed |= !next.get(id).getMertag().equals(graph.get(id).getMertag());
+			}
+
+			graph = next;
+			if (!changed) { break; }
+		}
+
+		Map<String, String> group = new TreeMap<String, String>();
+
+		for (Map.Entry<String, Node> e : graph.entrySet())
+		{
+			String mertag = e.getValue().getMertag();
+			if (QuickMark.isLabeled(mertag)) { group.put(e.getKey(), mertag); }
+		}
+
+		assertGroups(group);
+
+		// each chain is labeled by its smallest id, the rest keep their tags
+		for (String [] ids : chains)
+		{
+			String min = ids[0];
+			for (String id : ids) { if (id.compareTo(min) < 0) { min = id; } }
+
+			assertEquals(QuickMark.LABELTAG + min, group.get(ids[0]));
+		}
+		assertEquals(Integer.toHexString("99".hashCode()), graph.get("99").getMertag());
+	}
+
+	public void testChainRank() throws IOException
+	{
+		for (int round = 0; round < 6; round++)
+		{
+			JobConf job = new JobConf();
+			job.setInt("round", round);
+
+			ChainRank.ChainRankMapper mapper = new ChainRank.ChainRankMapper();
+			ChainRank.ChainRankReducer reducer = new ChainRank.ChainRankReducer();
+			mapper.configure(job);
+			reducer.configure(job);
+
+			graph = run(mapper, reducer, graph);
+		}
+
+		Map<String, String> group = new TreeMap<String, String>();
+
+		for (Map.Entry<String, Node> e : graph.entrySet())
+		{
+			ChainRank.Pointer [] p = ChainRank.getPointers(e.getValue());
+			if (p == null) { continue; }
+
+			group.put(e.getKey(), ChainRank.isRanked(p) ? ChainRank.keptEnd(p) : ChainRank.cycleMin(p));
+		}
+
+		assertGroups(group);
+		assertEquals(graph.size() - 5, group.size());
+
+		for (String [] ids : chains)
+		{
+			String first = ids[0];
+			String last = ids[ids.length - 1];
+
+			for (String id : ids)
+			{
+				ChainRank.Pointer [] p = ChainRank.getPointers(graph.get(id));
+
+				if (first.equals("81"))
+				{
+					// the cycle: nothing ranked, broken at its smallest id
+					assertFalse(id, ChainRank.isRanked(p));
+					assertEquals(id, "74", ChainRank.cycleMin(p));
+					continue;
+				}
+
+				assertTrue(id, ChainRank.isRanked(p));
+				assertEquals(id, ids.length - 1, p[0].dist + p[1].dist);
+
+				Set<String> ends = new HashSet<String>();
+				ends.add(p[0].id);
+				ends.add(p[1].id);
+				assertTrue(id, ends.contains(first) && ends.contains(last));
+				assertEquals(id, (first.compareTo(last) < 0) ? first : last, ChainRank.keptEnd(p));
+			}
+
+			// the two ends tell apart the side that goes into the chain
+			if (!first.equals("81"))
+			{
+				assertNotNull(ChainRank.chainSide(ChainRank.getPointers(graph.get(first))));
+				assertNotNull(ChainRank.chainSide(ChainRank.getPointers(graph.get(last))));
+			}
+		}
+	}
+}
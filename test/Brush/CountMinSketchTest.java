@@ -0,0 +1,114 @@
+/*
+    CountMinSketchTest.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import junit.framework.TestCase;
+
+// The sketch never undercounts, overcounts by more than e * total / width
+// for no more than e^-DEPTH of the k-mers, and merges by slices.
+public class CountMinSketchTest extends TestCase
+{
+	private static final int N = 200000;
+
+	private final Random rand = new Random(31);
+
+	private long [] w0 = new long[N];
+	private long [] w1 = new long[N];
+	private int [] count = new int[N];
+	private long total = 0;
+
+	protected void setUp()
+	{
+		for (int i = 0; i < N; i++)
+		{
+			w0[i] = rand.nextLong();
+			w1[i] = (i % 2 == 0) ? 0 : rand.nextLong();
+			count[i] = (i % 100 == 0) ? 1 + rand.nextInt(1000) : 1 + rand.nextInt(3);
+			total += count[i];
+		}
+	}
+
+	private void checkBound(CountMinSketch sketch)
+	{
+		double bound = Math.E * total / sketch.width();
+		int over = 0;
+
+		for (int i = 0; i < N; i++)
+		{
+			int e = sketch.estimate(w0[i], w1[i]);
+
+			assertTrue(e >= count[i]);
+			if (e - count[i] > bound) { over++; }
+		}
+
+		assertTrue(over + " of " + N + " past " + bound, over <= N * Math.exp(-CountMinSketch.DEPTH));
+	}
+
+	public void testBound()
+	{
+		for (int width : new int [] {CountMinSketch.SLICE, 4 * CountMinSketch.SLICE})
+		{
+			CountMinSketch sketch = new CountMinSketch(width);
+			for (int i = 0; i < N; i++) { sketch.add(w0[i], w1[i], count[i]); }
+
+			checkBound(sketch);
+		}
+	}
+
+	public void testWidth()
+	{
+		assertEquals(CountMinSketch.SLICE, new CountMinSketch(0).width());
+		assertEquals(2 * CountMinSketch.SLICE, new CountMinSketch(CountMinSketch.SLICE + 1).width());
+	}
+
+	// two halves sketched apart and merged through serialized slices read
+	// back exactly like one sketch of everything
+	public void testMerge() throws IOException
+	{
+		CountMinSketch all = new CountMinSketch(2 * CountMinSketch.SLICE);
+		CountMinSketch [] half = { new CountMinSketch(all.width()), new CountMinSketch(all.width()) };
+
+		for (int i = 0; i < N; i++)
+		{
+			all.add(w0[i], w1[i], count[i]);
+			half[i % 2].add(w0[i], w1[i], count[i]);
+		}
+
+		CountMinSketch merged = new CountMinSketch(all.width());
+		CountMinSketch.Slice s = new CountMinSketch.Slice();
+
+		for (CountMinSketch h : half)
+		{
+			for (int i = 0; i < h.slices(); i++)
+			{
+				if (!h.getSlice(i, s)) { continue; }
+
+				DataOutputBuffer out = new DataOutputBuffer();
+				s.write(out);
+
+				DataInputBuffer in = new DataInputBuffer();
+				in.reset(out.getData(), out.getLength());
+
+				CountMinSketch.Slice t = new CountMinSketch.Slice();
+				t.readFields(in);
+				merged.addSlice(i, t);
+			}
+		}
+
+		for (int i = 0; i < N; i++)
+		{
+			assertEquals(all.estimate(w0[i], w1[i]), merged.estimate(w0[i], w1[i]));
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+    EdgeListTest.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+// EdgeList against the "id!oval" string list it replaces, with read ids
+// and other names mixed, past the size where the index is built.
+public class EdgeListTest extends TestCase
+{
+	private final Random rand = new Random(4);
+
+	private String randomId()
+	{
+		switch (rand.nextInt(3))
+		{
+			case 0:  return ReadDictionary.idString(rand.nextInt(40));
+			case 1:  return rand.nextInt(10) + "_" + (1 + rand.nextInt(2));
+			default: return ReadDictionary.idString(rand.nextLong() >>> 2);
+		}
+	}
+
+	private static int find(List<String> l, String id, int oval, boolean anyoval)
+	{
+		for (int i = 0; i < l.size(); i++)
+		{
+			String e = l.get(i);
+			int bang = e.indexOf('!');
+
+			if (e.substring(0, bang).equals(id) && (anyoval || Integer.parseInt(e.substring(bang+1)) == oval))
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	public void testOperations()
+	{
+		for (int round = 0; round < 200; round++)
+		{
+			EdgeList el = new EdgeList();
+			List<String> ref = new ArrayList<String>();
+
+			for (int op = 0; op < 200; op++)
+			{
+				String id = randomId();
+				int oval = rand.nextInt(3);
+
+				if (rand.nextInt(3) > 0)
+				{
+					el.add(id + "!" + oval);
+					ref.add(id + "!" + oval);
+				}
+				else
+				{
+					boolean anyoval = rand.nextBoolean();
+					int removed = el.removeAll(id, oval, anyoval);
+
+					int n = 0;
+					for (int i = find(ref, id, oval, anyoval); i >= 0; i = find(ref, id, oval, anyoval))
+					{
+						ref.remove(i);
+						n++;
+					}
+					assertEquals(n, removed);
+				}
+
+				String probe = randomId();
+				assertEquals(find(ref, probe, 0, true) >= 0, el.find(probe) >= 0);
+				assertEquals(find(ref, probe, 1, false) >= 0, el.find(probe, 1) >= 0);
+				assertEquals(ref.size(), el.size());
+			}
+
+			assertEquals(ref, el.toList());
+			assertEquals(ref, new EdgeList(el).toList());
+		}
+	}
+
+	public void testBinary() throws IOException
+	{
+		EdgeList el = new EdgeList();
+		for (int i = 0; i < 50; i++) { el.add(randomId(), rand.nextInt(30)); }
+		for (int i = 0; i < 10; i++) { el.removeAt(el.first()); }
+
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(b);
+		for (int i = 0; i < el.end(); i++)
+		{
+			if (el.live(i)) { el.write(out, i); }
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(b.toByteArray()));
+		EdgeList back = new EdgeList();
+		for (int i = 0; i < el.size(); i++) { back.read(in); }
+
+		assertEquals(0, in.available());
+		assertEquals(el.toList(), back.toList());
+	}
+}
@@ -0,0 +1,120 @@
+/*
+    EditDistanceTest.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+// The bit-vector distance against the plain O(n * m) table, unbanded and
+// banded, over lengths on both sides of the 64-row block boundaries.
+public class EditDistanceTest extends TestCase
+{
+	private final Random rand = new Random(17);
+
+	private static int table(String a, String b)
+	{
+		int [] prev = new int[b.length() + 1];
+		int [] cur = new int[b.length() + 1];
+
+		for (int j = 0; j <= b.length(); j++) { prev[j] = j; }
+
+		for (int i = 1; i <= a.length(); i++)
+		{
+			cur[0] = i;
+			for (int j = 1; j <= b.length(); j++)
+			{
+				int sub = prev[j-1] + ((a.charAt(i-1) == b.charAt(j-1)) ? 0 : 1);
+				cur[j] = Math.min(sub, Math.min(prev[j], cur[j-1]) + 1);
+			}
+
+			int [] t = prev; prev = cur; cur = t;
+		}
+
+		return prev[b.length()];
+	}
+
+	private String random(int len)
+	{
+		char [] s = new char[len];
+		for (int i = 0; i < len; i++) { s[i] = PackedSeq.base(rand.nextInt(4)); }
+		return new String(s);
+	}
+
+	// a with about edits random substitutions, insertions and deletions
+	private String mutate(String a, int edits)
+	{
+		StringBuilder s = new StringBuilder(a);
+
+		for (int e = 0; e < edits; e++)
+		{
+			int p = rand.nextInt(s.length() + 1);
+
+			switch (rand.nextInt(3))
+			{
+				case 0: if (p < s.length()) { s.setCharAt(p, PackedSeq.base(rand.nextInt(4))); } break;
+				case 1: s.insert(p, PackedSeq.base(rand.nextInt(4))); break;
+				case 2: if (p < s.length()) { s.deleteCharAt(p); } break;
+			}
+		}
+
+		return s.toString();
+	}
+
+	private static final int [] LENGTHS = {0, 1, 2, 31, 63, 64, 65, 100, 127, 128, 129, 200};
+
+	public void testUnbanded()
+	{
+		for (int la : LENGTHS)
+		{
+			for (int t = 0; t < 20; t++)
+			{
+				String a = random(la);
+				String b = (t % 2 == 0) ? mutate(a, rand.nextInt(10)) : random(LENGTHS[rand.nextInt(LENGTHS.length)]);
+
+				assertEquals(a + " " + b, table(a, b), EditDistance.distance(a, b));
+				assertEquals(b + " " + a, table(a, b), EditDistance.distance(b, a));
+			}
+		}
+	}
+
+	public void testBandedAgrees()
+	{
+		for (int la : LENGTHS)
+		{
+			for (int t = 0; t < 20; t++)
+			{
+				String a = random(la);
+				String b = mutate(a, rand.nextInt(20));
+				int d = table(a, b);
+
+				for (int k = 0; k <= d + 3; k++)
+				{
+					int banded = EditDistance.distance(a, b, k);
+
+					if (d <= k) { assertEquals(a + " " + b + " k=" + k, d, banded); }
+					else        { assertTrue(a + " " + b + " k=" + k, banded > k); }
+				}
+			}
+		}
+	}
+
+	// one instance, reused over patterns of different block counts
+	public void testWorkspaceReuse()
+	{
+		EditDistance ed = new EditDistance();
+
+		for (int t = 0; t < 200; t++)
+		{
+			String a = random(LENGTHS[rand.nextInt(LENGTHS.length)]);
+			String b = mutate(a, rand.nextInt(8));
+
+			assertEquals(a + " " + b, table(a, b), ed.compute(a, b, Integer.MAX_VALUE));
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+    KmerScannerTest.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+// The rolling words of every window against the window cut out of the
+// read as text: forward, reverse complement, canonical strand and the
+// homopolymer flag, for k on both sides of the 32 base word boundary.
+public class KmerScannerTest extends TestCase
+{
+	private static final int [] KS = {1, 2, 15, 31, 32, 33, 47, 63, 64};
+
+	private final Random rand = new Random(41);
+
+	private static int sign(int c)
+	{
+		return (c < 0) ? -1 : ((c > 0) ? 1 : 0);
+	}
+
+	// random bases with long runs of one base now and then
+	private String random(int len)
+	{
+		StringBuilder s = new StringBuilder();
+
+		while (s.length() < len)
+		{
+			char b = PackedSeq.base(rand.nextInt(4));
+			int run = (rand.nextInt(8) == 0) ? rand.nextInt(80) : 1;
+
+			for (int i = 0; i < run && s.length() < len; i++) { s.append(b); }
+		}
+
+		return s.toString();
+	}
+
+	private static long word0(String kmer)
+	{
+		return new PackedSeq(kmer).word(0, Math.min(32, kmer.length()));
+	}
+
+	private static long word1(String kmer)
+	{
+		return (kmer.length() > 32) ? new PackedSeq(kmer).word(32, kmer.length() - 32) : 0;
+	}
+
+	private static int homopolymer(String kmer)
+	{
+		for (int i = 1; i < kmer.length(); i++)
+		{
+			if (kmer.charAt(i) != kmer.charAt(0)) { return -1; }
+		}
+
+		return PackedSeq.code(kmer.charAt(0));
+	}
+
+	private void check(KmerScanner scanner, String read)
+	{
+		int k = scanner.k();
+		KmerWritable kmer = new KmerWritable();
+
+		scanner.reset(new PackedSeq(read));
+
+		int n = 0;
+		while (scanner.next())
+		{
+			String f = read.substring(n, n + k);
+			String r = Node.rc(f);
+			String msg = "k=" + k + " " + read + " at " + n;
+
+			assertEquals(msg, n, scanner.offset());
+
+			assertEquals(msg, word0(f), scanner.forward0());
+			assertEquals(msg, word1(f), scanner.forward1());
+			assertEquals(msg, word0(r), scanner.reverse0());
+			assertEquals(msg, word1(r), scanner.reverse1());
+
+			assertEquals(msg, sign(f.compareTo(r)), sign(scanner.strand()));
+
+			String canonical = (f.compareTo(r) <= 0) ? f : r;
+			assertEquals(msg, word0(canonical), scanner.word0());
+			assertEquals(msg, word1(canonical), scanner.word1());
+
+			scanner.get(kmer);
+			assertEquals(msg, canonical, kmer.toSeq().toString());
+			scanner.getForward(kmer);
+			assertEquals(msg, f, kmer.toSeq().toString());
+			scanner.getReverse(kmer);
+			assertEquals(msg, r, kmer.toSeq().toString());
+
+			assertEquals(msg, homopolymer(f), scanner.homopolymer());
+
+			n++;
+		}
+
+		assertEquals("k=" + k + " " + read, Math.max(0, read.length() - k + 1), n);
+		assertFalse(scanner.next());
+	}
+
+	public void testWindows()
+	{
+		for (int k : KS)
+		{
+			KmerScanner scanner = new KmerScanner(k);
+
+			// reads shorter than k, exactly k, and longer, one scanner for all
+			for (int t = 0; t < 50; t++)
+			{
+				check(scanner, random(rand.nextInt(k + 100)));
+			}
+			check(scanner, random(k));
+			check(scanner, "");
+		}
+	}
+
+	public void testPalindrome()
+	{
+		// ACGT is its own reverse complement, so is any run of it
+		for (int k : new int [] {4, 32, 64})
+		{
+			StringBuilder s = new StringBuilder();
+			while (s.length() < k) { s.append("ACGT"); }
+
+			KmerScanner scanner = new KmerScanner(k);
+			scanner.reset(new PackedSeq(s.toString()));
+
+			assertTrue(scanner.next());
+			assertEquals(0, scanner.strand());
+			assertEquals(scanner.forward0(), scanner.word0());
+			assertEquals(scanner.forward1(), scanner.word1());
+
+			check(scanner, s.toString() + "TTT");
+		}
+	}
+
+	public void testViews()
+	{
+		String read = random(200);
+		PackedSeq seq = new PackedSeq(read);
+
+		// reverse complemented and cut views scan like their text
+		for (int k : KS)
+		{
+			KmerScanner scanner = new KmerScanner(k);
+			scanner.reset(seq.rc().subseq(7, 150));
+
+			String text = Node.rc(read).substring(7, 157);
+			int n = 0;
+
+			while (scanner.next())
+			{
+				assertEquals(word0(text.substring(n, n + k)), scanner.forward0());
+				assertEquals(word1(text.substring(n, n + k)), scanner.forward1());
+				n++;
+			}
+
+			assertEquals(150 - k + 1, n);
+		}
+	}
+
+	public void testRange()
+	{
+		for (int k : new int [] {0, -1, KmerWritable.MAXK + 1})
+		{
+			try
+			{
+				new KmerScanner(k);
+				fail("k=" + k);
+			}
+			catch (IllegalArgumentException e) { }
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/*
+    KmerSpectrumTest.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+import junit.framework.TestCase;
+
+// The distinct k-mer count that picks the sample rate, and the bins the
+// histogram reducer scales back.
+public class KmerSpectrumTest extends TestCase
+{
+	private final Random rand = new Random(43);
+
+	public void testDistinct()
+	{
+		for (int n : new int [] {0, 100, 10000, 100000, 2000000})
+		{
+			byte [] registers = new byte[1 << KmerSpectrum.DISTINCT_P];
+			long [] w = new long[Math.min(n, 1000)];
+
+			for (int i = 0; i < n; i++)
+			{
+				long w0 = rand.nextLong();
+				KmerSpectrum.offer(registers, CountMinSketch.hash(w0, 0));
+
+				// repeats do not count again
+				if (i < w.length) { w[i] = w0; }
+			}
+			for (long w0 : w) { KmerSpectrum.offer(registers, CountMinSketch.hash(w0, 0)); }
+
+			long e = KmerSpectrum.estimate(registers);
+			assertTrue(n + " estimated as " + e, Math.abs(e - n) <= 0.03 * n + 2);
+		}
+	}
+
+	private static long reduce(int count, int sample, long... occurrences) throws IOException
+	{
+		JobConf job = new JobConf();
+		job.setInt("SPECTRUM_SAMPLE", sample);
+
+		KmerSpectrum.HistogramReducer reducer = new KmerSpectrum.HistogramReducer();
+		reducer.configure(job);
+
+		List<LongWritable> vals = new ArrayList<LongWritable>();
+		for (long o : occurrences) { vals.add(new LongWritable(o)); }
+
+		final long [] out = {0};
+		reducer.reduce(new IntWritable(count), vals.iterator(), new OutputCollector<IntWritable, LongWritable>() {
+			public void collect(IntWritable key, LongWritable value) { out[0] = value.get(); }
+		}, Reporter.NULL);
+
+		return out[0];
+	}
+
+	public void testBins() throws IOException
+	{
+		// 7 k-mers seen 3 times, twice as many before sampling
+		assertEquals(7, reduce(3, 0, 12, 9));
+		assertEquals(14, reduce(3, 1, 12, 9));
+
+		// the last bin keeps its occurrences, whatever counts they came from
+		assertEquals(25000, reduce(KmerSpectrum.MAXCOUNT, 0, 10000, 15000));
+		assertEquals(100000, reduce(KmerSpectrum.MAXCOUNT, 2, 10000, 15000));
+	}
+}
@@ -0,0 +1,152 @@
+/*
+    KmerWritableTest.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+
+import junit.framework.TestCase;
+
+// The raw comparator the shuffle sorts KmerWritable keys with has to put
+// the serialized keys in the same order as compareTo, salted or not.
+public class KmerWritableTest extends TestCase
+{
+	private final Random rand = new Random(29);
+
+	private static int sign(int c)
+	{
+		return (c < 0) ? -1 : ((c > 0) ? 1 : 0);
+	}
+
+	private KmerWritable random(int k, int salt)
+	{
+		char [] s = new char[k];
+		for (int i = 0; i < k; i++) { s[i] = PackedSeq.base(rand.nextInt(4)); }
+
+		KmerWritable kmer = new KmerWritable(new PackedSeq(new String(s)));
+		kmer.setSalt(salt);
+
+		return kmer;
+	}
+
+	// mostly short keys with few bases, so equal words and equal k are common
+	private KmerWritable random()
+	{
+		int k = (rand.nextInt(4) == 0) ? 1 + rand.nextInt(KmerWritable.MAXK) : 31 + rand.nextInt(4);
+		int salt = (rand.nextInt(3) == 0) ? rand.nextInt(KmerWritable.MAXSALT + 1) : 0;
+
+		return random(k, salt);
+	}
+
+	private static byte [] bytes(KmerWritable kmer) throws IOException
+	{
+		DataOutputBuffer out = new DataOutputBuffer();
+		kmer.write(out);
+
+		byte [] b = new byte[out.getLength()];
+		System.arraycopy(out.getData(), 0, b, 0, b.length);
+
+		return b;
+	}
+
+	private static void assertSameOrder(KmerWritable a, KmerWritable b) throws IOException
+	{
+		byte [] x = bytes(a);
+		byte [] y = bytes(b);
+
+		WritableComparator raw = WritableComparator.get(KmerWritable.class);
+
+		assertTrue(raw instanceof KmerWritable.Comparator);
+		assertEquals(a + "/" + a.getSalt() + " " + b + "/" + b.getSalt(),
+				sign(a.compareTo(b)), sign(raw.compare(x, 0, x.length, y, 0, y.length)));
+		assertEquals(a.compareTo(b) == 0, a.equals(b));
+	}
+
+	public void testRoundTrip() throws IOException
+	{
+		for (int t = 0; t < 2000; t++)
+		{
+			KmerWritable a = random();
+			byte [] b = bytes(a);
+
+			assertEquals(1 + ((a.getSalt() != 0) ? 1 : 0) + ((a.getK() > 32) ? 16 : 8), b.length);
+
+			DataInputBuffer in = new DataInputBuffer();
+			in.reset(b, b.length);
+
+			KmerWritable c = new KmerWritable();
+			c.readFields(in);
+
+			assertEquals(a, c);
+			assertEquals(a.hashCode(), c.hashCode());
+			assertEquals(a.toString(), c.toString());
+			assertEquals(a.getSalt(), c.getSalt());
+		}
+	}
+
+	public void testRawOrder() throws IOException
+	{
+		for (int t = 0; t < 20000; t++)
+		{
+			assertSameOrder(random(), random());
+		}
+	}
+
+	// the same k-mer with and without salt, and under different salts
+	public void testSaltOrder() throws IOException
+	{
+		for (int t = 0; t < 2000; t++)
+		{
+			KmerWritable a = random();
+			KmerWritable b = new KmerWritable(a.toSeq());
+			b.setSalt(rand.nextInt(KmerWritable.MAXSALT + 1));
+
+			assertSameOrder(a, b);
+			assertSameOrder(b, a);
+
+			if (a.getSalt() != b.getSalt())
+			{
+				assertFalse(a.equals(b));
+				assertTrue(a.compareTo(b) != 0);
+			}
+		}
+
+		KmerWritable plain = random(KmerWritable.MAXK, 0);
+		KmerWritable salted = random(1, 1);
+		assertTrue(plain.compareTo(salted) < 0);
+		assertSameOrder(plain, salted);
+	}
+
+	public void testSaltRange()
+	{
+		KmerWritable k = new KmerWritable();
+
+		k.setSalt(KmerWritable.MAXSALT);
+		assertEquals(KmerWritable.MAXSALT, k.getSalt());
+
+		try
+		{
+			k.setSalt(KmerWritable.MAXSALT + 1);
+			fail();
+		}
+		catch (IllegalArgumentException e) { }
+	}
+
+	public void testHash()
+	{
+		for (int t = 0; t < 1000; t++)
+		{
+			KmerWritable a = random(1 + rand.nextInt(KmerWritable.MAXK), 0);
+			assertEquals(a.hashCode(), KmerWritable.hash(a.getWord0(), a.getWord1(), a.getK()));
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+    PackedSeqTest.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+// PackedSeq against the String forms it replaces: bases, the str2dna
+// codec, reverse complements, views, words and the binary node form.
+public class PackedSeqTest extends TestCase
+{
+	private final Random rand = new Random(23);
+
+	private String random(int len)
+	{
+		char [] s = new char[len];
+		for (int i = 0; i < len; i++) { s[i] = PackedSeq.base(rand.nextInt(4)); }
+		return new String(s);
+	}
+
+	// the same bases packed by hand, high bits first, zero padded
+	private static long word(String s, int i, int n)
+	{
+		long w = 0;
+		for (int j = 0; j < n; j++) { w |= ((long) PackedSeq.code(s.charAt(i + j))) << (62 - 2 * j); }
+		return w;
+	}
+
+	private static int sign(int c)
+	{
+		return (c < 0) ? -1 : ((c > 0) ? 1 : 0);
+	}
+
+	public void testText()
+	{
+		for (int len = 0; len <= 130; len++)
+		{
+			String s = random(len);
+			PackedSeq p = new PackedSeq(s);
+
+			assertEquals(len, p.length());
+			assertEquals(s, p.toString());
+			assertEquals(Node.str2dna(s), p.toDna());
+			assertEquals(len, PackedSeq.dnaLength(Node.str2dna(s)));
+			assertEquals(p, PackedSeq.fromDna(Node.str2dna(s)));
+			assertEquals(s, Node.dna2str(p.toDna()));
+		}
+	}
+
+	public void testReverseComplement()
+	{
+		for (int len = 0; len <= 130; len++)
+		{
+			String s = random(len);
+			PackedSeq p = new PackedSeq(s);
+
+			assertEquals(Node.rc(s), p.rc().toString());
+			assertEquals(p, p.rc().rc());
+			assertEquals(new PackedSeq(Node.rc(s)), p.rc());
+			assertEquals(new PackedSeq(Node.rc(s)).hashCode(), p.rc().hashCode());
+		}
+	}
+
+	public void testViews()
+	{
+		String s = random(150);
+		String r = Node.rc(s);
+		PackedSeq p = new PackedSeq(s);
+
+		for (int t = 0; t < 500; t++)
+		{
+			int a = rand.nextInt(s.length() + 1);
+			int l = rand.nextInt(s.length() - a + 1);
+
+			assertEquals(s.substring(a, a + l), p.subseq(a, l).toString());
+			assertEquals(r.substring(a, a + l), p.rc().subseq(a, l).toString());
+			assertEquals(Node.rc(s.substring(a, a + l)), p.subseq(a, l).rc().toString());
+			assertEquals(s.substring(a), p.subseq(a).toString());
+			assertTrue(p.subseq(a).startsWith(p.subseq(a, l)));
+
+			int n = Math.min(32, l);
+			assertEquals(word(s, a, n), p.word(a, n));
+			assertEquals(word(r, a, n), p.rc().word(a, n));
+			assertEquals(word(s, a, n), p.subseq(a, l).word(0, n));
+		}
+	}
+
+	public void testCompare()
+	{
+		for (int t = 0; t < 2000; t++)
+		{
+			String a = random(rand.nextInt(70));
+			String b = (t % 3 == 0) ? a.substring(0, rand.nextInt(a.length() + 1)) + random(rand.nextInt(40)) : random(rand.nextInt(70));
+
+			PackedSeq pa = new PackedSeq(a);
+			PackedSeq pb = new PackedSeq(b);
+
+			assertEquals(a + " " + b, sign(a.compareTo(b)), sign(pa.compareTo(pb)));
+			assertEquals(a + " " + b, a.equals(b), pa.equals(pb));
+			assertEquals(a + " " + b, b.startsWith(a), pb.startsWith(pa));
+		}
+	}
+
+	public void testBinary() throws IOException
+	{
+		for (int len = 0; len <= 130; len++)
+		{
+			String s = random(len + 10);
+			PackedSeq p = new PackedSeq(s).rc().subseq(3, len);
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			p.writeBases(new DataOutputStream(bytes));
+			assertEquals((len + 3) / 4, bytes.size());
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			PackedSeq q = PackedSeq.readBases(in, len);
+
+			assertEquals(p.toString(), q.toString());
+			assertEquals(p, q);
+		}
+	}
+
+	public void testHomopolymer()
+	{
+		assertTrue(new PackedSeq("AAAA").isHomopolymer(0));
+		assertTrue(new PackedSeq("TTTT").rc().isHomopolymer(0));
+		assertFalse(new PackedSeq("AAAC").isHomopolymer(0));
+		assertTrue(new PackedSeq("").isHomopolymer(2));
+	}
+}
@@ -0,0 +1,104 @@
+/*
+    ReadDictionaryTest.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import junit.framework.TestCase;
+
+// The base 36 read ids: they parse back, other names are left alone,
+// mates find each other and the serials of the reducers line up.
+public class ReadDictionaryTest extends TestCase
+{
+	private final Random rand = new Random(5);
+
+	public void testIds()
+	{
+		for (int i = 0; i < 100000; i++)
+		{
+			long id = (i < 1000) ? i : rand.nextLong() >>> 2;
+			String s = ReadDictionary.idString(id);
+
+			assertTrue(s, s.length() <= 12);
+			assertEquals(id, ReadDictionary.parseId(s));
+		}
+
+		String [] names = { "", "01", "A1", "12_1", "read.1", "-5", "1000000000000" };
+		for (String name : names)
+		{
+			assertEquals(name, -1, ReadDictionary.parseId(name));
+		}
+	}
+
+	public void testMates()
+	{
+		for (long serial = 0; serial < 1000; serial++)
+		{
+			String first  = ReadDictionary.idString(ReadDictionary.readId(serial, 1));
+			String second = ReadDictionary.idString(ReadDictionary.readId(serial, 2));
+			String single = ReadDictionary.idString(ReadDictionary.readId(serial, 0));
+
+			assertEquals(second, Node.matename(first));
+			assertEquals(first, Node.matename(second));
+			assertNull(Node.matename(single));
+		}
+
+		assertEquals("12_2", Node.matename("12_1"));
+	}
+
+	// ids go out as varints, any other name as text, and both come back
+	public void testNames() throws IOException
+	{
+		String [] names = { "0", "ucg", "3w5e11264sgr", "12_1", "read.1", "A1" };
+
+		for (String name : names)
+		{
+			ByteArrayOutputStream b = new ByteArrayOutputStream();
+			ReadWritable.writeName(new DataOutputStream(b), name);
+
+			if (ReadDictionary.parseId(name) >= 0)
+			{
+				assertTrue(name, b.size() <= 9);
+			}
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(b.toByteArray()));
+			assertEquals(name, ReadWritable.readName(in));
+		}
+	}
+
+	public void testSerialOffsets() throws IOException
+	{
+		FileSystem fs = FileSystem.getLocal(new Configuration());
+		Path dir = new Path(System.getProperty("java.io.tmpdir"), "ReadDictionaryTest");
+		fs.delete(dir, true);
+
+		// partition 1 got no reads, and partition 3 never wrote its count
+		long [] serials = { 5, 0, 7 };
+		for (int p = 0; p < serials.length; p++)
+		{
+			Writer w = new OutputStreamWriter(fs.create(new Path(dir, ReadDictionary.SERIALS + "-r-0000" + p)));
+			w.write(p + "\t" + serials[p] + "\n");
+			w.close();
+		}
+
+		assertEquals("0,5,5,12", ReadDictionary.serialOffsets(fs, dir, 4));
+
+		fs.delete(dir, true);
+	}
+}
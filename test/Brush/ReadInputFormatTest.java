@@ -0,0 +1,281 @@
+/*
+    ReadInputFormatTest.java
+    2012 Ⓒ CloudBrush, developed by Chien-Chih Chen (rocky@iis.sinica.edu.tw),
+    released under Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+    at: https://github.com/ice91/CloudBrush
+*/
+
+package Brush;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+import junit.framework.TestCase;
+
+// However a file is cut into splits, every read comes out of exactly one
+// split, in file order, as it does from the whole file: plain text cut at
+// any byte, and BGZF cut at any compressed byte.
+public class ReadInputFormatTest extends TestCase
+{
+	private final Random rand = new Random(37);
+
+	private JobConf job;
+	private File dir;
+
+	protected void setUp() throws IOException
+	{
+		job = new JobConf();
+		dir = File.createTempFile("ReadInputFormatTest", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	protected void tearDown() throws IOException
+	{
+		FileSystem.getLocal(job).delete(new Path(dir.getPath()), true);
+	}
+
+	private String random(int len)
+	{
+		char [] s = new char[len];
+		for (int i = 0; i < len; i++) { s[i] = PackedSeq.base(rand.nextInt(4)); }
+		return new String(s);
+	}
+
+	// FASTQ records whose quality lines often start with '@' and '+'
+	private String fastq(int reads, List<String> expect)
+	{
+		StringBuilder s = new StringBuilder();
+
+		for (int r = 0; r < reads; r++)
+		{
+			String seq = random(20 + rand.nextInt(40));
+			char [] qual = new char[seq.length()];
+			for (int i = 0; i < qual.length; i++) { qual[i] = "@+#ABCDI".charAt(rand.nextInt(8)); }
+
+			s.append("@read" + r + "/1 extra\n").append(seq).append('\n');
+			s.append((r % 2 == 0) ? "+\n" : "+read" + r + "\n").append(qual).append((r % 5 == 0) ? "\r\n" : "\n");
+			expect.add("read" + r + "_1\t" + seq);
+		}
+
+		return s.toString();
+	}
+
+	// FASTA records over several lines, with blank and comment lines
+	private String fasta(int reads, List<String> expect)
+	{
+		StringBuilder s = new StringBuilder("# reads\n");
+
+		for (int r = 0; r < reads; r++)
+		{
+			String seq = random(20 + rand.nextInt(100));
+
+			s.append(">read" + r + " extra\n");
+			for (int i = 0; i < seq.length(); i += 30)
+			{
+				s.append(seq, i, Math.min(seq.length(), i + 30)).append('\n');
+				if (rand.nextInt(10) == 0) { s.append('\n'); }
+			}
+			expect.add("read" + r + "\t" + seq);
+		}
+
+		return s.toString();
+	}
+
+	private static void blockTo(ByteArrayOutputStream out, byte [] data, int off, int len)
+	{
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(data, off, len);
+		deflater.finish();
+
+		byte [] cdata = new byte[len + 1024];
+		int clen = 0;
+		while (!deflater.finished()) { clen += deflater.deflate(cdata, clen, cdata.length - clen); }
+		deflater.end();
+
+		CRC32 crc = new CRC32();
+		crc.update(data, off, len);
+
+		int bsize = 18 + clen + 8 - 1;
+		out.write(new byte [] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+				(byte) bsize, (byte) (bsize >> 8)}, 0, 18);
+		out.write(cdata, 0, clen);
+		for (long v : new long [] {crc.getValue(), len})
+		{
+			for (int i = 0; i < 4; i++) { out.write((int) (v >> (8 * i))); }
+		}
+	}
+
+	// bgzip-style blocks of at most block bytes each, and the empty last block
+	private static byte [] bgzf(String text, int block)
+	{
+		byte [] data = text.getBytes();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		for (int i = 0; i < data.length; i += block)
+		{
+			blockTo(out, data, i, Math.min(block, data.length - i));
+		}
+		blockTo(out, data, 0, 0);
+
+		return out.toByteArray();
+	}
+
+	private Path write(String name, byte [] data) throws IOException
+	{
+		File f = new File(dir, name);
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(data);
+		out.close();
+
+		return new Path(f.getPath());
+	}
+
+	private List<String> read(ReadInputFormat format, Path path, long start, long length, List<Long> keys) throws IOException
+	{
+		List<String> reads = new ArrayList<String>();
+
+		RecordReader<LongWritable, ReadWritable> rr =
+			format.getRecordReader(new FileSplit(path, start, length, (String []) null), job, Reporter.NULL);
+
+		LongWritable key = rr.createKey();
+		ReadWritable value = rr.createValue();
+
+		while (rr.next(key, value))
+		{
+			reads.add(value.getName() + "\t" + value);
+			keys.add(key.get());
+		}
+		rr.close();
+
+		return reads;
+	}
+
+	// the reads of every cut of the file into splits of size bytes
+	private void checkSplits(ReadInputFormat format, Path path, List<String> expect) throws IOException
+	{
+		long length = FileSystem.getLocal(job).getFileStatus(path).getLen();
+
+		for (long size : new long [] {1, 7, 50, 97, 333, 1000, length / 2, length - 1, length})
+		{
+			if (size < 1) { continue; }
+
+			List<String> reads = new ArrayList<String>();
+			List<Long> keys = new ArrayList<Long>();
+
+			for (long start = 0; start < length; start += size)
+			{
+				reads.addAll(read(format, path, start, Math.min(size, length - start), keys));
+			}
+
+			assertEquals(path.getName() + " split " + size, expect, reads);
+
+			for (int i = 1; i < keys.size(); i++)
+			{
+				assertTrue(path.getName() + " split " + size, keys.get(i - 1) < keys.get(i));
+			}
+		}
+	}
+
+	private ReadInputFormat format(ReadInputFormat format)
+	{
+		format.configure(job);
+		return format;
+	}
+
+	public void testPlainFastq() throws IOException
+	{
+		List<String> expect = new ArrayList<String>();
+		Path path = write("reads.fastq", fastq(40, expect).getBytes());
+
+		ReadInputFormat format = format(new FastqInputFormat());
+		assertTrue(format.isSplitable(FileSystem.getLocal(job), path));
+
+		checkSplits(format, path, expect);
+	}
+
+	public void testPlainFasta() throws IOException
+	{
+		List<String> expect = new ArrayList<String>();
+		Path path = write("reads.fa", fasta(30, expect).getBytes());
+
+		checkSplits(format(new FastaInputFormat()), path, expect);
+	}
+
+	public void testBgzfFastq() throws IOException
+	{
+		List<String> expect = new ArrayList<String>();
+		String text = fastq(20, expect);
+
+		for (int block : new int [] {37, 500, 65536})
+		{
+			Path path = write("reads" + block + ".fastq.gz", bgzf(text, block));
+
+			ReadInputFormat format = format(new FastqInputFormat());
+			assertTrue(format.isSplitable(FileSystem.getLocal(job), path));
+
+			checkSplits(format, path, expect);
+		}
+	}
+
+	public void testBgzfFasta() throws IOException
+	{
+		List<String> expect = new ArrayList<String>();
+		Path path = write("reads.fa.gz", bgzf(fasta(20, expect), 200));
+
+		checkSplits(format(new FastaInputFormat()), path, expect);
+	}
+
+	// plain gzip is read whole by the split that starts the file
+	public void testGzipWhole() throws IOException
+	{
+		List<String> expect = new ArrayList<String>();
+		String text = fastq(100, expect);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gz = new GZIPOutputStream(bytes);
+		gz.write(text.getBytes());
+		gz.close();
+
+		Path path = write("reads.fq.gz", bytes.toByteArray());
+
+		ReadInputFormat format = format(new FastqInputFormat());
+		assertFalse(format.isSplitable(FileSystem.getLocal(job), path));
+		assertEquals(expect, read(format, path, 0, bytes.size(), new ArrayList<Long>()));
+	}
+
+	public void testFormatOf() throws IOException
+	{
+		write("a.fastq.gz", new byte[0]);
+		write("b.fq", new byte[0]);
+		write("_SUCCESS", new byte[0]);
+
+		assertEquals(FastqInputFormat.class, ReadInputFormat.formatOf(job, dir.getPath()));
+		assertEquals(FastaInputFormat.class, ReadInputFormat.formatOf(job, write("c.fna", new byte[0]).toString()));
+		assertEquals(Sfa2InputFormat.class, ReadInputFormat.formatOf(job, write("d.sfa2", new byte[0]).toString()));
+		assertEquals(SfaInputFormat.class, ReadInputFormat.formatOf(job, write("e.sfa", new byte[0]).toString()));
+
+		try
+		{
+			ReadInputFormat.formatOf(job, dir.getPath());
+			fail();
+		}
+		catch (IOException e) { }
+	}
+}